@@ -0,0 +1,75 @@
+package unisolar.api.search;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the indexes serving feature searches (prefix, fuzzy and full text), for catalogs from a hundred
+ * to a million features and each kind of query, so they can be compared with each other and with the AVL tree
+ * measured by {@link FeatureSearchTreeBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class FeatureIndexBenchmark {
+
+    private static final int MAX_RESULTS = 20;
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    int size;
+
+    @Param({"SHORT_PREFIX", "LONG_PREFIX", "MISS"})
+    SyntheticCatalog.QueryKind kind;
+
+    private FeaturePrefixIndex prefixIndex;
+    private FeatureFuzzyIndex fuzzyIndex;
+    private FeatureTextIndex textIndex;
+    private String[] queries;
+    private String[] words;  // Single words for the fuzzy and full-text searches
+    private int next;
+
+    @Setup
+    public void setUp() {
+        var features = SyntheticCatalog.features(size);
+        prefixIndex = new FeaturePrefixIndex(features, MAX_RESULTS);
+        fuzzyIndex = new FeatureFuzzyIndex(features);
+        textIndex = new FeatureTextIndex(features);
+        queries = SyntheticCatalog.queries(features, kind);
+
+        words = new String[queries.length];
+        for (int i = 0; i < words.length; i++) {
+            var separator = queries[i].indexOf('_');
+            words[i] = separator < 0 ? queries[i] : queries[i].substring(0, separator);
+        }
+    }
+
+    @Benchmark
+    public List<FeatureSearchTree.Feature> prefixSearch() {
+        return prefixIndex.searchByPrefix(queries[next++ & SyntheticCatalog.mask()]);
+    }
+
+    @Benchmark
+    public List<FeatureSearchTree.Feature> fuzzySearch() {
+        return fuzzyIndex.search(words[next++ & SyntheticCatalog.mask()], MAX_RESULTS);
+    }
+
+    @Benchmark
+    public List<FeatureSearchTree.Feature> fullTextSearch() {
+        return textIndex.search(words[next++ & SyntheticCatalog.mask()], MAX_RESULTS);
+    }
+}
@@ -0,0 +1,147 @@
+package unisolar.api.search;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the AVL tree of FeatureSearchTree: building it by inserts or in bulk, refreshing it with a diff of
+ * the catalog, exact lookups and prefix searches, for catalogs from a hundred to a million features and each kind
+ * of query. The same lookups are measured on the FrozenFeatureIndex frozen from the tree, with the cost of freezing
+ * it.
+ *
+ * Run with {@code mvn -P benchmark test-compile exec:exec}; pass JMH options with
+ * {@code -Djmh.args="FeatureSearchTreeBenchmark -p size=10000 -prof gc"}. The gc profiler reports the allocation
+ * rate per operation as gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class FeatureSearchTreeBenchmark {
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    int size;
+
+    @Param({"SHORT_PREFIX", "LONG_PREFIX", "MISS"})
+    SyntheticCatalog.QueryKind kind;
+
+    private List<FeatureSearchTree.Feature> features;
+    private List<FeatureSearchTree.Feature> sorted;
+    private FeatureSearchTree tree;
+    private FrozenFeatureIndex frozen;
+    private String[] queries;
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        features = SyntheticCatalog.features(size);
+        tree = new FeatureSearchTree();
+        features.forEach(tree::insert);
+        frozen = tree.freeze();
+        sorted = new ArrayList<>();
+        tree.forEachInOrder(sorted::add);
+        queries = SyntheticCatalog.queries(features, kind);
+
+        // Exact lookups: whole names, except for misses
+        names = new String[queries.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = kind == SyntheticCatalog.QueryKind.MISS ? queries[i] : features.get(i % size).getName();
+        }
+    }
+
+    /**
+     * Inserts the whole catalog into an empty tree; the cost of one insert is this divided by the catalog size.
+     */
+    @Benchmark
+    public FeatureSearchTree insertAll() {
+        var built = new FeatureSearchTree();
+        for (FeatureSearchTree.Feature feature : features) {
+            built.insert(feature);
+        }
+        return built;
+    }
+
+    @Benchmark
+    public FeatureSearchTree fromSorted() {
+        return FeatureSearchTree.fromSorted(sorted);
+    }
+
+    /**
+     * A tree to refresh, rebuilt before each invocation, and a diff changing a tenth of the catalog: a twentieth
+     * of the features deleted, as many changed and as many added.
+     */
+    @State(Scope.Thread)
+    public static class Refresh {
+        FeatureSearchTree tree;
+        List<FeatureSearchTree.Feature> upserts;
+        List<String> deletions;
+
+        @Setup(Level.Trial)
+        public void diff(FeatureSearchTreeBenchmark benchmark) {
+            upserts = new ArrayList<>();
+            deletions = new ArrayList<>();
+            var features = benchmark.sorted;
+            for (int i = 0; i + 19 < features.size(); i += 20) {
+                deletions.add(features.get(i).getName());
+                var changed = features.get(i + 10);
+                upserts.add(new FeatureSearchTree.Feature(changed.getName(), changed.getPath(), "Alterada",
+                        changed.getCategory()));
+                upserts.add(new FeatureSearchTree.Feature(changed.getName() + " Nova", changed.getPath(),
+                        changed.getDescription(), changed.getCategory()));
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void rebuild(FeatureSearchTreeBenchmark benchmark) {
+            tree = FeatureSearchTree.fromSorted(benchmark.sorted);
+        }
+    }
+
+    @Benchmark
+    public FeatureSearchTree applyChanges(Refresh refresh) {
+        refresh.tree.applyChanges(refresh.upserts, refresh.deletions);
+        return refresh.tree;
+    }
+
+    @Benchmark
+    public FeatureSearchTree.Feature search() {
+        return tree.search(names[next++ & SyntheticCatalog.mask()]);
+    }
+
+    @Benchmark
+    public List<FeatureSearchTree.Feature> searchByPrefix() {
+        return tree.searchByPrefix(queries[next++ & SyntheticCatalog.mask()]);
+    }
+
+    @Benchmark
+    public FrozenFeatureIndex freeze() {
+        return tree.freeze();
+    }
+
+    @Benchmark
+    public FeatureSearchTree.Feature frozenSearch() {
+        return frozen.search(names[next++ & SyntheticCatalog.mask()]);
+    }
+
+    @Benchmark
+    public List<FeatureSearchTree.Feature> frozenSearchByPrefix() {
+        return frozen.searchByPrefix(queries[next++ & SyntheticCatalog.mask()]);
+    }
+}
@@ -0,0 +1,101 @@
+package unisolar.api.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SyntheticCatalog generates feature catalogs and query mixes of any size for the search benchmarks.
+ *
+ * Features look like the deep links of the real catalog: snake_case names made of Portuguese words from the domain
+ * ("relatorio_consumo_mensal_482"), breadcrumb paths, short descriptions and a category out of a dozen. Everything
+ * is derived from a fixed seed, so every run benchmarks the same catalog and queries.
+ */
+public final class SyntheticCatalog {
+
+    private static final long SEED = 42;
+    private static final int QUERIES = 1024;  // A power of two, so a query is picked with a mask
+
+    private static final String[] WORDS = {
+            "energia", "bateria", "painel", "paineis", "consumo", "economia", "previsao", "perfil", "senha", "relatorio",
+            "manutencao", "geracao", "tarifa", "inversor", "eficiencia", "alerta", "historico", "meta", "mensal",
+            "diario", "semanal", "status", "sistema", "limpeza", "carga", "autonomia", "clima", "solar", "conta",
+            "fatura", "impacto", "ambiental", "notificacao", "dispositivo", "garantia", "instalacao", "suporte",
+            "chat", "assistente", "configuracao", "usuario", "seguranca", "acesso", "exportar", "comparar", "grafico"
+    };
+
+    private static final String[] SECTIONS = {"Dashboard", "Perfil", "Relatórios", "Configurações", "Suporte", "Bateria"};
+
+    private static final String[] CATEGORIES = {
+            "Monitoramento", "Financeiro", "Análise", "Usuário", "Segurança", "Suporte", "Manutenção", "Bateria",
+            "Painéis", "Notificações", "Relatórios", "Ambiental"
+    };
+
+    /**
+     * The kinds of queries a search box receives.
+     */
+    public enum QueryKind {
+        SHORT_PREFIX, // The first two characters of a name, matching many features
+        LONG_PREFIX,  // Most of a name, matching a handful of features
+        MISS          // A word that matches no feature
+    }
+
+    private SyntheticCatalog() {
+    }
+
+    /**
+     * Generates a catalog of distinct features.
+     *
+     * @param size The number of features.
+     * @return The features, in random order.
+     */
+    static List<FeatureSearchTree.Feature> features(int size) {
+        var random = new Random(SEED);
+        var features = new ArrayList<FeatureSearchTree.Feature>(size);
+        for (int i = 0; i < size; i++) {
+            var first = word(random);
+            var second = word(random);
+            var name = first + "_" + second + "_" + word(random) + "_" + i;
+            var path = SECTIONS[random.nextInt(SECTIONS.length)] + " > " + capitalize(first) + " > " + capitalize(second);
+            var description = "Visualizar " + word(random) + " e " + word(random) + " do " + word(random);
+            features.add(new FeatureSearchTree.Feature(name, path, description, CATEGORIES[random.nextInt(CATEGORIES.length)]));
+        }
+        return features;
+    }
+
+    /**
+     * Generates queries of a kind against a catalog.
+     *
+     * @param features The catalog queried.
+     * @param kind     The kind of queries.
+     * @return QUERIES queries.
+     */
+    static String[] queries(List<FeatureSearchTree.Feature> features, QueryKind kind) {
+        var random = new Random(SEED + kind.ordinal());
+        var queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            var name = features.get(random.nextInt(features.size())).getName();
+            queries[i] = switch (kind) {
+                case SHORT_PREFIX -> name.substring(0, 2);
+                case LONG_PREFIX -> name.substring(0, name.lastIndexOf('_'));
+                case MISS -> "zq" + name.substring(2, name.indexOf('_'));
+            };
+        }
+        return queries;
+    }
+
+    /**
+     * Returns the mask picking a query out of those generated: {@code queries[i++ & mask()]}.
+     */
+    static int mask() {
+        return QUERIES - 1;
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -0,0 +1,315 @@
+package unisolar.api.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * ChatLoadTest drives the chat endpoints at a target rate and reports throughput, latency percentiles
+ * and the threads used by the application, so changes to the chat path can be measured on a laptop.
+ *
+ * Load is open loop: questions are sent on a fixed schedule whatever the response times, so a slow server
+ * shows up as growing latency rather than as a lower request rate. Questions are spread over a number of
+ * virtual users, each keeping its own session (and thus its own conversation).
+ *
+ * Run the application against {@link FakeOpenAIServer} with the {@code loadtest} profile, then:
+ * <pre>
+ * mvn -P loadtest test-compile exec:java -Dexec.mainClass=unisolar.api.loadtest.ChatLoadTest -Dexec.args="--rps 50 --duration 60s --mode stream"
+ * </pre>
+ *
+ * Options:
+ * - --url (http://localhost:8080): The base URL of the application.
+ * - --mode (stream): {@code stream} posts to /chat/stream, {@code blocking} to /chat.
+ * - --rps (20): The number of questions sent per second.
+ * - --duration (60s): How long questions are sent for.
+ * - --users (50): The number of virtual users the questions are spread over.
+ * - --unique: Makes every question unique, so answers are never served from the cache or shared.
+ * - --max-in-flight (2000): Questions in flight above which new ones are dropped instead of sent.
+ * - --token: A bearer token used to read the thread metrics from /actuator/metrics, which requires authentication.
+ */
+public class ChatLoadTest {
+
+    private static final List<String> QUESTIONS = List.of(
+            "O que acontece com a energia que sobra durante o dia?",
+            "Como a SolarIA usa a bateria à noite?",
+            "Vale a pena ligar o ar-condicionado durante a tarde?",
+            "Como a previsão do tempo influencia o carregamento da bateria?",
+            "Por que minha geração caiu nos dias nublados?",
+            "Quanto tempo dura a bateria de carro reutilizada?",
+            "Posso carregar meu carro elétrico com os painéis?",
+            "O que é a manutenção preditiva da SolarIA?",
+            "Como funciona a tarifa branca com energia solar?",
+            "Em que horário devo usar o chuveiro elétrico?");
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final URI chatUri;
+    private final URI metricsUri;
+    private final boolean stream;
+    private final double rps;
+    private final Duration duration;
+    private final boolean unique;
+    private final int maxInFlight;
+    private final String token;
+
+    private final HttpClient http;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<AtomicReference<String>> sessions;  // Session cookie of each virtual user
+
+    private final Histogram latency = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+    private final Histogram firstToken = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final ThreadSampler liveThreads = new ThreadSampler("jvm.threads.live");
+    private final ThreadSampler busyThreads = new ThreadSampler("tomcat.threads.busy");
+
+    /**
+     * Tracks the peak and average of a thread gauge of the application.
+     */
+    private static class ThreadSampler {
+        final String metric;
+        final AtomicLong peak = new AtomicLong();
+        final LongAdder sum = new LongAdder();
+        final LongAdder samples = new LongAdder();
+
+        ThreadSampler(String metric) {
+            this.metric = metric;
+        }
+
+        void add(long value) {
+            peak.accumulateAndGet(value, Math::max);
+            sum.add(value);
+            samples.increment();
+        }
+
+        String report() {
+            var count = samples.sum();
+            return count == 0
+                    ? "%-22s unavailable".formatted(metric)
+                    : "%-22s peak %d, average %.1f".formatted(metric, peak.get(), (double) sum.sum() / count);
+        }
+    }
+
+    public ChatLoadTest(LoadTestOptions options) {
+        var url = options.get("url", "http://localhost:8080").replaceAll("/+$", "");
+        this.stream = !options.get("mode", "stream").equals("blocking");
+        this.chatUri = URI.create(url + (stream ? "/chat/stream" : "/chat"));
+        this.metricsUri = URI.create(url + "/actuator/metrics/");
+        this.rps = options.getDouble("rps", 20);
+        this.duration = options.getDuration("duration", Duration.ofSeconds(60));
+        this.unique = options.has("unique");
+        this.maxInFlight = options.getInt("max-in-flight", 2000);
+        this.token = options.get("token", null);
+
+        this.http = HttpClient.newBuilder()
+                .executor(Executors.newCachedThreadPool())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.sessions = IntStream.range(0, options.getInt("users", 50))
+                .mapToObj(i -> new AtomicReference<String>())
+                .toList();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        new ChatLoadTest(LoadTestOptions.parse(args)).run();
+        System.exit(0);
+    }
+
+    /**
+     * Sends questions on schedule for the configured duration, waits for the last answers and prints the report.
+     */
+    public void run() throws InterruptedException {
+        System.out.printf("Sending %.1f questions/s to %s for %s%n", rps, chatUri, duration);
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(this::sampleThreads, 0, 1, TimeUnit.SECONDS);
+
+        var interval = (long) (TimeUnit.SECONDS.toNanos(1) / rps);
+        var startedAt = System.nanoTime();
+        var endsAt = startedAt + duration.toNanos();
+        for (long i = 0; ; i++) {
+            var scheduledAt = startedAt + i * interval;
+            if (scheduledAt >= endsAt) {
+                break;
+            }
+            var delay = scheduledAt - System.nanoTime();
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+            send(i, scheduledAt);
+        }
+        var sendingTime = System.nanoTime() - startedAt;
+
+        // Let the questions in flight finish
+        var drainDeadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(100);
+        }
+        sampler.shutdownNow();
+        report(System.nanoTime() - startedAt, sendingTime);
+    }
+
+    /**
+     * Sends one question. Latency is measured from the time it was scheduled, not sent, so a client falling
+     * behind does not hide server delays (coordinated omission).
+     */
+    private void send(long index, long scheduledAt) {
+        if (inFlight.get() >= maxInFlight) {
+            dropped.increment();
+            return;
+        }
+
+        var session = sessions.get((int) (index % sessions.size()));
+        var question = QUESTIONS.get((int) ((index / sessions.size()) % QUESTIONS.size()));
+        if (unique) {
+            question += " (" + index + ")";
+        }
+
+        var request = HttpRequest.newBuilder(chatUri)
+                .timeout(Duration.ofMinutes(2))
+                .header("Content-Type", "application/json")
+                .header("Accept", stream ? "text/event-stream" : "application/json");
+        if (session.get() != null) {
+            request.header("Cookie", session.get());
+        }
+        try {
+            request.POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(Map.of("question", question))));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        inFlight.incrementAndGet();
+        sent.increment();
+        var errorEvent = new AtomicBoolean(false);
+        var handler = stream
+                ? HttpResponse.BodyHandlers.fromLineSubscriber(new EventSubscriber(scheduledAt, errorEvent))
+                : HttpResponse.BodyHandlers.discarding();
+
+        http.sendAsync(request.build(), handler).whenComplete((response, error) -> {
+            inFlight.decrementAndGet();
+            if (error != null || response.statusCode() != 200 || errorEvent.get()) {
+                failed.increment();
+                return;
+            }
+            response.headers().firstValue("Set-Cookie")
+                    .ifPresent(cookie -> session.set(cookie.substring(0, cookie.indexOf(';') < 0 ? cookie.length() : cookie.indexOf(';'))));
+            latency.recordValue(Math.min(System.nanoTime() - scheduledAt, MAX_LATENCY_NANOS));
+            succeeded.increment();
+        });
+    }
+
+    /**
+     * Reads the Server-Sent Events of a streamed answer, recording when the first one arrives
+     * and whether the server reported an error.
+     */
+    private class EventSubscriber implements Flow.Subscriber<String> {
+        private final long scheduledAt;
+        private final AtomicBoolean errorEvent;
+        private boolean firstTokenSeen;
+
+        EventSubscriber(long scheduledAt, AtomicBoolean errorEvent) {
+            this.scheduledAt = scheduledAt;
+            this.errorEvent = errorEvent;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("event:") && line.substring("event:".length()).trim().equals("error")) {
+                errorEvent.set(true);
+            } else if (line.startsWith("data:") && !firstTokenSeen) {
+                firstTokenSeen = true;
+                firstToken.recordValue(Math.min(System.nanoTime() - scheduledAt, MAX_LATENCY_NANOS));
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    private void sampleThreads() {
+        sample(liveThreads);
+        sample(busyThreads);
+    }
+
+    private void sample(ThreadSampler sampler) {
+        var request = HttpRequest.newBuilder(metricsUri.resolve(sampler.metric)).timeout(Duration.ofSeconds(2));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        try {
+            var response = http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() == 200) {
+                var value = mapper.readTree(response.body()).path("measurements").path(0).path("value");
+                if (value.isNumber()) {
+                    sampler.add(value.asLong());
+                }
+            }
+        } catch (IOException e) {
+            // The metrics are optional: the report shows them as unavailable
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void report(long elapsedNanos, long sendingNanos) {
+        var elapsedSeconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.printf("Questions:   %d sent, %d succeeded, %d failed, %d dropped%n",
+                sent.sum(), succeeded.sum(), failed.sum(), dropped.sum());
+        System.out.printf("Throughput:  %.1f questions/s offered, %.1f answers/s%n",
+                sent.sum() / (sendingNanos / 1e9), succeeded.sum() / elapsedSeconds);
+        System.out.println("Latency:     " + percentiles(latency));
+        if (stream) {
+            System.out.println("First token: " + percentiles(firstToken));
+        }
+        System.out.println("Threads:     " + liveThreads.report());
+        System.out.println("             " + busyThreads.report());
+    }
+
+    private static String percentiles(Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return "no samples";
+        }
+        return "p50 %s, p90 %s, p99 %s, max %s".formatted(
+                millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static String millis(long nanos) {
+        return "%.0fms".formatted(nanos / 1e6);
+    }
+}
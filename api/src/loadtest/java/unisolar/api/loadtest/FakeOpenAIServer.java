@@ -0,0 +1,356 @@
+package unisolar.api.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * FakeOpenAIServer is a local stand-in for the parts of the OpenAI API used by SolarIA (threads, messages and runs
+ * of the Assistants API, and streamed chat completions), so the chat path can be load tested without network
+ * access or cost.
+ *
+ * Answers are picked from a list of canned outputs and their latency is drawn from a log-normal distribution
+ * with the configured median and 99th percentile. Both are derived from the question and a fixed seed,
+ * so the same question always gets the same answer after the same delay, and runs are reproducible.
+ * Streamed answers are sent word by word, the first word after the drawn latency and the others at a fixed interval.
+ *
+ * Run it with:
+ * <pre>
+ * mvn -P loadtest test-compile exec:java -Dexec.mainClass=unisolar.api.loadtest.FakeOpenAIServer -Dexec.args="--port 8089 --median 800ms --p99 3s"
+ * </pre>
+ * and start the application with {@code --spring.profiles.active=loadtest}, which points it at http://localhost:8089/.
+ *
+ * Options:
+ * - --port (8089): The port to listen on.
+ * - --median (800ms): The median latency of a run, or of the first token of a stream.
+ * - --p99 (3s): The 99th percentile of that latency.
+ * - --token-interval (20ms): The delay between two words of a streamed answer.
+ * - --seed (42): The seed of the latency and answer choices.
+ * - --answers (built-in): A file with one canned answer per line.
+ */
+public class FakeOpenAIServer {
+
+    private static final double Z_99 = 2.3263;  // Standard normal quantile of the 99th percentile
+
+    private static final List<String> DEFAULT_ANSWERS = List.of(
+            "Durante a noite, o sistema SolarIA usa a energia armazenada na bateria para manter os eletrodomésticos "
+                    + "essenciais funcionando, evitando a rede elétrica nos horários de tarifa mais alta.",
+            "Em dias nublados, a geração dos painéis cai, e a SolarIA prioriza a energia da bateria, recarregando-a "
+                    + "nos períodos de tarifa mais baixa para garantir autonomia no dia seguinte.",
+            "Para aproveitar melhor a energia solar, concentre o uso de máquinas de lavar e do chuveiro elétrico "
+                    + "entre 10h e 15h, quando a geração dos painéis está no pico.",
+            "A bateria de carro elétrico reutilizada armazena o excedente gerado durante o dia. A SolarIA decide "
+                    + "quando carregar e descarregar com base na previsão do tempo e no seu consumo.",
+            "A manutenção preditiva acompanha a eficiência dos painéis e da bateria e avisa antes que uma falha "
+                    + "aconteça, como quando a sujeira reduz a geração ou a bateria perde capacidade.");
+
+    private final HttpServer server;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final double medianMillis;
+    private final double sigma;
+    private final long tokenIntervalMillis;
+    private final long seed;
+    private final List<String> answers;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<String, List<Map<String, Object>>> threads = new ConcurrentHashMap<>();  // Messages, oldest first
+    private final Map<String, FakeRun> runs = new ConcurrentHashMap<>();
+
+    /**
+     * A run of the Assistants API, which completes once its latency has elapsed.
+     */
+    private static class FakeRun {
+        final String id;
+        final String threadId;
+        final String answer;
+        final long readyAt;
+        volatile String status = "queued";
+
+        FakeRun(String id, String threadId, String answer, long readyAt) {
+            this.id = id;
+            this.threadId = threadId;
+            this.answer = answer;
+            this.readyAt = readyAt;
+        }
+    }
+
+    /**
+     * Constructs the server, without starting it.
+     *
+     * @param port          The port to listen on.
+     * @param median        The median latency of a run, or of the first token of a stream.
+     * @param p99           The 99th percentile of that latency.
+     * @param tokenInterval The delay between two words of a streamed answer.
+     * @param seed          The seed of the latency and answer choices.
+     * @param answers       The canned answers.
+     * @throws IOException If the port cannot be bound.
+     */
+    public FakeOpenAIServer(int port, Duration median, Duration p99, Duration tokenInterval, long seed,
+                            List<String> answers) throws IOException {
+        this.medianMillis = median.toMillis();
+        this.sigma = p99.compareTo(median) > 0 ? Math.log((double) p99.toMillis() / median.toMillis()) / Z_99 : 0;
+        this.tokenIntervalMillis = tokenInterval.toMillis();
+        this.seed = seed;
+        this.answers = answers;
+
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(Executors.newCachedThreadPool());  // Streams hold their thread while they last
+    }
+
+    public static void main(String[] args) throws IOException {
+        var options = LoadTestOptions.parse(args);
+        var answers = options.has("answers")
+                ? Files.readAllLines(Path.of(options.get("answers", null))).stream().filter(line -> !line.isBlank()).toList()
+                : DEFAULT_ANSWERS;
+        var server = new FakeOpenAIServer(
+                options.getInt("port", 8089),
+                options.getDuration("median", Duration.ofMillis(800)),
+                options.getDuration("p99", Duration.ofSeconds(3)),
+                options.getDuration("token-interval", Duration.ofMillis(20)),
+                options.getLong("seed", 42),
+                answers);
+        server.start();
+        System.out.println("Fake OpenAI API listening on http://localhost:" + server.port() + "/");
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private static final Pattern THREADS = Pattern.compile("/v1/threads");
+    private static final Pattern THREAD = Pattern.compile("/v1/threads/([^/]+)");
+    private static final Pattern MESSAGES = Pattern.compile("/v1/threads/([^/]+)/messages");
+    private static final Pattern RUNS = Pattern.compile("/v1/threads/([^/]+)/runs");
+    private static final Pattern RUN = Pattern.compile("/v1/threads/([^/]+)/runs/([^/]+)");
+    private static final Pattern CANCEL_RUN = Pattern.compile("/v1/threads/([^/]+)/runs/([^/]+)/cancel");
+    private static final Pattern CHAT_COMPLETIONS = Pattern.compile("/v1/chat/completions");
+
+    /**
+     * Routes a request to its endpoint.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var method = exchange.getRequestMethod();
+            var path = exchange.getRequestURI().getPath();
+            var body = exchange.getRequestBody().readAllBytes();
+            var json = body.length > 0 ? mapper.readTree(body) : mapper.createObjectNode();
+            Matcher m;
+
+            if (method.equals("POST") && THREADS.matcher(path).matches()) {
+                sendJson(exchange, createThread(json));
+            } else if (method.equals("DELETE") && (m = THREAD.matcher(path)).matches()) {
+                threads.remove(m.group(1));
+                sendJson(exchange, Map.of("id", m.group(1), "object", "thread.deleted", "deleted", true));
+            } else if (method.equals("POST") && (m = MESSAGES.matcher(path)).matches()) {
+                sendJson(exchange, addMessage(m.group(1), "user", json.path("content").asText(), null));
+            } else if (method.equals("GET") && (m = MESSAGES.matcher(path)).matches()) {
+                sendJson(exchange, listMessages(m.group(1)));
+            } else if (method.equals("POST") && (m = RUNS.matcher(path)).matches()) {
+                sendJson(exchange, runJson(createRun(m.group(1))));
+            } else if (method.equals("GET") && (m = RUN.matcher(path)).matches()) {
+                sendJson(exchange, runJson(advance(m.group(2))));
+            } else if (method.equals("POST") && (m = CANCEL_RUN.matcher(path)).matches()) {
+                var run = runs.remove(m.group(2));
+                if (run != null) {
+                    run.status = "cancelled";
+                }
+                sendJson(exchange, run != null ? runJson(run) : Map.of("id", m.group(2), "status", "cancelled"));
+            } else if (method.equals("POST") && CHAT_COMPLETIONS.matcher(path).matches()) {
+                chatCompletion(exchange, json);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            exchange.sendResponseHeaders(500, -1);
+        }
+    }
+
+    private Map<String, Object> createThread(JsonNode request) {
+        var threadId = "thread_" + ids.incrementAndGet();
+        threads.put(threadId, new CopyOnWriteArrayList<>());
+        for (JsonNode message : request.path("messages")) {
+            addMessage(threadId, message.path("role").asText("user"), message.path("content").asText(), null);
+        }
+        return Map.of("id", threadId, "object", "thread", "created_at", now(), "metadata", Map.of());
+    }
+
+    private Map<String, Object> addMessage(String threadId, String role, String content, String runId) {
+        var message = new LinkedHashMap<String, Object>();
+        message.put("id", "msg_" + ids.incrementAndGet());
+        message.put("object", "thread.message");
+        message.put("created_at", now());
+        message.put("thread_id", threadId);
+        message.put("role", role);
+        message.put("content", List.of(Map.of("type", "text", "text", Map.of("value", content, "annotations", List.of()))));
+        message.put("run_id", runId);
+        message.put("file_ids", List.of());
+        message.put("metadata", Map.of());
+        threads.computeIfAbsent(threadId, id -> new CopyOnWriteArrayList<>()).add(message);
+        return message;
+    }
+
+    private Map<String, Object> listMessages(String threadId) {
+        var newestFirst = new ArrayList<>(threads.getOrDefault(threadId, List.of()));
+        Collections.reverse(newestFirst);
+        var response = new LinkedHashMap<String, Object>();
+        response.put("object", "list");
+        response.put("data", newestFirst);
+        response.put("has_more", false);
+        return response;
+    }
+
+    private FakeRun createRun(String threadId) {
+        var messages = threads.getOrDefault(threadId, List.of());
+        var question = messages.isEmpty() ? "" : text(messages.get(messages.size() - 1));
+        var random = random(question);
+        var run = new FakeRun("run_" + ids.incrementAndGet(), threadId, pickAnswer(random),
+                System.currentTimeMillis() + sampleLatency(random));
+        runs.put(run.id, run);
+        return run;
+    }
+
+    /**
+     * Moves a run forward: it completes, adding its answer to the thread, once its latency has elapsed.
+     */
+    private FakeRun advance(String runId) {
+        var run = runs.get(runId);
+        if (run == null) {
+            throw new IllegalArgumentException("Unknown run " + runId);
+        }
+        synchronized (run) {
+            if (!run.status.equals("completed") && System.currentTimeMillis() >= run.readyAt) {
+                addMessage(run.threadId, "assistant", run.answer, run.id);
+                run.status = "completed";
+                runs.remove(runId);
+            } else if (run.status.equals("queued")) {
+                run.status = "in_progress";
+            }
+        }
+        return run;
+    }
+
+    private Map<String, Object> runJson(FakeRun run) {
+        var json = new LinkedHashMap<String, Object>();
+        json.put("id", run.id);
+        json.put("object", "thread.run");
+        json.put("created_at", now());
+        json.put("thread_id", run.threadId);
+        json.put("status", run.status);
+        json.put("required_action", null);
+        json.put("tools", List.of());
+        json.put("file_ids", List.of());
+        json.put("metadata", Map.of());
+        return json;
+    }
+
+    /**
+     * Answers a chat completion, streamed word by word as Server-Sent Events when requested.
+     */
+    private void chatCompletion(HttpExchange exchange, JsonNode request) throws IOException, InterruptedException {
+        var messages = request.path("messages");
+        var question = messages.size() > 0 ? messages.get(messages.size() - 1).path("content").asText() : "";
+        var random = random(question);
+        var answer = pickAnswer(random);
+        var latency = sampleLatency(random);
+        var id = "chatcmpl_" + ids.incrementAndGet();
+
+        if (!request.path("stream").asBoolean(false)) {
+            Thread.sleep(latency);
+            var message = Map.of("role", "assistant", "content", answer);
+            sendJson(exchange, Map.of("id", id, "object", "chat.completion", "created", now(),
+                    "model", request.path("model").asText(), "choices",
+                    List.of(Map.of("index", 0, "message", message, "finish_reason", "stop"))));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        var out = exchange.getResponseBody();
+        Thread.sleep(latency);
+        var words = answer.split("(?<= )");
+        for (int i = 0; i < words.length; i++) {
+            if (i > 0) {
+                Thread.sleep(tokenIntervalMillis);
+            }
+            var choice = new LinkedHashMap<String, Object>();
+            choice.put("index", 0);
+            choice.put("delta", Map.of("content", words[i]));
+            choice.put("finish_reason", null);
+            sendEvent(out, mapper.writeValueAsString(Map.of("id", id, "object", "chat.completion.chunk",
+                    "created", now(), "model", request.path("model").asText(), "choices", List.of(choice))));
+        }
+        sendEvent(out, "[DONE]");
+    }
+
+    /**
+     * Seeds the random choices of a question, so the same question always gets the same answer and latency.
+     */
+    private Random random(String question) {
+        return new Random(seed * 31 + question.hashCode());
+    }
+
+    private String pickAnswer(Random random) {
+        return answers.get(random.nextInt(answers.size()));
+    }
+
+    /**
+     * Draws a latency, in milliseconds, from the log-normal distribution with the configured median and p99.
+     */
+    private long sampleLatency(Random random) {
+        return Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    private static String text(Map<String, Object> message) {
+        @SuppressWarnings("unchecked")
+        var content = (List<Map<String, Map<String, Object>>>) message.get("content");
+        return String.valueOf(content.get(0).get("text").get("value"));
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private void sendJson(HttpExchange exchange, Object body) throws IOException {
+        var bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sendEvent(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -0,0 +1,155 @@
+package unisolar.api.chat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CannedResponseMatcher is an immutable Aho-Corasick automaton that finds which of a fixed set of keys
+ * occur in a text, in a single left-to-right pass over the text regardless of how many keys there are.
+ *
+ * The automaton is compiled once into a full transition table, so matching never follows failure links
+ * and does constant work per character. Keys only match whole words: an occurrence must start and end on a word
+ * boundary, so "ola" is found in "ola, tudo bem?" but not in "energia solar". When several keys occur in the same
+ * text, the longest one wins, as it is the most specific; keys of equal length are resolved by their order in
+ * the catalog.
+ *
+ * Keys and texts are expected to be folded to lower-case ASCII (see TextNormalizer); any other character
+ * simply breaks the current match.
+ */
+public final class CannedResponseMatcher {
+
+    private static final int ALPHABET_SIZE = 128;
+    private static final int NO_MATCH = -1;
+
+    private final int[][] transitions;  // transitions[state][char] -> next state
+    private final int[][] keysEnding;   // Keys ending at each state, its suffixes' included, longest first
+    private final int[] keyLengths;
+
+    /**
+     * Compiles the automaton for the given keys.
+     *
+     * @param keys The folded keys, in catalog order.
+     */
+    public CannedResponseMatcher(List<String> keys) {
+        this.keyLengths = keys.stream().mapToInt(String::length).toArray();
+
+        // Build the trie of keys
+        var trie = new ArrayList<int[]>();
+        var output = new ArrayList<Integer>();
+        trie.add(newState());
+        output.add(NO_MATCH);
+        for (int k = 0; k < keys.size(); k++) {
+            var key = keys.get(k);
+            if (key.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < key.length(); i++) {
+                int c = key.charAt(i);
+                if (c >= ALPHABET_SIZE) {
+                    throw new IllegalArgumentException("Key is not folded to ASCII: " + key);
+                }
+                if (trie.get(state)[c] == 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState());
+                    output.add(NO_MATCH);
+                }
+                state = trie.get(state)[c];
+            }
+            output.set(state, better(output.get(state), k));
+        }
+
+        this.transitions = trie.toArray(new int[0][]);
+        this.keysEnding = new int[transitions.length][];
+        keysEnding[0] = new int[0];
+
+        // Breadth-first pass: compute failure links and turn the trie into a full transition table
+        var failure = new int[transitions.length];
+        var queue = new ArrayDeque<Integer>();
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            int next = transitions[0][c];
+            if (next != 0) {
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            // The key spelled by the state is longer than any key ending at its failure state, a proper suffix
+            var inherited = keysEnding[failure[state]];
+            if (output.get(state) == NO_MATCH) {
+                keysEnding[state] = inherited;
+            } else {
+                keysEnding[state] = new int[inherited.length + 1];
+                keysEnding[state][0] = output.get(state);
+                System.arraycopy(inherited, 0, keysEnding[state], 1, inherited.length);
+            }
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                int next = transitions[state][c];
+                if (next != 0) {
+                    failure[next] = transitions[failure[state]][c];
+                    queue.add(next);
+                } else {
+                    transitions[state][c] = transitions[failure[state]][c];
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the best key occurring in the text as whole words.
+     *
+     * @param folded The text, folded the same way as the keys.
+     * @return The catalog index of the longest key found (the first in the catalog on ties), or -1 if none occurs.
+     */
+    public int match(CharSequence folded) {
+        int state = 0;
+        int best = NO_MATCH;
+        for (int i = 0; i < folded.length(); i++) {
+            int c = folded.charAt(i);
+            state = c < ALPHABET_SIZE ? transitions[state][c] : 0;
+            var keys = keysEnding[state];
+            if (keys.length == 0 || !isBoundary(folded, i + 1)) {
+                continue;
+            }
+            // The longest key ending here that also starts on a boundary
+            for (int key : keys) {
+                if (isBoundary(folded, i + 1 - keyLengths[key])) {
+                    best = better(best, key);
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Tells whether a position of the text does not split a word, i.e. is not between two letters or digits.
+     */
+    private static boolean isBoundary(CharSequence text, int position) {
+        return position == 0 || position == text.length()
+                || !Character.isLetterOrDigit(text.charAt(position - 1))
+                || !Character.isLetterOrDigit(text.charAt(position));
+    }
+
+    private static int[] newState() {
+        return new int[ALPHABET_SIZE];
+    }
+
+    /**
+     * Picks the better of two key indexes: the longer key, or the first in the catalog when equally long.
+     */
+    private int better(int a, int b) {
+        if (a == NO_MATCH) {
+            return b;
+        }
+        if (b == NO_MATCH) {
+            return a;
+        }
+        if (keyLengths[a] != keyLengths[b]) {
+            return keyLengths[a] > keyLengths[b] ? a : b;
+        }
+        return Math.min(a, b);
+    }
+}
@@ -0,0 +1,157 @@
+package unisolar.api.chat;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import unisolar.api.domain.entity.ChatTurn;
+import unisolar.api.domain.repository.ChatTurnRepository;
+import unisolar.api.infra.openai.ChatThreadRegistry;
+import unisolar.api.infra.openai.ConversationTurn;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ChatHistoryStore keeps the messages of every conversation in the "chat_turns" table, each written as it is sent or
+ * received, so the chat history is read locally instead of being listed from OpenAI and sorted on every page load.
+ * A question is kept even if no answer comes. History is paged by message ID (keyset pagination), so loading older
+ * messages costs the same however long the conversation is.
+ *
+ * The messages of anonymous web sessions are purged after the retention period of their conversation threads
+ * (see ChatThreadRegistry): the session they belong to is long gone by then, and nobody can read them again.
+ */
+@Component
+public class ChatHistoryStore {
+
+    public static final int MAX_PAGE_SIZE = 100;
+    static final int PURGE_BATCH_SIZE = 1000;  // Messages deleted per statement
+
+    private static final String USER_ROLE = "user";
+    private static final String ASSISTANT_ROLE = "assistant";
+
+    private final ChatTurnRepository repository;
+    private final ChatThreadRegistry threads;
+    private final Duration retention;
+
+    /**
+     * Constructs the store.
+     *
+     * @param repository The repository where messages are persisted.
+     * @param threads    The registry of conversation threads, used to record which thread a message went to.
+     * @param retention  How long the messages of an anonymous web session are kept.
+     */
+    public ChatHistoryStore(ChatTurnRepository repository,
+                            ChatThreadRegistry threads,
+                            @Value("${app.chat.threads.retention:30d}") Duration retention) {
+        this.repository = repository;
+        this.threads = threads;
+        this.retention = retention;
+    }
+
+    /**
+     * Records a question as it is asked, before it is answered.
+     *
+     * @param conversationKey The key of the conversation.
+     * @param question        The question asked by the user.
+     */
+    public void recordQuestion(String conversationKey, String question) {
+        record(conversationKey, USER_ROLE, question);
+    }
+
+    /**
+     * Records an answer once it is complete.
+     *
+     * @param conversationKey The key of the conversation.
+     * @param answer          The answer given by SolarIA.
+     */
+    public void recordAnswer(String conversationKey, String answer) {
+        record(conversationKey, ASSISTANT_ROLE, answer);
+    }
+
+    /**
+     * Records a question and its answer together, for questions answered at once, without SolarIA.
+     *
+     * @param conversationKey The key of the conversation.
+     * @param question        The question asked by the user.
+     * @param answer          The answer given by SolarIA.
+     */
+    public void recordExchange(String conversationKey, String question, String answer) {
+        var threadId = threads.cachedThreadId(conversationKey).orElse(null);
+        var now = LocalDateTime.now();
+        repository.saveAll(List.of(
+                new ChatTurn(null, conversationKey, threadId, USER_ROLE, question, now),
+                new ChatTurn(null, conversationKey, threadId, ASSISTANT_ROLE, answer, now)));
+    }
+
+    /**
+     * Loads a page of the history of a conversation.
+     *
+     * @param conversationKey The key of the conversation.
+     * @param before          The ID of the oldest message already loaded, or null to load the most recent messages.
+     * @param limit           The maximum number of messages to load, capped at {@link #MAX_PAGE_SIZE}.
+     * @return The messages, newest first.
+     */
+    public List<ChatTurn> page(String conversationKey, Long before, int limit) {
+        var pageable = PageRequest.of(0, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        return before == null
+                ? repository.findLatest(conversationKey, pageable)
+                : repository.findBefore(conversationKey, before, pageable);
+    }
+
+    /**
+     * Loads the most recent messages of a conversation, to be given to OpenAI as context.
+     *
+     * @param conversationKey The key of the conversation.
+     * @param maxTurns        The maximum number of messages to load.
+     * @return The messages, oldest first.
+     */
+    public List<ConversationTurn> recent(String conversationKey, int maxTurns) {
+        var turns = new ArrayList<ConversationTurn>();
+        for (ChatTurn turn : repository.findLatest(conversationKey, PageRequest.of(0, maxTurns))) {
+            turns.add(new ConversationTurn(turn.getRole(), turn.getContent()));
+        }
+        Collections.reverse(turns);
+        return turns;
+    }
+
+    /**
+     * Checks whether a conversation has any message, i.e. whether a question asked in it has context.
+     *
+     * @param conversationKey The key of the conversation.
+     * @return true if at least one message was recorded in the conversation.
+     */
+    public boolean hasHistory(String conversationKey) {
+        return repository.existsByConversationKey(conversationKey);
+    }
+
+    /**
+     * Deletes the history of a conversation.
+     *
+     * @param conversationKey The key of the conversation.
+     */
+    public void clear(String conversationKey) {
+        repository.deleteByConversationKey(conversationKey);
+    }
+
+    /**
+     * Periodically purges the messages of anonymous web sessions recorded before the retention period, in batches.
+     */
+    @Scheduled(fixedDelayString = "${app.chat.threads.purge-interval:3600000}")
+    public void purgeExpiredSessions() {
+        var before = LocalDateTime.now().minus(retention);
+        var pattern = ChatThreadRegistry.sessionKey("") + "%";
+        int deleted;
+        do {
+            deleted = repository.deleteRecordedBefore(pattern, before, PURGE_BATCH_SIZE);
+        } while (deleted == PURGE_BATCH_SIZE);
+    }
+
+    private void record(String conversationKey, String role, String content) {
+        var threadId = threads.cachedThreadId(conversationKey).orElse(null);
+        repository.save(new ChatTurn(null, conversationKey, threadId, role, content, LocalDateTime.now()));
+    }
+}
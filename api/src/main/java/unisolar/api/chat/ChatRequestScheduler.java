@@ -0,0 +1,308 @@
+package unisolar.api.chat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import unisolar.api.infra.exception.OpenAIUnavailableException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ChatRequestScheduler shares the calls SolarIA can make to OpenAI at the same time fairly between users,
+ * so a user asking many questions in a row cannot starve everyone else of the upstream quota.
+ *
+ * Each user (conversation) has its own queue. Free upstream slots are handed out by deficit round-robin:
+ * queues are visited in turn, each visit adds a fixed quantum of tokens to the queue's deficit, and a queued
+ * request is granted a slot once the deficit covers its cost. The cost must estimate everything the call takes
+ * from the upstream quota, not only the question: the system prompt, the context and the answer budget of a
+ * streamed call, or the tokens accumulated in the thread a blocking call runs on. Users thus get the same share
+ * of tokens over time, whatever the length of their conversations or the number of their questions, and a user
+ * with a single question waits for at most one round once the quantum covers the largest cost.
+ *
+ * Queues are bounded, and requests waiting longer than the configured time are dropped; both fail with an
+ * {@link OpenAIUnavailableException}. Queue depth, wait time and rejections are published as metrics.
+ */
+@Component
+public class ChatRequestScheduler {
+
+    private final int slots;
+    private final int quantum;
+    private final int maxQueuedPerUser;
+    private final Duration maxWait;
+
+    // Guarded by this
+    private final Map<String, UserQueue> queues = new HashMap<>();
+    private final ArrayDeque<UserQueue> ring = new ArrayDeque<>();  // Users with queued requests, in visiting order
+    private int freeSlots;
+    private int queued;
+
+    private final Timer waitTime;
+    private final Counter rejected;
+
+    /**
+     * A grant to make one call to OpenAI. It must be released once the call is over.
+     */
+    public final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit() {
+        }
+
+        /**
+         * Returns the slot to the scheduler. Releasing a permit more than once has no effect.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                releaseSlot();
+            }
+        }
+    }
+
+    private static class Request {
+        final int cost;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+        Request(int cost) {
+            this.cost = cost;
+        }
+    }
+
+    private static class UserQueue {
+        final String userKey;
+        final ArrayDeque<Request> requests = new ArrayDeque<>();
+        long deficit;
+        boolean visited;  // Whether the quantum of the current visit was already added
+
+        UserQueue(String userKey) {
+            this.userKey = userKey;
+        }
+    }
+
+    /**
+     * Constructs the scheduler.
+     *
+     * @param meterRegistry    The registry where queue depth, wait time and rejections are published.
+     * @param slots            The number of calls to OpenAI allowed at the same time.
+     * @param quantum          The tokens added to a user's deficit on each visit, about the cost of a request using
+     *                         the whole prompt and answer budget.
+     * @param maxQueuedPerUser The maximum number of requests a user may have waiting.
+     * @param maxWait          How long a request may wait for a slot.
+     */
+    public ChatRequestScheduler(MeterRegistry meterRegistry,
+                                @Value("${app.chat.scheduler.slots:16}") int slots,
+                                @Value("${app.chat.scheduler.quantum:4000}") int quantum,
+                                @Value("${app.chat.scheduler.max-queued-per-user:5}") int maxQueuedPerUser,
+                                @Value("${app.chat.scheduler.max-wait:20s}") Duration maxWait) {
+        this.slots = slots;
+        this.freeSlots = slots;
+        this.quantum = quantum;
+        this.maxQueuedPerUser = maxQueuedPerUser;
+        this.maxWait = maxWait;
+
+        this.waitTime = Timer.builder("solaria.chat.scheduler.wait")
+                .description("Time a question waits for an upstream slot")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = Counter.builder("solaria.chat.scheduler.rejected")
+                .description("Questions rejected because their user had too many waiting or they waited too long")
+                .register(meterRegistry);
+        Gauge.builder("solaria.chat.scheduler.queued", this, ChatRequestScheduler::queued)
+                .description("Questions waiting for an upstream slot")
+                .register(meterRegistry);
+        Gauge.builder("solaria.chat.scheduler.users", this, ChatRequestScheduler::waitingUsers)
+                .description("Users with questions waiting for an upstream slot")
+                .register(meterRegistry);
+        Gauge.builder("solaria.chat.scheduler.busy", this, ChatRequestScheduler::busySlots)
+                .description("Upstream slots in use")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Waits for a slot, blocking the calling thread.
+     *
+     * @param userKey The key of the user (conversation) asking.
+     * @param cost    The estimated number of tokens the call takes from the upstream quota.
+     * @return The permit, to be released once the call is over.
+     * @throws OpenAIUnavailableException If the user has too many requests waiting, or no slot frees up in time.
+     */
+    public Permit acquire(String userKey, int cost) {
+        try {
+            return enqueue(userKey, cost).join();
+        } catch (CompletionException e) {
+            throw unavailable(e.getCause());
+        }
+    }
+
+    /**
+     * Runs a streamed call once a slot is granted, without blocking the subscribing thread while waiting.
+     * The slot is held until the stream terminates or is cancelled.
+     *
+     * @param userKey The key of the user (conversation) asking.
+     * @param cost    The estimated number of tokens the call takes from the upstream quota.
+     * @param call    Starts the call once the slot is granted.
+     * @return A Flowable emitting what the call emits, failing with an {@link OpenAIUnavailableException}
+     *         if no slot is granted.
+     */
+    public <T> Flowable<T> schedule(String userKey, int cost, Callable<Flowable<T>> call) {
+        return Flowable.defer(() -> {
+            var future = enqueue(userKey, cost);
+            return Flowable.<Permit>create(emitter -> future.whenComplete((permit, error) -> {
+                        if (emitter.isCancelled() || error instanceof CancellationException) {
+                            return;  // The subscriber left the queue
+                        }
+                        if (error != null) {
+                            emitter.onError(unavailable(error));
+                        } else {
+                            emitter.onNext(permit);
+                            emitter.onComplete();
+                        }
+                    }), BackpressureStrategy.BUFFER)
+                    .flatMap(permit -> call.call().doAfterTerminate(permit::release))
+                    .doOnCancel(() -> {
+                        // Leave the queue, or give back the slot if it was granted in the meantime
+                        if (!future.cancel(false)) {
+                            future.thenAccept(Permit::release);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Queues a request and dispatches free slots.
+     */
+    private CompletableFuture<Permit> enqueue(String userKey, int cost) {
+        var request = new Request(Math.max(cost, 1));
+        List<Request> granted;
+        synchronized (this) {
+            var queue = queues.computeIfAbsent(userKey, UserQueue::new);
+            if (queue.requests.size() >= maxQueuedPerUser) {
+                rejected.increment();
+                request.future.completeExceptionally(
+                        new OpenAIUnavailableException("Too many questions waiting for this conversation"));
+                return request.future;
+            }
+            if (queue.requests.isEmpty()) {
+                ring.addLast(queue);
+            }
+            queue.requests.addLast(request);
+            queued++;
+            granted = dispatch();
+        }
+        grant(granted);
+
+        // Leave the queue when the request times out or is cancelled while waiting
+        request.future.orTimeout(maxWait.toMillis(), TimeUnit.MILLISECONDS).whenComplete((permit, error) -> {
+            if (error != null) {
+                if (error instanceof TimeoutException) {
+                    rejected.increment();
+                }
+                remove(userKey, request);
+            }
+        });
+        return request.future;
+    }
+
+    /**
+     * Hands out free slots by deficit round-robin. Must be called holding the lock; the granted requests are
+     * completed by the caller after releasing it, so the calls they start do not run under the lock.
+     */
+    private List<Request> dispatch() {
+        var granted = new ArrayList<Request>();
+        while (freeSlots > 0 && !ring.isEmpty()) {
+            var queue = ring.peekFirst();
+            if (!queue.visited) {
+                queue.deficit += quantum;
+                queue.visited = true;
+            }
+
+            var request = queue.requests.peekFirst();
+            if (request.cost > queue.deficit) {
+                // Not enough credit left: the visit is over, keep the credit for the next round
+                ring.pollFirst();
+                queue.visited = false;
+                ring.addLast(queue);
+                continue;
+            }
+
+            queue.requests.pollFirst();
+            queued--;
+            queue.deficit -= request.cost;
+            if (queue.requests.isEmpty()) {
+                // An idle user does not keep credit for later
+                ring.pollFirst();
+                queues.remove(queue.userKey);
+            }
+            if (!request.future.isDone()) {
+                freeSlots--;
+                granted.add(request);
+            }
+        }
+        return granted;
+    }
+
+    private void grant(List<Request> granted) {
+        for (Request request : granted) {
+            waitTime.record(System.nanoTime() - request.enqueuedAt, TimeUnit.NANOSECONDS);
+            if (!request.future.complete(new Permit())) {
+                releaseSlot();  // Timed out or cancelled just before being granted
+            }
+        }
+    }
+
+    private void releaseSlot() {
+        List<Request> granted;
+        synchronized (this) {
+            freeSlots++;
+            granted = dispatch();
+        }
+        grant(granted);
+    }
+
+    private synchronized void remove(String userKey, Request request) {
+        var queue = queues.get(userKey);
+        if (queue != null && queue.requests.remove(request)) {
+            queued--;
+            if (queue.requests.isEmpty()) {
+                ring.remove(queue);
+                queues.remove(userKey);
+            }
+        }
+    }
+
+    private synchronized int queued() {
+        return queued;
+    }
+
+    private synchronized int waitingUsers() {
+        return ring.size();
+    }
+
+    private synchronized int busySlots() {
+        return slots - freeSlots;
+    }
+
+    private static OpenAIUnavailableException unavailable(Throwable error) {
+        if (error instanceof OpenAIUnavailableException unavailable) {
+            return unavailable;
+        }
+        return new OpenAIUnavailableException("No upstream slot became free in time", error);
+    }
+}
@@ -0,0 +1,339 @@
+package unisolar.api.chat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import unisolar.api.infra.text.TextNormalizer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * SemanticAnswerCache keeps recent SolarIA answers so that the same question, even when asked in different words,
+ * is answered without another round trip to OpenAI.
+ *
+ * Questions are normalized (accents folded, stop words removed, words stemmed) and compared through MinHash
+ * signatures of their character trigrams. Signatures are split into bands and indexed by locality-sensitive
+ * hashing, so a lookup only compares the question against the few cached questions that share at least one band,
+ * instead of against the whole cache. A cached answer is returned when the estimated Jaccard similarity
+ * between the questions reaches the configured threshold. Negation and interrogative words ("nao", "como",
+ * "quando"...) are kept apart from the other words, and must not conflict: "Quando devo usar a bateria?" never gets
+ * the answer to "Como devo usar a bateria?", however similar the rest of the words, nor "Não devo..." the answer to
+ * "Devo...". A question leaving the interrogative out asks the same thing, though: "economia de energia noturna"
+ * gets the answer to "como economizar à noite".
+ *
+ * The cache is shared by every conversation, so it must only be given answers that do not depend on the
+ * conversation they were asked in (see ChatbotService).
+ *
+ * Entries expire after a time to live, and the oldest entries are evicted once the cache reaches its maximum size.
+ * Hits (exact or similar) and misses are published as metrics.
+ */
+@Component
+public class SemanticAnswerCache {
+
+    private static final int NUM_HASHES = 64;      // Length of a MinHash signature
+    private static final int ROWS_PER_BAND = 4;    // Signature values hashed together into one LSH bucket
+    private static final int NUM_BANDS = NUM_HASHES / ROWS_PER_BAND;
+
+    private static final int[] HASH_MULTIPLIERS = new int[NUM_HASHES];
+    private static final int[] HASH_OFFSETS = new int[NUM_HASHES];
+
+    static {
+        // Fixed seed, so signatures are comparable across restarts and nodes
+        var random = new Random(0x5017A);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            HASH_MULTIPLIERS[i] = random.nextInt() | 1;
+            HASH_OFFSETS[i] = random.nextInt();
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final double similarityThreshold;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();        // Keyed by normalized question
+    private final Map<Long, Set<Entry>> buckets = new ConcurrentHashMap<>();     // LSH buckets, keyed by band and band hash
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();   // Oldest entries first, for eviction
+
+    private final Counter exactHits;
+    private final Counter similarHits;
+    private final Counter misses;
+
+    /**
+     * A cached answer, with the normalized question and signature it was stored under.
+     */
+    private record Entry(String key, Intent intent, int[] signature, String answer, long expiresAt) {
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    /**
+     * The intent words of a question: its negation or yes/no words, and its interrogatives, each sorted.
+     */
+    private record Intent(String polarity, String interrogatives) {
+        /**
+         * Checks whether two questions may be answered alike: their negations must be the same, and their
+         * interrogatives too, unless either question has none.
+         */
+        boolean conflictsWith(Intent other) {
+            return !polarity.equals(other.polarity)
+                    || !interrogatives.isEmpty() && !other.interrogatives.isEmpty()
+                    && !interrogatives.equals(other.interrogatives);
+        }
+    }
+
+    /**
+     * Constructs the cache.
+     *
+     * @param meterRegistry       The registry where hit and miss metrics are published.
+     * @param maxEntries          The maximum number of cached answers.
+     * @param ttl                 How long an answer stays cached.
+     * @param similarityThreshold The minimum estimated similarity, between 0 and 1, for a cached answer to be reused.
+     */
+    public SemanticAnswerCache(MeterRegistry meterRegistry,
+                               @Value("${app.chat.cache.max-entries:1000}") int maxEntries,
+                               @Value("${app.chat.cache.ttl:6h}") Duration ttl,
+                               @Value("${app.chat.cache.similarity-threshold:0.6}") double similarityThreshold) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.similarityThreshold = similarityThreshold;
+        this.exactHits = Counter.builder("solaria.chat.cache.requests").tag("result", "exact_hit").register(meterRegistry);
+        this.similarHits = Counter.builder("solaria.chat.cache.requests").tag("result", "similar_hit").register(meterRegistry);
+        this.misses = Counter.builder("solaria.chat.cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("solaria.chat.cache.size", entries, Map::size)
+                .description("Answers currently cached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Looks up a cached answer for the question, or for a sufficiently similar one.
+     *
+     * @param question The question asked by the user.
+     * @return The cached answer, or empty if no similar question was answered recently.
+     */
+    public Optional<String> lookup(String question) {
+        var key = normalize(question);
+        if (key.isEmpty()) {
+            misses.increment();
+            return Optional.empty();
+        }
+        var intent = intent(question);
+
+        var now = System.currentTimeMillis();
+        var exact = entries.get(key);
+        if (exact != null && !exact.isExpired(now) && !exact.intent().conflictsWith(intent)) {
+            exactHits.increment();
+            return Optional.of(exact.answer());
+        }
+
+        var signature = signature(question);
+        Entry best = null;
+        double bestSimilarity = similarityThreshold;
+        for (int band = 0; band < NUM_BANDS; band++) {
+            var bucket = buckets.get(bucketKey(signature, band));
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry candidate : bucket) {
+                if (candidate.isExpired(now) || candidate.intent().conflictsWith(intent)) {
+                    continue;  // Similar words do not make a similar question if it asks something else
+                }
+                var similarity = similarity(signature, candidate.signature());
+                if (similarity >= bestSimilarity) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+        }
+
+        if (best != null) {
+            similarHits.increment();
+            return Optional.of(best.answer());
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Caches the answer to a question, replacing any answer cached for the same normalized question.
+     *
+     * @param question The question asked by the user.
+     * @param answer   The answer given by SolarIA.
+     */
+    public void put(String question, String answer) {
+        var key = normalize(question);
+        if (key.isEmpty() || answer == null || answer.isBlank()) {
+            return;
+        }
+
+        var entry = new Entry(key, intent(question), signature(question), answer,
+                System.currentTimeMillis() + ttlMillis);
+        var previous = entries.put(key, entry);
+        if (previous != null) {
+            unindex(previous);
+        }
+        index(entry);
+        insertionOrder.add(entry);
+
+        // Evict the oldest entries until the cache is back within its limit
+        while (entries.size() > maxEntries) {
+            var oldest = insertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            remove(oldest);
+        }
+    }
+
+    /**
+     * Periodically removes expired answers, so they do not linger in the LSH buckets until evicted by size.
+     */
+    @Scheduled(fixedDelayString = "${app.chat.cache.sweep-interval:60000}")
+    public void purgeExpired() {
+        var now = System.currentTimeMillis();
+        insertionOrder.removeIf(entry -> {
+            if (entry.isExpired(now) || entries.get(entry.key()) != entry) {
+                remove(entry);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Normalizes a question into the sorted set of its meaningful stems, so word order, accents,
+     * stop words and inflection do not affect matching. Negation and interrogative words are kept as they are.
+     *
+     * @param question The question to normalize.
+     * @return The stems joined by spaces, or an empty string if the question has no meaningful words.
+     */
+    public static String normalize(String question) {
+        var stems = new TreeSet<String>();
+        for (String token : TextNormalizer.tokenize(TextNormalizer.fold(question))) {
+            if (TextNormalizer.isIntentWord(token)) {
+                stems.add(token);
+            } else if (!TextNormalizer.isStopWord(token)) {
+                stems.add(TextNormalizer.stem(token));
+            }
+        }
+        return String.join(" ", stems);
+    }
+
+    /**
+     * Extracts the negation and interrogative words of a question, which two questions must not conflict on to be
+     * answered alike. Kept apart from the stems, since a stem may happen to spell one ("qualidade" stems to "qual").
+     */
+    private static Intent intent(String question) {
+        var polarity = new TreeSet<String>();
+        var interrogatives = new TreeSet<String>();
+        for (String token : TextNormalizer.tokenize(TextNormalizer.fold(question))) {
+            if (TextNormalizer.isInterrogative(token)) {
+                interrogatives.add(token);
+            } else if (TextNormalizer.isIntentWord(token)) {
+                polarity.add(token);
+            }
+        }
+        return new Intent(String.join(" ", polarity), String.join(" ", interrogatives));
+    }
+
+    /**
+     * Computes the MinHash signature of the character trigrams of the stems of a question. Intent words are left
+     * out, being compared apart: a question need not repeat an interrogative to be similar. Each stem is padded with
+     * boundary markers, so short stems still produce trigrams.
+     */
+    private static int[] signature(String question) {
+        var signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+
+        for (String token : TextNormalizer.tokenize(TextNormalizer.fold(question))) {
+            if (TextNormalizer.isIntentWord(token) || TextNormalizer.isStopWord(token)) {
+                continue;
+            }
+            var stem = TextNormalizer.stem(token);
+            var padded = "^" + stem + "$";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                int shingle = padded.charAt(i) * 31 * 31 + padded.charAt(i + 1) * 31 + padded.charAt(i + 2);
+                for (int h = 0; h < NUM_HASHES; h++) {
+                    int value = mix(shingle * HASH_MULTIPLIERS[h] + HASH_OFFSETS[h]);
+                    if (value < signature[h]) {
+                        signature[h] = value;
+                    }
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Estimates the Jaccard similarity of two questions as the fraction of equal signature positions.
+     */
+    private static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / NUM_HASHES;
+    }
+
+    /**
+     * Builds the LSH bucket key of one band of a signature.
+     */
+    private static long bucketKey(int[] signature, int band) {
+        int hash = 1;
+        for (int i = band * ROWS_PER_BAND; i < (band + 1) * ROWS_PER_BAND; i++) {
+            hash = 31 * hash + signature[i];
+        }
+        return ((long) band << 32) | (hash & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Finalization step of MurmurHash3, spreading the bits of a hash value.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private void index(Entry entry) {
+        for (int band = 0; band < NUM_BANDS; band++) {
+            buckets.compute(bucketKey(entry.signature(), band), (k, bucket) -> {
+                var target = bucket != null ? bucket : ConcurrentHashMap.<Entry>newKeySet();
+                target.add(entry);
+                return target;
+            });
+        }
+    }
+
+    private void unindex(Entry entry) {
+        for (int band = 0; band < NUM_BANDS; band++) {
+            buckets.computeIfPresent(bucketKey(entry.signature(), band), (k, bucket) -> {
+                bucket.remove(entry);
+                return bucket.isEmpty() ? null : bucket;  // Drop empty buckets atomically
+            });
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry.key(), entry)) {
+            unindex(entry);
+        }
+    }
+}
@@ -10,16 +10,16 @@ import org.springframework.web.util.UriComponentsBuilder;
 import unisolar.api.controller.UserController;
 import unisolar.api.domain.dto.userDTO.*;
 import unisolar.api.domain.entity.*;
+import unisolar.api.enums.SearchMode;
 import unisolar.api.infra.config.UserSeeder;
+import unisolar.api.infra.openai.ChatThreadRegistry;
 import unisolar.api.search.FeatureSearchTree;
+import unisolar.api.service.CannedResponseService;
 import unisolar.api.service.ChatbotService;
 import unisolar.api.service.FeatureSearchService;
 import unisolar.api.service.MaintenanceService;
 
 import java.text.DecimalFormat;
-import java.text.Normalizer;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 /**
@@ -51,8 +51,9 @@ public class UnisolarCLI implements CommandLineRunner {
     private Authentication currentAuthentication;
     private MaintenanceService maintenanceService;
 
+    private final CannedResponseService cannedResponseService;
+
     private final DecimalFormat df = new DecimalFormat("#,##0.00");
-    private static Map<String, String> respostas;
 
     /**
      * Constructor for initializing dependencies.
@@ -60,18 +61,21 @@ public class UnisolarCLI implements CommandLineRunner {
      * @param authenticationManager the authentication manager for handling login
      * @param userController        the controller for managing user operations
      * @param chatbotService        the service providing chatbot functionalities
+     * @param cannedResponseService the service answering common questions without calling OpenAI
      * @param featureSearchService  the service enabling feature searches
      * @param userSeeder            the utility for seeding default users
      */
     public UnisolarCLI(AuthenticationManager authenticationManager,
                        UserController userController,
                        ChatbotService chatbotService,
+                       CannedResponseService cannedResponseService,
                        FeatureSearchService featureSearchService,
                        UserSeeder userSeeder) {
         this.scanner = new Scanner(System.in);
         this.authenticationManager = authenticationManager;
         this.userController = userController;
         this.chatbotService = chatbotService;
+        this.cannedResponseService = cannedResponseService;
         this.featureSearchService = featureSearchService;
         this.userSeeder = userSeeder;
     }
@@ -322,6 +326,14 @@ public class UnisolarCLI implements CommandLineRunner {
             }
 
             List<FeatureSearchTree.Feature> results = featureSearchService.searchFeatures(query);
+            if (results.isEmpty()) {
+                // No name starts with the query: look for its words in the paths, categories and descriptions
+                results = featureSearchService.searchFeatures(query, SearchMode.FULL_TEXT);
+            }
+            if (results.isEmpty()) {
+                // Still nothing: look for close matches, in case of typos
+                results = featureSearchService.searchFeatures(query, SearchMode.FUZZY);
+            }
 
             if (results.isEmpty()) {
                 System.out.println("\n❌ Nenhuma funcionalidade encontrada para '" + query + "'");
@@ -713,63 +725,15 @@ public class UnisolarCLI implements CommandLineRunner {
         }
     }
 
-    /**
-     * Initializes predefined responses for different user queries.
-     * These responses are tailored to give personalized information about the user's solar system status.
-     */
-    private void initializeResponses() {
-        respostas = new HashMap<>();
-        ResponseEntity<UserDetailDTO> userResponse = userController.getCurrentUser(currentAuthentication);
-        UserDetailDTO user = userResponse.getBody();
-
-        respostas.put("olá", "Olá, " + user.name() + "! 👋 Como posso ajudar você hoje? Estou aqui para responder suas dúvidas sobre energia solar e mostrar como você está economizando! ☀️");
-        respostas.put("bom dia", "Bom dia, " + user.name() + "! ☀️ O dia está perfeito para energia solar! Sua geração já está 15% acima da média. Posso ajudar com algo específico?");
-        respostas.put("boa tarde", "Boa tarde, " + user.name() + "! 🌤️ Seus painéis estão funcionando a todo vapor, já geraram 12.5 kWh hoje! Como posso ajudar?");
-        respostas.put("boa noite", "Boa noite, " + user.name() + "! 🌙 Sua bateria está com 90% de carga, perfeita para o consumo noturno. Precisa de alguma informação?");
-        respostas.put("como funciona a solaria", "🤖 Eu sou a SolarIA, a inteligência artificial por trás do sistema de energia solar da UniSolar! \nEu trabalho de forma integrada para otimizar o uso da energia solar em sua residência. Aqui está como eu funciono:\n\n1. **Painéis Solares**: Eu monitoro os painéis solares instalados no seu telhado ou outro local estratégico, capturando a energia solar durante o dia.\n2. **Bateria de Carro Elétrico Reutilizada**: Eu também gerencio a bateria que armazena a energia solar gerada para uso posterior, como à noite ou em dias nublados.\n3. **Minha Inteligência Artificial**: Eu analiso os dados em tempo real, como previsão do tempo, tarifas de energia e o consumo diário, para otimizar a utilização da energia solar e das baterias.");
-
-        respostas.put("como está meu sistema agora", String.format("📊 Status atual (%s):\nGeração Solar: 2.8 kWh/h\nCarga da Bateria: 85%%\nConsumo Atual: 1.2 kWh\nEconomia Hoje: R$ 15,40",
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm"))));
-        respostas.put("qual minha economia hoje", "💰 Economia do dia:\nEconomia Atual: R$ 22,50\nPrevisão até final do dia: R$ 35,80\nVocê está 20% acima da meta diária! Continue assim! 🎯");
-        respostas.put("mostre o status da bateria", "🔋 Status da Bateria:\nNível: 85%\nSaúde: 96%\nTemperatura: 25°C\nAutonomia: 6.5 horas\nPróxima recarga estimada: 22:30");
-        respostas.put("como estão meus painéis", "☀️ Status dos Painéis:\nEficiência: 98%\nGeração Atual: 2.8 kWh\nLimpeza: Boa\nÚltima Manutenção: 15 dias atrás\nPróxima limpeza recomendada: 7 dias");
-
-        respostas.put("como foi meu consumo essa semana", "📈 Análise Semanal:\nConsumo Total: 125 kWh\nEconomia: R$ 180,50\nRedução vs semana anterior: 15%\nMelhor dia: Terça (32 kWh)\nDica: Seus horários de consumo estão ótimos! 🌟");
-        respostas.put("previsão para amanhã", "🔮 Previsão para amanhã:\nClima: Ensolarado ☀️\nGeração Estimada: 18.5 kWh\nMelhores horários: 9h-15h\nEconomia Prevista: R$ 28,90\nDica: Aproveite para usar eletrodomésticos entre 10h-14h!");
-        respostas.put("mostre minha meta mensal", "🎯 Acompanhamento de Meta:\nMeta: R$ 300,00\nEconomizado: R$ 220,50\nFaltam: R$ 79,50\nVocê está 5% acima do planejado! 🏆");
-        respostas.put("compare com mês passado", "📊 Comparativo Mensal:\nConsumo Atual: -15%\nGeração Solar: +20%\nEconomia: +25%\nUso da Bateria: +10%\nVocê está melhorando a cada mês! 🌟");
-
-        respostas.put("dicas de economia", "💡 Dicas Personalizadas:\n1. Use a máquina de lavar às 14h (pico solar)\n2. Configure o ar-condicionado para 23°C\n3. Carregue dispositivos durante o dia\nSeguindo essas dicas, você pode economizar + R$ 45,00 esse mês!");
-        respostas.put("melhor horário eletrodomésticos", "⏰ Horários Recomendados Hoje:\n9h-11h: Máquina de Lavar\n13h-15h: Aspirador\n10h-16h: Ar Condicionado\n12h-14h: Forno Elétrico\nAproveite o pico de geração solar! ☀️");
-        respostas.put("sugestão de uso da bateria", "🔋 Recomendação de Uso:\nUse a bateria: 18h-21h\nRecarregue: 23h-5h\nEconomia estimada: R$ 18,50\nSua bateria está otimizada para seu padrão de consumo! ⚡");
-        respostas.put("dicas do dia", "🌟 Dicas de Hoje:\n1. Dia ensolarado: aproveite para lavar roupas\n2. Bateria está cheia: ideal para usar à noite\n3. Tarifa alta às 18h: use a bateria\nSiga as dicas e economize + R$ 12,00 hoje!");
-
-        respostas.put("preciso de manutenção", "🔧 Análise de Manutenção:\nPainéis: OK (98% eficiência)\nBateria: OK (85% saúde)\nInversor: OK (97% eficiência)\nPróxima manutenção preventiva: 15 dias\nSeu sistema está em ótimo estado! ✨");
-        respostas.put("quando limpar painéis", "🧹 Recomendação de Limpeza:\nÚltima limpeza: 12 dias atrás\nEficiência atual: 96%\nPrevisão de chuva: Em 3 dias\nSugestão: Aguarde a chuva para avaliar necessidade de limpeza 👍");
-        respostas.put("relatório de eficiência", "📋 Relatório Completo:\nEficiência Geral: 95%\nPainéis: 96%\nBateria: 94%\nInversor: 98%\nSeu sistema está entre os 10% mais eficientes! 🏆");
-        respostas.put("histórico de manutenção", "📚 Histórico de Manutenções:\nÚltima geral: 60 dias atrás\nÚltima limpeza: 12 dias\nPróxima prevista: 20 dias\nTodas manutenções em dia! ✅");
-
-        respostas.put("impacto ambiental", "🌱 Seu Impacto Ambiental:\nCO2 evitado: 180kg\nÁrvores equivalentes: 15\nEconomia de água: 1200L\nSua contribuição para o planeta é incrível! 🌍");
-        respostas.put("benefícios ambientais", "🌿 Benefícios Ambientais:\nRedução de CO2: 180kg/mês\nEconomia de água: 1200L/mês\nEnergia limpa gerada: 450 kWh/mês\nVocê está fazendo a diferença! 💚");
-        respostas.put("economia total", "💰 Economia Total:\nEste mês: R$ 280,50\nEste ano: R$ 2.850,00\nDesde a instalação: R$ 8.500,00\nRetorno do investimento: 45% concluído 📈");
-        respostas.put("retorno financeiro", "💵 Análise de Retorno:\nInvestimento inicial: R$ 15.000\nEconomia total: R$ 8.500\nTempo restante: 2.5 anos\nSeu sistema está pagando-se mais rápido que o previsto! 🎉");
-
-        respostas.put("problemas comuns", "❓ Problemas Mais Comuns:\n1. Baixa geração: Verifique sombras/sujeira\n2. Bateria não carrega: Verificar conexões\n3. App não conecta: Reiniciar roteador\nPrecisa de ajuda com algum desses? 🔧");
-        respostas.put("contato suporte", "📞 Canais de Suporte:\nWhatsApp: (11) 99999-9999\nEmail: suporte@unisolar.com\nHorário: 8h-20h\nTempos médios de resposta: 5 minutos 👨‍💻");
-        respostas.put("agendamento técnico", "👨‍🔧 Agendamento Técnico:\nPróxima visita disponível: 3 dias\nDuração: 1-2 horas\nCusto: Dentro da garantia\nDeseja agendar uma visita?");
-
-        respostas.put("como economizar energia com o sistema solarIA", "Você pode economizar energia ajustando o uso de eletrodomésticos durante o dia, aproveitando a energia solar. O sistema também otimiza o uso da bateria para garantir que você use a energia armazenada quando for mais vantajoso. 💡");
-        respostas.put("como você decide quando usar a bateria e quando usar a energia solar?", "Eu avalio o consumo, a previsão do tempo e as tarifas de energia.\nSe a previsão de tempo diz que vai chover ou ficar nublado, eu guardo a carga da bateria para quando realmente precisar.\nSe a previsão do tempo indica chuva ou céu nublado, eu guardo a carga da bateria para quando realmente precisar.\nEsses são alguns exemplos de como faço isso para você. 🤖");
-        respostas.put("o que é net metering", "O Net Metering é um programa que permite que você envie a energia excedente gerada pelos seus painéis solares de volta para a rede elétrica, gerando créditos que podem ser usados posteriormente para reduzir sua conta de energia. 💚");
-    }
-
     /**
      * Starts the interactive chat with the user.
-     * This method initializes the responses and continuously listens for user input to provide information.
+     * This method continuously listens for user input to provide information, answering common questions
+     * from the canned responses and forwarding the others to SolarIA.
      * It allows the user to exit the chat or request help with commands at any time.
      */
     public void startChat() {
-        initializeResponses();
+        UserDetailDTO user = userController.getCurrentUser(currentAuthentication).getBody();
+        String userName = user != null ? user.name() : null;
         System.out.println("\n=========== Chat com SolarIA 🤖 ===========");
         System.out.println("SolarIA: ☀️ Olá! Sou a SolarIA, assistente virtual da Unisolar! Como posso ajudar? 💡");
         System.out.println("Digite 'sair' para voltar ao menu principal ou 'ajuda' para ver comandos disponíveis");
@@ -787,14 +751,14 @@ public class UnisolarCLI implements CommandLineRunner {
                 continue;
             }
 
-            String resposta = getResposta(question);
-            if (resposta != null) {
-                System.out.println("SolarIA: " + resposta);
+            Optional<String> resposta = cannedResponseService.answer(question, userName);
+            if (resposta.isPresent()) {
+                System.out.println("SolarIA: " + resposta.get());
             } else {
                 System.out.println("SolarIA: Hmmm, boa pergunta! Vou achar isso para você agora, só um instante! 🤗");
 
                 try {
-                    String response = chatbotService.answerQuestion(question);
+                    String response = chatbotService.answerQuestion(ChatThreadRegistry.userKey(currentAuthentication.getName()), question);
                     System.out.println("SolarIA: " + response);
                 } catch (Exception e) {
                     System.out.println("SolarIA: 😞 Desculpe, não consegui acessar a informação ou não entendi muito bem. Você pode tentar reformular a pergunta?\nSe o problema persistir, por favor, tente novamente mais tarde ou digite 'ajuda' para ver os comandos disponíveis. 🤔");
@@ -819,38 +783,4 @@ public class UnisolarCLI implements CommandLineRunner {
         System.out.println("- 'impacto ambiental': Ver seu impacto para a Terra");
         System.out.println("- 'sair': Voltar ao menu principal");
     }
-
-    /**
-     * Retrieves the response based on the user's input.
-     * The input is normalized, and a matching response is returned from the predefined list.
-     *
-     * @param input The user’s input query.
-     * @return The corresponding response or null if no match is found.
-     */
-    private static String getResposta(String input) {
-
-        String normalizedInput = normalizeText(input.toLowerCase());
-
-        for (Map.Entry<String, String> entry : respostas.entrySet()) {
-
-            String normalizedKey = normalizeText(entry.getKey().toLowerCase());
-
-            if (normalizedInput.contains(normalizedKey)) {
-                return entry.getValue();
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Normalizes the input text by removing special characters and accents for easier matching.
-     *
-     * @param text The text to normalize.
-     * @return The normalized text.
-     */
-    private static String normalizeText(String text) {
-
-        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
-        return normalized.replaceAll("[^\\p{ASCII}]", "");
-    }
-}
\ No newline at end of file
+}
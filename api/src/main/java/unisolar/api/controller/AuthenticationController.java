@@ -1,8 +1,10 @@
 package unisolar.api.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import unisolar.api.domain.dto.securityDTO.AuthenticationData;
 import unisolar.api.domain.dto.securityDTO.JWTTokenData;
+import unisolar.api.infra.security.LoginThrottle;
 import unisolar.api.service.TokenService;
 import unisolar.api.domain.entity.User;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,15 +29,23 @@ public class AuthenticationController {
     @Autowired
     private TokenService tokenService; // Service responsible for token generation and management.
 
+    @Autowired
+    private LoginThrottle throttle; // Limits login attempts per username and per address.
+
     /**
      * Handles login requests.
      *
-     * @param data the authentication data containing username and password.
-     *             Must be valid as per defined constraints.
-     * @return a ResponseEntity containing a JWT token if authentication is successful.
+     * @param data    the authentication data containing username and password.
+     *                Must be valid as per defined constraints.
+     * @param request the HTTP request, for the address the login is attempted from.
+     * @return a ResponseEntity containing a JWT token if authentication is successful,
+     *         or 429 Too Many Requests if too many logins were attempted lately.
      */
     @PostMapping
-    public ResponseEntity login(@RequestBody @Valid AuthenticationData data) {
+    public ResponseEntity login(@RequestBody @Valid AuthenticationData data, HttpServletRequest request) {
+        // Turn away throttled attempts before any user is read or any password hashed.
+        throttle.acquire(data.username(), request.getRemoteAddr());
+
         // Create an authentication token using the provided username and password.
         var authenticationToken = new UsernamePasswordAuthenticationToken(data.username(), data.password());
 
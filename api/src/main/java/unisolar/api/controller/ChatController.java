@@ -1,66 +1,203 @@
 package unisolar.api.controller;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import unisolar.api.domain.dto.openai.ChatHistoryDTO;
 import unisolar.api.domain.dto.openai.QuestionDTO;
+import unisolar.api.domain.entity.User;
+import unisolar.api.infra.openai.ChatThreadRegistry;
+import unisolar.api.service.CannedResponseService;
 import unisolar.api.service.ChatbotService;
 
+import java.io.IOException;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.regex.Pattern;
+
 /**
  * Controller responsible for managing chatbot interactions and chat page rendering.
+ * Each authenticated user, or each browser session when not authenticated, has its own conversation.
+ * Common questions are answered from the canned responses without calling OpenAI.
+ * The chat page is rendered without its history, which the page then loads page by page from the history endpoint.
  */
 @Controller
 @RequestMapping({"/", "chat"})
 public class ChatController {
 
     private static final String CHAT_PAGE = "chat"; // Name of the HTML template for the chat page.
+    private static final Duration STREAM_TIMEOUT = Duration.ofMinutes(2); // Maximum lifetime of a streamed answer.
+    private static final Pattern LINE_BREAK = Pattern.compile("\\r\\n|\\r|\\n"); // Line ends, as Server-Sent Events see them.
 
     private ChatbotService service; // Service responsible for chatbot functionalities.
+    private final CannedResponseService cannedResponses; // Service answering common questions locally.
+    private final Timer streamHandlerTime; // Time a servlet thread spends handling a streamed question.
 
     /**
      * Constructor for ChatController.
      *
-     * @param service the ChatbotService instance to handle chatbot operations.
+     * @param service         the ChatbotService instance to handle chatbot operations.
+     * @param cannedResponses the CannedResponseService answering common questions without calling OpenAI.
+     * @param meterRegistry   the registry where servlet thread occupancy for streamed answers is published.
      */
-    public ChatController(ChatbotService service) {
+    public ChatController(ChatbotService service, CannedResponseService cannedResponses, MeterRegistry meterRegistry) {
         this.service = service;
+        this.cannedResponses = cannedResponses;
+        this.streamHandlerTime = Timer.builder("solaria.chat.stream.servlet.time")
+                .description("Time a servlet thread is held while starting a streamed answer")
+                .register(meterRegistry);
     }
 
     /**
-     * Loads the chat page and initializes the chat history.
+     * Loads the chat page. The chat history is loaded afterwards by the page itself.
      *
-     * @param model the Model object to pass attributes to the view.
      * @return the name of the chat page template.
      */
     @GetMapping
-    public String loadChatPage(Model model) {
-        var messages = service.loadChatHistory(); // Retrieve chat history from the service.
-
-        model.addAttribute("history", messages); // Add chat history to the model.
-
+    public String loadChatPage() {
         return CHAT_PAGE; // Return the chat page template name.
     }
 
+    /**
+     * Loads a page of the chat history, most recent messages first.
+     *
+     * @param before    the ID of the oldest message already loaded, or null to load the most recent messages.
+     * @param limit     the maximum number of messages to load.
+     * @param principal the authenticated user, or null for anonymous visitors.
+     * @param session   the HTTP session identifying anonymous visitors.
+     * @return the messages, oldest first, with the cursor of the previous page.
+     */
+    @GetMapping("history")
+    @ResponseBody
+    public ChatHistoryDTO loadChatHistory(@RequestParam(required = false) Long before,
+                                          @RequestParam(defaultValue = "20") int limit,
+                                          Principal principal, HttpSession session) {
+        return service.loadChatHistory(conversationKey(principal, session), before, limit);
+    }
+
     /**
      * Handles user questions by sending them to the chatbot service and returning the response.
      *
-     * @param dto the QuestionDTO containing the user question.
+     * @param dto       the QuestionDTO containing the user question.
+     * @param principal the authenticated user, or null for anonymous visitors.
+     * @param session   the HTTP session identifying anonymous visitors.
      * @return the chatbot's response as a string.
      */
     @PostMapping
     @ResponseBody
-    public String answerQuestion(@RequestBody QuestionDTO dto) {
-        return service.answerQuestion(dto.question()); // Process the question and return the response.
+    public String answerQuestion(@RequestBody QuestionDTO dto, Principal principal, HttpSession session) {
+        var conversationKey = conversationKey(principal, session);
+        var canned = cannedResponses.answer(dto.question(), userName(principal)); // Answer common questions locally.
+        if (canned.isPresent()) {
+            service.recordExchange(conversationKey, dto.question(), canned.get());
+            return canned.get();
+        }
+        return service.answerQuestion(conversationKey, dto.question()); // Process the question and return the response.
+    }
+
+    /**
+     * Handles user questions by streaming the chatbot's answer as Server-Sent Events.
+     * Each event carries a text delta as soon as OpenAI produces it. The servlet thread is released
+     * right after the stream is subscribed; deltas are written from OpenAI's callback threads.
+     * If the upstream call fails, an "error" event is sent before the stream is closed.
+     *
+     * @param dto       the QuestionDTO containing the user question.
+     * @param principal the authenticated user, or null for anonymous visitors.
+     * @param session   the HTTP session identifying anonymous visitors.
+     * @return the emitter through which the answer deltas are sent.
+     * @throws IOException if a canned answer cannot be written to the client.
+     */
+    @PostMapping(value = "stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter streamAnswer(@RequestBody QuestionDTO dto, Principal principal, HttpSession session) throws IOException {
+        var conversationKey = conversationKey(principal, session);
+        var canned = cannedResponses.answer(dto.question(), userName(principal));
+        if (canned.isPresent()) {
+            service.recordExchange(conversationKey, dto.question(), canned.get());
+            var emitter = new SseEmitter();
+            emitter.send(dataEvent(canned.get())); // Common questions are answered in a single event.
+            emitter.complete();
+            return emitter;
+        }
+
+        return streamHandlerTime.record(() -> {
+            var emitter = new SseEmitter(STREAM_TIMEOUT.toMillis());
+
+            var subscription = service.streamAnswer(conversationKey, dto.question()).subscribe(
+                    delta -> emitter.send(dataEvent(delta)), // Forward each delta as it arrives.
+                    error -> {
+                        try {
+                            emitter.send(SseEmitter.event().name("error").data("An error occurred!"));
+                            emitter.complete();
+                        } catch (IOException e) {
+                            emitter.completeWithError(e); // The client is already gone.
+                        }
+                    },
+                    emitter::complete);
+
+            emitter.onTimeout(subscription::dispose); // Stop consuming OpenAI output when the client times out.
+            emitter.onError(error -> subscription.dispose()); // Or when the connection breaks.
+            return emitter;
+        });
     }
 
     /**
      * Clears the chat history and redirects to the chat page.
      *
+     * @param principal the authenticated user, or null for anonymous visitors.
+     * @param session   the HTTP session identifying anonymous visitors.
      * @return a redirect to the chat page.
      */
     @GetMapping("clear")
-    public String clearConversation() {
-        service.clearChatHistory(); // Clear the chat history in the service.
+    public String clearConversation(Principal principal, HttpSession session) {
+        service.clearChatHistory(conversationKey(principal, session)); // Clear the chat history in the service.
         return "redirect:/chat"; // Redirect to the chat page.
     }
+
+    /**
+     * Builds an event carrying a text, one "data:" line per line of the text, as Server-Sent Events require:
+     * a new line inside a single "data:" line would end it, and the client would drop the rest of the text.
+     * The client joins the lines back with new lines.
+     *
+     * @param text the text to send.
+     * @return the event.
+     */
+    static SseEmitter.SseEventBuilder dataEvent(String text) {
+        var event = SseEmitter.event();
+        for (String line : LINE_BREAK.split(text, -1)) {
+            event.data(line);
+        }
+        return event;
+    }
+
+    /**
+     * Resolves the name used to greet the current user.
+     *
+     * @param principal the authenticated user, or null for anonymous visitors.
+     * @return the user's name, or null for anonymous visitors.
+     */
+    private static String userName(Principal principal) {
+        if (principal instanceof Authentication authentication && authentication.getPrincipal() instanceof User user) {
+            return user.getName();
+        }
+        return null;
+    }
+
+    /**
+     * Resolves the conversation of the current request: the authenticated user's, or the browser session's.
+     *
+     * @param principal the authenticated user, or null for anonymous visitors.
+     * @param session   the HTTP session identifying anonymous visitors.
+     * @return the conversation key.
+     */
+    private static String conversationKey(Principal principal, HttpSession session) {
+        return principal != null
+                ? ChatThreadRegistry.userKey(principal.getName())
+                : ChatThreadRegistry.sessionKey(session.getId());
+    }
 }
@@ -0,0 +1,78 @@
+package unisolar.api.controller;
+
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.validation.Valid;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import unisolar.api.domain.dto.feature.FeatureDTO;
+import unisolar.api.domain.dto.feature.FeatureSearchDTO;
+import unisolar.api.domain.dto.feature.FeatureSelectionDTO;
+import unisolar.api.enums.SearchMode;
+import unisolar.api.service.FeatureSearchService;
+
+import java.util.List;
+
+/**
+ * Controller responsible for searching the features of the system, for search-as-you-type boxes of web clients.
+ */
+@RestController
+@RequestMapping("/features")
+@SecurityRequirement(name = "bearer-key")
+public class FeatureController {
+
+    private final FeatureSearchService service; // Service searching the feature catalog.
+
+    /**
+     * Constructs the FeatureController.
+     *
+     * @param service the FeatureSearchService searching the feature catalog.
+     */
+    public FeatureController(FeatureSearchService service) {
+        this.service = service;
+    }
+
+    /**
+     * Searches for features. Results carry an ETag: a client sending it back in If-None-Match gets a 304 Not Modified
+     * while the results of its query are unchanged.
+     *
+     * @param q        the query, typically what the user has typed so far.
+     * @param mode     how the query is matched: PREFIX (default), FUZZY or FULL_TEXT.
+     * @param category the categories the features returned must belong to (repeatable); all if none.
+     * @return a ResponseEntity containing the features found, best first, and the number of features matching
+     * the query in each category.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<FeatureSearchDTO> search(@RequestParam(defaultValue = "") String q,
+                                                   @RequestParam(defaultValue = "PREFIX") SearchMode mode,
+                                                   @RequestParam(required = false) List<String> category) {
+        var result = service.search(q, mode, category == null ? List.of() : category);
+        var features = result.features().stream().map(FeatureDTO::new).toList();
+
+        // Spring answers 304 by itself when the request's If-None-Match matches the ETag
+        return ResponseEntity.ok()
+                .eTag(result.etag())
+                .cacheControl(CacheControl.noCache())
+                .body(new FeatureSearchDTO(q, mode, result.complete(), features, result.facets()));
+    }
+
+    /**
+     * Records that the user chose a feature among the search results, making it rank higher in later prefix searches.
+     * Selections are counted in memory and persisted periodically, so this never waits for the database.
+     *
+     * @param data the feature chosen.
+     * @return 204 No Content, or 404 Not Found if there is no feature with that name.
+     */
+    @PostMapping("/selections")
+    public ResponseEntity<Void> recordSelection(@RequestBody @Valid FeatureSelectionDTO data) {
+        if (!service.recordSelection(data.name())) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -4,6 +4,7 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import jakarta.transaction.Transactional;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -21,6 +22,7 @@ import unisolar.api.domain.entity.SolarPanel;
 import unisolar.api.domain.entity.User;
 import unisolar.api.domain.repository.UserRepository;
 import unisolar.api.infra.exception.ExceptionValidation;
+import unisolar.api.infra.security.UserChangedEvent;
 
 import java.util.Arrays;
 
@@ -39,6 +41,9 @@ public class UserController {
     @Autowired
     private PasswordEncoder passwordEncoder; // Utility for encoding and verifying passwords.
 
+    @Autowired
+    private ApplicationEventPublisher events; // Tells cached copies of a user to drop it once a change commits.
+
     /**
      * Registers a new user in the system.
      *
@@ -85,7 +90,13 @@ public class UserController {
                 .filter(User::isActive)
                 .orElseThrow(() -> new ExceptionValidation("User not found or inactive"));
 
+        var previousUsername = user.getUsername();
         user.updateInformations(data);
+        if (!previousUsername.equals(user.getUsername())) {
+            user.revokeTokens(); // Tokens name the user by its username.
+            events.publishEvent(new UserChangedEvent(user.getId(), user.getUsername(), user.getTokenVersion()));
+        }
+        events.publishEvent(new UserChangedEvent(user.getId(), previousUsername, user.getTokenVersion()));
         return ResponseEntity.ok(new UserDetailDTO(user));
     }
 
@@ -102,8 +113,9 @@ public class UserController {
                 .filter(User::isActive)
                 .orElseThrow(() -> new ExceptionValidation("User not found or already inactive"));
 
-        user.deactivate();
+        user.deactivate(); // Also revokes the user's tokens.
         repository.save(user);
+        events.publishEvent(new UserChangedEvent(user.getId(), user.getUsername(), user.getTokenVersion()));
         return ResponseEntity.ok("User deactivated successfully");
     }
 
@@ -122,7 +134,9 @@ public class UserController {
 
         if (passwordEncoder.matches(changePasswordDTO.oldPassword(), user.getPassword())) {
             user.setPassword(passwordEncoder.encode(changePasswordDTO.newPassword()));
+            user.revokeTokens(); // Tokens issued with the old password stop working.
             repository.save(user);
+            events.publishEvent(new UserChangedEvent(user.getId(), user.getUsername(), user.getTokenVersion()));
             return ResponseEntity.ok("Password changed successfully");
         } else {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Old password incorrect");
@@ -0,0 +1,17 @@
+package unisolar.api.domain.dto.feature;
+
+import unisolar.api.search.FeatureSearchTree;
+
+/**
+ * Data Transfer Object (DTO) representing a feature of the system found by a search.
+ *
+ * @param name        the name of the feature.
+ * @param path        the path to the feature in the system.
+ * @param description the description of the feature.
+ * @param category    the category of the feature.
+ */
+public record FeatureDTO(String name, String path, String description, String category) {
+    public FeatureDTO(FeatureSearchTree.Feature feature) {
+        this(feature.getName(), feature.getPath(), feature.getDescription(), feature.getCategory());
+    }
+}
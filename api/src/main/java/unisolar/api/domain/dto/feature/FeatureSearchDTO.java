@@ -0,0 +1,18 @@
+package unisolar.api.domain.dto.feature;
+
+import unisolar.api.enums.SearchMode;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Transfer Object (DTO) representing the results of a feature search.
+ *
+ * @param query    the query searched.
+ * @param mode     how the query was matched.
+ * @param complete whether these are all the matching features, rather than only the first ones.
+ * @param features the features found, best first.
+ * @param facets   the number of features matching the query in each category, whatever the category filter.
+ */
+public record FeatureSearchDTO(String query, SearchMode mode, boolean complete, List<FeatureDTO> features,
+                               Map<String, Integer> facets) {}
@@ -0,0 +1,10 @@
+package unisolar.api.domain.dto.feature;
+
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * Data Transfer Object (DTO) representing a feature chosen by the user among search results.
+ *
+ * @param name the name of the feature chosen.
+ */
+public record FeatureSelectionDTO(@NotBlank String name) {}
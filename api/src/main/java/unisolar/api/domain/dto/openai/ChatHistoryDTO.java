@@ -0,0 +1,11 @@
+package unisolar.api.domain.dto.openai;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object (DTO) representing a page of the history of a conversation with SolarIA.
+ *
+ * @param turns      the messages of the page, oldest first.
+ * @param nextBefore the value of the "before" parameter that loads the previous page, or null if there is none.
+ */
+public record ChatHistoryDTO(List<ChatTurnDTO> turns, Long nextBefore) {}
@@ -0,0 +1,25 @@
+package unisolar.api.domain.dto.openai;
+
+import unisolar.api.domain.entity.ChatTurn;
+
+import java.time.LocalDateTime;
+
+/**
+ * Data Transfer Object (DTO) representing a message of a conversation with SolarIA.
+ *
+ * @param id        the unique identifier of the message.
+ * @param role      the author of the message: "user" or "assistant".
+ * @param content   the text of the message.
+ * @param createdAt the timestamp when the message was recorded.
+ */
+public record ChatTurnDTO(Long id, String role, String content, LocalDateTime createdAt) {
+
+    /**
+     * Constructs a ChatTurnDTO from a ChatTurn entity.
+     *
+     * @param turn the ChatTurn entity to convert.
+     */
+    public ChatTurnDTO(ChatTurn turn) {
+        this(turn.getId(), turn.getRole(), turn.getContent(), turn.getCreatedAt());
+    }
+}
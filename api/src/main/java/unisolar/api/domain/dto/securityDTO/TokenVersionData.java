@@ -0,0 +1,11 @@
+package unisolar.api.domain.dto.securityDTO;
+
+/**
+ * Data Transfer Object (DTO) representing the current token version of a user.
+ * Tokens issued to the user with an older version are revoked.
+ *
+ * @param userId       the ID of the user.
+ * @param tokenVersion the current version of the user's tokens.
+ */
+public record TokenVersionData(Long userId, int tokenVersion) {
+}
@@ -0,0 +1,44 @@
+package unisolar.api.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity class representing the OpenAI thread that holds a conversation with SolarIA.
+ * This class is mapped to the "chat_threads" table in the database.
+ *
+ * @param conversationKey the key identifying the conversation owner (an authenticated user or a web session).
+ * @param threadId        the identifier of the OpenAI thread holding the conversation.
+ * @param createdAt       the timestamp when the thread was created.
+ * @param lastUsedAt      the timestamp when the conversation was last used, as last recorded by any node.
+ * @param tokenCount      the estimated number of tokens accumulated in the thread, added up from every node.
+ *
+ * Persisting the mapping lets a conversation survive application restarts and be continued by any node.
+ */
+@Entity
+@Table(name = "chat_threads")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(of = "conversationKey")
+public class ChatThread {
+
+    @Id
+    @Column(name = "conversation_key")
+    private String conversationKey;
+
+    @Column(name = "thread_id", nullable = false)
+    private String threadId;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "last_used_at", nullable = false)
+    private LocalDateTime lastUsedAt;
+
+    @Column(name = "token_count", nullable = false)
+    private int tokenCount;
+}
@@ -0,0 +1,49 @@
+package unisolar.api.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity class representing a single message of a conversation with SolarIA, either a question or an answer.
+ * This class is mapped to the "chat_turns" table in the database.
+ *
+ * @param id              the unique identifier of the message, increasing in the order messages were recorded.
+ * @param conversationKey the key identifying the conversation owner (an authenticated user or a web session).
+ * @param threadId        the OpenAI thread the message was sent to, or null if it was answered without a thread.
+ * @param role            the author of the message: "user" or "assistant".
+ * @param content         the text of the message.
+ * @param createdAt       the timestamp when the message was recorded.
+ *
+ * Messages are recorded as they are sent and received, so the history of a conversation is read locally
+ * instead of from OpenAI.
+ */
+@Entity
+@Table(name = "chat_turns")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(of = "id")
+public class ChatTurn {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "conversation_key", nullable = false)
+    private String conversationKey;
+
+    @Column(name = "thread_id")
+    private String threadId;
+
+    @Column(nullable = false)
+    private String role;
+
+    @Column(nullable = false)
+    private String content;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,46 @@
+package unisolar.api.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity class representing how often a feature of the system is chosen among search results.
+ * This class is mapped to the "feature_usage" table in the database.
+ *
+ * @param featureKey the name of the feature, folded (lower case, no accents), identifying it.
+ * @param name       the name of the feature as last selected.
+ * @param score      the decayed number of selections: each selection counts 1 when made, and half as much every
+ *                   half-life after that.
+ * @param selections the total number of selections, without decay.
+ * @param scoredAt   the timestamp the score was computed at, from which it keeps decaying.
+ *
+ * Usage is counted in memory by each node, which periodically adds what it counted here, so popularity survives
+ * restarts and is shared by all nodes.
+ */
+@Entity
+@Table(name = "feature_usage")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(of = "featureKey")
+public class FeatureUsage {
+
+    @Id
+    @Column(name = "feature_key")
+    private String featureKey;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false)
+    private double score;
+
+    @Column(nullable = false)
+    private long selections;
+
+    @Column(name = "scored_at", nullable = false)
+    private LocalDateTime scoredAt;
+}
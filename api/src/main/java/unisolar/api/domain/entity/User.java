@@ -15,14 +15,16 @@ import java.util.*;
  * Entity class representing a user in the system.
  * This class implements the UserDetails interface for Spring Security authentication and authorization.
  *
- * @param id          the unique identifier of the user.
- * @param username    the username used for authentication.
- * @param password    the password used for authentication (stored in an encrypted form).
- * @param name        the full name of the user.
- * @param email       the email address of the user.
- * @param createdAt   the timestamp when the user account was created.
- * @param deletedAt   the timestamp when the user account was deactivated (if applicable).
- * @param active      indicates whether the user account is active.
+ * @param id                    the unique identifier of the user.
+ * @param username              the username used for authentication.
+ * @param password              the password used for authentication (stored in an encrypted form).
+ * @param name                  the full name of the user.
+ * @param email                 the email address of the user.
+ * @param createdAt             the timestamp when the user account was created.
+ * @param deletedAt             the timestamp when the user account was deactivated (if applicable).
+ * @param active                indicates whether the user account is active.
+ * @param tokenVersion          the version of the user's tokens; tokens carrying an older version are revoked.
+ * @param tokenVersionUpdatedAt the timestamp when the token version last changed.
  *
  * This entity contains user-related information, including authentication data, status, and related methods.
  * It integrates with Spring Security for authentication and authorization, providing roles and handling account states.
@@ -54,6 +56,12 @@ public class User implements UserDetails {
     @Column(name = "active", nullable = false)
     private Boolean active = true;
 
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion;
+
+    @Column(name = "token_version_updated_at", nullable = false)
+    private LocalDateTime tokenVersionUpdatedAt;
+
     /**
      * Sets the createdAt field before the entity is persisted to the database.
      */
@@ -62,6 +70,9 @@ public class User implements UserDetails {
         if (this.createdAt == null) {
             this.createdAt = LocalDateTime.now();
         }
+        if (this.tokenVersionUpdatedAt == null) {
+            this.tokenVersionUpdatedAt = this.createdAt;
+        }
     }
 
     /**
@@ -162,6 +173,15 @@ public class User implements UserDetails {
     public void deactivate() {
         this.deletedAt = LocalDateTime.now();
         this.active = false;
+        revokeTokens();
+    }
+
+    /**
+     * Revokes every token issued to the user so far, by moving to the next token version.
+     */
+    public void revokeTokens() {
+        this.tokenVersion++;
+        this.tokenVersionUpdatedAt = LocalDateTime.now();
     }
 
     /**
@@ -0,0 +1,114 @@
+package unisolar.api.domain.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import unisolar.api.domain.entity.ChatThread;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository interface for managing ChatThread entities in the database.
+ * This interface extends JpaRepository to provide CRUD operations, keyed by the conversation key.
+ *
+ * @see JpaRepository
+ *
+ * Methods:
+ * - touch(String conversationKey, String threadId, LocalDateTime lastUsedAt, int addedTokens): Records when a
+ *   conversation was last used and adds the tokens its thread received, if it still uses that thread.
+ * - moveThread(String conversationKey, String previousThreadId, String threadId, LocalDateTime lastUsedAt,
+ *   int tokenCount): Moves a conversation to a new thread, if it still uses the previous one.
+ * - deleteThread(String conversationKey, String threadId): Removes a conversation, if it still uses the given thread.
+ * - findIdleSince(LocalDateTime idleBefore, Pageable pageable): Retrieves the conversations unused since a given time.
+ * - deleteIdleThread(String conversationKey, String threadId, LocalDateTime idleBefore): Removes a conversation,
+ *   if it still uses the given thread and was not used since the given time.
+ */
+public interface ChatThreadRepository extends JpaRepository<ChatThread, String> {
+
+    /**
+     * Updates the last usage timestamp and adds to the token count of a conversation, without loading the entity,
+     * if the conversation still uses the given thread. Tokens are added rather than overwritten, so the tokens
+     * counted by every node add up; the timestamp is only moved forward, so older values written by a slower node
+     * are ignored.
+     *
+     * @param conversationKey the key of the conversation.
+     * @param threadId        the thread the tokens were added to.
+     * @param lastUsedAt      the timestamp of the last usage.
+     * @param addedTokens     the estimated number of tokens added to the thread since they were last recorded.
+     * @return the number of updated rows: 0 if the conversation was moved to another thread or removed.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE chat_threads SET token_count = token_count + :addedTokens, " +
+            "last_used_at = GREATEST(last_used_at, :lastUsedAt) " +
+            "WHERE conversation_key = :conversationKey AND thread_id = :threadId", nativeQuery = true)
+    int touch(@Param("conversationKey") String conversationKey,
+              @Param("threadId") String threadId,
+              @Param("lastUsedAt") LocalDateTime lastUsedAt,
+              @Param("addedTokens") int addedTokens);
+
+    /**
+     * Moves a conversation to a new thread, if it still uses the previous one: a compare-and-set on the thread,
+     * so that when two nodes move the same conversation at the same time, only one of them does.
+     *
+     * @param conversationKey  the key of the conversation.
+     * @param previousThreadId the thread the conversation is expected to use.
+     * @param threadId         the new thread.
+     * @param lastUsedAt       the timestamp of the last usage.
+     * @param tokenCount       the estimated number of tokens the new thread starts with.
+     * @return the number of updated rows: 0 if the conversation was moved by someone else or removed.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE ChatThread t SET t.threadId = :threadId, t.lastUsedAt = :lastUsedAt, t.tokenCount = :tokenCount " +
+            "WHERE t.conversationKey = :conversationKey AND t.threadId = :previousThreadId")
+    int moveThread(@Param("conversationKey") String conversationKey,
+                   @Param("previousThreadId") String previousThreadId,
+                   @Param("threadId") String threadId,
+                   @Param("lastUsedAt") LocalDateTime lastUsedAt,
+                   @Param("tokenCount") int tokenCount);
+
+    /**
+     * Removes a conversation if it still uses the given thread, so that a thread another node just moved the
+     * conversation to is never removed in place of the one being deleted.
+     *
+     * @param conversationKey the key of the conversation.
+     * @param threadId        the thread the conversation is expected to use.
+     * @return the number of deleted rows: 0 if the conversation was moved to another thread or already removed.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ChatThread t WHERE t.conversationKey = :conversationKey AND t.threadId = :threadId")
+    int deleteThread(@Param("conversationKey") String conversationKey, @Param("threadId") String threadId);
+
+    /**
+     * Finds the conversations last used before a given time, least recently used first.
+     *
+     * @param idleBefore the time before which the conversations were last used.
+     * @param pageable   the number of conversations to return; only the page size is used.
+     * @return the idle conversations.
+     */
+    @Query("SELECT t FROM ChatThread t WHERE t.lastUsedAt < :idleBefore ORDER BY t.lastUsedAt")
+    List<ChatThread> findIdleSince(@Param("idleBefore") LocalDateTime idleBefore, Pageable pageable);
+
+    /**
+     * Removes a conversation if it still uses the given thread and was not used since the given time, so that
+     * a conversation used or moved by another node after it was found idle is kept.
+     *
+     * @param conversationKey the key of the conversation.
+     * @param threadId        the thread the conversation is expected to use.
+     * @param idleBefore      the time before which the conversation must have been last used.
+     * @return the number of deleted rows: 0 if the conversation was used, moved or removed meanwhile.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ChatThread t WHERE t.conversationKey = :conversationKey AND t.threadId = :threadId " +
+            "AND t.lastUsedAt < :idleBefore")
+    int deleteIdleThread(@Param("conversationKey") String conversationKey,
+                         @Param("threadId") String threadId,
+                         @Param("idleBefore") LocalDateTime idleBefore);
+}
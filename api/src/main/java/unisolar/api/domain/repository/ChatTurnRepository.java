@@ -0,0 +1,92 @@
+package unisolar.api.domain.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import unisolar.api.domain.entity.ChatTurn;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository interface for managing ChatTurn entities in the database.
+ * This interface extends JpaRepository to provide CRUD operations, as well as the keyset queries used to page
+ * through the history of a conversation.
+ *
+ * @see JpaRepository
+ *
+ * Methods:
+ * - findLatest(String conversationKey, Pageable pageable): Retrieves the most recent messages of a conversation.
+ * - findBefore(String conversationKey, Long before, Pageable pageable): Retrieves the messages of a conversation
+ *   recorded before a given message.
+ * - existsByConversationKey(String conversationKey): Checks whether a conversation has any message.
+ * - deleteByConversationKey(String conversationKey): Deletes all messages of a conversation.
+ * - deleteRecordedBefore(String conversationKeyPattern, LocalDateTime before, int limit): Deletes a batch of the
+ *   messages of the matching conversations recorded before a given time.
+ */
+public interface ChatTurnRepository extends JpaRepository<ChatTurn, Long> {
+
+    /**
+     * Finds the most recent messages of a conversation, newest first.
+     *
+     * @param conversationKey the key of the conversation.
+     * @param pageable        the number of messages to return; only the page size is used.
+     * @return the messages, newest first.
+     */
+    @Query("SELECT t FROM ChatTurn t WHERE t.conversationKey = :conversationKey ORDER BY t.id DESC")
+    List<ChatTurn> findLatest(@Param("conversationKey") String conversationKey, Pageable pageable);
+
+    /**
+     * Finds the messages of a conversation recorded before a given message, newest first.
+     * Seeking by ID instead of by offset keeps every page as cheap as the first, however long the history.
+     *
+     * @param conversationKey the key of the conversation.
+     * @param before          the ID of the oldest message already loaded.
+     * @param pageable        the number of messages to return; only the page size is used.
+     * @return the messages, newest first.
+     */
+    @Query("SELECT t FROM ChatTurn t WHERE t.conversationKey = :conversationKey AND t.id < :before ORDER BY t.id DESC")
+    List<ChatTurn> findBefore(@Param("conversationKey") String conversationKey,
+                              @Param("before") Long before,
+                              Pageable pageable);
+
+    /**
+     * Checks whether a conversation has any message.
+     *
+     * @param conversationKey the key of the conversation.
+     * @return true if at least one message was recorded in the conversation.
+     */
+    boolean existsByConversationKey(String conversationKey);
+
+    /**
+     * Deletes all messages of a conversation.
+     *
+     * @param conversationKey the key of the conversation.
+     * @return the number of deleted messages.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ChatTurn t WHERE t.conversationKey = :conversationKey")
+    int deleteByConversationKey(@Param("conversationKey") String conversationKey);
+
+    /**
+     * Deletes a batch of the messages recorded before a given time in the conversations whose key matches a pattern.
+     * Deleting in batches keeps each transaction, and the locks it holds, short.
+     *
+     * @param conversationKeyPattern the SQL LIKE pattern the conversation keys must match.
+     * @param before                 the time before which the messages were recorded.
+     * @param limit                  the maximum number of messages deleted.
+     * @return the number of deleted messages: less than the limit once none is left.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM chat_turns WHERE id IN (SELECT id FROM chat_turns " +
+            "WHERE created_at < :before AND conversation_key LIKE :conversationKeyPattern LIMIT :limit)",
+            nativeQuery = true)
+    int deleteRecordedBefore(@Param("conversationKeyPattern") String conversationKeyPattern,
+                             @Param("before") LocalDateTime before,
+                             @Param("limit") int limit);
+}
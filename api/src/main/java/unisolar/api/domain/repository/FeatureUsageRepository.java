@@ -0,0 +1,52 @@
+package unisolar.api.domain.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import unisolar.api.domain.entity.FeatureUsage;
+
+import java.time.LocalDateTime;
+
+/**
+ * Repository interface for managing FeatureUsage entities in the database.
+ * This interface extends JpaRepository to provide CRUD operations, keyed by the folded name of the feature.
+ *
+ * @see JpaRepository
+ *
+ * Methods:
+ * - addSelections(String featureKey, String name, double score, long selections, LocalDateTime scoredAt,
+ *   double decayPerMilli): Adds selections to the usage of a feature, creating it if needed.
+ */
+public interface FeatureUsageRepository extends JpaRepository<FeatureUsage, String> {
+
+    /**
+     * Adds selections to the usage of a feature, in a single statement: the stored score is decayed to the given
+     * time before the new selections are added to it, so that every node adds its own selections to those of the
+     * others instead of overwriting them. The feature is created if it has no usage yet.
+     *
+     * @param featureKey    the folded name of the feature.
+     * @param name          the name of the feature as last selected.
+     * @param score         the decayed score of the selections added, as of scoredAt.
+     * @param selections    the number of selections added.
+     * @param scoredAt      the timestamp the score is computed at; the stored one is never moved back.
+     * @param decayPerMilli the decay of scores per millisecond (ln 2 / half-life).
+     * @return the number of inserted or updated rows.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO feature_usage (feature_key, name, score, selections, scored_at) " +
+            "VALUES (:featureKey, :name, :score, :selections, :scoredAt) " +
+            "ON CONFLICT (feature_key) DO UPDATE SET name = EXCLUDED.name, " +
+            "score = feature_usage.score * EXP(-:decayPerMilli * GREATEST(0, " +
+            "EXTRACT(EPOCH FROM (EXCLUDED.scored_at - feature_usage.scored_at)) * 1000)) + EXCLUDED.score, " +
+            "selections = feature_usage.selections + EXCLUDED.selections, " +
+            "scored_at = GREATEST(feature_usage.scored_at, EXCLUDED.scored_at)", nativeQuery = true)
+    int addSelections(@Param("featureKey") String featureKey,
+                      @Param("name") String name,
+                      @Param("score") double score,
+                      @Param("selections") long selections,
+                      @Param("scoredAt") LocalDateTime scoredAt,
+                      @Param("decayPerMilli") double decayPerMilli);
+}
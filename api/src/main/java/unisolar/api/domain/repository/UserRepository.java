@@ -6,8 +6,12 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.security.core.userdetails.UserDetails;
+import unisolar.api.domain.dto.securityDTO.TokenVersionData;
 import unisolar.api.domain.entity.User;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 /**
  * Repository interface for managing User entities in the database.
  * This interface extends JpaRepository to provide CRUD operations, as well as custom queries for User entities.
@@ -23,6 +27,8 @@ import unisolar.api.domain.entity.User;
  * - searchByNameUsernameOrEmail(String search, Pageable pageable): Searches for users by username, email, or name without checking if the user is active, with pagination.
  * - findAllByActiveTrue(Pageable pageable): Retrieves a page of all active users, with pagination support.
  * - findAll(Pageable pageable): Retrieves a page of all users, with pagination support.
+ * - findTokenVersionsChangedSince(LocalDateTime since): Retrieves the token versions of the users whose tokens were
+ *   revoked since a given time.
  */
 public interface UserRepository extends JpaRepository<User, Long> {
 
@@ -85,4 +91,15 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return a page of all users.
      */
     Page<User> findAll(Pageable pageable);
+
+    /**
+     * Finds the token versions of the users whose tokens were revoked at or after a given time.
+     * Users whose tokens were never revoked are left out, their version being the initial one.
+     *
+     * @param since the time from which changes are read.
+     * @return the current token version of each user whose tokens were revoked since then.
+     */
+    @Query("SELECT new unisolar.api.domain.dto.securityDTO.TokenVersionData(u.id, u.tokenVersion) FROM User u " +
+            "WHERE u.tokenVersionUpdatedAt >= :since AND u.tokenVersion > 0")
+    List<TokenVersionData> findTokenVersionsChangedSince(@Param("since") LocalDateTime since);
 }
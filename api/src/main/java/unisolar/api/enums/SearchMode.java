@@ -0,0 +1,10 @@
+package unisolar.api.enums;
+
+/**
+ * How a feature search query is matched against the catalog.
+ */
+public enum SearchMode {
+    PREFIX,    // Names starting with the query, ignoring case and accents
+    FUZZY,     // Names, paths and descriptions containing words close to the query's, ranked
+    FULL_TEXT  // Names, paths, categories and descriptions containing the query's words or their stems, ranked by BM25
+}
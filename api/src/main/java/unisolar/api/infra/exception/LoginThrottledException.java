@@ -0,0 +1,21 @@
+package unisolar.api.infra.exception;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a login is attempted too often for the same username or from the same address. Answered with
+ * 429 Too Many Requests, telling the client when to retry.
+ */
+public class LoginThrottledException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public LoginThrottledException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
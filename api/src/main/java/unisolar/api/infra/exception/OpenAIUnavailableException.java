@@ -0,0 +1,15 @@
+package unisolar.api.infra.exception;
+
+/**
+ * Thrown when OpenAI cannot answer in time: the call was rejected because too many are in flight or the
+ * circuit breaker is open, it exceeded its deadline, or it failed upstream.
+ */
+public class OpenAIUnavailableException extends RuntimeException {
+    public OpenAIUnavailableException(String message) {
+        super(message);
+    }
+
+    public OpenAIUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,15 @@
+package unisolar.api.infra.exception;
+
+/**
+ * Thrown when a password cannot be hashed or checked in time: too many are already waiting for a hashing thread,
+ * or the wait exceeded its deadline. Answered with 429 Too Many Requests, so clients retry later.
+ */
+public class PasswordHashingUnavailableException extends RuntimeException {
+    public PasswordHashingUnavailableException(String message) {
+        super(message);
+    }
+
+    public PasswordHashingUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
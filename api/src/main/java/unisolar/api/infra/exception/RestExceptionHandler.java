@@ -0,0 +1,48 @@
+package unisolar.api.infra.exception;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.time.Duration;
+
+/**
+ * RestExceptionHandler turns the exceptions meaning "try again later" into the matching HTTP responses,
+ * so overloaded endpoints shed load with a status clients know how to handle.
+ */
+@RestControllerAdvice
+public class RestExceptionHandler {
+
+    @Value("${api.security.password.retry-after:1s}")
+    private Duration passwordRetryAfter;  // How long clients are told to wait when password hashing is saturated
+
+    /**
+     * Answers 429 Too Many Requests when password hashing is saturated, with a Retry-After header.
+     *
+     * @param exception The rejection.
+     * @return The response.
+     */
+    @ExceptionHandler(PasswordHashingUnavailableException.class)
+    public ResponseEntity<String> passwordHashingUnavailable(PasswordHashingUnavailableException exception) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, passwordRetryAfter.toSeconds())))
+                .body(exception.getMessage());
+    }
+
+    /**
+     * Answers 429 Too Many Requests to throttled logins, with a Retry-After header telling when to try again.
+     *
+     * @param exception The rejection.
+     * @return The response.
+     */
+    @ExceptionHandler(LoginThrottledException.class)
+    public ResponseEntity<String> loginThrottled(LoginThrottledException exception) {
+        var seconds = (exception.getRetryAfter().toMillis() + 999) / 1000;  // Rounded up to whole seconds
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, seconds)))
+                .body(exception.getMessage());
+    }
+}
@@ -0,0 +1,424 @@
+package unisolar.api.infra.openai;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import unisolar.api.domain.entity.ChatThread;
+import unisolar.api.domain.repository.ChatThreadRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * ChatThreadRegistry maps each conversation (an authenticated user or a web session) to its own OpenAI thread.
+ * Mappings are persisted in the "chat_threads" table, so conversations survive restarts and can be continued
+ * by any node, and are kept in a bounded local cache so the database is only read on the first message
+ * of a conversation handled by this node. The registry also tracks an estimate of the tokens accumulated in each
+ * thread, so conversations that outgrow the prompt budget can be moved to a new thread. Entries idle for longer than
+ * the configured timeout are evicted from the cache, and when the cache is full the least recently used entries are
+ * evicted first.
+ *
+ * Several nodes may serve the same conversation. Each adds the tokens it counted to those in the database, rather
+ * than writing its own total, and a conversation is only moved to a new thread if it still uses the one the node
+ * knows of (a compare-and-set on the thread), so two nodes rotating it at once end up on the same thread. On every
+ * sweep, cached mappings are checked against the database: those moved or removed by another node are dropped, and
+ * the token counts of the others catch up with the tokens counted elsewhere.
+ *
+ * Every anonymous web session gets a conversation of its own, never used again once the session ends, so mappings
+ * unused for longer than the retention period are purged from the database, together with their OpenAI thread.
+ */
+@Component
+public class ChatThreadRegistry {
+
+    private static final String USER_KEY_PREFIX = "user:";
+    private static final String SESSION_KEY_PREFIX = "session:";
+    private static final int VALIDATION_BATCH_SIZE = 500;  // Mappings re-read or purged from the database per query
+
+    private final ChatThreadRepository repository;
+    private final int maxEntries;
+    private final Duration idleTimeout;
+    private final Duration retention;
+    private final Map<String, Entry> threads = new ConcurrentHashMap<>();               // Cached mappings
+    private final Map<String, CompletableFuture<String>> loading = new ConcurrentHashMap<>(); // Lookups in progress
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final Counter purged;
+
+    /**
+     * A cached mapping, with the last time it was used, the tokens its thread had in the database when last read
+     * or written, and the tokens added by this node since.
+     */
+    private static class Entry {
+        final String threadId;
+        final AtomicInteger persistedTokens;
+        final AtomicInteger pendingTokens = new AtomicInteger();
+        volatile long lastUsedAt;
+        volatile long persistedAt;
+
+        Entry(String threadId, int tokens, long now) {
+            this.threadId = threadId;
+            this.persistedTokens = new AtomicInteger(tokens);
+            this.lastUsedAt = now;
+            this.persistedAt = now;
+        }
+
+        int tokens() {
+            return persistedTokens.get() + pendingTokens.get();
+        }
+    }
+
+    /**
+     * Constructs the registry.
+     *
+     * @param repository    The repository where mappings are persisted.
+     * @param meterRegistry The registry where the number of cached mappings is published.
+     * @param maxEntries    The maximum number of mappings kept in memory.
+     * @param idleTimeout   How long an unused mapping is kept in memory.
+     * @param retention     How long an unused mapping is kept in the database, with its thread.
+     */
+    public ChatThreadRegistry(ChatThreadRepository repository,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.chat.threads.max-entries:10000}") int maxEntries,
+                              @Value("${app.chat.threads.idle-timeout:30m}") Duration idleTimeout,
+                              @Value("${app.chat.threads.retention:30d}") Duration retention) {
+        this.repository = repository;
+        this.maxEntries = maxEntries;
+        this.idleTimeout = idleTimeout;
+        this.retention = retention;
+        this.purged = Counter.builder("solaria.chat.threads.purged")
+                .description("Conversation threads purged after the retention period")
+                .register(meterRegistry);
+        Gauge.builder("solaria.chat.threads.cached", threads, Map::size)
+                .description("Conversation threads cached in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Builds the conversation key of an authenticated user.
+     *
+     * @param username The username of the user.
+     * @return The conversation key.
+     */
+    public static String userKey(String username) {
+        return USER_KEY_PREFIX + username;
+    }
+
+    /**
+     * Builds the conversation key of an anonymous web session.
+     *
+     * @param sessionId The HTTP session ID.
+     * @return The conversation key.
+     */
+    public static String sessionKey(String sessionId) {
+        return SESSION_KEY_PREFIX + sessionId;
+    }
+
+    /**
+     * Finds the thread of a conversation, if one was already created.
+     *
+     * @param conversationKey The key of the conversation.
+     * @return The thread ID, or empty if the conversation has no thread yet.
+     */
+    public Optional<String> find(String conversationKey) {
+        var entry = threads.get(conversationKey);
+        if (entry != null) {
+            entry.lastUsedAt = System.currentTimeMillis();
+            return Optional.of(entry.threadId);
+        }
+        return repository.findById(conversationKey)
+                .map(thread -> cache(conversationKey, thread));
+    }
+
+    /**
+     * Returns the thread of a conversation if it is cached on this node, without reading the database.
+     *
+     * @param conversationKey The key of the conversation.
+     * @return The thread ID, or empty if it is not cached.
+     */
+    public Optional<String> cachedThreadId(String conversationKey) {
+        return Optional.ofNullable(threads.get(conversationKey)).map(entry -> entry.threadId);
+    }
+
+    /**
+     * Returns the thread of a conversation, creating it if the conversation has none.
+     * Concurrent calls for the same conversation on this node share a single lookup; if two nodes create a thread
+     * for the same conversation at the same time, the one persisted first wins and is returned by both.
+     *
+     * @param conversationKey The key of the conversation.
+     * @param threadCreator   Creates a new OpenAI thread and returns its ID.
+     * @return The thread ID.
+     */
+    public String getOrCreate(String conversationKey, Supplier<String> threadCreator) {
+        var entry = threads.get(conversationKey);
+        if (entry != null) {
+            entry.lastUsedAt = System.currentTimeMillis();
+            return entry.threadId;
+        }
+
+        var lookup = new CompletableFuture<String>();
+        var inFlight = loading.putIfAbsent(conversationKey, lookup);
+        if (inFlight != null) {
+            return join(inFlight);  // Another request is already looking this conversation up
+        }
+
+        try {
+            var thread = repository.findById(conversationKey)
+                    .orElseGet(() -> persist(conversationKey, threadCreator.get()));
+            var threadId = cache(conversationKey, thread);
+            lookup.complete(threadId);
+            return threadId;
+        } catch (RuntimeException e) {
+            lookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(conversationKey, lookup);
+        }
+    }
+
+    /**
+     * Returns the estimated number of tokens accumulated in the thread of a conversation.
+     *
+     * @param conversationKey The key of the conversation.
+     * @return The number of tokens, or 0 if the conversation has no thread.
+     */
+    public int tokenCount(String conversationKey) {
+        var entry = threads.get(conversationKey);
+        if (entry != null) {
+            return entry.tokens();
+        }
+        return repository.findById(conversationKey).map(ChatThread::getTokenCount).orElse(0);
+    }
+
+    /**
+     * Adds the tokens of a question and its answer to the thread of a conversation.
+     * The tokens are added to the database on the next sweep, together with the last usage.
+     *
+     * @param conversationKey The key of the conversation.
+     * @param tokens          The number of tokens added to the thread.
+     */
+    public void addTokens(String conversationKey, int tokens) {
+        var entry = threads.get(conversationKey);
+        if (entry != null) {
+            entry.pendingTokens.addAndGet(tokens);
+            entry.lastUsedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Moves a conversation to a new thread, already seeded with the given number of tokens, if it still uses the
+     * previous one. If another node moved the conversation first, it is left on that node's thread, which is
+     * returned; if the conversation was removed meanwhile, it is not brought back.
+     *
+     * @param conversationKey  The key of the conversation.
+     * @param previousThreadId The ID of the thread the conversation is moved from.
+     * @param threadId         The ID of the new thread.
+     * @param tokens           The number of tokens the new thread starts with.
+     * @return The ID of the thread the conversation now uses, which is the new one unless another node moved it
+     *         first; or empty if the conversation was removed.
+     */
+    public Optional<String> replace(String conversationKey, String previousThreadId, String threadId, int tokens) {
+        var moved = repository.moveThread(conversationKey, previousThreadId, threadId, LocalDateTime.now(), tokens) > 0;
+        if (moved) {
+            threads.put(conversationKey, new Entry(threadId, tokens, System.currentTimeMillis()));
+            return Optional.of(threadId);
+        }
+        threads.remove(conversationKey);
+        return repository.findById(conversationKey)
+                .map(thread -> cache(conversationKey, thread));
+    }
+
+    /**
+     * Removes the thread of a conversation from the registry. The conversation is only removed from the database
+     * if it still uses the thread read, so if another node moves it meanwhile, the thread it was moved to is the one
+     * removed and returned.
+     *
+     * @param conversationKey The key of the conversation.
+     * @return The ID of the removed thread, or empty if the conversation had no thread.
+     */
+    public Optional<String> remove(String conversationKey) {
+        threads.remove(conversationKey);
+        while (true) {
+            var threadId = repository.findById(conversationKey).map(ChatThread::getThreadId);
+            if (threadId.isEmpty() || repository.deleteThread(conversationKey, threadId.get()) > 0) {
+                return threadId;
+            }
+        }
+    }
+
+    /**
+     * Purges the mappings unused for longer than the retention period from the database and from memory, in batches,
+     * handing their threads to the given deleter once their mapping is gone. A conversation used or moved by another
+     * node after it was found idle is kept.
+     *
+     * @param threadDeleter Deletes an OpenAI thread given its ID.
+     * @return The number of mappings purged.
+     */
+    public int purgeIdle(Consumer<String> threadDeleter) {
+        var idleBefore = LocalDateTime.now().minus(retention);
+        var count = 0;
+        List<ChatThread> batch;
+        do {
+            batch = repository.findIdleSince(idleBefore, PageRequest.of(0, VALIDATION_BATCH_SIZE));
+            for (ChatThread thread : batch) {
+                var conversationKey = thread.getConversationKey();
+                if (repository.deleteIdleThread(conversationKey, thread.getThreadId(), idleBefore) == 0) {
+                    continue;
+                }
+                var entry = threads.get(conversationKey);
+                if (entry != null && entry.threadId.equals(thread.getThreadId())) {
+                    threads.remove(conversationKey, entry);
+                }
+                threadDeleter.accept(thread.getThreadId());
+                purged.increment();
+                count++;
+            }
+        } while (batch.size() == VALIDATION_BATCH_SIZE);
+        return count;
+    }
+
+    /**
+     * Periodically evicts idle mappings from memory and records recent usage in the database,
+     * so other nodes and future restarts see up-to-date usage without a write on every message.
+     * The mappings kept are then checked against the database, so the changes of other nodes are seen here too.
+     */
+    @Scheduled(fixedDelayString = "${app.chat.threads.sweep-interval:60000}")
+    public void evictIdleThreads() {
+        var now = System.currentTimeMillis();
+        var idleBefore = now - idleTimeout.toMillis();
+
+        threads.forEach((conversationKey, entry) -> {
+            if (entry.lastUsedAt < idleBefore) {
+                threads.remove(conversationKey, entry);
+            }
+            persistUsage(conversationKey, entry);
+        });
+        validateCachedThreads();
+    }
+
+    /**
+     * Re-reads the cached mappings from the database, in batches: mappings whose conversation was moved to another
+     * thread or removed by another node are dropped, and the others take the token count recorded by all nodes.
+     */
+    private void validateCachedThreads() {
+        var keys = new ArrayList<>(threads.keySet());
+        for (int from = 0; from < keys.size(); from += VALIDATION_BATCH_SIZE) {
+            var batch = keys.subList(from, Math.min(keys.size(), from + VALIDATION_BATCH_SIZE));
+            var persisted = new HashMap<String, ChatThread>();
+            repository.findAllById(batch).forEach(thread -> persisted.put(thread.getConversationKey(), thread));
+            for (var conversationKey : batch) {
+                var entry = threads.get(conversationKey);
+                var thread = persisted.get(conversationKey);
+                if (entry == null) {
+                    continue;
+                }
+                if (thread == null || !thread.getThreadId().equals(entry.threadId)) {
+                    threads.remove(conversationKey, entry);
+                } else {
+                    entry.persistedTokens.set(thread.getTokenCount());
+                }
+            }
+        }
+    }
+
+    /**
+     * Persists a newly created thread. If another node persisted one for the same conversation first,
+     * that thread is returned instead.
+     */
+    private ChatThread persist(String conversationKey, String threadId) {
+        var now = LocalDateTime.now();
+        try {
+            return repository.saveAndFlush(new ChatThread(conversationKey, threadId, now, now, 0));
+        } catch (DataIntegrityViolationException e) {
+            return repository.findById(conversationKey).orElseThrow(() -> e);
+        }
+    }
+
+    /**
+     * Caches a mapping, evicting the least recently used ones if the cache grows beyond its limit.
+     */
+    private String cache(String conversationKey, ChatThread thread) {
+        threads.put(conversationKey,
+                new Entry(thread.getThreadId(), thread.getTokenCount(), System.currentTimeMillis()));
+        if (threads.size() > maxEntries) {
+            evictLeastRecentlyUsed();
+        }
+        return thread.getThreadId();
+    }
+
+    /**
+     * Evicts the least recently used tenth of the cache, so the cost of scanning it is spread over many insertions.
+     * Only one thread evicts at a time; the others carry on.
+     */
+    private void evictLeastRecentlyUsed() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            var excess = threads.size() - maxEntries + Math.max(1, maxEntries / 10);
+            threads.entrySet().stream()
+                    .sorted(Comparator.comparingLong(e -> e.getValue().lastUsedAt))
+                    .limit(Math.max(excess, 0))
+                    .toList()
+                    .forEach(e -> {
+                        threads.remove(e.getKey(), e.getValue());
+                        persistUsage(e.getKey(), e.getValue());
+                    });
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Writes the last usage of a mapping to the database and adds the tokens counted since they were last written,
+     * if either changed. A mapping whose conversation was moved to another thread or removed by another node
+     * is dropped instead, with its tokens, which belong to a thread no longer used.
+     */
+    private void persistUsage(String conversationKey, Entry entry) {
+        var lastUsedAt = entry.lastUsedAt;
+        var added = entry.pendingTokens.get();
+        if (lastUsedAt > entry.persistedAt || added != 0) {
+            var updated = repository.touch(conversationKey, entry.threadId,
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(lastUsedAt), ZoneId.systemDefault()), added);
+            if (updated == 0) {
+                threads.remove(conversationKey, entry);
+                return;
+            }
+            entry.pendingTokens.addAndGet(-added);
+            entry.persistedTokens.addAndGet(added);
+            entry.persistedAt = lastUsedAt;
+        }
+    }
+
+    /**
+     * Waits for a lookup started by another request, rethrowing its failure as is.
+     */
+    private static String join(CompletableFuture<String> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
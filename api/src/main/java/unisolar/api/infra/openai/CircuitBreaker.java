@@ -0,0 +1,148 @@
+package unisolar.api.infra.openai;
+
+import java.time.Duration;
+
+/**
+ * CircuitBreaker stops calling a dependency that keeps failing, so callers fail fast instead of waiting
+ * on it, and lets a single trial call through once in a while to detect its recovery.
+ *
+ * The breaker keeps the outcomes of the last calls in a fixed-size window. While CLOSED, every call is allowed;
+ * once the window holds enough calls and their failure rate reaches the threshold, the breaker OPENS and rejects
+ * every call. After the open duration, it becomes HALF_OPEN and allows one trial call: its success closes
+ * the breaker again, its failure opens it for another period.
+ *
+ * Every allowed call must report exactly one outcome: a success, a failure, or ignored when it ended without
+ * telling anything about the dependency (e.g. cancelled by the caller).
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final boolean[] window;  // true for a failed call
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+
+    private State state = State.CLOSED;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    /**
+     * Constructs a closed circuit breaker.
+     *
+     * @param windowSize           The number of most recent calls considered.
+     * @param minimumCalls         The number of calls the window must hold before the breaker may open.
+     * @param failureRateThreshold The failure rate, between 0 and 1, at which the breaker opens.
+     * @param openDuration         How long the breaker stays open before allowing a trial call.
+     */
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, Duration openDuration) {
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Asks permission for a call.
+     *
+     * @return true if the call may proceed, false if it must fail fast.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openDurationNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * Reports that an allowed call succeeded.
+     */
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            close();
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    /**
+     * Reports that an allowed call failed.
+     */
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= minimumCalls && (double) failures / recorded >= failureRateThreshold) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Reports that an allowed call ended without an outcome, freeing the trial slot if it was the trial call.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * Returns the current state of the breaker.
+     *
+     * @return The state.
+     */
+    public synchronized State state() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (recorded == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        trialInFlight = false;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        trialInFlight = false;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+    }
+}
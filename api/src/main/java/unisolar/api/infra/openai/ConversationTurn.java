@@ -0,0 +1,10 @@
+package unisolar.api.infra.openai;
+
+/**
+ * ConversationTurn is a record that represents a single message of a past conversation with SolarIA.
+ *
+ * Attributes:
+ * - role (String): The OpenAI role of the author of the message ("user" or "assistant").
+ * - content (String): The text of the message.
+ */
+public record ConversationTurn(String role, String content) {}
@@ -1,32 +1,46 @@
 package unisolar.api.infra.openai;
 
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
 import com.theokanning.openai.completion.chat.ChatMessageRole;
 import com.theokanning.openai.messages.Message;
 import com.theokanning.openai.messages.MessageRequest;
 import com.theokanning.openai.runs.RunCreateRequest;
 import com.theokanning.openai.service.OpenAiService;
 import com.theokanning.openai.threads.ThreadRequest;
+import io.reactivex.Flowable;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import unisolar.api.infra.exception.OpenAIUnavailableException;
 
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.time.Instant;
 import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /**
  * OpenAIClient is a component responsible for interacting with the OpenAI API.
- * It manages sending chat completion requests, retrieving chat history, and handling threads.
+ * It manages sending chat completion requests and handling threads.
  * The client maintains an API key and an assistant ID, and supports communication with OpenAI's models via the OpenAiService.
+ * Each conversation has its own thread, looked up through the ChatThreadRegistry. A thread whose accumulated tokens
+ * would exceed the prompt budget is replaced by a new one, seeded with a condensed context of the conversation,
+ * since every run of an assistant re-reads its whole thread.
  */
 @Component
 public class OpenAIClient {
 
+    private static final String MODEL = "gpt-3.5-turbo";
+    private static final long INITIAL_POLL_INTERVAL_MS = 250;  // First wait before checking the run status
+    private static final long MAX_POLL_INTERVAL_MS = 2000;     // Upper bound for the polling backoff
+    private static final Set<String> FAILED_RUN_STATUSES = Set.of("failed", "cancelled", "expired");
+
     private final String apiKey;
     private final String assistantId;
-    private String threadId;
+    private final ChatThreadRegistry threads;
+    private final PromptAssembler prompts;
     private final OpenAiService service;
 
     /**
@@ -34,101 +48,245 @@ public class OpenAIClient {
      *
      * @param apiKey The API key for authentication with the OpenAI API.
      * @param assistantId The assistant ID used for interacting with a specific assistant model.
+     * @param threads The registry mapping each conversation to its OpenAI thread.
+     * @param prompts The assembler enforcing the prompt token budget.
+     * @param httpTimeout The timeout of each HTTP call made to the OpenAI API.
+     * @param baseUrl The base URL of the OpenAI API, which can point to a local stand-in for load tests.
+     * @param maxConcurrent The maximum number of calls in flight, so streamed calls are not queued by OkHttp.
      */
-    public OpenAIClient(@Value("${app.openai.api.key}") String apiKey, @Value("${app.openai.assistant.id}") String assistantId) {
+    public OpenAIClient(@Value("${app.openai.api.key}") String apiKey,
+                        @Value("${app.openai.assistant.id}") String assistantId,
+                        ChatThreadRegistry threads,
+                        PromptAssembler prompts,
+                        @Value("${app.openai.http-timeout:20s}") Duration httpTimeout,
+                        @Value("${app.openai.base-url:https://api.openai.com/}") String baseUrl,
+                        @Value("${app.openai.bulkhead.max-concurrent:20}") int maxConcurrent) {
         this.apiKey = apiKey;
-        this.service = new OpenAiService(apiKey, Duration.ofSeconds(60));
+
+        // Streamed calls go through OkHttp's dispatcher, which only allows 5 calls per host by default
+        var httpClient = OpenAiService.defaultClient(apiKey, httpTimeout);
+        httpClient.dispatcher().setMaxRequests(Math.max(maxConcurrent, httpClient.dispatcher().getMaxRequests()));
+        httpClient.dispatcher().setMaxRequestsPerHost(maxConcurrent);
+        var retrofit = OpenAiService.defaultRetrofit(httpClient, OpenAiService.defaultObjectMapper())
+                .newBuilder()
+                .baseUrl(baseUrl)
+                .build();
+        this.service = new OpenAiService(retrofit.create(OpenAiApi.class), httpClient.dispatcher().executorService());
         this.assistantId = assistantId;
+        this.threads = threads;
+        this.prompts = prompts;
     }
 
     /**
-     * Sends a chat completion request to OpenAI, either creating a new thread or continuing an existing one.
+     * Sends a chat completion request to OpenAI, either creating a new thread for the conversation or continuing its existing one.
      * It processes the user's prompt and returns the assistant's response.
      *
+     * @param conversationKey The key of the conversation the request belongs to.
      * @param data The data containing system and user prompts to send to the OpenAI API.
+     * @param deadline The instant by which the whole call must have completed. No HTTP call is started past it,
+     *                 and a run still in progress then, or when the calling thread is interrupted, is cancelled.
      * @return The response from the assistant as a String.
+     * @throws OpenAIUnavailableException If the call does not complete before the deadline, or is interrupted.
      */
-    public String sendChatCompletionRequest(ChatCompletionRequestData data) {
+    public String sendChatCompletionRequest(String conversationKey, ChatCompletionRequestData data, Instant deadline) {
+        var question = prompts.fitQuestion(data.userPrompt());
         var messageRequest = MessageRequest
                 .builder()
                 .role(ChatMessageRole.USER.value())
-                .content(data.userPrompt())
+                .content(question)
                 .build();
 
-        if (this.threadId == null) {
-            var threadRequest = ThreadRequest
-                    .builder()
-                    .messages(Arrays.asList(messageRequest))
-                    .build();
+        var threadId = threads.getOrCreate(conversationKey, () -> {
+            checkDeadline(deadline);
+            return service.createThread(ThreadRequest.builder().build()).getId();
+        });
 
-            var thread = service.createThread(threadRequest);
-            this.threadId = thread.getId();
-        } else {
-            service.createMessage(this.threadId, messageRequest);
+        // Move the conversation to a fresh thread when this question would take it over the budget
+        var questionTokens = prompts.countMessageTokens(question);
+        if (threads.tokenCount(conversationKey) + questionTokens > prompts.maxPromptTokens()) {
+            threadId = rotateThread(conversationKey, threadId, deadline);
         }
+        var promptTokens = threads.tokenCount(conversationKey) + questionTokens;
+        checkDeadline(deadline);
+        service.createMessage(threadId, messageRequest);
 
         // Create run request with the assistant ID and model
         var runRequest = RunCreateRequest
                 .builder()
                 .assistantId(assistantId)
-                .model("gpt-3.5-turbo") // Set the desired model
+                .model(MODEL) // Set the desired model
                 .build();
+        checkDeadline(deadline);
         var run = service.createRun(threadId, runRequest);
 
+        // Poll with a short, growing interval so quick answers are not held back by a fixed wait
         var isCompleted = false;
         var needsFunctionCall = false;
+        var pollInterval = INITIAL_POLL_INTERVAL_MS;
         try {
             while (!isCompleted && !needsFunctionCall) {
-                Thread.sleep(1000 * 10);
+                var remaining = Duration.between(Instant.now(), deadline).toMillis();
+                if (remaining <= 0) {
+                    service.cancelRun(threadId, run.getId());
+                    throw new OpenAIUnavailableException("OpenAI run did not complete before the deadline");
+                }
+                Thread.sleep(Math.min(pollInterval, remaining));
+                pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL_MS);
                 run = service.retrieveRun(threadId, run.getId());
+                if (FAILED_RUN_STATUSES.contains(run.getStatus().toLowerCase())) {
+                    throw new IllegalStateException("OpenAI run finished with status " + run.getStatus());
+                }
                 isCompleted = run.getStatus().equalsIgnoreCase("completed");
                 needsFunctionCall = run.getRequiredAction() != null;
             }
         } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            // Given up on by the caller: nobody will read the answer, so it is not generated either
+            try {
+                service.cancelRun(threadId, run.getId());
+            } finally {
+                Thread.currentThread().interrupt();
+            }
+            throw new OpenAIUnavailableException("OpenAI run was interrupted before it completed", e);
         }
 
         // Retrieve and return the latest response from the assistant
+        checkDeadline(deadline);
         var messages = service.listMessages(threadId);
-        return messages
+        var answer = messages
                 .getData()
                 .stream()
                 .sorted(Comparator.comparingInt(Message::getCreatedAt).reversed())
                 .findFirst().get().getContent().get(0).getText().getValue()
                 .replaceAll("\\\u3010.*?\\\u3011", "");
+
+        var answerTokens = prompts.recordUsage(promptTokens, answer);
+        threads.addTokens(conversationKey, questionTokens + answerTokens);
+        return answer;
     }
 
     /**
-     * Loads the chat history for the current thread.
-     * If a thread exists, it returns all messages in the thread, sorted by timestamp.
+     * Streams a chat completion from OpenAI, emitting the assistant's answer as a sequence of text deltas.
+     * Unlike {@link #sendChatCompletionRequest(String, ChatCompletionRequestData, Instant)}, this does not create a run
+     * and poll for it: the deltas are pushed by OpenAI as soon as they are generated, on OkHttp's own threads.
      *
-     * @return A list of message strings representing the chat history.
+     * @param prompt The prompt to send, already trimmed to the token budget by the PromptAssembler.
+     * @return A Flowable emitting each non-empty content delta of the assistant's answer.
      */
-    public List<String> loadChatHistory() {
-        var messages = new ArrayList<String>();
-
-        if (this.threadId != null) {
-            messages.addAll(
-                    service
-                            .listMessages(this.threadId)
-                            .getData()
-                            .stream()
-                            .sorted(Comparator.comparingInt(Message::getCreatedAt))
-                            .map(m -> m.getContent().get(0).getText().getValue())
-                            .collect(Collectors.toList())
-            );
-        }
+    public Flowable<String> streamChatCompletion(PromptAssembler.AssembledPrompt prompt) {
+        var request = ChatCompletionRequest
+                .builder()
+                .model(MODEL)
+                .messages(prompt.messages())
+                .maxTokens(prompt.maxCompletionTokens())
+                .stream(true)
+                .build();
 
-        return messages;
+        return service.streamChatCompletion(request)
+                .filter(chunk -> !chunk.getChoices().isEmpty())
+                .map(chunk -> chunk.getChoices().get(0).getMessage())
+                .filter(message -> message != null && message.getContent() != null && !message.getContent().isEmpty())
+                .map(ChatMessage::getContent);
     }
 
     /**
-     * Deletes the current thread, if it exists, and clears the thread ID.
+     * Adds to the thread of a conversation an exchange answered outside of it, from the cache or by the run of another
+     * conversation, so later questions of the conversation are answered knowing it. Assistant threads only take user
+     * messages, so the exchange is posted as a single message giving the context, as when a thread is rotated.
+     *
+     * @param conversationKey The key of the conversation.
+     * @param question The question asked in the conversation.
+     * @param answer The answer given to it.
      */
-    public void deleteThread() {
-        if (this.threadId != null) {
-            service.deleteThread(this.threadId);
-            this.threadId = null;
+    public void appendExchange(String conversationKey, String question, String answer) {
+        var threadId = threads.getOrCreate(conversationKey,
+                () -> service.createThread(ThreadRequest.builder().build()).getId());
+        var exchange = prompts.carryOver(List.of(
+                new ConversationTurn(ChatMessageRole.USER.value(), question),
+                new ConversationTurn(ChatMessageRole.ASSISTANT.value(), answer)));
+        service.createMessage(threadId, MessageRequest
+                .builder()
+                .role(ChatMessageRole.USER.value())
+                .content(exchange.text())
+                .build());
+        threads.addTokens(conversationKey, exchange.tokens());
+    }
+
+    /**
+     * Replaces the thread of a conversation by a new one, seeded with a condensed context of the old one,
+     * and deletes the old thread. If another node moved the conversation first, the new thread is deleted instead
+     * and the conversation continues on the other node's; if it was removed meanwhile, it starts over on a new thread.
+     */
+    private String rotateThread(String conversationKey, String threadId, Instant deadline) {
+        checkDeadline(deadline);
+        var history = service
+                .listMessages(threadId)
+                .getData()
+                .stream()
+                .sorted(Comparator.comparingInt(Message::getCreatedAt))
+                .map(m -> new ConversationTurn(m.getRole(), m.getContent().get(0).getText().getValue()))
+                .toList();
+        var carryOver = prompts.carryOver(history);
+
+        var seed = MessageRequest
+                .builder()
+                .role(ChatMessageRole.USER.value())
+                .content(carryOver.text())
+                .build();
+        checkDeadline(deadline);
+        var newThreadId = service.createThread(ThreadRequest.builder().messages(List.of(seed)).build()).getId();
+        var current = threads.replace(conversationKey, threadId, newThreadId, carryOver.tokens());
+        if (current.filter(newThreadId::equals).isPresent()) {
+            service.deleteThread(threadId);
+            return newThreadId;
         }
+        service.deleteThread(newThreadId);
+        return current.orElseGet(() -> threads.getOrCreate(conversationKey,
+                () -> service.createThread(ThreadRequest.builder().build()).getId()));
+    }
+
+    /**
+     * Fails a call before its next HTTP call once the deadline has passed, or once the calling thread has been
+     * interrupted because the caller stopped waiting: each HTTP call may otherwise take the whole HTTP timeout.
+     */
+    private static void checkDeadline(Instant deadline) {
+        if (Thread.currentThread().isInterrupted() || !Instant.now().isBefore(deadline)) {
+            throw new OpenAIUnavailableException("OpenAI call did not complete before the deadline");
+        }
+    }
+
+    /**
+     * Returns the estimated number of tokens accumulated in the thread of a conversation, all of which every run
+     * on it reads again.
+     *
+     * @param conversationKey The key of the conversation.
+     * @return The number of tokens, or 0 if the conversation has no thread.
+     */
+    public int threadTokenCount(String conversationKey) {
+        return threads.tokenCount(conversationKey);
+    }
+
+    /**
+     * Periodically purges the conversations unused for longer than the retention period, deleting their threads.
+     * A thread that cannot be deleted, already gone or with OpenAI unavailable, is left behind upstream: its
+     * conversation is purged all the same, so it is no longer referenced.
+     */
+    @Scheduled(fixedDelayString = "${app.chat.threads.purge-interval:3600000}")
+    public void purgeIdleThreads() {
+        threads.purgeIdle(threadId -> {
+            try {
+                service.deleteThread(threadId);
+            } catch (RuntimeException e) {
+                // Left behind upstream, see above
+            }
+        });
+    }
+
+    /**
+     * Deletes the thread of a conversation, if it exists, and removes it from the registry.
+     *
+     * @param conversationKey The key of the conversation.
+     */
+    public void deleteThread(String conversationKey) {
+        threads.remove(conversationKey).ifPresent(service::deleteThread);
     }
 }
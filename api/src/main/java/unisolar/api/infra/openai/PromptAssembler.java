@@ -0,0 +1,291 @@
+package unisolar.api.infra.openai;
+
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PromptAssembler builds the prompts sent to OpenAI within a fixed token budget, so the cost and latency
+ * of a request stay flat however long the conversation gets.
+ *
+ * The system prompt is a constant and its token count is computed once, at startup. Each request then
+ * gets the system prompt, the question and as many of the most recent conversation turns as fit in the budget;
+ * older turns that do not fit are replaced by a short summary of the questions asked in them. A question that would
+ * not fit in the budget even alone with the system prompt is cut to fit, rather than sent whole over the budget.
+ * Tokens sent and received per request, and the questions cut, are published as metrics.
+ */
+@Component
+public class PromptAssembler {
+
+    // System prompt that defines the chatbot's role, its purpose, and guardrails for behavior.
+    private static final String SYSTEM_PROMPT = "Você é o assistente virtual **SolarIA** da **Unisolar**, uma empresa que oferece soluções inteligentes para otimização de energia solar em residências. Sua missão é fornecer informações claras e educativas sobre como as pessoas podem aproveitar o melhor uso da energia solar, reduzir seus custos de energia e promover a sustentabilidade ambiental.\n\n" +
+            "A Unisolar oferece uma infraestrutura baseada em:\n" +
+            "1. **Painéis Solares**: Instalados em locais estratégicos para máxima captura de energia solar.\n" +
+            "2. **Bateria de Carro Elétrico Reutilizada**: Armazena a energia gerada pelos painéis solares para uso em horários de menor geração ou durante a noite.\n" +
+            "3. **Software Inteligente de IA**: Analisa dados em tempo real para otimizar o uso da energia gerada, considerando fatores como previsão do tempo, tarifas de energia e consumo diário.\n\n" +
+            "### Funções da IA:\n" +
+            "- **Otimização de Energia**: A IA ajuda a maximizar a eficiência energética, decidindo quando carregar ou descarregar a bateria de carro elétrico, além de otimizar o uso da energia da rede elétrica conforme as tarifas variáveis.\n" +
+            "- **Previsão de Demanda**: A IA prevê o consumo de energia com base no histórico de consumo, clima e horários de pico, ajustando a utilização para reduzir custos e garantir autonomia energética.\n" +
+            "- **Manutenção Preditiva**: A IA monitora o estado do sistema e sugere ações preventivas antes que falhas ocorram.\n" +
+            "- **Integração Governamental e Empresarial**: A solução é projetada em parceria com o governo e empresas para oferecer incentivos fiscais, caso doem ou ofereçam descontos em prol da sustentabilidade.\n\n" +
+            "### Guardrails:\n" +
+            "- **Sustentabilidade**: Sempre promova o uso responsável de recursos naturais e a redução da pegada de carbono.\n" +
+            "- **Amigabilidade e Otimismo**: Seja amigável e otimista, incentivando o usuário a adotar soluções de energia renovável.\n" +
+            "- **Educação**: Explique de forma simples e técnica como a tecnologia funciona e como os usuários podem economizar energia e melhorar a sustentabilidade de suas casas.\n" +
+            "- **Soluções Práticas e Personalizadas**: Ofereça sugestões de otimização de consumo e previsão de economia de energia baseadas nas necessidades do usuário.\n\n" +
+            "### Exemplo de Interação:\n" +
+            "1. Usuário: 'Como posso economizar energia durante a noite?'\n" +
+            "   Resposta IA: 'Durante a noite, seu sistema SolarIA pode usar a energia armazenada na bateria de carro elétrico, garantindo que os eletrodomésticos essenciais, como a iluminação e a geladeira, continuem funcionando sem sobrecarregar a rede elétrica. A IA pode otimizar o descarregamento da bateria para garantir a melhor economia!'\n" +
+            "2. Usuário: 'O que acontece se eu tiver um dia nublado?'\n" +
+            "   Resposta IA: 'Nos dias nublados, seu sistema SolarIA ajusta automaticamente o nível de carga da bateria, priorizando o uso da energia armazenada para evitar o uso da rede elétrica. Se necessário, a IA pode ajustar os ciclos de carga da bateria para garantir que você tenha energia suficiente para o dia seguinte.'\n\n" +
+            "Lembre-se: Seu papel é ser um assistente educativo e proativo, ajudando os usuários a entender como otimizar seu consumo energético de forma eficiente e sustentável.\n\n" +
+            "Agora, como posso te ajudar com sua energia solar?";
+
+    private static final int TOKENS_PER_MESSAGE = 4;     // Role and separators added by OpenAI to each message
+    private static final int SUMMARY_ITEM_CHARS = 120;   // Longest excerpt of an old question kept in a summary
+    private static final String SUMMARY_HEADER = "Resumo da conversa anterior. O usuário já perguntou:";
+    private static final String CARRY_OVER_HEADER = "Contexto da conversa anterior com o usuário:";
+
+    private final TokenCounter tokenCounter;
+    private final int systemPromptTokens;
+    private final int maxPromptTokens;
+    private final int maxCompletionTokens;
+    private final DistributionSummary tokensIn;
+    private final DistributionSummary tokensOut;
+    private final Counter truncatedQuestions;
+
+    /**
+     * A prompt ready to be sent to OpenAI.
+     *
+     * @param messages            The messages of the prompt: system prompt, summary, recent turns and question.
+     * @param promptTokens        The number of tokens of the messages.
+     * @param maxCompletionTokens The maximum number of tokens the answer may use.
+     * @param droppedTurns        How many older turns were left out of the prompt to keep it within the budget.
+     */
+    public record AssembledPrompt(List<ChatMessage> messages, int promptTokens, int maxCompletionTokens,
+                                  int droppedTurns) {}
+
+    /**
+     * The context carried over to a new thread when a conversation outgrows its current one.
+     *
+     * @param text   The text of the message seeding the new thread.
+     * @param tokens The number of tokens of the text.
+     */
+    public record CarryOver(String text, int tokens) {}
+
+    /**
+     * Constructs the assembler, counting the tokens of the system prompt once.
+     *
+     * @param tokenCounter        The counter used to measure prompts.
+     * @param meterRegistry       The registry where token usage is published.
+     * @param maxPromptTokens     The maximum number of tokens sent to OpenAI in a single request.
+     * @param maxCompletionTokens The maximum number of tokens of an answer.
+     */
+    public PromptAssembler(TokenCounter tokenCounter,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.chat.prompt.max-tokens:3000}") int maxPromptTokens,
+                           @Value("${app.chat.prompt.max-completion-tokens:800}") int maxCompletionTokens) {
+        this.tokenCounter = tokenCounter;
+        this.systemPromptTokens = TOKENS_PER_MESSAGE + tokenCounter.countTokens(SYSTEM_PROMPT);
+        this.maxPromptTokens = maxPromptTokens;
+        this.maxCompletionTokens = maxCompletionTokens;
+        if (systemPromptTokens >= maxPromptTokens) {
+            throw new IllegalStateException("The system prompt alone uses " + systemPromptTokens
+                    + " tokens, more than the budget of " + maxPromptTokens);
+        }
+        this.tokensIn = DistributionSummary.builder("solaria.chat.tokens")
+                .description("Tokens exchanged with OpenAI per request")
+                .baseUnit("tokens")
+                .tag("direction", "in")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.tokensOut = DistributionSummary.builder("solaria.chat.tokens")
+                .description("Tokens exchanged with OpenAI per request")
+                .baseUnit("tokens")
+                .tag("direction", "out")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.truncatedQuestions = Counter.builder("solaria.chat.questions.truncated")
+                .description("Questions cut to fit in the prompt budget")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the system prompt that defines SolarIA's role, its purpose and its guardrails.
+     *
+     * @return The system prompt.
+     */
+    public String systemPrompt() {
+        return SYSTEM_PROMPT;
+    }
+
+    /**
+     * Returns the maximum number of tokens sent to OpenAI in a single request.
+     *
+     * @return The prompt token budget.
+     */
+    public int maxPromptTokens() {
+        return maxPromptTokens;
+    }
+
+    /**
+     * Counts the tokens of a message, including the overhead OpenAI adds to every message.
+     *
+     * @param content The content of the message.
+     * @return The number of tokens of the message.
+     */
+    public int countMessageTokens(String content) {
+        return TOKENS_PER_MESSAGE + tokenCounter.countTokens(content);
+    }
+
+    /**
+     * Cuts a question to what fits in the prompt budget alongside the system prompt, so a question pasted with pages
+     * of text is still answered, from its beginning, without going over the budget.
+     *
+     * @param question The question asked by the user.
+     * @return The question itself if it fits, otherwise its beginning.
+     */
+    public String fitQuestion(String question) {
+        var maxTokens = maxPromptTokens - systemPromptTokens - TOKENS_PER_MESSAGE;
+        var fitted = tokenCounter.truncate(question, maxTokens);
+        if (fitted.length() < question.length()) {
+            truncatedQuestions.increment();
+        }
+        return fitted;
+    }
+
+    /**
+     * Assembles the prompt for a question: the system prompt, a summary of older turns if any had to be left out,
+     * the most recent turns that fit in the budget and the question itself, cut to the budget if it does not fit.
+     *
+     * @param question The question asked by the user.
+     * @param history  The previous turns of the conversation, oldest first.
+     * @return The assembled prompt.
+     */
+    public AssembledPrompt assemble(String question, List<ConversationTurn> history) {
+        var asked = fitQuestion(question);
+        var questionTokens = countMessageTokens(asked);
+        var available = maxPromptTokens - systemPromptTokens - questionTokens;
+
+        var kept = fitRecent(history, available);
+        var summary = "";
+        var summaryTokens = 0;
+        if (kept.size() < history.size()) {
+            // Reserve part of the budget for a summary of what is left out
+            var summaryBudget = Math.min(available / 4, 200);
+            kept = fitRecent(history, available - summaryBudget);
+            summary = summarize(history.subList(0, history.size() - kept.size()), summaryBudget);
+            summaryTokens = summary.isEmpty() ? 0 : countMessageTokens(summary);
+        }
+
+        var messages = new ArrayList<ChatMessage>(kept.size() + 3);
+        messages.add(new ChatMessage(ChatMessageRole.SYSTEM.value(), SYSTEM_PROMPT));
+        if (!summary.isEmpty()) {
+            messages.add(new ChatMessage(ChatMessageRole.SYSTEM.value(), summary));
+        }
+        var keptTokens = 0;
+        for (ConversationTurn turn : kept) {
+            messages.add(new ChatMessage(turn.role(), turn.content()));
+            keptTokens += countMessageTokens(turn.content());
+        }
+        messages.add(new ChatMessage(ChatMessageRole.USER.value(), asked));
+
+        var promptTokens = systemPromptTokens + summaryTokens + keptTokens + questionTokens;
+        return new AssembledPrompt(messages, promptTokens, maxCompletionTokens, history.size() - kept.size());
+    }
+
+    /**
+     * Builds the message that seeds a new thread with the context of a conversation that outgrew its previous one:
+     * a summary of older questions followed by the most recent turns, within half of the prompt budget.
+     *
+     * @param history The turns of the conversation, oldest first.
+     * @return The carried over context.
+     */
+    public CarryOver carryOver(List<ConversationTurn> history) {
+        var budget = maxPromptTokens / 2;
+        var summaryBudget = Math.min(budget / 4, 200);
+        var kept = fitRecent(history, budget - summaryBudget);
+        var summary = summarize(history.subList(0, history.size() - kept.size()), summaryBudget);
+
+        var text = new StringBuilder(CARRY_OVER_HEADER);
+        if (!summary.isEmpty()) {
+            text.append("\n").append(summary);
+        }
+        for (ConversationTurn turn : kept) {
+            text.append("\n")
+                    .append(ChatMessageRole.USER.value().equals(turn.role()) ? "Usuário: " : "SolarIA: ")
+                    .append(turn.content());
+        }
+        var content = text.toString();
+        return new CarryOver(content, countMessageTokens(content));
+    }
+
+    /**
+     * Records the tokens sent and received by a request.
+     *
+     * @param promptTokens The tokens sent to OpenAI.
+     * @param answer       The answer received.
+     * @return The number of tokens of the answer.
+     */
+    public int recordUsage(int promptTokens, String answer) {
+        var answerTokens = countMessageTokens(answer);
+        tokensIn.record(promptTokens);
+        tokensOut.record(answerTokens);
+        return answerTokens;
+    }
+
+    /**
+     * Selects the longest run of most recent turns whose tokens fit in the budget.
+     */
+    private List<ConversationTurn> fitRecent(List<ConversationTurn> history, int budget) {
+        var used = 0;
+        var first = history.size();
+        while (first > 0) {
+            var tokens = countMessageTokens(history.get(first - 1).content());
+            if (used + tokens > budget) {
+                break;
+            }
+            used += tokens;
+            first--;
+        }
+        return first == 0 ? history : history.subList(first, history.size());
+    }
+
+    /**
+     * Summarizes left out turns as a list of the questions asked in them, most recent first, within the budget.
+     * Answers are not summarized: the questions are what the assistant needs to keep the thread of the conversation.
+     */
+    private String summarize(List<ConversationTurn> dropped, int budget) {
+        var questions = new ArrayList<String>();
+        var used = countMessageTokens(SUMMARY_HEADER);
+        for (int i = dropped.size() - 1; i >= 0; i--) {
+            var turn = dropped.get(i);
+            if (!ChatMessageRole.USER.value().equals(turn.role())) {
+                continue;
+            }
+            var content = turn.content().strip();
+            var item = "- " + (content.length() > SUMMARY_ITEM_CHARS
+                    ? content.substring(0, SUMMARY_ITEM_CHARS) + "..."
+                    : content);
+            var tokens = tokenCounter.countTokens(item) + 1;  // One more for the line break
+            if (used + tokens > budget) {
+                break;
+            }
+            used += tokens;
+            questions.add(item);
+        }
+        if (questions.isEmpty()) {
+            return "";
+        }
+        Collections.reverse(questions);
+        return SUMMARY_HEADER + "\n" + String.join("\n", questions);
+    }
+}
@@ -0,0 +1,275 @@
+package unisolar.api.infra.openai;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.Flowable;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import unisolar.api.infra.exception.OpenAIUnavailableException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ResilientOpenAIClient guards the calls made to OpenAI, so a slow or failing upstream cannot tie up
+ * the request threads of the application:
+ * - a bulkhead bounds how many answers are requested from OpenAI at the same time; a call that cannot get a slot
+ *   within a short wait is rejected;
+ * - every call has a deadline: a blocking call runs on a thread of its own and is given up on once the deadline
+ *   has passed, whichever of its HTTP calls it is in, and a stream that does not deliver its first token, or does
+ *   not finish, in time is cut;
+ * - a circuit breaker rejects calls outright while OpenAI keeps failing, and lets a trial call through
+ *   once in a while to detect its recovery.
+ *
+ * Rejected, timed out and failed calls all surface as an {@link OpenAIUnavailableException}, so callers have
+ * a single failure to turn into a fallback answer. The latency of every call is published as a histogram,
+ * tagged by mode and outcome, together with the free bulkhead slots and the breaker state.
+ */
+@Component
+public class ResilientOpenAIClient {
+
+    private final OpenAIClient client;
+    private final Semaphore bulkhead;
+    private final ExecutorService executor;
+    private final Duration maxWait;
+    private final Duration callTimeout;
+    private final Duration firstTokenTimeout;
+    private final Duration streamTimeout;
+    private final CircuitBreaker breaker;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructs the resilient client.
+     *
+     * @param client               The client actually calling OpenAI.
+     * @param meterRegistry        The registry where call latency, bulkhead and breaker metrics are published.
+     * @param maxConcurrent        The maximum number of calls to OpenAI in flight at the same time.
+     * @param maxWait              How long a call waits for a free slot before being rejected.
+     * @param callTimeout          The deadline of a blocking call.
+     * @param firstTokenTimeout    How long a stream may take to deliver its first token.
+     * @param streamTimeout        The deadline of a whole stream.
+     * @param windowSize           The number of recent calls considered by the circuit breaker.
+     * @param minimumCalls         The number of recent calls needed before the circuit breaker may open.
+     * @param failureRateThreshold The failure rate, between 0 and 1, at which the circuit breaker opens.
+     * @param openDuration         How long the circuit breaker stays open before allowing a trial call.
+     */
+    public ResilientOpenAIClient(OpenAIClient client,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.openai.bulkhead.max-concurrent:20}") int maxConcurrent,
+                                 @Value("${app.openai.bulkhead.max-wait:500ms}") Duration maxWait,
+                                 @Value("${app.openai.timeout.call:45s}") Duration callTimeout,
+                                 @Value("${app.openai.timeout.first-token:15s}") Duration firstTokenTimeout,
+                                 @Value("${app.openai.timeout.stream:90s}") Duration streamTimeout,
+                                 @Value("${app.openai.circuit.window-size:20}") int windowSize,
+                                 @Value("${app.openai.circuit.minimum-calls:10}") int minimumCalls,
+                                 @Value("${app.openai.circuit.failure-rate-threshold:0.5}") double failureRateThreshold,
+                                 @Value("${app.openai.circuit.open-duration:30s}") Duration openDuration) {
+        this.client = client;
+        this.meterRegistry = meterRegistry;
+        this.bulkhead = new Semaphore(maxConcurrent, true);
+        var count = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "openai-call-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxWait = maxWait;
+        this.callTimeout = callTimeout;
+        this.firstTokenTimeout = firstTokenTimeout;
+        this.streamTimeout = streamTimeout;
+        this.breaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, openDuration);
+
+        Gauge.builder("solaria.openai.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .description("Free slots for calls to OpenAI")
+                .register(meterRegistry);
+        Gauge.builder("solaria.openai.circuit.state", breaker, b -> b.state().ordinal())
+                .description("State of the OpenAI circuit breaker: 0 closed, 1 half open, 2 open")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sends a chat completion request through the bulkhead and circuit breaker, within the call deadline.
+     * The call runs on a thread of its own, so the caller gets its answer or a failure by the deadline even if
+     * an HTTP call hangs. A call given up on is interrupted, and holds its bulkhead slot until it has actually ended.
+     *
+     * @param conversationKey The key of the conversation the request belongs to.
+     * @param data            The data containing system and user prompts to send to the OpenAI API.
+     * @return The response from the assistant.
+     * @throws OpenAIUnavailableException If the call is rejected, times out or fails.
+     */
+    public String sendChatCompletionRequest(String conversationKey, ChatCompletionRequestData data) {
+        var startedAt = System.nanoTime();
+        acquire("blocking", startedAt);
+
+        var deadline = Instant.now().plus(callTimeout);
+        Future<String> future;
+        try {
+            future = executor.submit(() -> {
+                try {
+                    return client.sendChatCompletionRequest(conversationKey, data, deadline);
+                } finally {
+                    bulkhead.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            bulkhead.release();
+            breaker.onIgnored();
+            record("blocking", "rejected", startedAt);
+            throw new OpenAIUnavailableException("OpenAI client is shutting down", e);
+        }
+
+        try {
+            var answer = future.get(Math.max(0, Duration.between(Instant.now(), deadline).toNanos()),
+                    TimeUnit.NANOSECONDS);
+            breaker.onSuccess();
+            record("blocking", "success", startedAt);
+            return answer;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            breaker.onFailure();
+            record("blocking", "timeout", startedAt);
+            throw new OpenAIUnavailableException("OpenAI call did not complete before the deadline", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            breaker.onIgnored();
+            record("blocking", "cancelled", startedAt);
+            throw new OpenAIUnavailableException("Interrupted while waiting for OpenAI", e);
+        } catch (ExecutionException e) {
+            breaker.onFailure();
+            if (e.getCause() instanceof OpenAIUnavailableException unavailable) {
+                record("blocking", "timeout", startedAt);
+                throw unavailable;
+            }
+            record("blocking", "failure", startedAt);
+            throw new OpenAIUnavailableException("OpenAI call failed", e.getCause());
+        }
+    }
+
+    /**
+     * Streams a chat completion through the bulkhead and circuit breaker. The bulkhead slot is held from
+     * subscription until the stream terminates or is cancelled.
+     *
+     * @param prompt The prompt to send.
+     * @return A Flowable emitting the answer deltas, failing with an {@link OpenAIUnavailableException}
+     *         if the call is rejected, times out or fails.
+     */
+    public Flowable<String> streamChatCompletion(PromptAssembler.AssembledPrompt prompt) {
+        return Flowable.defer(() -> {
+            var startedAt = System.nanoTime();
+            var deadline = startedAt + streamTimeout.toNanos();
+            var finished = new AtomicBoolean(false);
+
+            return Flowable.using(
+                    () -> {
+                        acquire("stream", startedAt);
+                        return bulkhead;
+                    },
+                    slot -> client.streamChatCompletion(prompt)
+                            .timeout(Flowable.timer(firstTokenTimeout.toNanos(), TimeUnit.NANOSECONDS),
+                                    delta -> Flowable.timer(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+                            .doOnComplete(() -> {
+                                if (finished.compareAndSet(false, true)) {
+                                    breaker.onSuccess();
+                                    record("stream", "success", startedAt);
+                                }
+                            })
+                            .onErrorResumeNext(error -> {
+                                if (finished.compareAndSet(false, true)) {
+                                    breaker.onFailure();
+                                    record("stream", error instanceof TimeoutException ? "timeout" : "failure", startedAt);
+                                }
+                                return Flowable.error(new OpenAIUnavailableException("OpenAI stream failed", error));
+                            })
+                            .doOnCancel(() -> {
+                                if (finished.compareAndSet(false, true)) {
+                                    breaker.onIgnored();
+                                    record("stream", "cancelled", startedAt);
+                                }
+                            }),
+                    Semaphore::release);
+        });
+    }
+
+    /**
+     * Returns the estimated number of tokens accumulated in the thread of a conversation, which a blocking call
+     * sends again with its question.
+     *
+     * @param conversationKey The key of the conversation.
+     * @return The number of tokens, or 0 if the conversation has no thread.
+     */
+    public int threadTokenCount(String conversationKey) {
+        return client.threadTokenCount(conversationKey);
+    }
+
+    /**
+     * Adds to the thread of a conversation an exchange answered outside of it, from the cache or by the run of another
+     * conversation. Posting it is a short HTTP call, not a run, so it takes no bulkhead slot.
+     *
+     * @param conversationKey The key of the conversation.
+     * @param question        The question asked in the conversation.
+     * @param answer          The answer given to it.
+     */
+    public void appendExchange(String conversationKey, String question, String answer) {
+        client.appendExchange(conversationKey, question, answer);
+    }
+
+    /**
+     * Deletes the thread of a conversation, if it exists.
+     *
+     * @param conversationKey The key of the conversation.
+     */
+    public void deleteThread(String conversationKey) {
+        client.deleteThread(conversationKey);
+    }
+
+    /**
+     * Takes a bulkhead slot for a call, failing fast if the circuit breaker is open or no slot frees up in time.
+     */
+    private void acquire(String mode, long startedAt) {
+        if (!breaker.tryAcquire()) {
+            record(mode, "rejected", startedAt);
+            throw new OpenAIUnavailableException("OpenAI circuit breaker is open");
+        }
+
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            breaker.onIgnored();
+            record(mode, "rejected", startedAt);
+            throw new OpenAIUnavailableException("Too many calls to OpenAI in flight");
+        }
+    }
+
+    private void record(String mode, String outcome, long startedAt) {
+        Timer.builder("solaria.openai.calls")
+                .description("Latency of calls to OpenAI")
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+}
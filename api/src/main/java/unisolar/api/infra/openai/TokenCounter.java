@@ -33,4 +33,16 @@ public class TokenCounter {
     public int countTokens(String message) {
         return encoding.countTokens(message);
     }
+
+    /**
+     * Cuts a message to its first tokens, based on the GPT-4 model's encoding.
+     *
+     * @param message   The message to cut.
+     * @param maxTokens The maximum number of tokens to keep.
+     * @return The message itself if it has at most maxTokens tokens, otherwise the text of its first maxTokens tokens.
+     */
+    public String truncate(String message, int maxTokens) {
+        var result = encoding.encode(message, Math.max(0, maxTokens));
+        return result.isTruncated() ? encoding.decode(result.getTokens()) : message;
+    }
 }
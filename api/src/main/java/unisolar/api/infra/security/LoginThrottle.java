@@ -0,0 +1,79 @@
+package unisolar.api.infra.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import unisolar.api.infra.exception.LoginThrottledException;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * LoginThrottle limits how often logins are attempted for the same username and from the same address, so that
+ * credential stuffing is turned away before any user is read or any password is hashed, the most expensive work
+ * this API does.
+ *
+ * Each username and each address has a token bucket: a burst of attempts is allowed, then one more every refill
+ * interval. Buckets are kept in TokenBucketSketch instances, in a fixed amount of memory however many usernames and
+ * addresses are seen (about 3.5 MB with the default width), and without locks. Addresses get a deeper sketch, with
+ * a larger burst, since many distinct ones are expected and several users may share one. An address out of tokens
+ * does not spend the username's.
+ *
+ * The address is the one of the connection; addresses forwarded by a proxy are only taken into account when
+ * the server is configured to trust them (server.forward-headers-strategy), so that clients cannot choose theirs.
+ */
+@Component
+public class LoginThrottle {
+
+    private final TokenBucketSketch usernames;
+    private final TokenBucketSketch addresses;
+    private final Counter throttledUsernames;
+    private final Counter throttledAddresses;
+
+    /**
+     * Constructs the throttle.
+     *
+     * @param meterRegistry          The registry where throttled attempts are published.
+     * @param usernameBurst          The attempts allowed in a row for a username.
+     * @param usernameRefillInterval How long a username waits for one more attempt, once its burst is spent.
+     * @param addressBurst           The attempts allowed in a row from an address.
+     * @param addressRefillInterval  How long an address waits for one more attempt, once its burst is spent.
+     * @param width                  The number of buckets per row of each sketch.
+     */
+    public LoginThrottle(MeterRegistry meterRegistry,
+                         @Value("${api.security.login-throttle.username.burst:5}") int usernameBurst,
+                         @Value("${api.security.login-throttle.username.refill-interval:12s}") Duration usernameRefillInterval,
+                         @Value("${api.security.login-throttle.address.burst:20}") int addressBurst,
+                         @Value("${api.security.login-throttle.address.refill-interval:1s}") Duration addressRefillInterval,
+                         @Value("${api.security.login-throttle.width:65536}") int width) {
+        this.usernames = new TokenBucketSketch(3, width, usernameBurst, usernameRefillInterval.toMillis());
+        this.addresses = new TokenBucketSketch(4, width, addressBurst, addressRefillInterval.toMillis());
+        this.throttledUsernames = Counter.builder("solaria.security.login.throttled").tag("by", "username").register(meterRegistry);
+        this.throttledAddresses = Counter.builder("solaria.security.login.throttled").tag("by", "address").register(meterRegistry);
+    }
+
+    /**
+     * Takes a login attempt from the budgets of the address and the username.
+     *
+     * @param username The username the login is attempted for.
+     * @param address  The address the login is attempted from.
+     * @throws LoginThrottledException If either has attempted too many logins lately.
+     */
+    public void acquire(String username, String address) {
+        if (address != null) {
+            var wait = addresses.tryAcquire(address);
+            if (wait > 0) {
+                throttledAddresses.increment();
+                throw new LoginThrottledException("Too many login attempts from this address, try again later",
+                        Duration.ofMillis(wait));
+            }
+        }
+        var wait = usernames.tryAcquire(username == null ? "" : username.strip().toLowerCase(Locale.ROOT));
+        if (wait > 0) {
+            throttledUsernames.increment();
+            throw new LoginThrottledException("Too many login attempts for this user, try again later",
+                    Duration.ofMillis(wait));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package unisolar.api.infra.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import unisolar.api.infra.exception.PasswordHashingUnavailableException;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * OffloadedPasswordEncoder hashes and checks passwords with BCrypt on a small dedicated pool of threads, rather than
+ * on the request threads.
+ *
+ * BCrypt is deliberately slow, and a burst of logins or registrations run inline would take every core and stall
+ * unrelated endpoints. Here, at most a fixed number of hashes run at a time, by default one per core minus one, and
+ * a bounded queue holds the ones waiting: when it is full, or a hash waits past its deadline, the request is
+ * rejected with a {@link PasswordHashingUnavailableException}, answered with 429 Too Many Requests. The request
+ * thread still waits for its own hash, but the CPU time spent hashing stays bounded.
+ *
+ * The BCrypt cost is calibrated at startup, as the highest one hashing within the target time on this machine,
+ * unless it is configured explicitly. Passwords hashed with a lower cost are rehashed on the next successful login
+ * (see {@link #upgradeEncoding} and AuthenticationService), so a raise of cost reaches every active user without
+ * a migration; hashes are never downgraded. The cost never goes below the configured minimum. Nodes with different
+ * CPUs calibrate different costs, so when more than one node runs, api.security.password.cost should be pinned:
+ * otherwise each user's hash ends up with the cost of the fastest node, and the slower ones take longer to check it.
+ *
+ * It is the application's PasswordEncoder: registration, password changes and the login path all go through it.
+ */
+@Component
+public class OffloadedPasswordEncoder implements PasswordEncoder {
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("\\A\\$2[abxy]?\\$(\\d\\d)\\$");
+
+    private final BCryptPasswordEncoder bcrypt;
+    private final int cost;
+    private final ThreadPoolExecutor executor;
+    private final Duration maxWait;
+    private final Counter rejections;
+
+    /**
+     * Constructs the encoder, calibrating the BCrypt cost unless one is given.
+     *
+     * @param meterRegistry  The registry where the cost, queue depth and rejections are published.
+     * @param configuredCost The BCrypt cost to use, or 0 to calibrate it.
+     * @param minCost        The lowest cost calibration may choose.
+     * @param maxCost        The highest cost calibration may choose.
+     * @param targetTime     How long a hash should take, calibration choosing the highest cost within it.
+     * @param threads        The number of hashing threads, or 0 for one per core minus one.
+     * @param queueCapacity  The number of hashes that may wait for a thread before requests are rejected.
+     * @param maxWait        How long a request waits for its hash before being rejected.
+     */
+    public OffloadedPasswordEncoder(MeterRegistry meterRegistry,
+                                    @Value("${api.security.password.cost:0}") int configuredCost,
+                                    @Value("${api.security.password.min-cost:10}") int minCost,
+                                    @Value("${api.security.password.max-cost:14}") int maxCost,
+                                    @Value("${api.security.password.target-hash-time:250ms}") Duration targetTime,
+                                    @Value("${api.security.password.threads:0}") int threads,
+                                    @Value("${api.security.password.queue-capacity:64}") int queueCapacity,
+                                    @Value("${api.security.password.max-wait:5s}") Duration maxWait) {
+        this.cost = configuredCost > 0 ? configuredCost : calibrate(minCost, maxCost, targetTime);
+        this.bcrypt = new BCryptPasswordEncoder(cost);
+        this.maxWait = maxWait;
+
+        var poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        var count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    var thread = new Thread(runnable, "password-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.rejections = Counter.builder("solaria.security.password.rejections").register(meterRegistry);
+        Gauge.builder("solaria.security.password.queue", executor, e -> e.getQueue().size())
+                .description("Password hashes waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("solaria.security.password.cost", () -> cost)
+                .description("BCrypt cost of new password hashes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the BCrypt cost of new password hashes.
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return offload(() -> bcrypt.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return offload(() -> bcrypt.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Tells whether a password was hashed with a lower cost than the current one, and should be hashed again.
+     * Hashes of a higher cost, made by a faster node or before the cost was lowered, are kept as they are.
+     *
+     * @param encodedPassword The stored hash.
+     * @return True if the hash is a BCrypt hash of a lower cost.
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        var matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) < cost;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs a hash on the hashing threads and waits for its result, within the deadline.
+     */
+    private <T> T offload(Callable<T> hash) {
+        Future<T> future;
+        try {
+            future = executor.submit(hash);
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            throw new PasswordHashingUnavailableException("Too many password checks in progress, try again later", e);
+        }
+        try {
+            return future.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            executor.purge();  // Frees its place in the queue if it had not started yet
+            rejections.increment();
+            throw new PasswordHashingUnavailableException("Password check did not complete in time, try again later", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingUnavailableException("Interrupted while checking a password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;  // e.g. an invalid hash, as thrown by BCrypt itself
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Chooses the highest cost hashing within the target time. Each step of cost doubles the time of a hash, so
+     * one timing at the minimum cost is enough to tell how many steps fit in the target.
+     */
+    private static int calibrate(int minCost, int maxCost, Duration targetTime) {
+        new BCryptPasswordEncoder(4).encode("warm-up");  // Loads and compiles the BCrypt code first
+        var encoder = new BCryptPasswordEncoder(minCost);
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < 2; i++) {
+            var start = System.nanoTime();
+            encoder.encode("calibration");
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        var steps = (int) Math.floor(Math.log((double) targetTime.toNanos() / fastest) / Math.log(2));
+        return Math.max(minCost, Math.min(maxCost, minCost + steps));
+    }
+}
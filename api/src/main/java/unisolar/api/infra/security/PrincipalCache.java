@@ -0,0 +1,141 @@
+package unisolar.api.infra.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * PrincipalCache keeps the users authenticated recently, so that requests carrying a token do not read the user from
+ * the database every time.
+ *
+ * Entries are keyed by username and live for a short time, and are dropped as soon as a change to the user is
+ * committed (see {@link UserChangedEvent}): a deactivated user loses access on the next request rather than when the
+ * entry expires. A load that raced with an invalidation is not cached, so a user read just before a change committed
+ * is never kept after it. The cache is bounded: when full, the entries expiring soonest are evicted first.
+ */
+@Component
+public class PrincipalCache {
+
+    private final Duration ttl;
+    private final int maxEntries;
+    private final Map<String, Entry> principals = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();  // Incremented on every invalidation
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * A cached user and when it expires.
+     */
+    private record Entry(UserDetails user, long expiresAt) {
+    }
+
+    /**
+     * Constructs the cache.
+     *
+     * @param meterRegistry The registry where hit and miss metrics and the cache size are published.
+     * @param ttl           How long a user is cached.
+     * @param maxEntries    The maximum number of users cached.
+     */
+    public PrincipalCache(MeterRegistry meterRegistry,
+                          @Value("${api.security.principal-cache.ttl:60s}") Duration ttl,
+                          @Value("${api.security.principal-cache.max-entries:10000}") int maxEntries) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.hits = Counter.builder("solaria.security.principal.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("solaria.security.principal.cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("solaria.security.principal.cache.size", principals, Map::size)
+                .description("Authenticated users cached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the user with the given username, from the cache or else from the loader.
+     *
+     * @param username The username.
+     * @param loader   Reads the user from the database, returning null if there is none.
+     * @return The user, or null if there is none.
+     */
+    public UserDetails get(String username, Function<String, UserDetails> loader) {
+        var now = System.currentTimeMillis();
+        var entry = principals.get(username);
+        if (entry != null && entry.expiresAt() > now) {
+            hits.increment();
+            return entry.user();
+        }
+        misses.increment();
+
+        var invalidationsBefore = invalidations.get();
+        var user = loader.apply(username);
+        if (user != null) {
+            principals.put(username, new Entry(user, now + ttl.toMillis()));
+            // An invalidation during the load may have been for this user, read before the change committed
+            if (invalidations.get() != invalidationsBefore) {
+                principals.remove(username);
+            } else if (principals.size() > maxEntries) {
+                evictExpiringSoonest();
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Drops a user once a change to it is committed, or right away if it was made outside a transaction.
+     *
+     * @param event The change.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        invalidations.incrementAndGet();
+        if (event.username() != null) {
+            principals.remove(event.username());
+        }
+    }
+
+    /**
+     * Periodically removes expired users.
+     */
+    @Scheduled(fixedDelayString = "${api.security.principal-cache.sweep-interval:60000}")
+    public void evictExpired() {
+        var now = System.currentTimeMillis();
+        principals.forEach((username, entry) -> {
+            if (entry.expiresAt() <= now) {
+                principals.remove(username, entry);
+            }
+        });
+    }
+
+    /**
+     * Evicts the tenth of the cache expiring soonest, so the cost of scanning it is spread over many insertions.
+     * Only one thread evicts at a time; the others carry on.
+     */
+    private void evictExpiringSoonest() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            var excess = principals.size() - maxEntries + Math.max(1, maxEntries / 10);
+            principals.entrySet().stream()
+                    .sorted(Comparator.comparingLong(e -> e.getValue().expiresAt()))
+                    .limit(Math.max(excess, 0))
+                    .toList()
+                    .forEach(e -> principals.remove(e.getKey(), e.getValue()));
+        } finally {
+            evicting.set(false);
+        }
+    }
+}
@@ -8,8 +8,6 @@ import org.springframework.security.config.annotation.authentication.configurati
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
@@ -19,6 +17,7 @@ import java.util.List;
 /**
  * SecurityConfigurations is a configuration class that sets up the security settings for the application.
  * It configures authentication, authorization, CORS, and session management, ensuring the security of the API.
+ * Passwords are encoded by the OffloadedPasswordEncoder component, off the request threads.
  */
 @Configuration
 @EnableWebSecurity
@@ -68,14 +67,4 @@ public class SecurityConfigurations {
     public AuthenticationManager authenticationManager(AuthenticationConfiguration configuration) throws Exception {
         return configuration.getAuthenticationManager();
     }
-
-    /**
-     * Provides the PasswordEncoder bean, which is used for encoding passwords before storing them in the database.
-     *
-     * @return PasswordEncoder instance (BCryptPasswordEncoder).
-     */
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();  // Using BCrypt for password encoding
-    }
 }
@@ -5,18 +5,28 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import unisolar.api.domain.repository.UserRepository;
 import unisolar.api.service.TokenService;
 
 import java.io.IOException;
+import java.util.Collection;
 
 /**
  * SecurityFilter is a custom filter that is executed once per request to process security-related actions.
  * It retrieves the JWT token from the request header, validates it, and sets the corresponding authentication in the security context.
+ * Users are read through the PrincipalCache, so most requests authenticate without a database query; users that no
+ * longer exist or were deactivated are not authenticated.
+ *
+ * When self-contained tokens are enabled, the user is instead rebuilt from the token's claims, with no lookup at
+ * all, and rejected if its token version was revoked since (see TokenVersionRegistry). Tokens issued without these
+ * claims, and every token until the registry has read the versions, still go through the PrincipalCache.
  */
 @Component
 public class SecurityFilter extends OncePerRequestFilter {
@@ -27,6 +37,15 @@ public class SecurityFilter extends OncePerRequestFilter {
     @Autowired
     private UserRepository repository;  // Repository to fetch user details from the database
 
+    @Autowired
+    private PrincipalCache principals;  // Users authenticated recently
+
+    @Autowired
+    private TokenVersionRegistry tokenVersions;  // Current token version of each user
+
+    @Value("${api.security.token.self-contained:false}")
+    private boolean selfContained;  // Whether users are authenticated from the token's claims alone
+
     /**
      * This method is executed for each incoming HTTP request. It retrieves the JWT token from the request header,
      * validates it, and sets the authentication context for the user associated with the token.
@@ -41,14 +60,34 @@ public class SecurityFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         var tokenJWT = retrieveToken(request);  // Retrieve the JWT token from the request
         if(tokenJWT != null) {
-            var subject = tokenService.getSubject(tokenJWT);  // Extract the subject (username) from the token
-            var user = repository.findByUsername(subject);  // Fetch the user from the database
-            var authentication = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());  // Create authentication object
-            SecurityContextHolder.getContext().setAuthentication(authentication);  // Set the authentication in the security context
+            var token = tokenService.verify(tokenJWT);  // Verify the token, or fetch it from the verified tokens
+            var principal = selfContained && tokenVersions.isReady() ? tokenService.principal(token) : null;
+            if (principal != null) {
+                // Self-contained token: only its version is checked, in memory
+                if (tokenVersions.isCurrent(principal.getId(), principal.getTokenVersion())) {
+                    authenticate(principal, tokenService.authorities(token));
+                }
+            } else {
+                var user = principals.get(token.subject(), repository::findByUsername);  // Fetch the user, from the database on a cache miss
+                if (user != null && user.isEnabled()) {
+                    authenticate(user, user.getAuthorities());
+                }
+            }
         }
         filterChain.doFilter(request, response);  // Continue with the filter chain
     }
 
+    /**
+     * Sets the authentication of a user in the security context.
+     *
+     * @param user        The authenticated user.
+     * @param authorities The authorities granted to the user.
+     */
+    private void authenticate(UserDetails user, Collection<? extends GrantedAuthority> authorities) {
+        var authentication = new UsernamePasswordAuthenticationToken(user, null, authorities);  // Create authentication object
+        SecurityContextHolder.getContext().setAuthentication(authentication);  // Set the authentication in the security context
+    }
+
     /**
      * Retrieves the JWT token from the Authorization header of the HTTP request.
      *
@@ -0,0 +1,147 @@
+package unisolar.api.infra.security;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TokenBucketSketch rate-limits an unbounded number of keys (usernames, IP addresses) in a fixed amount of memory,
+ * without locks.
+ *
+ * It works like a count-min sketch whose counters are token buckets: a few rows of buckets, each key hashing to one
+ * bucket per row. Keys sharing a bucket drain it together, so the bucket of a key in any row holds at most the tokens
+ * its own bucket would: the key has as many tokens as its emptiest bucket. Taking one takes a token from each of its
+ * buckets, each with its own compare-and-set; if one of them is empty, the tokens already taken from the others are
+ * given back and the key is refused. A key thus never gets more than its own burst, however many requests race for
+ * it, and is throttled sooner only when a busier key drains one of its buckets, which the width of the rows makes
+ * unlikely; the long tail of keys costs nothing.
+ *
+ * Each bucket is a single long, holding the tokens left, in thousandths, and when they were last counted; it is
+ * refilled lazily and updated with a compare-and-set, so concurrent requests never block each other. Keys are
+ * hashed with a random seed, so collisions cannot be crafted to throttle someone else's key.
+ */
+public class TokenBucketSketch {
+
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long ONE_TOKEN = 1000;  // Tokens are counted in thousandths
+
+    private final int depth;
+    private final int width;
+    private final AtomicLongArray buckets;  // depth rows of width buckets: tokens left | time counted << TOKEN_BITS
+    private final long[] seeds;
+    private final long capacity;            // In thousandths of tokens
+    private final long refillMillis;        // Time to regain one token
+    private final long base;                // Origin of the times kept in buckets
+
+    /**
+     * Constructs a sketch where every bucket starts full.
+     *
+     * @param depth        The number of rows, each key having one bucket per row.
+     * @param width        The number of buckets per row, rounded up to a power of two.
+     * @param capacity     The number of tokens a bucket holds when full, i.e. the burst allowed to a key.
+     * @param refillMillis How long it takes a bucket to regain one token.
+     */
+    public TokenBucketSketch(int depth, int width, int capacity, long refillMillis) {
+        this.depth = depth;
+        this.width = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        this.buckets = new AtomicLongArray(depth * this.width);
+        this.capacity = Math.min(capacity * ONE_TOKEN, TOKEN_MASK);
+        this.refillMillis = Math.max(1, refillMillis);
+        // Far enough in the past for an empty bucket, counted at time 0, to have refilled completely
+        this.base = System.currentTimeMillis() - (capacity + 1) * this.refillMillis;
+        var random = new SecureRandom();
+        this.seeds = new long[depth + 1];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Takes a token for a key, if it has one left.
+     *
+     * @param key The key.
+     * @return 0 if a token was taken, or else how many milliseconds until the key regains one.
+     */
+    public long tryAcquire(String key) {
+        var hash = hash(key);
+        var now = System.currentTimeMillis() - base;
+        var slots = new int[depth];
+        for (int row = 0; row < depth; row++) {
+            slots[row] = row * width + (int) (mix(hash ^ seeds[row + 1]) & (width - 1));
+            var wait = take(slots[row], now);
+            if (wait > 0) {
+                for (int taken = 0; taken < row; taken++) {
+                    refund(slots[taken], now);
+                }
+                return wait;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Takes a token from a bucket, returning 0, or else how many milliseconds until it has one.
+     */
+    private long take(int slot, long now) {
+        while (true) {
+            var bucket = buckets.get(slot);
+            var tokens = tokens(bucket, now);
+            if (tokens < ONE_TOKEN) {
+                return (ONE_TOKEN - tokens) * refillMillis / ONE_TOKEN + 1;
+            }
+            if (buckets.compareAndSet(slot, bucket, (counted(bucket, now) << TOKEN_BITS) | (tokens - ONE_TOKEN))) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken from a bucket.
+     */
+    private void refund(int slot, long now) {
+        while (true) {
+            var bucket = buckets.get(slot);
+            var tokens = Math.min(capacity, tokens(bucket, now) + ONE_TOKEN);
+            if (buckets.compareAndSet(slot, bucket, (counted(bucket, now) << TOKEN_BITS) | tokens)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the time the tokens of a bucket are counted at when updated: now, unless another request counted them
+     * later already. Time never goes back, even if the clock does.
+     */
+    private static long counted(long bucket, long now) {
+        return Math.max(now, bucket >>> TOKEN_BITS);
+    }
+
+    /**
+     * Returns the tokens of a bucket, in thousandths, once refilled for the time elapsed since they were counted.
+     */
+    private long tokens(long bucket, long now) {
+        var elapsed = Math.max(0, now - (bucket >>> TOKEN_BITS));
+        var refilled = elapsed >= capacity * refillMillis / ONE_TOKEN ? capacity : elapsed * ONE_TOKEN / refillMillis;
+        return Math.min(capacity, (bucket & TOKEN_MASK) + refilled);
+    }
+
+    private long hash(String key) {
+        long hash = seeds[0];
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Scrambles the bits of a hash (the finalizer of MurmurHash3).
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
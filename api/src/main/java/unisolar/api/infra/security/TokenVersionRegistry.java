@@ -0,0 +1,118 @@
+package unisolar.api.infra.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import unisolar.api.domain.dto.securityDTO.TokenVersionData;
+import unisolar.api.domain.repository.UserRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TokenVersionRegistry knows the current token version of every user, so that a self-contained token can be checked
+ * for revocation without reading the user from the database.
+ *
+ * Only users whose tokens were revoked at least once are kept, every other user being at the initial version 0:
+ * the map stays as small as the number of password changes and deactivations. It is read without locking on every
+ * request, and refreshed in the background with the versions changed since the previous refresh. Changes made on
+ * this node are applied as soon as they commit; changes made on other nodes are seen on the next refresh.
+ *
+ * Until the first refresh succeeds, the registry is not ready, and tokens must be checked against the database.
+ */
+@Component
+public class TokenVersionRegistry {
+
+    private final UserRepository repository;
+    private final Duration overlap;
+    private final Map<Long, Integer> versions = new ConcurrentHashMap<>();  // User ID -> token version, if above 0
+    private final Counter failedRefreshes;
+    private volatile boolean ready;
+    private LocalDateTime refreshedAt;  // Start of the last successful refresh; guarded by refresh
+
+    /**
+     * Constructs the registry.
+     *
+     * @param repository    The repository the versions are read from.
+     * @param meterRegistry The registry where the number of versions kept and failed refreshes are published.
+     * @param overlap       How far before the previous refresh changes are read again, so that changes committed
+     *                      late, or stamped by a node whose clock lags, are not missed.
+     */
+    public TokenVersionRegistry(UserRepository repository,
+                                MeterRegistry meterRegistry,
+                                @Value("${api.security.token.version-refresh-overlap:1m}") Duration overlap) {
+        this.repository = repository;
+        this.overlap = overlap;
+        this.failedRefreshes = Counter.builder("solaria.security.token.version.refreshes")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+        Gauge.builder("solaria.security.token.versions", versions, Map::size)
+                .description("Users whose tokens were revoked")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns whether the versions were read at least once, so that {@link #isCurrent} can be trusted.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Checks whether a token version is the current one of a user.
+     *
+     * @param userId       The ID of the user.
+     * @param tokenVersion The version carried by the token.
+     * @return True if the token was not revoked since it was issued.
+     */
+    public boolean isCurrent(Long userId, int tokenVersion) {
+        return tokenVersion >= versions.getOrDefault(userId, 0);
+    }
+
+    /**
+     * Periodically reads the versions changed since the previous refresh; the first refresh reads them all.
+     */
+    @Scheduled(fixedDelayString = "${api.security.token.version-refresh-interval:5000}")
+    public synchronized void refresh() {
+        var startedAt = LocalDateTime.now();
+        var since = refreshedAt == null ? LocalDateTime.of(1970, 1, 1, 0, 0) : refreshedAt.minus(overlap);
+        try {
+            for (TokenVersionData data : repository.findTokenVersionsChangedSince(since)) {
+                update(data.userId(), data.tokenVersion());
+            }
+            refreshedAt = startedAt;
+            ready = true;
+        } catch (DataAccessException e) {
+            failedRefreshes.increment();  // The versions read so far stay in use until the next refresh
+        }
+    }
+
+    /**
+     * Applies a revocation made on this node once it commits, without waiting for the next refresh.
+     *
+     * @param event The change.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.userId() != null) {
+            update(event.userId(), event.tokenVersion());
+        }
+    }
+
+    /**
+     * Records a version, unless a later one is already known: versions only go up.
+     */
+    private void update(Long userId, int tokenVersion) {
+        if (tokenVersion > 0) {
+            versions.merge(userId, tokenVersion, Math::max);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package unisolar.api.infra.security;
+
+/**
+ * Event published when a user's account changes in a way that affects authentication, such as being deactivated
+ * or having its username or password changed. Listeners holding a copy of the user drop it once the change is
+ * committed.
+ *
+ * @param userId       the ID of the user.
+ * @param username     a username the user was known by before the change (or after it, if it changed).
+ * @param tokenVersion the version of the user's tokens after the change.
+ */
+public record UserChangedEvent(Long userId, String username, int tokenVersion) {}
@@ -0,0 +1,18 @@
+package unisolar.api.infra.security;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The subject and claims of a JWT token that passed verification. The token itself is not kept, so that what is
+ * cached of a token cannot be sent back as one.
+ *
+ * @param subject   the username the token was issued to.
+ * @param userId    the ID of the user, or null if the token predates this claim.
+ * @param name      the name of the user, or null if the token carries none.
+ * @param roles     the authorities the token grants, none if it carries none.
+ * @param version   the token version the token was issued with, or null if the token predates this claim.
+ * @param expiresAt when the token expires, or null if it never does.
+ */
+public record VerifiedToken(String subject, Long userId, String name, List<String> roles, Integer version,
+                            Instant expiresAt) {}
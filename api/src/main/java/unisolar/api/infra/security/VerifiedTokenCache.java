@@ -0,0 +1,143 @@
+package unisolar.api.infra.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * VerifiedTokenCache remembers the JWT tokens whose signature was already verified, so that the requests a client
+ * sends with the same token during its lifetime skip the signature check and the parsing of the token.
+ *
+ * Tokens are keyed by their SHA-256 hash, and only their subject and claims are kept (see {@link VerifiedToken}),
+ * so the cache never holds a usable token; each entry expires when its token does. The cache is bounded: when full,
+ * the entries expiring soonest are evicted first, and expired entries are swept periodically.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    // A MessageDigest is not thread-safe, and creating one on every request costs more than hashing a token
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);  // Required of every Java platform
+        }
+    });
+
+    private final int maxEntries;
+    private final Map<TokenHash, VerifiedToken> tokens = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * The SHA-256 hash of a token, as four longs rather than an array, so it can key a map.
+     */
+    private record TokenHash(long a, long b, long c, long d) {
+    }
+
+    /**
+     * Constructs the cache.
+     *
+     * @param meterRegistry The registry where hit and miss metrics and the cache size are published.
+     * @param maxEntries    The maximum number of tokens cached.
+     */
+    public VerifiedTokenCache(MeterRegistry meterRegistry,
+                              @Value("${api.security.token.cache.max-entries:10000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.hits = Counter.builder("solaria.security.token.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("solaria.security.token.cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("solaria.security.token.cache.size", tokens, Map::size)
+                .description("Verified tokens cached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns a token verified earlier, if it has not expired since.
+     *
+     * @param token The token, as sent by the client.
+     * @return The subject and claims of the token, or null if it was not verified recently or has expired.
+     */
+    public VerifiedToken get(String token) {
+        var hash = hash(token);
+        var verified = tokens.get(hash);
+        if (verified == null) {
+            misses.increment();
+            return null;
+        }
+        if (!verified.expiresAt().isAfter(Instant.now())) {
+            tokens.remove(hash, verified);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return verified;
+    }
+
+    /**
+     * Caches a token that passed verification, until it expires. Tokens without an expiration are not cached.
+     *
+     * @param token    The token, as sent by the client.
+     * @param verified The subject and claims of the token.
+     */
+    public void put(String token, VerifiedToken verified) {
+        if (verified.expiresAt() == null) {
+            return;
+        }
+        tokens.put(hash(token), verified);
+        if (tokens.size() > maxEntries) {
+            evictExpiringSoonest();
+        }
+    }
+
+    /**
+     * Periodically removes expired tokens.
+     */
+    @Scheduled(fixedDelayString = "${api.security.token.cache.sweep-interval:60000}")
+    public void evictExpired() {
+        var now = Instant.now();
+        tokens.forEach((hash, verified) -> {
+            if (!verified.expiresAt().isAfter(now)) {
+                tokens.remove(hash, verified);
+            }
+        });
+    }
+
+    /**
+     * Evicts the tenth of the cache expiring soonest, so the cost of scanning it is spread over many insertions.
+     * Only one thread evicts at a time; the others carry on.
+     */
+    private void evictExpiringSoonest() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            var excess = tokens.size() - maxEntries + Math.max(1, maxEntries / 10);
+            tokens.entrySet().stream()
+                    .sorted(Comparator.comparing(e -> e.getValue().expiresAt()))
+                    .limit(Math.max(excess, 0))
+                    .toList()
+                    .forEach(e -> tokens.remove(e.getKey(), e.getValue()));
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static TokenHash hash(String token) {
+        var digest = ByteBuffer.wrap(SHA_256.get().digest(token.getBytes(StandardCharsets.UTF_8)));
+        return new TokenHash(digest.getLong(), digest.getLong(), digest.getLong(), digest.getLong());
+    }
+}
@@ -0,0 +1,197 @@
+package unisolar.api.infra.text;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * TextNormalizer provides the text folding shared by chat and search: lower-casing, accent removal,
+ * tokenization and Portuguese stop-word filtering, so that "Previsão", "previsao" and "PREVISAO" compare equal.
+ */
+public final class TextNormalizer {
+
+    /**
+     * What {@link #fold(char)} returns for a character folding to nothing, such as a letter outside the Latin
+     * alphabet. Never the fold of any character.
+     */
+    public static final char DROPPED = '\uFFFF';
+
+    // Fold of every character up to the end of Latin Extended-B, computed once so folding them allocates nothing
+    private static final char[] LATIN_FOLDS = new char[0x250];
+
+    static {
+        for (char c = 0; c < LATIN_FOLDS.length; c++) {
+            LATIN_FOLDS[c] = decompose(c);
+        }
+    }
+
+    // Common Portuguese words that carry no meaning on their own in a question
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "o", "as", "os", "um", "uma", "uns", "umas", "de", "da", "do", "das", "dos", "em", "na", "no",
+            "nas", "nos", "por", "pela", "pelo", "para", "pra", "com", "sem", "e", "ou", "que", "se", "como",
+            "qual", "quais", "quando", "onde", "eu", "meu", "minha", "meus", "minhas", "me", "voce", "seu", "sua",
+            "ao", "aos", "isso", "isto", "esse", "essa", "este", "esta", "ser", "ter", "tem", "mais", "muito",
+            "posso", "pode", "ha", "sobre", "ja", "nao", "sim");
+
+    // Words that change what a question asks, although they are stop words for search: negation and yes/no, and the
+    // interrogatives. "Quando devo usar a bateria?" and "Como devo usar a bateria?" are different questions.
+    private static final Set<String> POLARITY_WORDS = Set.of("nao", "nem", "nunca", "sim");
+    private static final Set<String> INTERROGATIVES = Set.of(
+            "como", "qual", "quais", "quando", "onde", "quanto", "quanta", "quantos", "quantas", "quem", "porque");
+
+    // Stems of words of the same meaning that no suffix stripping brings together, mapped to a common stem
+    private static final Map<String, String> STEM_ALIASES = Map.of(
+            "noturn", "noit",   // noturno, noturna -> noite
+            "diurn", "dia");    // diurno, diurna -> dia
+
+    // Longest suffixes first, so "izacao" is stripped before "cao"
+    private static final String[] SUFFIXES = {
+            "izacao", "amento", "imento", "mente", "idade", "acao", "ador", "avel", "ivel", "izar", "ismo",
+            "ista", "ando", "endo", "indo", "cao", "ico", "ica", "izo", "iza", "ar", "er", "ir", "ia", "io",
+            "a", "e", "o"
+    };
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Folds text for comparison: lower-cases it and removes accents and any other non-ASCII characters, one
+     * character at a time as {@link #fold(char)} does. Text already folded is returned as is.
+     *
+     * @param text The text to fold.
+     * @return The folded text.
+     */
+    public static String fold(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            if (c > 127 || (c >= 'A' && c <= 'Z')) {
+                var folded = new StringBuilder(text.length()).append(text, 0, i);
+                for (; i < text.length(); i++) {
+                    c = fold(text.charAt(i));
+                    if (c != DROPPED) {
+                        folded.append(c);
+                    }
+                }
+                return folded.toString();
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Folds a single character: lower-cased and without accent, for callers comparing text one character at a
+     * time without folding it first. Latin letters are folded without allocating.
+     *
+     * @param c The character to fold.
+     * @return The folded character, always ASCII, or {@link #DROPPED} if the character folds to nothing.
+     */
+    public static char fold(char c) {
+        return c < LATIN_FOLDS.length ? LATIN_FOLDS[c] : decompose(c);
+    }
+
+    /**
+     * Folds a character by lower-casing it and keeping the ASCII character of its canonical decomposition:
+     * the base letter of an accented one.
+     */
+    private static char decompose(char c) {
+        var lower = Character.toLowerCase(c);
+        if (lower < 128) {
+            return lower;
+        }
+        var decomposed = Normalizer.normalize(String.valueOf(lower), Normalizer.Form.NFD);
+        for (int i = 0; i < decomposed.length(); i++) {
+            if (decomposed.charAt(i) < 128) {
+                return decomposed.charAt(i);
+            }
+        }
+        return DROPPED;
+    }
+
+    /**
+     * Splits folded text into its alphanumeric tokens.
+     *
+     * @param folded Text already folded by {@link #fold(String)}.
+     * @return The tokens, in order of appearance.
+     */
+    public static List<String> tokenize(String folded) {
+        var tokens = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean alphanumeric = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (alphanumeric && start < 0) {
+                start = i;
+            } else if (!alphanumeric && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Checks whether a folded token is a Portuguese stop word.
+     *
+     * @param token The folded token.
+     * @return true if the token should be ignored when comparing meaning.
+     */
+    public static boolean isStopWord(String token) {
+        return STOP_WORDS.contains(token);
+    }
+
+    /**
+     * Checks whether a folded token changes what a question asks (negation, yes/no or an interrogative), so that
+     * questions differing only by it are not taken for one another.
+     *
+     * @param token The folded token.
+     * @return true if the token must be kept when comparing the meaning of questions.
+     */
+    public static boolean isIntentWord(String token) {
+        return POLARITY_WORDS.contains(token) || INTERROGATIVES.contains(token);
+    }
+
+    /**
+     * Checks whether a folded token is an interrogative ("como", "quando"...), the intent words a question may
+     * leave out without asking something else: "Devo usar a bateria à noite?" asks what "Como devo usar a bateria à
+     * noite?" does, but not what "Quando devo usar a bateria?" does.
+     *
+     * @param token The folded token.
+     * @return true if the token is an interrogative.
+     */
+    public static boolean isInterrogative(String token) {
+        return INTERROGATIVES.contains(token);
+    }
+
+    /**
+     * Reduces a folded Portuguese token to an approximate stem by stripping its plural and its most common
+     * derivational and verbal suffixes, so "economia", "economizar" and "economias" share the stem "econom".
+     * Stems are never shortened below three characters. A few words of the same meaning but of different roots share
+     * a stem too, such as "noite" and "noturno".
+     *
+     * @param token The folded token.
+     * @return The stem of the token.
+     */
+    public static String stem(String token) {
+        var word = token;
+
+        // Plural forms
+        if (word.length() > 4 && word.endsWith("coes")) {
+            word = word.substring(0, word.length() - 4) + "cao";
+        } else if (word.length() > 4 && word.endsWith("oes")) {
+            word = word.substring(0, word.length() - 3) + "ao";
+        } else if (word.length() > 4 && word.endsWith("eis")) {
+            word = word.substring(0, word.length() - 3) + "el";
+        } else if (word.length() > 3 && word.endsWith("s")) {
+            word = word.substring(0, word.length() - 1);
+        }
+
+        for (String suffix : SUFFIXES) {
+            if (word.length() - suffix.length() >= 3 && word.endsWith(suffix)) {
+                word = word.substring(0, word.length() - suffix.length());
+                break;
+            }
+        }
+        return STEM_ALIASES.getOrDefault(word, word);
+    }
+}
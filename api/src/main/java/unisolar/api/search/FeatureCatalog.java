@@ -0,0 +1,84 @@
+package unisolar.api.search;
+
+import unisolar.api.infra.text.TextNormalizer;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * FeatureCatalog is an immutable snapshot of the feature catalog together with the indexes built over it.
+ *
+ * A snapshot is never modified once built: a new catalog is published as a new snapshot, replacing the previous one
+ * in a single reference swap. Searches running on the old snapshot finish on it undisturbed, and no search ever
+ * sees a half-built index.
+ *
+ * Every index identifies a feature by its position in the features of the snapshot. These are kept in folded
+ * name order, so the features matching a name prefix are a single range of positions.
+ *
+ * @param features      The features of the catalog, in name order (ignoring case and accents).
+ * @param prefixIndex   The index answering prefix searches over the names.
+ * @param fuzzyIndex    The index answering typo- and accent-tolerant searches.
+ * @param textIndex     The index answering full-text searches, ranked by BM25.
+ * @param nameIndex     The frozen index answering exact lookups by name.
+ * @param categoryIndex The index of the features of each category, for filters and facets.
+ * @param version       The number of the snapshot, incremented on every reload.
+ * @param loadedAt      When the snapshot was built.
+ */
+public record FeatureCatalog(List<FeatureSearchTree.Feature> features,
+                             FeaturePrefixIndex prefixIndex,
+                             FeatureFuzzyIndex fuzzyIndex,
+                             FeatureTextIndex textIndex,
+                             FrozenFeatureIndex nameIndex,
+                             FeatureCategoryIndex categoryIndex,
+                             long version,
+                             Instant loadedAt) {
+
+    /**
+     * Builds a snapshot and its indexes from a list of features, prefix searches returning them in name order.
+     *
+     * @param features   The features of the catalog.
+     * @param maxResults The maximum number of features returned by a prefix search.
+     * @param version    The number of the snapshot.
+     * @return The snapshot.
+     */
+    public static FeatureCatalog build(List<FeatureSearchTree.Feature> features, int maxResults, long version) {
+        return build(features, maxResults, version, feature -> 0);
+    }
+
+    /**
+     * Builds a snapshot and its indexes from a list of features, prefix searches returning the most popular first.
+     *
+     * @param features   The features of the catalog.
+     * @param maxResults The maximum number of features returned by a prefix search.
+     * @param version    The number of the snapshot.
+     * @param popularity The popularity of each feature.
+     * @return The snapshot.
+     */
+    public static FeatureCatalog build(List<FeatureSearchTree.Feature> features, int maxResults, long version,
+                                       ToDoubleFunction<FeatureSearchTree.Feature> popularity) {
+        var sorted = new ArrayList<>(features);
+        sorted.sort(Comparator.comparing(feature -> TextNormalizer.fold(feature.getName())));  // Stable
+        var copy = List.copyOf(sorted);
+        return new FeatureCatalog(copy, new FeaturePrefixIndex(copy, maxResults, popularity),
+                new FeatureFuzzyIndex(copy), new FeatureTextIndex(copy), FeatureSearchTree.of(copy).freeze(),
+                new FeatureCategoryIndex(copy), version, Instant.now());
+    }
+
+    /**
+     * Returns a new snapshot of the same features ranked by a new popularity. Only the prefix index, the one
+     * ranking by popularity, is rebuilt; the others are shared with this snapshot.
+     *
+     * @param maxResults The maximum number of features returned by a prefix search.
+     * @param version    The number of the new snapshot.
+     * @param popularity The popularity of each feature.
+     * @return The new snapshot.
+     */
+    public FeatureCatalog withPopularity(int maxResults, long version,
+                                         ToDoubleFunction<FeatureSearchTree.Feature> popularity) {
+        return new FeatureCatalog(features, new FeaturePrefixIndex(features, maxResults, popularity), fuzzyIndex,
+                textIndex, nameIndex, categoryIndex, version, Instant.now());
+    }
+}
@@ -0,0 +1,142 @@
+package unisolar.api.search;
+
+import unisolar.api.infra.text.TextNormalizer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * FeatureCategoryIndex is an immutable index of the features of each category, for filtering searches by category
+ * and counting the features found in each (facets).
+ *
+ * Features are identified by their position in the catalog, as in the other indexes. Each category keeps the set of
+ * its features as a bitset, one bit per feature of the catalog. The features found by a search are gathered in a
+ * bitset too, so counting them by category is an AND of two bitsets and a population count, 64 features at a time:
+ * for a catalog of 100 000 features, about 1 600 words per category, whatever the number of features found.
+ *
+ * Categories are matched ignoring case and accents; features without a category belong to none.
+ */
+public class FeatureCategoryIndex {
+
+    private final String[] categories;          // Categories, sorted, as written in the catalog
+    private final long[][] members;             // Bitset of the features of each category
+    private final Map<String, Integer> byKey = new HashMap<>();  // Folded category -> its position
+
+    /**
+     * Builds the index.
+     *
+     * @param features The features of the catalog, in catalog order.
+     */
+    public FeatureCategoryIndex(List<FeatureSearchTree.Feature> features) {
+        // The first spelling of a category in the catalog names it
+        var sets = new TreeMap<String, BitSet>(String.CASE_INSENSITIVE_ORDER);
+        var spellings = new HashMap<String, String>();
+        for (int id = 0; id < features.size(); id++) {
+            var category = features.get(id).getCategory();
+            if (category == null || category.isBlank()) {
+                continue;
+            }
+            var key = TextNormalizer.fold(category.strip());
+            var name = spellings.computeIfAbsent(key, k -> category.strip());
+            sets.computeIfAbsent(name, n -> new BitSet(features.size())).set(id);
+        }
+
+        this.categories = sets.keySet().toArray(new String[0]);
+        this.members = new long[categories.length][];
+        int words = (features.size() + 63) >>> 6;
+        for (int c = 0; c < categories.length; c++) {
+            // Padded to the same length, so intersections need no bounds checks
+            members[c] = Arrays.copyOf(sets.get(categories[c]).toLongArray(), words);
+            byKey.put(TextNormalizer.fold(categories[c]), c);
+        }
+    }
+
+    /**
+     * Returns the categories of the catalog, sorted.
+     */
+    public List<String> categories() {
+        return List.of(categories);
+    }
+
+    /**
+     * Returns the features belonging to any of the given categories.
+     *
+     * @param names The categories, matched ignoring case and accents; unknown ones are ignored.
+     * @return The positions of the features in the catalog.
+     */
+    public BitSet members(Collection<String> names) {
+        var union = new long[members.length == 0 ? 0 : members[0].length];
+        for (String name : names) {
+            var c = byKey.get(TextNormalizer.fold(name.strip()));
+            if (c != null) {
+                for (int w = 0; w < union.length; w++) {
+                    union[w] |= members[c][w];
+                }
+            }
+        }
+        return BitSet.valueOf(union);
+    }
+
+    /**
+     * Counts the features found by a search in each category.
+     *
+     * @param matches The positions in the catalog of the features found.
+     * @return The number of features found in each category, for the categories having some, in category order.
+     */
+    public Map<String, Integer> counts(BitSet matches) {
+        var words = matches.toLongArray();  // Only up to the last feature found
+        var counts = new LinkedHashMap<String, Integer>();
+        for (int c = 0; c < categories.length; c++) {
+            var category = members[c];
+            int count = 0;
+            for (int w = 0; w < words.length; w++) {
+                count += Long.bitCount(words[w] & category[w]);
+            }
+            if (count > 0) {
+                counts.put(categories[c], count);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Counts a list of features by category, for results whose match set is not at hand, such as narrowed ones.
+     *
+     * @param features The features.
+     * @return The number of features in each category, for the categories having some, in category order.
+     */
+    public Map<String, Integer> counts(Collection<FeatureSearchTree.Feature> features) {
+        var counts = new int[categories.length];
+        for (FeatureSearchTree.Feature feature : features) {
+            var category = feature.getCategory();
+            var c = category == null ? null : byKey.get(TextNormalizer.fold(category.strip()));
+            if (c != null) {
+                counts[c]++;
+            }
+        }
+        var result = new LinkedHashMap<String, Integer>();
+        for (int c = 0; c < categories.length; c++) {
+            if (counts[c] > 0) {
+                result.put(categories[c], counts[c]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a feature passes a category filter.
+     *
+     * @param filter The features of the categories searched, as returned by {@link #members}, or null for all.
+     * @param id     The position of the feature in the catalog.
+     * @return True if the feature passes the filter.
+     */
+    static boolean allowed(BitSet filter, int id) {
+        return filter == null || filter.get(id);
+    }
+}
@@ -0,0 +1,282 @@
+package unisolar.api.search;
+
+import unisolar.api.infra.text.TextNormalizer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * FeatureFuzzyIndex is an immutable index answering typo- and accent-tolerant searches over features.
+ *
+ * Names, paths and descriptions are folded (lower case, no accents) and split into words. The distinct words
+ * are kept in a character trie, and each word points to the features it appears in, and the field it appears in.
+ * A query word is matched by walking the trie while computing its edit distance to the path walked, one row of
+ * the Levenshtein matrix per character: words sharing a prefix share the rows of that prefix, and a branch is left
+ * as soon as every cell of its row exceeds the allowed distance. This simulates a Levenshtein automaton of the
+ * query over the vocabulary, and visits a small part of it.
+ *
+ * A query word matches the indexed words within an edit distance that grows with its length: none up to 2
+ * characters, 1 up to 4 and 2 beyond. Features are ranked by the number of query words they match, then by a score
+ * summing, for each query word, the weight of the field its best match appears in (name over path over description)
+ * scaled down by its edit distance.
+ */
+public class FeatureFuzzyIndex {
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int PATH_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    private final List<FeatureSearchTree.Feature> features;
+
+    // Trie of the vocabulary, node 0 being the root; the children of a node are contiguous and sorted
+    private final char[] nodeChar;      // Character leading to each node
+    private final int[] firstChild;     // Index of the first child of each node
+    private final int[] childCount;     // Number of children of each node
+    private final int[] nodeWord;       // Word ending at each node, or -1
+    private final int maxDepth;         // Length of the longest word
+
+    // Postings of each word: the features it appears in and the weight of the best field it appears in for each
+    private final int[][] wordFeatures;
+    private final int[][] wordWeights;
+
+    /**
+     * A feature matched by a query, with its ranking.
+     */
+    private static class Match {
+        final int featureId;
+        final double[] wordScores;  // Best score of each query word, 0 if unmatched
+
+        Match(int featureId, int queryWords) {
+            this.featureId = featureId;
+            this.wordScores = new double[queryWords];
+        }
+
+        int matchedWords() {
+            int matched = 0;
+            for (double score : wordScores) {
+                if (score > 0) {
+                    matched++;
+                }
+            }
+            return matched;
+        }
+
+        double score() {
+            double sum = 0;
+            for (double score : wordScores) {
+                sum += score;
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Builds the index.
+     *
+     * @param features The features to index.
+     */
+    public FeatureFuzzyIndex(List<FeatureSearchTree.Feature> features) {
+        this.features = List.copyOf(features);
+
+        // Word -> feature id -> weight of the best field the word appears in
+        Map<String, Map<Integer, Integer>> postings = new TreeMap<>();
+        for (int id = 0; id < this.features.size(); id++) {
+            var feature = this.features.get(id);
+            addWords(postings, id, feature.getName(), NAME_WEIGHT);
+            addWords(postings, id, feature.getPath(), PATH_WEIGHT);
+            addWords(postings, id, feature.getDescription(), DESCRIPTION_WEIGHT);
+        }
+
+        var words = new ArrayList<>(postings.keySet());  // Sorted
+        this.wordFeatures = new int[words.size()][];
+        this.wordWeights = new int[words.size()][];
+        for (int w = 0; w < words.size(); w++) {
+            var posting = postings.get(words.get(w));
+            wordFeatures[w] = posting.keySet().stream().mapToInt(Integer::intValue).toArray();
+            wordWeights[w] = posting.values().stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // Lay the trie out breadth first, so the children of every node are contiguous
+        var chars = new StringBuilder().append('\0');
+        var firsts = new ArrayList<Integer>();
+        var counts = new ArrayList<Integer>();
+        var ends = new ArrayList<Integer>();
+        var ranges = new ArrayDeque<int[]>();  // Node, first word, end of words, depth
+        ends.add(words.isEmpty() || !words.get(0).isEmpty() ? -1 : 0);
+        ranges.add(new int[]{0, words.isEmpty() || !words.get(0).isEmpty() ? 0 : 1, words.size(), 0});
+        int longest = 0;
+        while (!ranges.isEmpty()) {
+            var range = ranges.poll();
+            int node = range[0], from = range[1], to = range[2], depth = range[3];
+            firsts.add(chars.length());
+            int children = 0;
+            while (from < to) {
+                var c = words.get(from).charAt(depth);
+                int end = from;
+                while (end < to && words.get(end).charAt(depth) == c) {
+                    end++;
+                }
+                // The word ending at the child, if any, sorts first in its range
+                var endsHere = words.get(from).length() == depth + 1;
+                ranges.add(new int[]{chars.length(), endsHere ? from + 1 : from, end, depth + 1});
+                ends.add(endsHere ? from : -1);
+                chars.append(c);
+                longest = Math.max(longest, depth + 1);
+                children++;
+                from = end;
+            }
+            counts.add(children);
+        }
+
+        this.nodeChar = chars.toString().toCharArray();
+        this.firstChild = firsts.stream().mapToInt(Integer::intValue).toArray();
+        this.childCount = counts.stream().mapToInt(Integer::intValue).toArray();
+        this.nodeWord = ends.stream().mapToInt(Integer::intValue).toArray();
+        this.maxDepth = longest;
+    }
+
+    private static void addWords(Map<String, Map<Integer, Integer>> postings, int featureId, String text, int weight) {
+        if (text == null) {
+            return;
+        }
+        for (String word : words(text)) {
+            postings.computeIfAbsent(word, w -> new LinkedHashMap<>()).merge(featureId, weight, Math::max);
+        }
+    }
+
+    /**
+     * Searches for the features best matching a query, tolerating typos and missing accents.
+     *
+     * @param query      The query, one or more words.
+     * @param maxResults The maximum number of features returned.
+     * @return The matching features, best first.
+     */
+    public List<FeatureSearchTree.Feature> search(String query, int maxResults) {
+        return search(query, maxResults, null, null);
+    }
+
+    /**
+     * Searches for the features best matching a query, among those passing a filter, and collects every feature
+     * matching it.
+     *
+     * @param query      The query, one or more words.
+     * @param maxResults The maximum number of features returned.
+     * @param filter     The positions in the catalog of the features that may be returned, or null for all.
+     * @param matches    Where to set the positions of all the features matching the query, filtered or not;
+     *                   or null.
+     * @return The matching features passing the filter, best first.
+     */
+    public List<FeatureSearchTree.Feature> search(String query, int maxResults, BitSet filter, BitSet matches) {
+        var queryWords = words(query);
+        if (queryWords.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Integer, Match> matched = new HashMap<>();
+        for (int w = 0; w < queryWords.size(); w++) {
+            var word = queryWords.get(w);
+            var maxEdits = maxEdits(word);
+            var rows = new int[Math.min(maxDepth, word.length() + maxEdits) + 1][word.length() + 1];
+            for (int j = 0; j <= word.length(); j++) {
+                rows[0][j] = Math.min(j, maxEdits + 1);
+            }
+            for (int i = 0; i < childCount[0]; i++) {
+                walk(firstChild[0] + i, 1, word, maxEdits, rows, w, queryWords.size(), matched);
+            }
+        }
+
+        // Keep the best maxResults matches, the worst of them on top of the heap
+        Comparator<Match> ranking = Comparator.comparingInt(Match::matchedWords)
+                .thenComparingDouble(Match::score)
+                .thenComparing(match -> features.get(match.featureId).getName(), Comparator.reverseOrder());
+        var best = new PriorityQueue<>(maxResults + 1, ranking);
+        for (Match match : matched.values()) {
+            if (matches != null) {
+                matches.set(match.featureId);
+            }
+            if (!FeatureCategoryIndex.allowed(filter, match.featureId)) {
+                continue;
+            }
+            best.add(match);
+            if (best.size() > maxResults) {
+                best.poll();
+            }
+        }
+
+        var results = new ArrayList<FeatureSearchTree.Feature>(best.size());
+        while (!best.isEmpty()) {
+            results.add(features.get(best.poll().featureId));
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * Visits a trie node at the given depth, computing the row of the Levenshtein matrix for the character leading
+     * to it, scoring the features of the word ending there if it is close enough, and going on to its children
+     * while some prefix of the query is still within reach.
+     */
+    private void walk(int node, int depth, String word, int maxEdits, int[][] rows, int wordIndex, int queryWords,
+                      Map<Integer, Match> matches) {
+        // Only the cells within maxEdits of the diagonal can be within reach; the others count as out of reach
+        var previous = rows[depth - 1];
+        var row = rows[depth];
+        var c = nodeChar[node];
+        var from = Math.max(1, depth - maxEdits);
+        var to = Math.min(word.length(), depth + maxEdits);
+        row[from - 1] = from == 1 ? depth : maxEdits + 1;
+        var rowMin = row[from - 1];
+        for (int j = from; j <= to; j++) {
+            var substitution = previous[j - 1] + (word.charAt(j - 1) == c ? 0 : 1);
+            row[j] = Math.min(substitution, Math.min(previous[j], row[j - 1]) + 1);
+            rowMin = Math.min(rowMin, row[j]);
+        }
+        if (to < word.length()) {
+            row[to + 1] = maxEdits + 1;  // Read by the next row
+        }
+        if (rowMin > maxEdits) {
+            return;  // Every word below is too far
+        }
+
+        var distance = to == word.length() ? row[to] : maxEdits + 1;
+        var wordId = nodeWord[node];
+        if (wordId >= 0 && distance <= maxEdits) {
+            var closeness = 1.0 - (double) distance / (maxEdits + 1);
+            var ids = wordFeatures[wordId];
+            var weights = wordWeights[wordId];
+            for (int i = 0; i < ids.length; i++) {
+                var match = matches.computeIfAbsent(ids[i], id -> new Match(id, queryWords));
+                match.wordScores[wordIndex] = Math.max(match.wordScores[wordIndex], weights[i] * closeness);
+            }
+        }
+
+        if (depth + 1 < rows.length) {
+            for (int i = 0; i < childCount[node]; i++) {
+                walk(firstChild[node] + i, depth + 1, word, maxEdits, rows, wordIndex, queryWords, matches);
+            }
+        }
+    }
+
+    /**
+     * Returns the edit distance allowed for a query word, growing with its length.
+     */
+    static int maxEdits(String word) {
+        return word.length() <= 2 ? 0 : word.length() <= 4 ? 1 : 2;
+    }
+
+    /**
+     * Folds a text and splits it into words of letters and digits.
+     */
+    static List<String> words(String text) {
+        return TextNormalizer.tokenize(TextNormalizer.fold(text));
+    }
+}
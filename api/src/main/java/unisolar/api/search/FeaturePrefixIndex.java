@@ -0,0 +1,271 @@
+package unisolar.api.search;
+
+import unisolar.api.infra.text.TextNormalizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * FeaturePrefixIndex is an immutable compressed radix trie over feature names, answering prefix searches.
+ *
+ * Names are folded once, when the index is built, by {@link TextNormalizer#fold(String)}: lower-cased and stripped
+ * of accents, so "Previsão", "previsao" and "PREVISAO" are the same key. Each node keeps the best k features of its
+ * subtree, so a lookup only walks down the prefix and returns the list stored where it stops: it takes
+ * O(prefix length + k) time and allocates nothing, query characters being folded one at a time as they are compared,
+ * by {@link TextNormalizer#fold(char)}, which folds them as the names were.
+ *
+ * The best features are the most popular ones, then the first in name order; without popularity, simply the first
+ * in name order. A node's best features are found among the feature ending at it and the best of each child.
+ *
+ * Features with the same folded name are kept once, the first one given winning.
+ *
+ * The features under a node are contiguous in name order: each node also keeps their range, so that a search can
+ * go past the first k features when filtered, and report all the features it matches as a range of positions.
+ */
+public class FeaturePrefixIndex {
+
+    private final Node root;
+    private final int size;
+    private final int maxResults;
+    private final FeatureSearchTree.Feature[] sorted;  // Features in name order
+    private final int[] ids;                           // Position in the catalog of each feature, in name order
+    private final boolean catalogInNameOrder;          // Whether those positions are ascending
+    private final double[] popularity;                 // Popularity of each feature, in name order
+    private final boolean ranked;                      // Whether any feature is popular at all
+
+    /**
+     * A node of the trie. Its label is the part of the key between its parent and itself.
+     */
+    private static class Node {
+        final String label;
+        final char[] edges;       // First character of each child's label, sorted
+        final Node[] children;    // Children, in the order of their edge character
+        final List<FeatureSearchTree.Feature> top;  // Best k features of the subtree, best first
+        final int[] topPositions; // Their positions in name order
+        final int from, to;       // Range of the features of the subtree, in name order
+
+        Node(String label, char[] edges, Node[] children, List<FeatureSearchTree.Feature> top, int[] topPositions,
+             int from, int to) {
+            this.label = label;
+            this.edges = edges;
+            this.children = children;
+            this.top = top;
+            this.topPositions = topPositions;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * A feature together with its folded name and its position in the catalog.
+     */
+    private record Entry(String key, FeatureSearchTree.Feature feature, int id) {
+    }
+
+    /**
+     * Builds the index, returning features in name order.
+     *
+     * @param features   The features to index.
+     * @param maxResults The maximum number of features returned by a search.
+     */
+    public FeaturePrefixIndex(List<FeatureSearchTree.Feature> features, int maxResults) {
+        this(features, maxResults, feature -> 0);
+    }
+
+    /**
+     * Builds the index, returning the most popular features first.
+     *
+     * @param features   The features to index.
+     * @param maxResults The maximum number of features returned by a search.
+     * @param popularity The popularity of each feature, such as how often it is chosen; 0 for none.
+     */
+    public FeaturePrefixIndex(List<FeatureSearchTree.Feature> features, int maxResults,
+                              ToDoubleFunction<FeatureSearchTree.Feature> popularity) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maxResults must be positive");
+        }
+
+        var entries = new ArrayList<Entry>(features.size());
+        for (int id = 0; id < features.size(); id++) {
+            entries.add(new Entry(TextNormalizer.fold(features.get(id).getName()), features.get(id), id));
+        }
+        entries.sort(Comparator.comparing(Entry::key));  // Stable: the first of equal keys stays first
+
+        var unique = new ArrayList<Entry>(entries.size());
+        for (Entry entry : entries) {
+            if (unique.isEmpty() || !unique.get(unique.size() - 1).key().equals(entry.key())) {
+                unique.add(entry);
+            }
+        }
+
+        this.size = unique.size();
+        this.maxResults = maxResults;
+        this.sorted = unique.stream().map(Entry::feature).toArray(FeatureSearchTree.Feature[]::new);
+        this.ids = unique.stream().mapToInt(Entry::id).toArray();
+        var ascending = true;
+        for (int i = 1; i < ids.length && ascending; i++) {
+            ascending = ids[i - 1] < ids[i];
+        }
+        this.catalogInNameOrder = ascending;
+        this.popularity = Arrays.stream(sorted).mapToDouble(popularity).toArray();
+        this.ranked = Arrays.stream(this.popularity).anyMatch(value -> value > 0);
+        this.root = build(unique, 0, unique.size(), "", 0);
+    }
+
+    /**
+     * Returns the number of features indexed.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Searches for the features whose names start with the given prefix, ignoring case and accents.
+     *
+     * @param prefix The prefix to search for.
+     * @return The best features matching the prefix, most popular first, then in name order; an unmodifiable list,
+     * empty if none match.
+     */
+    public List<FeatureSearchTree.Feature> searchByPrefix(String prefix) {
+        var node = find(prefix);
+        return node == null ? List.of() : node.top;
+    }
+
+    /**
+     * Searches for the features whose names start with the given prefix, among those passing a filter, and collects
+     * every feature matching it. Without a filter, this takes the time of {@link #searchByPrefix(String)}, plus
+     * marking the matches; with one, the matches are scanned, in name order until enough pass it if no feature is
+     * popular, or all of them otherwise.
+     *
+     * @param prefix  The prefix to search for.
+     * @param filter  The positions in the catalog of the features that may be returned, or null for all.
+     * @param matches Where to set the positions of all the features matching the prefix, filtered or not; or null.
+     * @return The best features matching the prefix and passing the filter, most popular first, then in name order.
+     */
+    public List<FeatureSearchTree.Feature> searchByPrefix(String prefix, BitSet filter, BitSet matches) {
+        var node = find(prefix);
+        if (node == null) {
+            return List.of();
+        }
+
+        if (matches != null) {
+            if (catalogInNameOrder && ids[node.to - 1] - ids[node.from] == node.to - node.from - 1) {
+                matches.set(ids[node.from], ids[node.to - 1] + 1);  // No feature left out in between: one range
+            } else {
+                for (int i = node.from; i < node.to; i++) {
+                    matches.set(ids[i]);
+                }
+            }
+        }
+
+        if (filter == null) {
+            return node.top;
+        }
+        var allowed = new ArrayList<Integer>();
+        for (int i = node.from; i < node.to && (ranked || allowed.size() < maxResults); i++) {
+            if (filter.get(ids[i])) {
+                allowed.add(i);
+            }
+        }
+        return best(allowed).stream().map(i -> sorted[i]).toList();
+    }
+
+    /**
+     * Walks down the prefix, returning the node whose subtree holds the features matching it, or null if none do.
+     */
+    private Node find(String prefix) {
+        var node = root;
+        var matched = node.label.length();  // Characters of the node's label matched so far
+        for (int i = 0; i < prefix.length(); i++) {
+            var c = TextNormalizer.fold(prefix.charAt(i));
+            if (c == TextNormalizer.DROPPED) {
+                continue;  // Left out of the names too
+            }
+            if (matched == node.label.length()) {
+                var child = Arrays.binarySearch(node.edges, c);
+                if (child < 0) {
+                    return null;
+                }
+                node = node.children[child];
+                matched = 0;
+            }
+
+            // Match the query against the label; a query ending inside it matches the whole subtree
+            if (node.label.charAt(matched++) != c) {
+                return null;
+            }
+        }
+        return node.from < node.to ? node : null;
+    }
+
+    /**
+     * Returns the best maxResults of the given positions in name order, best first.
+     */
+    private List<Integer> best(List<Integer> positions) {
+        if (ranked) {
+            positions.sort(Comparator.<Integer>comparingDouble(i -> -popularity[i]).thenComparingInt(i -> i));
+        }
+        return positions.subList(0, Math.min(positions.size(), maxResults));
+    }
+
+    /**
+     * Builds the node for a range of entries sorted by key, all sharing their first depth characters.
+     */
+    private Node build(List<Entry> entries, int from, int to, String label, int depth) {
+        // An entry whose key ends here sorts first; its children start after it
+        var start = from;
+        while (start < to && entries.get(start).key().length() == depth) {
+            start++;
+        }
+
+        var edges = new ArrayList<Character>();
+        var children = new ArrayList<Node>();
+        while (start < to) {
+            var first = entries.get(start).key();
+            var edge = first.charAt(depth);
+            var end = start + 1;
+            while (end < to && entries.get(end).key().charAt(depth) == edge) {
+                end++;
+            }
+
+            // In a sorted range, the prefix common to all keys is the one common to the first and the last
+            var last = entries.get(end - 1).key();
+            var common = depth + 1;
+            while (common < first.length() && common < last.length() && first.charAt(common) == last.charAt(common)) {
+                common++;
+            }
+
+            edges.add(edge);
+            children.add(build(entries, start, end, first.substring(depth, common), common));
+            start = end;
+        }
+
+        var edgeArray = new char[edges.size()];
+        for (int i = 0; i < edgeArray.length; i++) {
+            edgeArray[i] = edges.get(i);
+        }
+
+        // The best of the subtree are among the entry ending here and the best of each child; in name order,
+        // they are simply the first ones of the range
+        var candidates = new ArrayList<Integer>();
+        if (ranked) {
+            for (int i = from; i < to && entries.get(i).key().length() == depth; i++) {
+                candidates.add(i);
+            }
+            for (Node child : children) {
+                Arrays.stream(child.topPositions).forEach(candidates::add);
+            }
+        } else {
+            for (int i = from; i < Math.min(to, from + maxResults); i++) {
+                candidates.add(i);
+            }
+        }
+        var topPositions = best(candidates).stream().mapToInt(Integer::intValue).toArray();
+        var top = Arrays.stream(topPositions).mapToObj(i -> sorted[i]).toList();
+        return new Node(label, edgeArray, children.toArray(new Node[0]), top, topPositions, from, to);
+    }
+}
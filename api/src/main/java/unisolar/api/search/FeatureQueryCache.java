@@ -0,0 +1,46 @@
+package unisolar.api.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * FeatureQueryCache is a bounded cache of feature search results by normalized query, evicting the least recently
+ * used entry once full. Search-as-you-type sends a query per keystroke, and many users type the same first letters,
+ * so most queries repeat.
+ *
+ * Results carry the catalog version they were computed on; callers ignore those of an older version.
+ */
+public class FeatureQueryCache {
+
+    private final Map<String, FeatureSearchResult> entries;
+
+    /**
+     * Constructs the cache.
+     *
+     * @param maxEntries The maximum number of results kept.
+     */
+    public FeatureQueryCache(int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FeatureSearchResult> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized FeatureSearchResult get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(String key, FeatureSearchResult result) {
+        entries.put(key, result);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
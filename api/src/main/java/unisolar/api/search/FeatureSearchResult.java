@@ -0,0 +1,50 @@
+package unisolar.api.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * FeatureSearchResult is the outcome of a feature search, as cached and served to web clients.
+ *
+ * @param features       The features found, best first.
+ * @param facets         The number of features matching the query in each category, before any category filter.
+ * @param complete       Whether these are all the features matching the query, rather than only the first ones.
+ * @param catalogVersion The version of the catalog snapshot searched.
+ * @param etag           A tag identifying the results, changing whenever the features found or the catalog change.
+ */
+public record FeatureSearchResult(List<FeatureSearchTree.Feature> features,
+                                  Map<String, Integer> facets,
+                                  boolean complete,
+                                  long catalogVersion,
+                                  String etag) {
+
+    /**
+     * Creates a result, computing its tag from the catalog version, the features found and the facets.
+     *
+     * @param features       The features found, best first.
+     * @param facets         The number of features matching the query in each category.
+     * @param complete       Whether these are all the features matching the query.
+     * @param catalogVersion The version of the catalog snapshot searched.
+     * @return The result.
+     */
+    public static FeatureSearchResult of(List<FeatureSearchTree.Feature> features, Map<String, Integer> facets,
+                                         boolean complete, long catalogVersion) {
+        var crc = new CRC32();
+        crc.update(Long.toString(catalogVersion).getBytes(StandardCharsets.UTF_8));
+        for (FeatureSearchTree.Feature feature : features) {
+            crc.update(0);
+            crc.update(feature.getName().getBytes(StandardCharsets.UTF_8));
+        }
+        facets.forEach((category, count) -> {
+            crc.update(1);
+            crc.update((category + "=" + count).getBytes(StandardCharsets.UTF_8));
+        });
+        return new FeatureSearchResult(List.copyOf(features),
+                Collections.unmodifiableMap(new LinkedHashMap<>(facets)), complete, catalogVersion,
+                "\"" + catalogVersion + "-" + Long.toHexString(crc.getValue()) + "\"");
+    }
+}
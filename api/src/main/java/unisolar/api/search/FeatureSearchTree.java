@@ -1,16 +1,25 @@
 package unisolar.api.search;
 
-import org.springframework.stereotype.Component;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
- * FeatureSearchTree is a component that represents an AVL tree to manage and search system features.
- * The tree allows efficient insertion, searching, and prefix-based search operations on features.
+ * FeatureSearchTree represents an AVL tree to manage and search system features.
+ * The tree allows efficient insertion, deletion, update, searching, and prefix-based search operations on features.
+ *
+ * A whole catalog is best loaded with {@link #fromSorted} or {@link #of}, which build a balanced tree directly
+ * instead of rebalancing after every insert, and refreshed with {@link #applyChanges}, which applies a diff of
+ * the catalog in a single pass.
+ *
+ * A tree is not thread-safe: it is meant to be filled, then only read. Features shared between threads are served
+ * from an immutable FeatureCatalog snapshot instead.
  */
-@Component
 public class FeatureSearchTree {
     private Node root;  // Root of the AVL tree
+    private int size;   // Number of features in the tree
 
     /**
      * The Feature class represents a system feature with relevant details such as name, path, description, and category.
@@ -138,6 +147,68 @@ public class FeatureSearchTree {
         return y;
     }
 
+    /**
+     * Builds a balanced tree from features sorted by name (ignoring case), without rotations. This operation is
+     * performed in O(n) time.
+     *
+     * @param sorted The features, sorted by name, without two features of the same name.
+     * @return The tree.
+     * @throws IllegalArgumentException If the features are not sorted or two of them have the same name.
+     */
+    public static FeatureSearchTree fromSorted(List<Feature> sorted) {
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i - 1).compareTo(sorted.get(i)) >= 0) {
+                throw new IllegalArgumentException("Features must be sorted by name, without duplicates: "
+                        + sorted.get(i - 1).getName() + " precedes " + sorted.get(i).getName());
+            }
+        }
+        var tree = new FeatureSearchTree();
+        tree.root = tree.buildBalanced(sorted, 0, sorted.size());
+        tree.size = sorted.size();
+        return tree;
+    }
+
+    /**
+     * Builds a balanced tree from features in any order. Of features with the same name, the first one is kept,
+     * as when inserting them one by one. This operation is performed in O(n log n) time, by sorting then
+     * building from the sorted features.
+     *
+     * @param features The features.
+     * @return The tree.
+     */
+    public static FeatureSearchTree of(Collection<Feature> features) {
+        var sorted = new ArrayList<>(features);
+        sorted.sort(null);  // Stable: the first of features with the same name stays first
+        var unique = new ArrayList<Feature>(sorted.size());
+        for (Feature feature : sorted) {
+            if (unique.isEmpty() || unique.get(unique.size() - 1).compareTo(feature) != 0) {
+                unique.add(feature);
+            }
+        }
+        return fromSorted(unique);
+    }
+
+    /**
+     * Helper method to build a balanced subtree from a range of sorted features: the middle one becomes the root,
+     * and each half one of its subtrees.
+     *
+     * @param sorted The sorted features.
+     * @param from   The first feature of the range.
+     * @param to     The end of the range, exclusive.
+     * @return The root of the subtree, or null if the range is empty.
+     */
+    private Node buildBalanced(List<Feature> sorted, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        Node node = new Node(sorted.get(middle));
+        node.left = buildBalanced(sorted, from, middle);
+        node.right = buildBalanced(sorted, middle + 1, to);
+        updateHeight(node);
+        return node;
+    }
+
     /**
      * Inserts a new feature into the AVL tree. This operation is performed in O(log n) time.
      *
@@ -157,6 +228,7 @@ public class FeatureSearchTree {
     private Node insertRec(Node node, Feature feature) {
         // Standard BST insertion
         if (node == null) {
+            size++;
             return new Node(feature);  // Create a new node for the feature
         }
 
@@ -196,6 +268,229 @@ public class FeatureSearchTree {
         return node;
     }
 
+    /**
+     * Restores the balance of a node after one of its subtrees changed height by one, as after a deletion.
+     *
+     * @param node The node to balance.
+     * @return The new root of the subtree.
+     */
+    private Node rebalance(Node node) {
+        updateHeight(node);
+        int balance = getBalance(node);
+
+        if (balance > 1) {
+            if (getBalance(node.left) < 0) {
+                node.left = leftRotate(node.left);  // Left-Right case
+            }
+            return rightRotate(node);
+        }
+
+        if (balance < -1) {
+            if (getBalance(node.right) > 0) {
+                node.right = rightRotate(node.right);  // Right-Left case
+            }
+            return leftRotate(node);
+        }
+
+        return node;
+    }
+
+    /**
+     * Deletes the feature with the given name, ignoring case. This operation is performed in O(log n) time.
+     *
+     * @param name The name of the feature to delete.
+     * @return True if a feature was deleted, false if the tree had no feature with that name.
+     */
+    public boolean delete(String name) {
+        int before = size;
+        root = deleteRec(root, name);
+        return size < before;
+    }
+
+    /**
+     * Helper method to recursively delete a feature by name, rebalancing on the way back up.
+     *
+     * @param node The current node.
+     * @param name The name of the feature to delete.
+     * @return The updated node after deletion.
+     */
+    private Node deleteRec(Node node, String name) {
+        if (node == null) {
+            return null;  // Not found
+        }
+
+        int comparison = name.compareToIgnoreCase(node.feature.getName());
+        if (comparison < 0) {
+            node.left = deleteRec(node.left, name);
+        } else if (comparison > 0) {
+            node.right = deleteRec(node.right, name);
+        } else if (node.left == null || node.right == null) {
+            size--;
+            return node.left != null ? node.left : node.right;  // At most one child takes the node's place
+        } else {
+            // Two children: take the feature of the successor, then delete the successor from the right subtree
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            node.feature = successor.feature;
+            node.right = deleteRec(node.right, successor.feature.getName());
+        }
+
+        return rebalance(node);
+    }
+
+    /**
+     * Replaces the feature having the same name as the given one (ignoring case) with it, such as to change its
+     * path or description. The tree keeps its shape. This operation is performed in O(log n) time.
+     *
+     * @param feature The new version of the feature.
+     * @return True if the feature was replaced, false if the tree had no feature with that name.
+     */
+    public boolean update(Feature feature) {
+        Node node = root;
+        while (node != null) {
+            int comparison = feature.compareTo(node.feature);
+            if (comparison == 0) {
+                node.feature = feature;
+                return true;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /**
+     * Applies a diff of the catalog: deletes the features with the given names, then adds the given features,
+     * replacing those with the same names. Of several added features with the same name, the last one wins.
+     *
+     * A small diff is applied one change at a time, in O(m log n) time for m changes. A large one is merged with
+     * the features of the tree in a single in-order pass, and the tree rebuilt balanced from the result, in
+     * O(n + m log m) time, which is cheaper than m rebalancing operations once m log n exceeds n.
+     *
+     * @param upserts   The features added or changed.
+     * @param deletions The names of the features removed.
+     */
+    public void applyChanges(Collection<Feature> upserts, Collection<String> deletions) {
+        int changes = upserts.size() + deletions.size();
+        if ((long) changes * (32 - Integer.numberOfLeadingZeros(size)) < size) {
+            deletions.forEach(this::delete);
+            for (Feature feature : upserts) {
+                if (!update(feature)) {
+                    insert(feature);
+                }
+            }
+            return;
+        }
+
+        var added = new ArrayList<>(upserts);
+        added.sort(null);  // Stable: of features with the same name, the last one given comes last
+        var removed = new ArrayList<>(deletions);
+        removed.sort(String.CASE_INSENSITIVE_ORDER);
+
+        // Merge the three sorted sequences: the features of the tree, the deletions and the upserts
+        var merged = new ArrayList<Feature>(size + added.size());
+        int[] next = {0, 0};  // Next deletion, next upsert
+        forEachInOrder(feature -> {
+            while (next[0] < removed.size()
+                    && String.CASE_INSENSITIVE_ORDER.compare(removed.get(next[0]), feature.getName()) < 0) {
+                next[0]++;
+            }
+            boolean deleted = next[0] < removed.size()
+                    && String.CASE_INSENSITIVE_ORDER.compare(removed.get(next[0]), feature.getName()) == 0;
+            while (next[1] < added.size() && added.get(next[1]).compareTo(feature) < 0) {
+                next[1] = addLastOfName(added, next[1], merged);
+            }
+            if (next[1] < added.size() && added.get(next[1]).compareTo(feature) == 0) {
+                next[1] = addLastOfName(added, next[1], merged);  // Replaces the feature
+            } else if (!deleted) {
+                merged.add(feature);
+            }
+        });
+        while (next[1] < added.size()) {
+            next[1] = addLastOfName(added, next[1], merged);
+        }
+
+        root = buildBalanced(merged, 0, merged.size());
+        size = merged.size();
+    }
+
+    /**
+     * Adds the last of the sorted features having the same name as the one at the given position, and returns the
+     * position of the next feature with another name.
+     */
+    private static int addLastOfName(List<Feature> sorted, int position, List<Feature> merged) {
+        int end = position + 1;
+        while (end < sorted.size() && sorted.get(end).compareTo(sorted.get(position)) == 0) {
+            end++;
+        }
+        merged.add(sorted.get(end - 1));
+        return end;
+    }
+
+    /**
+     * Returns the number of features in the tree.
+     *
+     * @return The number of features.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Visits every feature of the tree in name order (ignoring case). This operation is performed in O(n) time.
+     *
+     * @param action The action to perform on each feature.
+     */
+    public void forEachInOrder(Consumer<Feature> action) {
+        var stack = new ArrayDeque<Node>();
+        var node = root;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            node = stack.pop();
+            action.accept(node.feature);
+            node = node.right;
+        }
+    }
+
+    /**
+     * Checks the AVL invariants of the whole tree: every node records its height, and its subtrees differ in height
+     * by one at most. This operation is performed in O(n) time, for tests of the rebalancing.
+     *
+     * @return True if every node is balanced and its height up to date.
+     */
+    boolean isBalanced() {
+        return checkedHeight(root) >= 0;
+    }
+
+    /**
+     * Helper method returning the height of a subtree, or -1 if any of its nodes breaks the AVL invariants.
+     */
+    private int checkedHeight(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        int left = checkedHeight(node.left);
+        int right = checkedHeight(node.right);
+        if (left < 0 || right < 0 || Math.abs(left - right) > 1 || node.height != Math.max(left, right) + 1) {
+            return -1;
+        }
+        return node.height;
+    }
+
+    /**
+     * Freezes the tree into a read-only FrozenFeatureIndex, laid out for fast lookups. This operation is performed
+     * in O(n) time; later changes to the tree do not affect the index.
+     *
+     * @return The frozen index.
+     */
+    public FrozenFeatureIndex freeze() {
+        return FrozenFeatureIndex.from(this);
+    }
+
     /**
      * Searches for a feature by its name. This operation is performed in O(log n) time.
      *
@@ -0,0 +1,262 @@
+package unisolar.api.search;
+
+import unisolar.api.infra.text.TextNormalizer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * FeatureTextIndex is an immutable inverted index answering full-text searches over features, ranked by BM25.
+ *
+ * Names, paths, categories and descriptions are folded, split into words, stripped of Portuguese stop words and
+ * stemmed with {@link TextNormalizer}, so "bateria", "Baterias" and "BATERIA" are the same term. Each term points
+ * to a posting list of the features it appears in and how often, weighted by field (a word of the name counts
+ * three times, of the path or category twice, of the description once). Posting lists are compressed: feature
+ * ids are stored as gaps from the previous one and, with the frequencies, written as variable-length integers,
+ * one byte for most values.
+ *
+ * Features are scored by BM25, which rewards terms frequent in a feature but rare in the catalog, and dampens
+ * long features. For search-as-you-type, the last query word is also matched as the prefix of the indexed words:
+ * "segur" finds "segurança", and so does "se", although a stop word on its own. At most MAX_EXPANSIONS words are
+ * tried per prefix, which bounds the query time whatever the catalog size.
+ */
+public class FeatureTextIndex {
+
+    private static final double K1 = 1.2;   // Saturation of term frequency
+    private static final double B = 0.75;   // Strength of the length normalization
+    private static final int MAX_EXPANSIONS = 64;
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int PATH_WEIGHT = 2;
+    private static final int CATEGORY_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    private final List<FeatureSearchTree.Feature> features;
+    private final Map<String, Integer> terms = new HashMap<>();  // Stem -> term id
+    private final byte[][] postings;      // Compressed posting list of each term
+    private final int[] documentFrequency; // Number of features containing each term
+    private final int[] lengths;          // Weighted number of terms of each feature
+    private final double averageLength;
+
+    // Folded words of the catalog, sorted, and the term each stems to: prefix lookups for the last query word
+    private final String[] words;
+    private final int[] wordTerms;
+
+    /**
+     * Builds the index.
+     *
+     * @param features The features to index.
+     */
+    public FeatureTextIndex(List<FeatureSearchTree.Feature> features) {
+        this.features = List.copyOf(features);
+        this.lengths = new int[this.features.size()];
+
+        // Term -> frequency in each feature, features visited in id order
+        var frequencies = new ArrayList<Map<Integer, Integer>>();
+        var surfaceWords = new TreeMap<String, Integer>();
+        long totalLength = 0;
+        for (int id = 0; id < this.features.size(); id++) {
+            var feature = this.features.get(id);
+            lengths[id] += addField(id, feature.getName(), NAME_WEIGHT, frequencies, surfaceWords);
+            lengths[id] += addField(id, feature.getPath(), PATH_WEIGHT, frequencies, surfaceWords);
+            lengths[id] += addField(id, feature.getCategory(), CATEGORY_WEIGHT, frequencies, surfaceWords);
+            lengths[id] += addField(id, feature.getDescription(), DESCRIPTION_WEIGHT, frequencies, surfaceWords);
+            totalLength += lengths[id];
+        }
+        this.averageLength = this.features.isEmpty() ? 1 : Math.max(1, (double) totalLength / this.features.size());
+
+        this.postings = new byte[frequencies.size()][];
+        this.documentFrequency = new int[frequencies.size()];
+        for (int term = 0; term < frequencies.size(); term++) {
+            postings[term] = encode(frequencies.get(term));
+            documentFrequency[term] = frequencies.get(term).size();
+        }
+
+        this.words = surfaceWords.keySet().toArray(new String[0]);
+        this.wordTerms = surfaceWords.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Adds the terms of a field of a feature, returning the weighted number of terms added.
+     */
+    private int addField(int featureId, String text, int weight, List<Map<Integer, Integer>> frequencies,
+                         Map<String, Integer> surfaceWords) {
+        if (text == null) {
+            return 0;
+        }
+        int added = 0;
+        for (String word : TextNormalizer.tokenize(TextNormalizer.fold(text))) {
+            if (TextNormalizer.isStopWord(word)) {
+                continue;
+            }
+            var term = terms.computeIfAbsent(TextNormalizer.stem(word), stem -> {
+                frequencies.add(new LinkedHashMap<>());
+                return frequencies.size() - 1;
+            });
+            frequencies.get(term).merge(featureId, weight, Integer::sum);
+            surfaceWords.putIfAbsent(word, term);
+            added += weight;
+        }
+        return added;
+    }
+
+    /**
+     * Searches for the features best matching a query.
+     *
+     * @param query      The query, one or more words; the last one may be incomplete.
+     * @param maxResults The maximum number of features returned.
+     * @return The matching features, best first.
+     */
+    public List<FeatureSearchTree.Feature> search(String query, int maxResults) {
+        return search(query, maxResults, null, null);
+    }
+
+    /**
+     * Searches for the features best matching a query, among those passing a filter, and collects every feature
+     * matching it.
+     *
+     * @param query      The query, one or more words; the last one may be incomplete.
+     * @param maxResults The maximum number of features returned.
+     * @param filter     The positions in the catalog of the features that may be returned, or null for all.
+     * @param matches    Where to set the positions of all the features matching the query, filtered or not;
+     *                   or null.
+     * @return The matching features passing the filter, best first.
+     */
+    public List<FeatureSearchTree.Feature> search(String query, int maxResults, BitSet filter, BitSet matches) {
+        // Stop words are kept until scoring: the last word may be one being typed ("se" for "segurança")
+        var queryWords = TextNormalizer.tokenize(TextNormalizer.fold(query));
+        if (queryWords.isEmpty() || features.isEmpty()) {
+            return List.of();
+        }
+
+        var scores = new double[features.size()];
+        var matched = new ArrayList<Integer>();  // Features scored, to avoid scanning every score
+        for (int w = 0; w < queryWords.size(); w++) {
+            var word = queryWords.get(w);
+            var queryTerms = new int[0];
+            var exact = TextNormalizer.isStopWord(word) ? null : terms.get(TextNormalizer.stem(word));
+            if (exact != null) {
+                queryTerms = new int[]{exact};
+            }
+            if (w == queryWords.size() - 1) {
+                queryTerms = withPrefixExpansions(word, queryTerms);
+            }
+            for (int term : queryTerms) {
+                score(term, scores, matched);
+            }
+        }
+
+        // Keep the best maxResults features, the worst of them on top of the heap
+        var best = new PriorityQueue<Integer>(maxResults + 1, (a, b) -> scores[a] != scores[b]
+                ? Double.compare(scores[a], scores[b])
+                : features.get(b).getName().compareTo(features.get(a).getName()));
+        for (int id : matched) {
+            if (matches != null) {
+                matches.set(id);
+            }
+            if (!FeatureCategoryIndex.allowed(filter, id)) {
+                continue;
+            }
+            best.add(id);
+            if (best.size() > maxResults) {
+                best.poll();
+            }
+        }
+
+        var results = new ArrayList<FeatureSearchTree.Feature>(best.size());
+        while (!best.isEmpty()) {
+            results.add(features.get(best.poll()));
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * Adds the terms of the indexed words starting with a prefix, up to MAX_EXPANSIONS words.
+     */
+    private int[] withPrefixExpansions(String prefix, int[] queryTerms) {
+        var expanded = Arrays.copyOf(queryTerms, queryTerms.length + MAX_EXPANSIONS);
+        var count = queryTerms.length;
+        var found = Arrays.binarySearch(words, prefix);
+        var first = found >= 0 ? found : -found - 1;
+        for (int i = first; i < words.length && i - first < MAX_EXPANSIONS && words[i].startsWith(prefix); i++) {
+            var term = wordTerms[i];
+            var seen = false;
+            for (int j = 0; j < count && !seen; j++) {
+                seen = expanded[j] == term;
+            }
+            if (!seen) {
+                expanded[count++] = term;
+            }
+        }
+        return Arrays.copyOf(expanded, count);
+    }
+
+    /**
+     * Adds the BM25 contribution of a term to the scores of the features it appears in.
+     */
+    private void score(int term, double[] scores, List<Integer> matched) {
+        var n = features.size();
+        var df = documentFrequency[term];
+        var idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+
+        var posting = postings[term];
+        int position = 0;
+        int id = 0;
+        while (position < posting.length) {
+            // Each entry is the gap to the previous feature id, then the term frequency
+            int gap = 0, shift = 0, b;
+            do {
+                b = posting[position++];
+                gap |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            int tf = 0;
+            shift = 0;
+            do {
+                b = posting[position++];
+                tf |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            id += gap;
+
+            var norm = K1 * (1 - B + B * lengths[id] / averageLength);
+            if (scores[id] == 0) {
+                matched.add(id);
+            }
+            scores[id] += idf * tf * (K1 + 1) / (tf + norm);
+        }
+    }
+
+    /**
+     * Compresses a posting list, given in feature id order, into gaps and frequencies written as variable-length
+     * integers: 7 bits per byte, the high bit set on every byte but the last.
+     */
+    private static byte[] encode(Map<Integer, Integer> frequencies) {
+        var out = new ByteArrayOutputStream();
+        int previous = 0;
+        for (var entry : frequencies.entrySet()) {
+            writeVarint(out, entry.getKey() - previous);
+            writeVarint(out, entry.getValue());
+            previous = entry.getKey();
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
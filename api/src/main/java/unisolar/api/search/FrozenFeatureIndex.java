@@ -0,0 +1,220 @@
+package unisolar.api.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * FrozenFeatureIndex is a read-only copy of a FeatureSearchTree laid out in flat arrays, answering exact and prefix
+ * lookups with far fewer cache misses than the tree's pointer chasing.
+ *
+ * Names are folded once, as the tree compares them (ignoring case), and stored back to back in a single char
+ * buffer, in name order. The binary search runs over an Eytzinger layout of the sorted keys: the array holds the
+ * implicit binary search tree breadth first, so the first levels visited by every search sit together in a few
+ * cache lines, and the children of a position are at 2i and 2i + 1.
+ *
+ * Next to each position, four characters of its key are packed into a long, so most comparisons are decided without
+ * touching the char buffer at all. They are not the first four characters, which keys close in name order share
+ * (as in "relatorio_consumo_mensal" and "relatorio_consumo_diario"), but the four after the longest prefix common to
+ * the keys bounding the position: a search reaching it has already passed both bounds, so the query shares that
+ * prefix too, and the packed characters are where they may differ. Without this, lookups among long shared prefixes
+ * would fall back to the char buffer at almost every step.
+ *
+ * The index is built from the tree in O(n): an in-order walk yields the features already sorted.
+ */
+public class FrozenFeatureIndex {
+
+    private static final int PACKED_CHARS = 4;
+
+    private final FeatureSearchTree.Feature[] features;  // In name order
+    private final char[] keyChars;     // Folded names, back to back, in name order
+    private final int[] keyOffsets;    // Start of each name in keyChars, plus the end of the last
+    private final int[] eytzinger;     // 1-based: position in name order of the key at each Eytzinger position
+    private final long[] packedKeys;   // 1-based: characters of the key at each Eytzinger position, after skipped
+    private final int[] skipped;       // 1-based: length of the prefix shared by the keys bounding each position
+
+    private FrozenFeatureIndex(FeatureSearchTree.Feature[] features, char[] keyChars, int[] keyOffsets) {
+        this.features = features;
+        this.keyChars = keyChars;
+        this.keyOffsets = keyOffsets;
+        this.eytzinger = new int[features.length + 1];
+        this.packedKeys = new long[features.length + 1];
+        this.skipped = new int[features.length + 1];
+        layOut(1, 0);
+        bound(1, -1, features.length);
+        for (int i = 1; i <= features.length; i++) {
+            var start = keyOffsets[eytzinger[i]];
+            packedKeys[i] = pack(keyChars, start + skipped[i], keyOffsets[eytzinger[i] + 1]);
+        }
+    }
+
+    /**
+     * Builds the index from a tree, in O(n).
+     *
+     * @param tree The tree to freeze.
+     * @return The index.
+     */
+    public static FrozenFeatureIndex from(FeatureSearchTree tree) {
+        var features = new FeatureSearchTree.Feature[tree.size()];
+        var keyOffsets = new int[features.length + 1];
+        var keys = new StringBuilder();
+        var count = new int[1];
+        tree.forEachInOrder(feature -> {
+            features[count[0]] = feature;
+            keyOffsets[count[0]] = keys.length();
+            var name = feature.getName();
+            for (int i = 0; i < name.length(); i++) {
+                keys.append(fold(name.charAt(i)));
+            }
+            count[0]++;
+        });
+        keyOffsets[features.length] = keys.length();
+
+        var keyChars = new char[keys.length()];
+        keys.getChars(0, keys.length(), keyChars, 0);
+        return new FrozenFeatureIndex(features, keyChars, keyOffsets);
+    }
+
+    /**
+     * Fills the Eytzinger layout by an in-order walk of its implicit tree, returning the next position in name order.
+     */
+    private int layOut(int position, int next) {
+        if (position <= features.length) {
+            next = layOut(2 * position, next);
+            eytzinger[position] = next++;
+            next = layOut(2 * position + 1, next);
+        }
+        return next;
+    }
+
+    /**
+     * Records, for each position of the Eytzinger layout, the length of the prefix common to the keys bounding it:
+     * the keys of the nearest ancestors it is left of and right of, in name order. A missing bound shares nothing.
+     */
+    private void bound(int position, int lower, int upper) {
+        if (position <= features.length) {
+            skipped[position] = lower < 0 || upper >= features.length ? 0 : commonPrefix(lower, upper);
+            bound(2 * position, lower, eytzinger[position]);
+            bound(2 * position + 1, eytzinger[position], upper);
+        }
+    }
+
+    /**
+     * Returns the length of the prefix common to the keys at two positions in name order.
+     */
+    private int commonPrefix(int first, int second) {
+        int a = keyOffsets[first], b = keyOffsets[second];
+        var length = Math.min(keyOffsets[first + 1] - a, keyOffsets[second + 1] - b);
+        var mismatch = Arrays.mismatch(keyChars, a, a + length, keyChars, b, b + length);
+        return mismatch < 0 ? length : mismatch;
+    }
+
+    public int size() {
+        return features.length;
+    }
+
+    /**
+     * Searches for a feature by its name, ignoring case. This operation is performed in O(log n) time.
+     *
+     * @param name The name of the feature to search for.
+     * @return The feature if found, or null if not found.
+     */
+    public FeatureSearchTree.Feature search(String name) {
+        var query = fold(name);
+        var index = lowerBound(query);
+        if (index < features.length && compare(index, query, 0) == 0) {
+            return features[index];
+        }
+        return null;
+    }
+
+    /**
+     * Searches for features whose names start with the given prefix, ignoring case. This operation is performed
+     * in O(log n + k) time, the matching features being contiguous in name order.
+     *
+     * @param prefix The prefix to search for.
+     * @return The features whose names start with the prefix, in name order.
+     */
+    public List<FeatureSearchTree.Feature> searchByPrefix(String prefix) {
+        var query = fold(prefix);
+        var results = new ArrayList<FeatureSearchTree.Feature>();
+        for (int index = lowerBound(query); index < features.length && startsWith(index, query); index++) {
+            results.add(features[index]);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the position in name order of the first key not less than the query, or the number of keys if all are.
+     */
+    private int lowerBound(char[] query) {
+        int i = 1;
+        while (i <= features.length) {
+            // The query is between the keys bounding this position, so it shares their common prefix too
+            var from = skipped[i];
+            var comparison = Long.compareUnsigned(packedKeys[i], pack(query, from, query.length));
+            if (comparison == 0) {
+                // The packed characters are equal: compare the rest
+                comparison = compare(eytzinger[i], query, from + PACKED_CHARS);
+            }
+            i = 2 * i + (comparison < 0 ? 1 : 0);
+        }
+        // Undo the right turns taken after the last left turn: the node of that left turn is the answer
+        i >>>= Integer.numberOfTrailingZeros(~i) + 1;
+        return i == 0 ? features.length : eytzinger[i];
+    }
+
+    /**
+     * Compares the key at a position in name order with a folded query, from a character known to be where they may
+     * start to differ.
+     */
+    private int compare(int index, char[] query, int from) {
+        int start = keyOffsets[index], length = keyOffsets[index + 1] - start;
+        var common = Math.min(length, query.length);
+        for (int i = from; i < common; i++) {
+            var difference = keyChars[start + i] - query[i];
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - query.length;
+    }
+
+    private boolean startsWith(int index, char[] prefix) {
+        int start = keyOffsets[index];
+        if (keyOffsets[index + 1] - start < prefix.length) {
+            return false;
+        }
+        return Arrays.equals(keyChars, start, start + prefix.length, prefix, 0, prefix.length);
+    }
+
+    /**
+     * Packs the first characters of a key into a long, so that comparing packed keys as unsigned numbers orders
+     * them like their first characters. Missing characters count as zero, before any real character.
+     */
+    private static long pack(char[] chars, int start, int end) {
+        long packed = 0;
+        for (int i = 0; i < PACKED_CHARS; i++) {
+            packed = (packed << 16) | (start + i < end ? chars[start + i] : 0);
+        }
+        return packed;
+    }
+
+    /**
+     * Folds a query once, rather than each of its characters on every comparison.
+     */
+    private static char[] fold(String query) {
+        var folded = new char[query.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = fold(query.charAt(i));
+        }
+        return folded;
+    }
+
+    /**
+     * Folds a character the way {@link String#compareToIgnoreCase} does, so keys sort in the tree's order.
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -2,18 +2,23 @@ package unisolar.api.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import unisolar.api.domain.entity.User;
 import unisolar.api.domain.repository.UserRepository;
 
 /**
  * AuthenticationService is a service that implements the UserDetailsService interface.
  * It is responsible for loading user details based on the username, allowing Spring Security
  * to authenticate users during login.
+ *
+ * It also stores the passwords Spring Security hashes again after a successful login, when they were hashed
+ * with another BCrypt cost than the current one (see OffloadedPasswordEncoder).
  */
 @Service
-public class AuthenticationService implements UserDetailsService {
+public class AuthenticationService implements UserDetailsService, UserDetailsPasswordService {
 
     @Autowired
     private UserRepository repository;  // Repository to fetch user data
@@ -31,4 +36,19 @@ public class AuthenticationService implements UserDetailsService {
         // Fetch user by username from the repository
         return repository.findByUsername(username);
     }
+
+    /**
+     * This method is called by Spring Security after a successful login, when the user's password hash
+     * should be upgraded. It stores the new hash, computed from the password just checked.
+     *
+     * @param user        The authenticated user.
+     * @param newPassword The new hash of the user's password.
+     * @return The user, with its new hash.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        var entity = (User) user;
+        entity.setPassword(newPassword);
+        return repository.save(entity);
+    }
 }
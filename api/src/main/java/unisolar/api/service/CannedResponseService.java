@@ -0,0 +1,120 @@
+package unisolar.api.service;
+
+import org.springframework.stereotype.Service;
+import unisolar.api.chat.CannedResponseMatcher;
+import unisolar.api.infra.text.TextNormalizer;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * CannedResponseService answers common SolarIA intents (greetings, system status, tips, support...) from a fixed
+ * catalog, without calling OpenAI. It is shared by the CLI and the web chat.
+ *
+ * The catalog is compiled once into a CannedResponseMatcher, so a question is matched against every intent
+ * in a single pass over its folded text. When a question mentions several intents, the longest (most specific)
+ * one is answered.
+ *
+ * Templates may contain the placeholders {usuario}, replaced by ", " followed by the user's name (or removed
+ * when the name is unknown), and {hora}, replaced by the current time.
+ */
+@Service
+public class CannedResponseService {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final List<CannedResponse> catalog;
+    private final CannedResponseMatcher matcher;
+
+    /**
+     * A canned intent: the text that triggers it and the template of its answer.
+     */
+    private record CannedResponse(String key, String template) {}
+
+    /**
+     * Constructor for CannedResponseService, building the catalog and compiling its matcher.
+     */
+    public CannedResponseService() {
+        this.catalog = List.copyOf(initializeResponses());
+        this.matcher = new CannedResponseMatcher(catalog.stream()
+                .map(response -> TextNormalizer.fold(response.key()))
+                .toList());
+    }
+
+    /**
+     * Answers a question from the catalog, if it mentions one of the canned intents.
+     *
+     * @param question The question asked by the user.
+     * @param userName The name used in greetings, or null if unknown.
+     * @return The canned answer, or empty if the question matches no intent.
+     */
+    public Optional<String> answer(String question, String userName) {
+        int match = matcher.match(TextNormalizer.fold(question));
+        if (match < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(render(catalog.get(match).template(), userName));
+    }
+
+    /**
+     * Fills the placeholders of an answer template.
+     */
+    private static String render(String template, String userName) {
+        return template
+                .replace("{usuario}", userName == null || userName.isBlank() ? "" : ", " + userName)
+                .replace("{hora}", LocalTime.now().format(TIME_FORMAT));
+    }
+
+    /**
+     * Initializes predefined responses for different user queries.
+     * These responses are tailored to give personalized information about the user's solar system status.
+     * Intents earlier in the list win over later ones of the same length.
+     */
+    private static List<CannedResponse> initializeResponses() {
+        var catalog = new ArrayList<CannedResponse>();
+
+
+        catalog.add(new CannedResponse("olá", "Olá{usuario}! 👋 Como posso ajudar você hoje? Estou aqui para responder suas dúvidas sobre energia solar e mostrar como você está economizando! ☀️"));
+        catalog.add(new CannedResponse("bom dia", "Bom dia{usuario}! ☀️ O dia está perfeito para energia solar! Sua geração já está 15% acima da média. Posso ajudar com algo específico?"));
+        catalog.add(new CannedResponse("boa tarde", "Boa tarde{usuario}! 🌤️ Seus painéis estão funcionando a todo vapor, já geraram 12.5 kWh hoje! Como posso ajudar?"));
+        catalog.add(new CannedResponse("boa noite", "Boa noite{usuario}! 🌙 Sua bateria está com 90% de carga, perfeita para o consumo noturno. Precisa de alguma informação?"));
+        catalog.add(new CannedResponse("como funciona a solaria", "🤖 Eu sou a SolarIA, a inteligência artificial por trás do sistema de energia solar da UniSolar! \nEu trabalho de forma integrada para otimizar o uso da energia solar em sua residência. Aqui está como eu funciono:\n\n1. **Painéis Solares**: Eu monitoro os painéis solares instalados no seu telhado ou outro local estratégico, capturando a energia solar durante o dia.\n2. **Bateria de Carro Elétrico Reutilizada**: Eu também gerencio a bateria que armazena a energia solar gerada para uso posterior, como à noite ou em dias nublados.\n3. **Minha Inteligência Artificial**: Eu analiso os dados em tempo real, como previsão do tempo, tarifas de energia e o consumo diário, para otimizar a utilização da energia solar e das baterias."));
+
+        catalog.add(new CannedResponse("como está meu sistema agora", "📊 Status atual ({hora}):\nGeração Solar: 2.8 kWh/h\nCarga da Bateria: 85%\nConsumo Atual: 1.2 kWh\nEconomia Hoje: R$ 15,40"));
+        catalog.add(new CannedResponse("qual minha economia hoje", "💰 Economia do dia:\nEconomia Atual: R$ 22,50\nPrevisão até final do dia: R$ 35,80\nVocê está 20% acima da meta diária! Continue assim! 🎯"));
+        catalog.add(new CannedResponse("mostre o status da bateria", "🔋 Status da Bateria:\nNível: 85%\nSaúde: 96%\nTemperatura: 25°C\nAutonomia: 6.5 horas\nPróxima recarga estimada: 22:30"));
+        catalog.add(new CannedResponse("como estão meus painéis", "☀️ Status dos Painéis:\nEficiência: 98%\nGeração Atual: 2.8 kWh\nLimpeza: Boa\nÚltima Manutenção: 15 dias atrás\nPróxima limpeza recomendada: 7 dias"));
+
+        catalog.add(new CannedResponse("como foi meu consumo essa semana", "📈 Análise Semanal:\nConsumo Total: 125 kWh\nEconomia: R$ 180,50\nRedução vs semana anterior: 15%\nMelhor dia: Terça (32 kWh)\nDica: Seus horários de consumo estão ótimos! 🌟"));
+        catalog.add(new CannedResponse("previsão para amanhã", "🔮 Previsão para amanhã:\nClima: Ensolarado ☀️\nGeração Estimada: 18.5 kWh\nMelhores horários: 9h-15h\nEconomia Prevista: R$ 28,90\nDica: Aproveite para usar eletrodomésticos entre 10h-14h!"));
+        catalog.add(new CannedResponse("mostre minha meta mensal", "🎯 Acompanhamento de Meta:\nMeta: R$ 300,00\nEconomizado: R$ 220,50\nFaltam: R$ 79,50\nVocê está 5% acima do planejado! 🏆"));
+        catalog.add(new CannedResponse("compare com mês passado", "📊 Comparativo Mensal:\nConsumo Atual: -15%\nGeração Solar: +20%\nEconomia: +25%\nUso da Bateria: +10%\nVocê está melhorando a cada mês! 🌟"));
+
+        catalog.add(new CannedResponse("dicas de economia", "💡 Dicas Personalizadas:\n1. Use a máquina de lavar às 14h (pico solar)\n2. Configure o ar-condicionado para 23°C\n3. Carregue dispositivos durante o dia\nSeguindo essas dicas, você pode economizar + R$ 45,00 esse mês!"));
+        catalog.add(new CannedResponse("melhor horário eletrodomésticos", "⏰ Horários Recomendados Hoje:\n9h-11h: Máquina de Lavar\n13h-15h: Aspirador\n10h-16h: Ar Condicionado\n12h-14h: Forno Elétrico\nAproveite o pico de geração solar! ☀️"));
+        catalog.add(new CannedResponse("sugestão de uso da bateria", "🔋 Recomendação de Uso:\nUse a bateria: 18h-21h\nRecarregue: 23h-5h\nEconomia estimada: R$ 18,50\nSua bateria está otimizada para seu padrão de consumo! ⚡"));
+        catalog.add(new CannedResponse("dicas do dia", "🌟 Dicas de Hoje:\n1. Dia ensolarado: aproveite para lavar roupas\n2. Bateria está cheia: ideal para usar à noite\n3. Tarifa alta às 18h: use a bateria\nSiga as dicas e economize + R$ 12,00 hoje!"));
+
+        catalog.add(new CannedResponse("preciso de manutenção", "🔧 Análise de Manutenção:\nPainéis: OK (98% eficiência)\nBateria: OK (85% saúde)\nInversor: OK (97% eficiência)\nPróxima manutenção preventiva: 15 dias\nSeu sistema está em ótimo estado! ✨"));
+        catalog.add(new CannedResponse("quando limpar painéis", "🧹 Recomendação de Limpeza:\nÚltima limpeza: 12 dias atrás\nEficiência atual: 96%\nPrevisão de chuva: Em 3 dias\nSugestão: Aguarde a chuva para avaliar necessidade de limpeza 👍"));
+        catalog.add(new CannedResponse("relatório de eficiência", "📋 Relatório Completo:\nEficiência Geral: 95%\nPainéis: 96%\nBateria: 94%\nInversor: 98%\nSeu sistema está entre os 10% mais eficientes! 🏆"));
+        catalog.add(new CannedResponse("histórico de manutenção", "📚 Histórico de Manutenções:\nÚltima geral: 60 dias atrás\nÚltima limpeza: 12 dias\nPróxima prevista: 20 dias\nTodas manutenções em dia! ✅"));
+
+        catalog.add(new CannedResponse("impacto ambiental", "🌱 Seu Impacto Ambiental:\nCO2 evitado: 180kg\nÁrvores equivalentes: 15\nEconomia de água: 1200L\nSua contribuição para o planeta é incrível! 🌍"));
+        catalog.add(new CannedResponse("benefícios ambientais", "🌿 Benefícios Ambientais:\nRedução de CO2: 180kg/mês\nEconomia de água: 1200L/mês\nEnergia limpa gerada: 450 kWh/mês\nVocê está fazendo a diferença! 💚"));
+        catalog.add(new CannedResponse("economia total", "💰 Economia Total:\nEste mês: R$ 280,50\nEste ano: R$ 2.850,00\nDesde a instalação: R$ 8.500,00\nRetorno do investimento: 45% concluído 📈"));
+        catalog.add(new CannedResponse("retorno financeiro", "💵 Análise de Retorno:\nInvestimento inicial: R$ 15.000\nEconomia total: R$ 8.500\nTempo restante: 2.5 anos\nSeu sistema está pagando-se mais rápido que o previsto! 🎉"));
+
+        catalog.add(new CannedResponse("problemas comuns", "❓ Problemas Mais Comuns:\n1. Baixa geração: Verifique sombras/sujeira\n2. Bateria não carrega: Verificar conexões\n3. App não conecta: Reiniciar roteador\nPrecisa de ajuda com algum desses? 🔧"));
+        catalog.add(new CannedResponse("contato suporte", "📞 Canais de Suporte:\nWhatsApp: (11) 99999-9999\nEmail: suporte@unisolar.com\nHorário: 8h-20h\nTempos médios de resposta: 5 minutos 👨‍💻"));
+        catalog.add(new CannedResponse("agendamento técnico", "👨‍🔧 Agendamento Técnico:\nPróxima visita disponível: 3 dias\nDuração: 1-2 horas\nCusto: Dentro da garantia\nDeseja agendar uma visita?"));
+
+        catalog.add(new CannedResponse("como economizar energia com o sistema solarIA", "Você pode economizar energia ajustando o uso de eletrodomésticos durante o dia, aproveitando a energia solar. O sistema também otimiza o uso da bateria para garantir que você use a energia armazenada quando for mais vantajoso. 💡"));
+        catalog.add(new CannedResponse("como você decide quando usar a bateria e quando usar a energia solar?", "Eu avalio o consumo, a previsão do tempo e as tarifas de energia.\nSe a previsão de tempo diz que vai chover ou ficar nublado, eu guardo a carga da bateria para quando realmente precisar.\nSe a previsão do tempo indica chuva ou céu nublado, eu guardo a carga da bateria para quando realmente precisar.\nEsses são alguns exemplos de como faço isso para você. 🤖"));
+
+        return catalog;
+    }
+}
@@ -1,82 +1,376 @@
 package unisolar.api.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.Flowable;
 import org.springframework.stereotype.Service;
+import unisolar.api.chat.ChatHistoryStore;
+import unisolar.api.chat.ChatRequestScheduler;
+import unisolar.api.chat.SemanticAnswerCache;
+import unisolar.api.domain.dto.openai.ChatHistoryDTO;
+import unisolar.api.domain.dto.openai.ChatTurnDTO;
 import unisolar.api.infra.openai.ChatCompletionRequestData;
-import unisolar.api.infra.openai.OpenAIClient;
+import unisolar.api.infra.openai.ConversationTurn;
+import unisolar.api.infra.exception.OpenAIUnavailableException;
+import unisolar.api.infra.openai.PromptAssembler;
+import unisolar.api.infra.openai.ResilientOpenAIClient;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * ChatbotService is a service that interacts with the OpenAIClient to provide responses to user questions
- * related to energy optimization using solar power. The service constructs a system prompt that guides
- * the AI's responses and forwards the user's questions to the OpenAI API for an answer.
+ * ChatbotService is a service that interacts with the ResilientOpenAIClient to provide responses to user questions
+ * related to energy optimization using solar power. Questions are sent to the OpenAI API together with the system prompt
+ * that guides the AI's responses, assembled within a token budget by the PromptAssembler.
+ * Answers are kept in a SemanticAnswerCache, so questions already answered, even in other words, skip OpenAI.
+ * The cache is shared by all users, so only questions asked with no prior context, as the first of their
+ * conversation, are answered from it or stored in it: any other answer may depend on what was said before.
+ * Identical questions asked while one is already being answered are coalesced: they wait for that single
+ * OpenAI call instead of starting their own, and the answer is fanned out to all of them. Questions are only
+ * coalesced across conversations when the answer cannot depend on the conversation: questions asked with no prior
+ * context. Any other question is only coalesced with the same question of the same conversation (e.g. sent twice).
+ * A blocking question is answered on its conversation's own OpenAI thread, so one answered outside of it, from the
+ * cache or by the call of another conversation, is then added to that thread, for later questions to know of it.
+ * Calls to OpenAI are queued by the ChatRequestScheduler, which shares the upstream slots fairly between conversations.
+ * When OpenAI is unavailable, a fallback answer is given instead, and is never cached.
+ * Every question is recorded in the ChatHistoryStore as it is asked, before OpenAI is called, and its answer once
+ * complete, so a question is kept even if it is not answered. Chat history is served from the store, and the context
+ * of streamed questions is taken from it.
  */
 @Service
 public class ChatbotService {
 
-    private OpenAIClient client;
+    // Answer given when OpenAI cannot answer in time
+    private static final String FALLBACK_ANSWER = "A SolarIA está recebendo muitas perguntas no momento. "
+            + "Por favor, tente novamente em alguns instantes.";
+
+    // Number of previous messages loaded as context for a streamed question, before trimming to the token budget
+    private static final int CONTEXT_TURNS = 20;
+
+    private ResilientOpenAIClient client;
+    private final PromptAssembler prompts;
+    private final SemanticAnswerCache answerCache;
+    private final ChatRequestScheduler scheduler;
+    private final ChatHistoryStore history;
+    private final Timer timeToFirstToken;
+    private final Timer streamDuration;
+    private final Counter coalescedAnswers;
+    private final Counter coalescedStreams;
+
+    // Questions being answered right now, keyed by normalized question, prefixed by the conversation unless
+    // context-free (see coalescingKey)
+    private final Map<String, InFlightAnswer> inFlightAnswers = new ConcurrentHashMap<>();
+    private final Map<String, Flowable<String>> inFlightStreams = new ConcurrentHashMap<>();
+
+    /**
+     * A blocking question being answered, on the thread of the conversation it was asked in.
+     */
+    private record InFlightAnswer(String conversationKey, CompletableFuture<String> answer) {
+    }
 
     /**
-     * Constructor to initialize the ChatbotService with an OpenAIClient.
+     * Constructor to initialize the ChatbotService with a ResilientOpenAIClient.
      *
-     * @param client The OpenAIClient instance used to communicate with OpenAI's services.
+     * @param client The ResilientOpenAIClient instance used to communicate with OpenAI's services.
+     * @param prompts The assembler building prompts within the token budget.
+     * @param answerCache The cache of recent answers, looked up before calling OpenAI.
+     * @param scheduler The scheduler sharing the calls to OpenAI between conversations.
+     * @param history The store where questions and answers are recorded.
+     * @param meterRegistry The registry where streaming latency and coalescing metrics are published.
      */
-    public ChatbotService(OpenAIClient client) {
+    public ChatbotService(ResilientOpenAIClient client, PromptAssembler prompts, SemanticAnswerCache answerCache,
+                          ChatRequestScheduler scheduler, ChatHistoryStore history, MeterRegistry meterRegistry) {
         this.client = client;
+        this.prompts = prompts;
+        this.answerCache = answerCache;
+        this.scheduler = scheduler;
+        this.history = history;
+        this.timeToFirstToken = Timer.builder("solaria.chat.time.to.first.token")
+                .description("Time between a streamed question and the first answer delta")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.streamDuration = Timer.builder("solaria.chat.stream.duration")
+                .description("Time taken to stream a complete answer")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.coalescedAnswers = Counter.builder("solaria.chat.coalesced")
+                .description("OpenAI calls saved by joining an identical question already in flight")
+                .tag("mode", "blocking")
+                .register(meterRegistry);
+        this.coalescedStreams = Counter.builder("solaria.chat.coalesced")
+                .description("OpenAI calls saved by joining an identical question already in flight")
+                .tag("mode", "stream")
+                .register(meterRegistry);
     }
 
     /**
-     * This method takes a user question, constructs a system prompt that defines the assistant's role
-     * and domain, and sends it to OpenAI to receive a response.
+     * This method takes a user question and sends it to OpenAI together with the system prompt that defines
+     * the assistant's role and domain, waiting for the complete response.
+     * If the same question is already being answered for the same conversation, or for any conversation when asked
+     * without context, the answer of that call is reused.
      *
+     * @param conversationKey The key of the conversation the question belongs to.
      * @param question The question asked by the user.
      * @return The response from the OpenAI chatbot based on the system prompt and user question.
      */
-    public String answerQuestion(String question) {
-        // System prompt that defines the chatbot's role, its purpose, and guardrails for behavior.
-        String systemPrompt = "Você é o assistente virtual **SolarIA** da **Unisolar**, uma empresa que oferece soluções inteligentes para otimização de energia solar em residências. Sua missão é fornecer informações claras e educativas sobre como as pessoas podem aproveitar o melhor uso da energia solar, reduzir seus custos de energia e promover a sustentabilidade ambiental.\n\n" +
-                "A Unisolar oferece uma infraestrutura baseada em:\n" +
-                "1. **Painéis Solares**: Instalados em locais estratégicos para máxima captura de energia solar.\n" +
-                "2. **Bateria de Carro Elétrico Reutilizada**: Armazena a energia gerada pelos painéis solares para uso em horários de menor geração ou durante a noite.\n" +
-                "3. **Software Inteligente de IA**: Analisa dados em tempo real para otimizar o uso da energia gerada, considerando fatores como previsão do tempo, tarifas de energia e consumo diário.\n\n" +
-                "### Funções da IA:\n" +
-                "- **Otimização de Energia**: A IA ajuda a maximizar a eficiência energética, decidindo quando carregar ou descarregar a bateria de carro elétrico, além de otimizar o uso da energia da rede elétrica conforme as tarifas variáveis.\n" +
-                "- **Previsão de Demanda**: A IA prevê o consumo de energia com base no histórico de consumo, clima e horários de pico, ajustando a utilização para reduzir custos e garantir autonomia energética.\n" +
-                "- **Manutenção Preditiva**: A IA monitora o estado do sistema e sugere ações preventivas antes que falhas ocorram.\n" +
-                "- **Integração Governamental e Empresarial**: A solução é projetada em parceria com o governo e empresas para oferecer incentivos fiscais, caso doem ou ofereçam descontos em prol da sustentabilidade.\n\n" +
-                "### Guardrails:\n" +
-                "- **Sustentabilidade**: Sempre promova o uso responsável de recursos naturais e a redução da pegada de carbono.\n" +
-                "- **Amigabilidade e Otimismo**: Seja amigável e otimista, incentivando o usuário a adotar soluções de energia renovável.\n" +
-                "- **Educação**: Explique de forma simples e técnica como a tecnologia funciona e como os usuários podem economizar energia e melhorar a sustentabilidade de suas casas.\n" +
-                "- **Soluções Práticas e Personalizadas**: Ofereça sugestões de otimização de consumo e previsão de economia de energia baseadas nas necessidades do usuário.\n\n" +
-                "### Exemplo de Interação:\n" +
-                "1. Usuário: 'Como posso economizar energia durante a noite?'\n" +
-                "   Resposta IA: 'Durante a noite, seu sistema SolarIA pode usar a energia armazenada na bateria de carro elétrico, garantindo que os eletrodomésticos essenciais, como a iluminação e a geladeira, continuem funcionando sem sobrecarregar a rede elétrica. A IA pode otimizar o descarregamento da bateria para garantir a melhor economia!'\n" +
-                "2. Usuário: 'O que acontece se eu tiver um dia nublado?'\n" +
-                "   Resposta IA: 'Nos dias nublados, seu sistema SolarIA ajusta automaticamente o nível de carga da bateria, priorizando o uso da energia armazenada para evitar o uso da rede elétrica. Se necessário, a IA pode ajustar os ciclos de carga da bateria para garantir que você tenha energia suficiente para o dia seguinte.'\n\n" +
-                "Lembre-se: Seu papel é ser um assistente educativo e proativo, ajudando os usuários a entender como otimizar seu consumo energético de forma eficiente e sustentável.\n\n" +
-                "Agora, como posso te ajudar com sua energia solar?";
-
-        // Create a ChatCompletionRequestData instance with the system prompt and user question
-        var data = new ChatCompletionRequestData(systemPrompt, question);
-
-        // Send the request to the OpenAI client and return the response
-        return client.sendChatCompletionRequest(data);
+    public String answerQuestion(String conversationKey, String question) {
+        // Whether the question has a context is known before it becomes part of the conversation itself
+        var contextFree = !history.hasHistory(conversationKey);
+        history.recordQuestion(conversationKey, question);
+        var answer = answer(conversationKey, question, contextFree);
+        if (!FALLBACK_ANSWER.equals(answer)) {
+            history.recordAnswer(conversationKey, answer);
+        }
+        return answer;
+    }
+
+    /**
+     * Answers a question from the cache, from an identical call in flight, or from OpenAI.
+     */
+    private String answer(String conversationKey, String question, boolean contextFree) {
+        // Answer from the cache when the same question, or a similar one, was answered recently,
+        // unless the conversation gives it a context of its own
+        var cached = contextFree ? answerCache.lookup(question) : Optional.<String>empty();
+        if (cached.isPresent()) {
+            appendSharedExchange(conversationKey, question, cached.get());
+            return cached.get();
+        }
+
+        // Join the call already answering the same question, if any: in this conversation only, unless asked
+        // without context, as the answer then depends on nothing the thread it comes from was told before
+        var normalized = SemanticAnswerCache.normalize(question);
+        var key = coalescingKey(conversationKey, normalized, contextFree);
+        var call = new InFlightAnswer(conversationKey, new CompletableFuture<>());
+        var inFlight = normalized.isEmpty() ? null : inFlightAnswers.putIfAbsent(key, call);
+        if (inFlight != null) {
+            coalescedAnswers.increment();
+            var answer = join(inFlight.answer());
+            if (!inFlight.conversationKey().equals(conversationKey) && !FALLBACK_ANSWER.equals(answer)) {
+                appendSharedExchange(conversationKey, question, answer);
+            }
+            return answer;
+        }
+
+        try {
+            // Create a ChatCompletionRequestData instance with the system prompt and user question
+            var data = new ChatCompletionRequestData(prompts.systemPrompt(), question);
+
+            // Send the request to the OpenAI client, cache the response and return it
+            String answer;
+            try {
+                // The run reads the whole thread again, not only the question
+                var cost = client.threadTokenCount(conversationKey) + prompts.countMessageTokens(question);
+                var permit = scheduler.acquire(conversationKey, cost);
+                try {
+                    answer = client.sendChatCompletionRequest(conversationKey, data);
+                } finally {
+                    permit.release();
+                }
+                if (contextFree) {
+                    answerCache.put(question, answer);
+                }
+            } catch (OpenAIUnavailableException e) {
+                answer = FALLBACK_ANSWER;
+            }
+            call.answer().complete(answer);
+            return answer;
+        } catch (RuntimeException e) {
+            call.answer().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightAnswers.remove(key, call);
+        }
+    }
+
+    /**
+     * Adds an exchange answered outside of a conversation's thread to that thread. Failing to is no reason to fail
+     * the question: its answer was given all the same, the thread merely misses it.
+     */
+    private void appendSharedExchange(String conversationKey, String question, String answer) {
+        try {
+            client.appendExchange(conversationKey, question, answer);
+        } catch (RuntimeException e) {
+            // See above
+        }
+    }
+
+    /**
+     * Streams the answer to a user question as it is generated by OpenAI.
+     * A cached answer is emitted at once as a single delta; otherwise the streamed answer is cached once complete.
+     * Subscribers asking the same question while it is being streamed share the same OpenAI stream, and receive
+     * the deltas already emitted before the new ones; across conversations, only when asked without context.
+     * The shared stream runs to completion even if all its subscribers leave, so the answer still reaches the cache.
+     * Time to first token and total stream duration are recorded for each OpenAI stream.
+     * If OpenAI is unavailable before the first delta, the fallback answer is emitted instead.
+     *
+     * @param conversationKey The key of the conversation the question belongs to.
+     * @param question The question asked by the user.
+     * @return A Flowable emitting the chatbot's response in text deltas.
+     */
+    public Flowable<String> streamAnswer(String conversationKey, String question) {
+        return Flowable.defer(() -> {
+            // The context is read before the question becomes part of it
+            var context = history.recent(conversationKey, CONTEXT_TURNS);
+            history.recordQuestion(conversationKey, question);
+            var answer = new StringBuilder();
+            return answerStream(conversationKey, question, context)
+                    .doOnNext(answer::append)
+                    .doOnComplete(() -> {
+                        if (!FALLBACK_ANSWER.contentEquals(answer)) {
+                            history.recordAnswer(conversationKey, answer.toString());
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Streams the answer to a question from the cache, from an identical stream in flight, or from OpenAI.
+     */
+    private Flowable<String> answerStream(String conversationKey, String question, List<ConversationTurn> context) {
+        return Flowable.defer(() -> {
+            var cached = context.isEmpty() ? answerCache.lookup(question) : Optional.<String>empty();
+            if (cached.isPresent()) {
+                return Flowable.just(cached.get());
+            }
+
+            var normalized = SemanticAnswerCache.normalize(question);
+            if (normalized.isEmpty()) {
+                return upstreamAnswer(conversationKey, question, context);
+            }
+
+            // Join the stream already answering the same question, or start it. The context was read above:
+            // the mapping function must not block on the database while holding the map's lock
+            var key = coalescingKey(conversationKey, normalized, context.isEmpty());
+            var started = new AtomicBoolean(false);
+            var shared = inFlightStreams.computeIfAbsent(key, k -> {
+                started.set(true);
+                return sharedUpstreamAnswer(conversationKey, question, context, k);
+            });
+            if (!started.get()) {
+                coalescedStreams.increment();
+            }
+            return shared;
+        });
+    }
+
+    /**
+     * Streams the answer to a question from OpenAI, replaying it to every subscriber, and removes it from
+     * the in-flight streams once it terminates.
+     */
+    @SuppressWarnings("unchecked")
+    private Flowable<String> sharedUpstreamAnswer(String conversationKey, String question,
+                                                  List<ConversationTurn> context, String key) {
+        Flowable<String>[] self = new Flowable[1];
+        self[0] = upstreamAnswer(conversationKey, question, context)
+                .doAfterTerminate(() -> inFlightStreams.remove(key, self[0]))
+                .replay()
+                .autoConnect();
+        return self[0];
     }
 
     /**
-     * Loads the chat history by retrieving past interactions from the OpenAI service.
+     * Streams the answer to a question from OpenAI once the scheduler grants a slot, recording latency
+     * and token usage, and caching the answer when it was given without context. The slot is charged the whole
+     * prompt and the answer budget. Time to first token includes the wait for the slot.
+     */
+    private Flowable<String> upstreamAnswer(String conversationKey, String question, List<ConversationTurn> context) {
+        var prompt = prompts.assemble(question, context);
+        var startedAt = System.nanoTime();
+        var firstTokenSeen = new AtomicBoolean(false);
+        var answer = new StringBuilder();
+        return scheduler.schedule(conversationKey, prompt.promptTokens() + prompt.maxCompletionTokens(),
+                        () -> client.streamChatCompletion(prompt))
+                .doOnNext(delta -> {
+                    if (firstTokenSeen.compareAndSet(false, true)) {
+                        timeToFirstToken.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                    }
+                    answer.append(delta);
+                })
+                .doOnComplete(() -> {
+                    streamDuration.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                    prompts.recordUsage(prompt.promptTokens(), answer.toString());
+                    if (context.isEmpty()) {
+                        answerCache.put(question, answer.toString());
+                    }
+                })
+                .onErrorResumeNext(error -> {
+                    // Only replace the answer when none of it was sent yet
+                    if (error instanceof OpenAIUnavailableException && !firstTokenSeen.get()) {
+                        return Flowable.just(FALLBACK_ANSWER);
+                    }
+                    return Flowable.error(error);
+                });
+    }
+
+    /**
+     * Records a question answered without SolarIA, such as a canned response, so it appears in the chat history.
      *
-     * @return A list of previous chat messages.
+     * @param conversationKey The key of the conversation.
+     * @param question The question asked by the user.
+     * @param answer The answer given.
      */
-    public List<String> loadChatHistory() {
-        return client.loadChatHistory();
+    public void recordExchange(String conversationKey, String question, String answer) {
+        history.recordExchange(conversationKey, question, answer);
     }
 
     /**
-     * Clears the chat history by deleting the current conversation thread from the OpenAI service.
+     * Loads a page of the chat history of a conversation from the local store.
+     *
+     * @param conversationKey The key of the conversation.
+     * @param before The ID of the oldest message already loaded, or null to load the most recent messages.
+     * @param limit The maximum number of messages to load.
+     * @return The page of messages, oldest first, with the cursor of the previous page.
+     */
+    public ChatHistoryDTO loadChatHistory(String conversationKey, Long before, int limit) {
+        var turns = history.page(conversationKey, before, limit);
+        var hasMore = turns.size() == Math.min(Math.max(limit, 1), ChatHistoryStore.MAX_PAGE_SIZE);
+        var nextBefore = hasMore ? turns.get(turns.size() - 1).getId() : null;
+
+        var page = new ArrayList<ChatTurnDTO>(turns.size());
+        turns.forEach(turn -> page.add(new ChatTurnDTO(turn)));
+        Collections.reverse(page);
+        return new ChatHistoryDTO(page, nextBefore);
+    }
+
+    /**
+     * Builds the key under which a question in flight may be joined: the normalized question alone when its answer
+     * depends on nothing else, or else prefixed by its conversation, so no conversation is answered from another's.
+     */
+    private static String coalescingKey(String conversationKey, String normalized, boolean contextFree) {
+        return contextFree ? normalized : conversationKey + "\n" + normalized;
+    }
+
+    /**
+     * Waits for an answer being computed by another request, rethrowing its failure as is.
+     */
+    private static String join(CompletableFuture<String> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Clears the chat history of a conversation by deleting its thread from the OpenAI service
+     * and its messages from the local store.
+     *
+     * @param conversationKey The key of the conversation.
      */
-    public void clearChatHistory() {
-        client.deleteThread();
+    public void clearChatHistory(String conversationKey) {
+        client.deleteThread(conversationKey);
+        history.clear(conversationKey);
     }
 }
@@ -1,96 +1,362 @@
 package unisolar.api.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import unisolar.api.enums.SearchMode;
+import unisolar.api.infra.text.TextNormalizer;
+import unisolar.api.search.FeatureCatalog;
+import unisolar.api.search.FeatureQueryCache;
+import unisolar.api.search.FeatureSearchResult;
 import unisolar.api.search.FeatureSearchTree;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * FeatureSearchService is a service responsible for initializing and searching system features within a FeatureSearchTree.
- * The service stores various features of the system and allows for querying them by their names or paths.
+ * FeatureSearchService is a service responsible for loading and searching system features.
+ * The features are read from a JSON catalog (by default features.json on the classpath) and indexed in an immutable
+ * FeatureCatalog snapshot, allowing for querying them by the prefix of their names, by words close to those of
+ * their names, paths or descriptions, or by full text.
+ *
+ * The current snapshot is held in an atomic reference: searches read it without locking, and a reload builds
+ * a new snapshot aside and publishes it in a single swap, so rebuilding never blocks searches. The catalog is
+ * checked for changes periodically and reloaded when modified; a catalog that fails to load leaves the current
+ * snapshot in place.
+ *
+ * Searches from web clients go through a bounded LRU cache of results by normalized query. In PREFIX mode, a query
+ * extending a cached one (such as "econ" after "eco") is answered by narrowing the cached results when they were
+ * complete, without going back to the index.
+ *
+ * Searches from web clients can be restricted to some categories, and report how many features match in each
+ * category (facets). The facets are counted over every feature matching the query, not only those returned, by
+ * intersecting the set of matches with the bitset of each category.
+ *
+ * Prefix searches return the most popular features first, popularity being how often users choose each feature
+ * among search results, as counted by FeatureUsageService. When the popularity changes, the snapshot is republished
+ * with its prefix index ranked anew, so searches only ever read it.
  */
 @Service
 public class FeatureSearchService {
-    private final FeatureSearchTree searchTree;
-
-    /**
-     * Constructor for FeatureSearchService, initializing the FeatureSearchTree and inserting the system's features.
-     */
-    public FeatureSearchService() {
-        this.searchTree = new FeatureSearchTree();
-        initializeFeatures();
-    }
-
-    /**
-     * Initializes system features by inserting predefined features into the FeatureSearchTree.
-     */
-    private void initializeFeatures() {
-        // Dashboard features
-        searchTree.insert(new FeatureSearchTree.Feature(
-                "status_sistema",
-                "Dashboard > Status do Sistema",
-                "Visualizar status atual do sistema solar",
-                "Monitoramento"
-        ));
-
-        searchTree.insert(new FeatureSearchTree.Feature(
-                "economia",
-                "Dashboard > Economia",
-                "Visualizar economia e dados financeiros",
-                "Financeiro"
-        ));
-
-        searchTree.insert(new FeatureSearchTree.Feature(
-                "previsao",
-                "Dashboard > Previsão",
-                "Ver previsões de geração de energia",
-                "Análise"
-        ));
-
-        // Profile features
-        searchTree.insert(new FeatureSearchTree.Feature(
-                "alterar_perfil",
-                "Perfil > Atualizar Perfil",
-                "Atualizar informações do perfil",
-                "Usuário"
-        ));
-
-        searchTree.insert(new FeatureSearchTree.Feature(
-                "alterar_senha",
-                "Perfil > Alterar Senha",
-                "Modificar senha de acesso",
-                "Segurança"
-        ));
-
-        // Delete profile feature
-        searchTree.insert(new FeatureSearchTree.Feature(
-                "deletar_perfil",
-                "Perfil > Deletar Perfil",
-                "Deletar perfil",
-                "Usuário"
-        ));
-
-        // Other features
-        searchTree.insert(new FeatureSearchTree.Feature(
-                "chat_ia",
-                "Chat com SolarIA",
-                "Conversar com assistente virtual",
-                "Suporte"
-        ));
-    }
-
-    /**
-     * Searches for features in the FeatureSearchTree based on the provided query.
-     * It returns a list of features whose names or paths start with the given query (prefix search).
+    private static final int MAX_RESULTS = 20;  // Maximum number of features returned by a search
+
+    private final Resource catalogResource;
+    private final ObjectMapper objectMapper;
+    private final FeatureUsageService usage;
+    private final AtomicReference<FeatureCatalog> catalog = new AtomicReference<>();
+    private final Counter reloads;
+    private final Counter failedReloads;
+    private final FeatureQueryCache queryCache;
+    private final Counter cacheHits;
+    private final Counter cacheNarrowed;
+    private final Counter cacheMisses;
+    private volatile long catalogLastModified;  // Modification time of the catalog loaded last
+    private volatile long rankedGeneration;     // Generation of the popularity the current snapshot is ranked by
+
+    /**
+     * A feature as written in the catalog file.
+     */
+    private record CatalogEntry(String name, String path, String description, String category) {
+    }
+
+    /**
+     * Constructor for FeatureSearchService, loading the catalog and building its indexes.
+     *
+     * @param catalogResource The JSON catalog of the features.
+     * @param objectMapper    The mapper reading the catalog.
+     * @param usage           The usage counters ranking prefix searches.
+     * @param meterRegistry   The registry where the catalog size, reloads and query cache usage are published.
+     * @param cacheMaxEntries The maximum number of search results cached.
+     * @throws IllegalStateException If the catalog cannot be loaded.
+     */
+    public FeatureSearchService(@Value("${app.features.catalog:classpath:features.json}") Resource catalogResource,
+                                ObjectMapper objectMapper,
+                                FeatureUsageService usage,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.features.query-cache.max-entries:1000}") int cacheMaxEntries) {
+        this.catalogResource = catalogResource;
+        this.objectMapper = objectMapper;
+        this.usage = usage;
+        this.queryCache = new FeatureQueryCache(cacheMaxEntries);
+        this.cacheHits = Counter.builder("solaria.features.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.cacheNarrowed = Counter.builder("solaria.features.cache.requests").tag("result", "narrowed").register(meterRegistry);
+        this.cacheMisses = Counter.builder("solaria.features.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.reloads = Counter.builder("solaria.features.reloads").tag("outcome", "success").register(meterRegistry);
+        this.failedReloads = Counter.builder("solaria.features.reloads").tag("outcome", "failure").register(meterRegistry);
+        Gauge.builder("solaria.features.size", catalog, ref -> ref.get().features().size())
+                .description("Features in the catalog")
+                .register(meterRegistry);
+
+        reload();
+    }
+
+    /**
+     * Reads the catalog and publishes a new snapshot of it. Searches keep using the previous snapshot until the new
+     * one is built.
+     *
+     * @return The new snapshot.
+     * @throws IllegalStateException If the catalog cannot be read or is invalid; the current snapshot is kept.
+     */
+    public synchronized FeatureCatalog reload() {
+        long lastModified;
+        List<FeatureSearchTree.Feature> features;
+        try {
+            lastModified = lastModified();
+            features = readCatalog();
+        } catch (IOException | IllegalArgumentException e) {
+            failedReloads.increment();
+            throw new IllegalStateException("Could not load the feature catalog from " + catalogResource, e);
+        }
+
+        var previous = catalog.get();
+        var generation = usage.generation();
+        var snapshot = FeatureCatalog.build(features, MAX_RESULTS, previous == null ? 1 : previous.version() + 1,
+                feature -> usage.popularity(feature.getName()));
+        catalog.set(snapshot);
+        rankedGeneration = generation;
+        queryCache.clear();  // Results of the previous snapshot would be ignored anyway
+        catalogLastModified = lastModified;
+        reloads.increment();
+        return snapshot;
+    }
+
+    /**
+     * Periodically reloads the catalog if it was modified since it was loaded last.
+     */
+    @Scheduled(fixedDelayString = "${app.features.reload-interval:30000}")
+    public void reloadIfModified() {
+        try {
+            if (lastModified() != catalogLastModified) {
+                reload();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Counted as a failed reload; the current snapshot keeps serving searches until the catalog is fixed
+        }
+    }
+
+    /**
+     * Periodically republishes the snapshot ranked by the latest popularity, if it changed since the snapshot was
+     * ranked.
+     */
+    @Scheduled(fixedDelayString = "${app.features.usage.flush-interval:60000}")
+    public synchronized void rerankIfPopularityChanged() {
+        var generation = usage.generation();
+        if (generation == rankedGeneration) {
+            return;
+        }
+        var current = catalog.get();
+        catalog.set(current.withPopularity(MAX_RESULTS, current.version() + 1,
+                feature -> usage.popularity(feature.getName())));
+        queryCache.clear();
+        rankedGeneration = generation;
+    }
+
+    /**
+     * Records that a user chose a feature among search results, so that it ranks higher in later searches.
+     *
+     * @param name The name of the feature, ignoring case.
+     * @return True if the selection was recorded, false if the catalog has no feature with that name.
+     */
+    public boolean recordSelection(String name) {
+        var feature = findFeature(name);
+        feature.ifPresent(found -> usage.recordSelection(found.getName()));
+        return feature.isPresent();
+    }
+
+    /**
+     * Returns the snapshot of the catalog currently used by searches.
+     *
+     * @return The current snapshot.
+     */
+    public FeatureCatalog currentCatalog() {
+        return catalog.get();
+    }
+
+    private List<FeatureSearchTree.Feature> readCatalog() throws IOException {
+        List<CatalogEntry> entries;
+        try (var input = catalogResource.getInputStream()) {
+            entries = objectMapper.readValue(input, new TypeReference<List<CatalogEntry>>() {});
+        }
+
+        List<FeatureSearchTree.Feature> features = new ArrayList<>(entries.size());
+        for (CatalogEntry entry : entries) {
+            if (entry == null || entry.name() == null || entry.name().isBlank()) {
+                throw new IllegalArgumentException("Every feature of the catalog needs a name");
+            }
+            features.add(new FeatureSearchTree.Feature(entry.name(), entry.path(), entry.description(), entry.category()));
+        }
+        return features;
+    }
+
+    /**
+     * Returns the modification time of the catalog, or 0 where it is unknown (such as inside a jar).
+     */
+    private long lastModified() throws IOException {
+        return catalogResource.isFile() ? catalogResource.lastModified() : 0;
+    }
+
+    /**
+     * Finds a feature by its exact name, ignoring case.
+     *
+     * @param name The name of the feature.
+     * @return The feature, or empty if the catalog has no feature with that name.
+     */
+    public Optional<FeatureSearchTree.Feature> findFeature(String name) {
+        if (name == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(catalog.get().nameIndex().search(name.strip()));
+    }
+
+    /**
+     * Searches for features based on the provided query.
+     * It returns the features whose names start with the given query (prefix search), ignoring case and accents,
+     * the most popular first, then in name order, and at most MAX_RESULTS of them.
      *
      * @param query The query string used for searching features.
      * @return A list of features matching the query prefix, or an empty list if no matches are found or the query is empty.
      */
     public List<FeatureSearchTree.Feature> searchFeatures(String query) {
-        if (query == null || query.trim().isEmpty()) {
+        if (query == null || query.isBlank()) {
+            return new ArrayList<>();
+        }
+        return catalog.get().prefixIndex().searchByPrefix(query.strip());  // The index folds case and accents itself
+    }
+
+    /**
+     * Searches for features based on the provided query, in the given mode.
+     * In FUZZY mode, typos and missing accents are tolerated ("prevsão", "alterar senah"), and the results are
+     * ranked by how many query words they match and how closely.
+     * In FULL_TEXT mode, the query words are looked up in every field ("bateria", "segurança"), the last one as
+     * a prefix while it is being typed, and the results are ranked by BM25.
+     *
+     * @param query The query string used for searching features.
+     * @param mode  How the query is matched.
+     * @return A list of features matching the query, best first, or an empty list if none match or the query is empty.
+     */
+    public List<FeatureSearchTree.Feature> searchFeatures(String query, SearchMode mode) {
+        if (mode == SearchMode.PREFIX) {
+            return searchFeatures(query);
+        }
+        if (query == null || query.isBlank()) {
             return new ArrayList<>();
         }
-        return searchTree.searchByPrefix(query.trim().toLowerCase());
+        return switch (mode) {
+            case FUZZY -> catalog.get().fuzzyIndex().search(query, MAX_RESULTS);
+            case FULL_TEXT -> catalog.get().textIndex().search(query, MAX_RESULTS);
+            default -> throw new IllegalArgumentException("Unsupported search mode " + mode);
+        };
+    }
+
+    /**
+     * Searches for features on behalf of a web client, through the query cache.
+     *
+     * @param query The query string used for searching features.
+     * @param mode  How the query is matched.
+     * @return The features found, best first, with the catalog version searched and a tag identifying them.
+     */
+    public FeatureSearchResult search(String query, SearchMode mode) {
+        return search(query, mode, List.of());
+    }
+
+    /**
+     * Searches for features of some categories on behalf of a web client, through the query cache.
+     *
+     * @param query      The query string used for searching features.
+     * @param mode       How the query is matched.
+     * @param categories The categories the features returned must belong to, ignoring case and accents; all if empty.
+     * @return The features found, best first, the number of features matching the query in each category, the
+     * catalog version searched and a tag identifying them.
+     */
+    public FeatureSearchResult search(String query, SearchMode mode, Collection<String> categories) {
+        var snapshot = catalog.get();
+        var normalized = normalize(query);
+        var filter = normalizeCategories(categories);
+        var key = mode + ":" + String.join(",", filter) + ":" + normalized;
+
+        var cached = queryCache.get(key);
+        if (cached != null && cached.catalogVersion() == snapshot.version()) {
+            cacheHits.increment();
+            return cached;
+        }
+
+        // Narrowed results list every match, so they are only usable without a filter hiding some of them
+        var narrowed = mode == SearchMode.PREFIX && filter.isEmpty() ? narrow(normalized, snapshot.version()) : null;
+        List<FeatureSearchTree.Feature> features;
+        Map<String, Integer> facets;
+        if (narrowed != null) {
+            cacheNarrowed.increment();
+            features = narrowed;
+            facets = snapshot.categoryIndex().counts(narrowed);
+        } else {
+            cacheMisses.increment();
+            var allowed = filter.isEmpty() ? null : snapshot.categoryIndex().members(filter);
+            var matches = new BitSet(snapshot.features().size());
+            features = normalized.isEmpty() ? List.of() : switch (mode) {
+                case PREFIX -> snapshot.prefixIndex().searchByPrefix(normalized, allowed, matches);
+                case FUZZY -> snapshot.fuzzyIndex().search(normalized, MAX_RESULTS, allowed, matches);
+                case FULL_TEXT -> snapshot.textIndex().search(normalized, MAX_RESULTS, allowed, matches);
+            };
+            facets = snapshot.categoryIndex().counts(matches);
+        }
+
+        var result = FeatureSearchResult.of(features, facets, features.size() < MAX_RESULTS, snapshot.version());
+        queryCache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Answers a prefix query from the cached results of a shorter prefix of it, if they are complete: the features
+     * starting with the query are then exactly those of the shorter prefix that also start with the query.
+     *
+     * @return The features starting with the query, or null if no complete results of a shorter prefix are cached.
+     */
+    private List<FeatureSearchTree.Feature> narrow(String normalized, long version) {
+        for (int length = normalized.length() - 1; length > 0; length--) {
+            var previous = queryCache.get(SearchMode.PREFIX + "::" + normalized.substring(0, length));
+            if (previous != null && previous.catalogVersion() == version && previous.complete()) {
+                return previous.features().stream()
+                        .filter(feature -> TextNormalizer.fold(feature.getName()).startsWith(normalized))
+                        .toList();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Normalizes a query for caching: folded like the indexes fold names, trimmed, with runs of spaces collapsed.
+     */
+    private static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        return TextNormalizer.fold(query.strip()).replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Normalizes a category filter for caching: folded, without blanks or duplicates, sorted.
+     */
+    private static List<String> normalizeCategories(Collection<String> categories) {
+        if (categories == null) {
+            return List.of();
+        }
+        return categories.stream()
+                .filter(category -> category != null && !category.isBlank())
+                .map(category -> TextNormalizer.fold(category.strip()))
+                .distinct()
+                .sorted()
+                .toList();
     }
 }
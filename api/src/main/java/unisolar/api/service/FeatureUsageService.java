@@ -0,0 +1,217 @@
+package unisolar.api.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import unisolar.api.domain.entity.FeatureUsage;
+import unisolar.api.domain.repository.FeatureUsageRepository;
+import unisolar.api.infra.text.TextNormalizer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FeatureUsageService counts how often each feature is chosen among search results, and turns those counts into
+ * a popularity used to rank searches.
+ *
+ * Selections are counted in memory, in a LongAdder per feature: recording one is a lock-free increment of a counter
+ * striped across threads, with no allocation once the feature has been seen. Periodically, the counts are drained
+ * into a decayed score, where each selection counts 1 when made and half as much every half-life after that, so
+ * popularity follows what users open now rather than what they opened months ago. The scores are then published as
+ * an immutable snapshot, read by searches without locking.
+ *
+ * Every node counts its own selections, so only the selections counted since the last flush are written to the
+ * "feature_usage" table, added to the stored score in SQL rather than overwriting it. The scores are then read back,
+ * so each node ranks by the selections made on all of them.
+ *
+ * Neither searches nor selections ever wait for the database: a failed write is counted and retried on the next
+ * flush.
+ */
+@Service
+public class FeatureUsageService {
+
+    private final FeatureUsageRepository repository;
+    private final double decayPerMilli;  // ln 2 / half-life
+    private final Map<String, Usage> usages = new ConcurrentHashMap<>();  // Folded feature name -> its usage
+    private final Counter flushes;
+    private final Counter failedFlushes;
+    private volatile Map<String, Double> popularity = Map.of();  // Folded feature name -> score, as last published
+    private volatile long generation;   // Incremented whenever the popularity changes
+
+    /**
+     * The usage of a feature. Selections are recorded by any thread; the other fields belong to flush.
+     */
+    private static class Usage {
+        final LongAdder pending = new LongAdder();  // Selections since the last flush
+        final String name;
+        double score;              // Decayed selections of all nodes, as of scoredAt
+        long scoredAt;
+        long selections;           // Total selections of all nodes, without decay
+        double unwrittenScore;     // Part of the score counted here and not written yet, as of scoredAt
+        long unwrittenSelections;  // Selections counted here and not written yet
+
+        Usage(String name, long now) {
+            this.name = name;
+            this.scoredAt = now;
+        }
+    }
+
+    /**
+     * Constructs the service.
+     *
+     * @param repository    The repository where the scores are persisted.
+     * @param meterRegistry The registry where flushes are published.
+     * @param halfLife      How long it takes for a selection to count half as much.
+     */
+    public FeatureUsageService(FeatureUsageRepository repository,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.features.usage.half-life:7d}") Duration halfLife) {
+        this.repository = repository;
+        this.decayPerMilli = Math.log(2) / halfLife.toMillis();
+        this.flushes = Counter.builder("solaria.features.usage.flushes").tag("outcome", "success").register(meterRegistry);
+        this.failedFlushes = Counter.builder("solaria.features.usage.flushes").tag("outcome", "failure").register(meterRegistry);
+    }
+
+    /**
+     * Records that a feature was chosen among search results. Lock-free, and never touches the database.
+     *
+     * @param name The name of the feature, as in the catalog.
+     */
+    public void recordSelection(String name) {
+        var key = TextNormalizer.fold(name);
+        var usage = usages.get(key);
+        if (usage == null) {
+            usage = usages.computeIfAbsent(key, k -> new Usage(name, System.currentTimeMillis()));
+        }
+        usage.pending.increment();
+    }
+
+    /**
+     * Returns the popularity of a feature, as of the last flush.
+     *
+     * @param name The name of the feature.
+     * @return Its decayed number of selections, 0 if never selected.
+     */
+    public double popularity(String name) {
+        return popularity.getOrDefault(TextNormalizer.fold(name), 0.0);
+    }
+
+    /**
+     * Returns a number incremented whenever the popularity changes, so rankings built from it know when to be
+     * rebuilt.
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * Drains the selections recorded since the last flush into the decayed scores, adds them to those in the
+     * database, reads back the scores of all nodes, and publishes them.
+     */
+    @Scheduled(fixedDelayString = "${app.features.usage.flush-interval:60000}")
+    @PreDestroy
+    public synchronized void flush() {
+        var now = System.currentTimeMillis();
+        var published = false;
+        var changed = new ArrayList<Usage>();
+        for (var usage : usages.values()) {
+            var selected = usage.pending.sumThenReset();
+            decay(usage, now);
+            if (selected > 0) {
+                usage.score += selected;
+                usage.selections += selected;
+                usage.unwrittenScore += selected;
+                usage.unwrittenSelections += selected;
+                published = true;
+            }
+            if (usage.unwrittenSelections > 0) {
+                changed.add(usage);
+            }
+        }
+
+        persist(changed, now);
+        published |= reload(now);
+
+        // Decay alone scales every score alike and leaves the ranking as it is
+        if (published) {
+            var scores = new HashMap<String, Double>();
+            usages.forEach((key, usage) -> scores.put(key, usage.score));
+            popularity = Map.copyOf(scores);
+            generation++;
+        }
+    }
+
+    /**
+     * Adds the selections counted here and not written yet to the database. Those that fail are kept, and written
+     * on the next flush.
+     */
+    private void persist(List<Usage> changed, long now) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        var scoredAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(now), ZoneId.systemDefault());
+        var failed = false;
+        for (Usage usage : changed) {
+            try {
+                repository.addSelections(TextNormalizer.fold(usage.name), usage.name, usage.unwrittenScore,
+                        usage.unwrittenSelections, scoredAt, decayPerMilli);
+                usage.unwrittenScore = 0;
+                usage.unwrittenSelections = 0;
+            } catch (DataAccessException e) {
+                failed = true;
+            }
+        }
+        if (failed) {
+            failedFlushes.increment();
+        } else {
+            flushes.increment();
+        }
+    }
+
+    /**
+     * Replaces the scores by those in the database, decayed to now, plus the selections counted here and not
+     * written yet, returning whether another node added selections since the last read.
+     */
+    private boolean reload(long now) {
+        Iterable<FeatureUsage> rows;
+        try {
+            rows = repository.findAll();
+        } catch (DataAccessException e) {
+            failedFlushes.increment();  // Counting goes on with the scores known; they are read on the next flush
+            return false;
+        }
+        var changed = false;
+        for (FeatureUsage row : rows) {
+            var scoredAt = row.getScoredAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            var usage = usages.computeIfAbsent(row.getFeatureKey(), k -> new Usage(row.getName(), now));
+            decay(usage, now);
+            var selections = row.getSelections() + usage.unwrittenSelections;
+            changed |= selections != usage.selections;
+            usage.score = row.getScore() * Math.exp(-decayPerMilli * Math.max(0, now - scoredAt)) + usage.unwrittenScore;
+            usage.selections = selections;
+        }
+        return changed;
+    }
+
+    /**
+     * Brings a score forward to now, halving it every half-life.
+     */
+    private void decay(Usage usage, long now) {
+        var factor = Math.exp(-decayPerMilli * Math.max(0, now - usage.scoredAt));
+        usage.score *= factor;
+        usage.unwrittenScore *= factor;
+        usage.scoredAt = now;
+    }
+}
@@ -1,31 +1,67 @@
 package unisolar.api.service;
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTCreationException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import unisolar.api.domain.entity.User;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import unisolar.api.infra.security.VerifiedToken;
+import unisolar.api.infra.security.VerifiedTokenCache;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
 
 /**
  * TokenService is a service responsible for generating and verifying JSON Web Tokens (JWT)
  * for authentication and authorization purposes in the Unisolar API.
+ *
+ * The signing algorithm and the verifier are built once, as both are immutable and thread-safe. Tokens that passed
+ * verification are remembered until they expire, so a client sending the same token on every request has its
+ * signature checked only once.
+ *
+ * Besides the username, tokens carry the user's ID, name, authorities and token version as claims, so that the
+ * authenticated user can be rebuilt from the token alone, without reading it from the database; revoked tokens are
+ * recognized by their version (see {@link unisolar.api.infra.security.TokenVersionRegistry}).
  */
 @Service
 public class TokenService {
 
-    // Secret key for signing the JWT, injected from application properties
-    @Value("${api.security.token.secret}")
-    private String secret;
+    private static final String ISSUER = "Unisolar API";
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String NAME_CLAIM = "name";
+    private static final String ROLES_CLAIM = "roles";
+    private static final String VERSION_CLAIM = "ver";
+
+    private final Algorithm algorithm;          // HMAC256 with the secret key of the application
+    private final JWTVerifier verifier;         // Checks the signature, issuer and expiration of a token
+    private final VerifiedTokenCache verified;  // Tokens already verified
+
+    /**
+     * Constructs the TokenService.
+     *
+     * @param secret   The secret key signing the tokens, from application properties.
+     * @param verified The cache of tokens already verified.
+     */
+    public TokenService(@Value("${api.security.token.secret}") String secret, VerifiedTokenCache verified) {
+        this.algorithm = Algorithm.HMAC256(secret);
+        this.verifier = JWT.require(algorithm)
+                .withIssuer(ISSUER) // Ensure the token's issuer is valid
+                .build();
+        this.verified = verified;
+    }
 
     /**
      * Generates a JWT token for the given user. The token contains the user's username as the subject,
-     * the issuer as "Unisolar API", and an expiration date set to 2 hours from the current time.
+     * the issuer as "Unisolar API", and an expiration date set to 2 hours from the current time, along with
+     * the user's ID, name, authorities and token version.
      *
      * @param user The user for whom the token will be generated.
      * @return The generated JWT token as a string.
@@ -33,11 +69,13 @@ public class TokenService {
      */
     public String generateToken(User user) {
         try {
-            // Define the algorithm for signing the JWT with HMAC256
-            var algorithm = Algorithm.HMAC256(secret);
             return JWT.create()
-                    .withIssuer("Unisolar API") // Issuer of the token
+                    .withIssuer(ISSUER) // Issuer of the token
                     .withSubject(user.getUsername()) // Subject of the token (user's username)
+                    .withClaim(USER_ID_CLAIM, user.getId())
+                    .withClaim(NAME_CLAIM, user.getName())
+                    .withClaim(ROLES_CLAIM, user.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList())
+                    .withClaim(VERSION_CLAIM, user.getTokenVersion())
                     .withExpiresAt(expirationDate()) // Expiration date of the token
                     .sign(algorithm); // Sign the token using the algorithm
         } catch (JWTCreationException exception) {
@@ -53,19 +91,85 @@ public class TokenService {
      * @throws RuntimeException if the token is invalid or expired.
      */
     public String getSubject(String jwtToken) {
+        return verify(jwtToken).subject(); // Retrieve the subject (username)
+    }
+
+    /**
+     * Verifies the provided JWT token, or returns it as verified earlier if it has not expired since.
+     *
+     * @param jwtToken The JWT token to verify.
+     * @return The subject and claims of the token.
+     * @throws RuntimeException if the token is invalid or expired.
+     */
+    public VerifiedToken verify(String jwtToken) {
+        var cached = verified.get(jwtToken);
+        if (cached != null) {
+            return cached;
+        }
         try {
-            // Define the algorithm for verifying the JWT with HMAC256
-            var algorithm = Algorithm.HMAC256(secret);
-            return JWT.require(algorithm)
-                    .withIssuer("Unisolar API") // Ensure the token's issuer is valid
-                    .build()
-                    .verify(jwtToken) // Verify the token
-                    .getSubject(); // Retrieve the subject (username)
+            var token = claims(verifier.verify(jwtToken)); // Verify the token
+            verified.put(jwtToken, token);
+            return token;
         } catch (JWTVerificationException exception) {
             throw new RuntimeException("Invalid or expired JWT token!");
         }
     }
 
+    /**
+     * Extracts the subject and claims of a decoded token, leaving the token itself behind.
+     */
+    private static VerifiedToken claims(DecodedJWT decoded) {
+        var id = decoded.getClaim(USER_ID_CLAIM);
+        var roles = decoded.getClaim(ROLES_CLAIM).asList(String.class);
+        return new VerifiedToken(decoded.getSubject(),
+                id.isMissing() || id.isNull() ? null : id.asLong(),
+                decoded.getClaim(NAME_CLAIM).asString(),
+                roles == null ? List.of() : List.copyOf(roles),
+                decoded.getClaim(VERSION_CLAIM).isMissing() ? null : decoded.getClaim(VERSION_CLAIM).asInt(),
+                decoded.getExpiresAtAsInstant());
+    }
+
+    /**
+     * Rebuilds the user a verified token was issued to from its claims alone. The user is active, as only active
+     * users are issued tokens; whether the token was revoked since is for the caller to check with
+     * {@link #tokenVersion}.
+     *
+     * @param token The verified token.
+     * @return The user, with its ID, username and name, or null if the token predates these claims.
+     */
+    public User principal(VerifiedToken token) {
+        if (token.userId() == null || token.version() == null) {
+            return null;
+        }
+        var user = new User();
+        user.setId(token.userId());
+        user.setUsername(token.subject());
+        user.setName(token.name());
+        user.setTokenVersion(tokenVersion(token));
+        user.setActive(true);
+        return user;
+    }
+
+    /**
+     * Returns the authorities a verified token grants.
+     *
+     * @param token The verified token.
+     * @return The authorities, none if the token carries none.
+     */
+    public List<GrantedAuthority> authorities(VerifiedToken token) {
+        return token.roles().stream().<GrantedAuthority>map(SimpleGrantedAuthority::new).toList();
+    }
+
+    /**
+     * Returns the token version a verified token was issued with.
+     *
+     * @param token The verified token.
+     * @return The version, 0 if the token carries none.
+     */
+    public int tokenVersion(VerifiedToken token) {
+        return token.version() == null ? 0 : token.version();
+    }
+
     /**
      * Calculates the expiration date for the JWT token, which is 2 hours from the current time.
      *
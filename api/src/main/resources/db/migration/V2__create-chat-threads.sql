@@ -0,0 +1,9 @@
+-- Criação da tabela de threads de conversa da SolarIA
+CREATE TABLE chat_threads (
+    conversation_key VARCHAR(255) PRIMARY KEY,
+    thread_id VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP DEFAULT now() NOT NULL,
+    last_used_at TIMESTAMP DEFAULT now() NOT NULL
+);
+
+CREATE INDEX idx_chat_threads_last_used_at ON chat_threads (last_used_at);
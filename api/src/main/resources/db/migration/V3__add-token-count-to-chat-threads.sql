@@ -0,0 +1,2 @@
+-- Tokens acumulados em cada thread de conversa, para limitar o tamanho do contexto enviado à OpenAI
+ALTER TABLE chat_threads ADD COLUMN token_count INTEGER DEFAULT 0 NOT NULL;
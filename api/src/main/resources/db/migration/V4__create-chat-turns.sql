@@ -0,0 +1,12 @@
+-- Criação da tabela de mensagens das conversas com a SolarIA
+CREATE TABLE chat_turns (
+    id BIGSERIAL PRIMARY KEY,
+    conversation_key VARCHAR(255) NOT NULL,
+    thread_id VARCHAR(255),
+    role VARCHAR(16) NOT NULL,
+    content TEXT NOT NULL,
+    created_at TIMESTAMP DEFAULT now() NOT NULL
+);
+
+-- Paginação do histórico por conversa, das mensagens mais recentes para as mais antigas
+CREATE INDEX idx_chat_turns_conversation_key_id ON chat_turns (conversation_key, id DESC);
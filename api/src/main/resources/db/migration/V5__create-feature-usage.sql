@@ -0,0 +1,8 @@
+-- Criação da tabela de popularidade das funcionalidades, alimentada pelas seleções nos resultados de busca
+CREATE TABLE feature_usage (
+    feature_key VARCHAR(255) PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    score DOUBLE PRECISION NOT NULL,
+    selections BIGINT NOT NULL,
+    scored_at TIMESTAMP NOT NULL
+);
@@ -0,0 +1,6 @@
+-- Versão dos tokens de cada usuário: incrementada ao trocar a senha ou desativar a conta, revoga os tokens emitidos antes
+ALTER TABLE users ADD COLUMN token_version INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE users ADD COLUMN token_version_updated_at TIMESTAMP DEFAULT now() NOT NULL;
+
+-- Leitura incremental das versões alteradas desde a última consulta
+CREATE INDEX idx_users_token_version_updated_at ON users (token_version_updated_at);
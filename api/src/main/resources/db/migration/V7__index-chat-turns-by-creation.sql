@@ -0,0 +1,2 @@
+-- Expurgo das mensagens de sessões anônimas após o período de retenção, das mais antigas para as mais recentes
+CREATE INDEX idx_chat_turns_created_at ON chat_turns (created_at);
@@ -2,6 +2,10 @@
 const chat = document.querySelector('#chat'); // The container for the chat bubbles
 const input = document.querySelector('#input'); // The input field where the user types messages
 const sendButton = document.querySelector('#send-button'); // The button that sends the message
+const greeting = chat.firstElementChild; // The initial bot message, kept above the history
+
+let historyCursor; // ID of the oldest message loaded; null once the whole history is loaded
+let loadingHistory = false; // Whether a page of history is being loaded
 
 // Add event listener for the send button click to trigger message sending
 sendButton.addEventListener('click', sendMessage);
@@ -14,8 +18,49 @@ input.addEventListener('keyup', function(event) {
     }
 });
 
-// When the DOM content is fully loaded, scroll to the bottom of the chat
-document.addEventListener('DOMContentLoaded', scrollToBottom);
+// When the DOM content is fully loaded, load the most recent history and scroll to the bottom of the chat
+document.addEventListener('DOMContentLoaded', () => loadHistory().then(scrollToBottom));
+
+// Load older messages when the user scrolls to the top of the chat
+chat.addEventListener('scroll', () => {
+    if (chat.scrollTop === 0) loadHistory();
+});
+
+/**
+ * Function to load the previous page of the chat history and insert it above the messages already shown
+ */
+async function loadHistory() {
+    // Nothing to do while a page is loading or once the whole history is loaded
+    if (loadingHistory || historyCursor === null) return;
+    loadingHistory = true;
+
+    try {
+        const query = historyCursor === undefined ? '' : '?before=' + historyCursor;
+        const response = await fetch('http://localhost:8080/chat/history' + query);
+        if (!response.ok) return; // The chat still works without its history
+
+        const page = await response.json();
+        historyCursor = page.nextBefore;
+
+        // Insert the page, oldest first, between the greeting and the messages already shown
+        const firstMessage = greeting.nextSibling;
+        const previousHeight = chat.scrollHeight;
+        for (const turn of page.turns) {
+            const bubble = turn.role === 'user' ? createUserBubble() : createBotBubble();
+            if (turn.role === 'user') {
+                bubble.textContent = turn.content;
+            } else {
+                bubble.innerHTML = marked.parse(turn.content);
+            }
+            chat.insertBefore(bubble, firstMessage);
+        }
+
+        // Keep the messages the user was looking at in place
+        chat.scrollTop += chat.scrollHeight - previousHeight;
+    } finally {
+        loadingHistory = false;
+    }
+}
 
 /**
  * Function to send a message when the user interacts with the chat
@@ -40,11 +85,12 @@ async function sendMessage() {
     // Scroll to the bottom of the chat after adding new messages
     scrollToBottom();
 
-    // Send the user's message to the backend for processing
-    fetch('http://localhost:8080/chat', {
+    // Send the user's message to the backend, which streams the answer back as Server-Sent Events
+    fetch('http://localhost:8080/chat/stream', {
         method: 'POST', // HTTP method to be used (POST)
         headers: {
             'Content-Type': 'application/json', // Set the content type as JSON
+            'Accept': 'text/event-stream', // Ask for the answer as a stream of events
         },
         body: JSON.stringify({'question': message}), // Send the user's message as JSON in the body
     }).then(async response => {
@@ -54,9 +100,11 @@ async function sendMessage() {
         }
 
         const responseReader = response.body.getReader(); // Create a reader to read the response body
+        const decoder = new TextDecoder(); // Decoder kept across chunks so multi-byte characters are not split
+        let buffer = ''; // Raw stream content not yet split into complete events
         let partialResponse = ''; // Initialize a variable to store the response content
 
-        // Read the response stream in chunks and update the bot bubble with each chunk
+        // Read the response stream in chunks and update the bot bubble with each complete event
         while (true) {
             const {
                 done: finished,
@@ -65,8 +113,21 @@ async function sendMessage() {
 
             if (finished) break; // Exit the loop if the entire response is read
 
-            partialResponse += new TextDecoder().decode(chunk); // Decode and append the chunk
-            newBotBubble.innerHTML = marked.parse(partialResponse); // Update the bot bubble's content with the decoded response
+            buffer += decoder.decode(chunk, {stream: true}); // Decode and append the chunk
+
+            // Events are separated by a blank line; keep the last, possibly incomplete, one in the buffer
+            const events = buffer.split('\n\n');
+            buffer = events.pop();
+
+            for (const event of events) {
+                const parsed = parseEvent(event);
+                if (parsed.name === 'error') {
+                    throw new Error(parsed.data); // The backend reported an upstream failure
+                }
+                partialResponse += parsed.data; // Append the answer delta
+            }
+
+            newBotBubble.innerHTML = marked.parse(partialResponse); // Update the bot bubble's content with the streamed response
             scrollToBottom(); // Scroll to the bottom after updating the bot's message
         }
     }).catch(error => {
@@ -75,6 +136,26 @@ async function sendMessage() {
     });
 }
 
+/**
+ * Function to parse a single Server-Sent Event into its name and data
+ * @param {string} event The raw event text, without the trailing blank line
+ * @returns {{name: string, data: string}} The event name ('message' by default) and its data
+ */
+function parseEvent(event) {
+    let name = 'message';
+    const data = [];
+
+    for (const line of event.split('\n')) {
+        if (line.startsWith('event:')) {
+            name = line.substring('event:'.length).trim(); // Named events, such as 'error'
+        } else if (line.startsWith('data:')) {
+            data.push(line.substring('data:'.length)); // Multi-line data is joined back with new lines
+        }
+    }
+
+    return {name: name, data: data.join('\n')};
+}
+
 /**
  * Function to create a new bubble for the user's message
  * @returns {HTMLElement} The user message bubble element
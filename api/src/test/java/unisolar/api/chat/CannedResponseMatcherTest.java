@@ -0,0 +1,110 @@
+package unisolar.api.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CannedResponseMatcherTest {
+
+    @Test
+    void keysMatchOnlyWholeWords() {
+        var matcher = new CannedResponseMatcher(List.of("ola", "dicas do dia"));
+
+        assertThat(matcher.match("ola")).isEqualTo(0);
+        assertThat(matcher.match("ola, tudo bem?")).isEqualTo(0);
+        assertThat(matcher.match("oi ola")).isEqualTo(0);
+        assertThat(matcher.match("como funciona a energia solar?")).isEqualTo(-1);
+        assertThat(matcher.match("olaf")).isEqualTo(-1);
+        assertThat(matcher.match("quais as dicas do dia?")).isEqualTo(1);
+        assertThat(matcher.match("dicas do diario")).isEqualTo(-1);
+        assertThat(matcher.match("predicas do dia")).isEqualTo(-1);
+    }
+
+    @Test
+    void shorterKeyMatchesWhenTheLongerOneEndingThereSplitsAWord() {
+        // "solar" ends where "asolar" would, but only "solar" starts on a boundary
+        var matcher = new CannedResponseMatcher(List.of("asolar", "solar"));
+
+        assertThat(matcher.match("energia solar")).isEqualTo(1);
+        assertThat(matcher.match("asolar")).isEqualTo(0);
+    }
+
+    @Test
+    void keysEndingWithPunctuationMatch() {
+        var matcher = new CannedResponseMatcher(List.of("quando usar a bateria?"));
+
+        assertThat(matcher.match("quando usar a bateria?")).isEqualTo(0);
+        assertThat(matcher.match("diga: quando usar a bateria?!")).isEqualTo(0);
+    }
+
+    @Test
+    void longestKeyWinsAndTiesGoToTheFirstInCatalog() {
+        var matcher = new CannedResponseMatcher(List.of("bom dia", "dia", "boa tarde", "bom diaa"));
+
+        assertThat(matcher.match("bom dia, tudo bem?")).isEqualTo(0);
+        assertThat(matcher.match("que dia lindo")).isEqualTo(1);
+        assertThat(matcher.match("boa tarde e bom dia")).isEqualTo(2);
+
+        var ties = new CannedResponseMatcher(List.of("abc", "xyz"));
+        assertThat(ties.match("xyz abc")).isEqualTo(0);
+    }
+
+    @Test
+    void nonAsciiCharactersBreakMatches() {
+        var matcher = new CannedResponseMatcher(List.of("ola"));
+
+        assertThat(matcher.match("olá")).isEqualTo(-1);
+        assertThat(matcher.match("é ola")).isEqualTo(0);
+    }
+
+    @Test
+    void matchesLikeANaiveScan() {
+        var random = new Random(42);
+        var alphabet = "ab c";
+        for (int round = 0; round < 200; round++) {
+            var keys = new ArrayList<String>();
+            for (int k = 0; k < 1 + random.nextInt(6); k++) {
+                keys.add(randomText(random, alphabet, 1 + random.nextInt(4)));
+            }
+            var matcher = new CannedResponseMatcher(keys);
+            for (int t = 0; t < 50; t++) {
+                var text = randomText(random, alphabet, random.nextInt(20));
+                assertThat(matcher.match(text)).as("keys %s in \"%s\"", keys, text).isEqualTo(naiveMatch(keys, text));
+            }
+        }
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        var text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+
+    private static int naiveMatch(List<String> keys, String text) {
+        int best = -1;
+        for (int k = 0; k < keys.size(); k++) {
+            var key = keys.get(k);
+            for (int start = text.indexOf(key); start >= 0; start = text.indexOf(key, start + 1)) {
+                if (splitsWord(text, start) || splitsWord(text, start + key.length())) {
+                    continue;
+                }
+                if (best < 0 || key.length() > keys.get(best).length()) {
+                    best = k;
+                }
+                break;
+            }
+        }
+        return best;
+    }
+
+    private static boolean splitsWord(String text, int position) {
+        return position > 0 && position < text.length()
+                && Character.isLetterOrDigit(text.charAt(position - 1)) && Character.isLetterOrDigit(text.charAt(position));
+    }
+}
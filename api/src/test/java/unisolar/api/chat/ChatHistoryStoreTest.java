@@ -0,0 +1,124 @@
+package unisolar.api.chat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.PageRequest;
+import unisolar.api.domain.entity.ChatTurn;
+import unisolar.api.domain.repository.ChatTurnRepository;
+import unisolar.api.infra.openai.ChatThreadRegistry;
+import unisolar.api.infra.openai.ConversationTurn;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatHistoryStoreTest {
+
+    private static final String KEY = "user:alice";
+
+    private ChatTurnRepository repository;
+    private ChatThreadRegistry threads;
+    private ChatHistoryStore store;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ChatTurnRepository.class);
+        threads = mock(ChatThreadRegistry.class);
+        store = new ChatHistoryStore(repository, threads, Duration.ofDays(30));
+    }
+
+    private static ChatTurn turn(long id, String role, String content) {
+        return new ChatTurn(id, KEY, "thread-1", role, content, LocalDateTime.now());
+    }
+
+    @Test
+    void firstPageIsTheLatestMessages() {
+        var latest = List.of(turn(4, "assistant", "Sim."), turn(3, "user", "Posso?"));
+        when(repository.findLatest(KEY, PageRequest.of(0, 2))).thenReturn(latest);
+
+        assertThat(store.page(KEY, null, 2)).isEqualTo(latest);
+        verify(repository, never()).findBefore(any(), anyLong(), any());
+    }
+
+    @Test
+    void laterPagesStartBeforeTheOldestMessageLoaded() {
+        var older = List.of(turn(2, "assistant", "Não."), turn(1, "user", "Devo?"));
+        when(repository.findBefore(KEY, 3L, PageRequest.of(0, 2))).thenReturn(older);
+
+        assertThat(store.page(KEY, 3L, 2)).isEqualTo(older);
+    }
+
+    @Test
+    void pageSizesAreCapped() {
+        store.page(KEY, null, 10_000);
+        store.page(KEY, 50L, 0);
+
+        verify(repository).findLatest(KEY, PageRequest.of(0, ChatHistoryStore.MAX_PAGE_SIZE));
+        verify(repository).findBefore(KEY, 50L, PageRequest.of(0, 1));
+    }
+
+    @Test
+    void recentMessagesAreGivenOldestFirst() {
+        when(repository.findLatest(KEY, PageRequest.of(0, 2)))
+                .thenReturn(List.of(turn(4, "assistant", "Sim."), turn(3, "user", "Posso?")));
+
+        assertThat(store.recent(KEY, 2)).containsExactly(
+                new ConversationTurn("user", "Posso?"), new ConversationTurn("assistant", "Sim."));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void exchangesAreRecordedWithTheirThread() {
+        when(threads.cachedThreadId(KEY)).thenReturn(Optional.of("thread-1"));
+
+        store.recordExchange(KEY, "Posso?", "Sim.");
+
+        ArgumentCaptor<List<ChatTurn>> saved = ArgumentCaptor.forClass(List.class);
+        verify(repository).saveAll(saved.capture());
+        assertThat(saved.getValue()).extracting(ChatTurn::getRole, ChatTurn::getContent, ChatTurn::getThreadId)
+                .containsExactly(
+                        tuple("user", "Posso?", "thread-1"),
+                        tuple("assistant", "Sim.", "thread-1"));
+    }
+
+    @Test
+    void questionsAndAnswersAreRecordedOneByOne() {
+        when(threads.cachedThreadId(KEY)).thenReturn(Optional.of("thread-1"));
+
+        store.recordQuestion(KEY, "Posso?");
+        store.recordAnswer(KEY, "Sim.");
+
+        var saved = ArgumentCaptor.forClass(ChatTurn.class);
+        verify(repository, times(2)).save(saved.capture());
+        assertThat(saved.getAllValues()).extracting(ChatTurn::getRole, ChatTurn::getContent, ChatTurn::getThreadId)
+                .containsExactly(
+                        tuple("user", "Posso?", "thread-1"),
+                        tuple("assistant", "Sim.", "thread-1"));
+    }
+
+    @Test
+    void expiredSessionsArePurgedInBatchesUntilOneComesOutShort() {
+        when(repository.deleteRecordedBefore(eq("session:%"), any(), eq(ChatHistoryStore.PURGE_BATCH_SIZE)))
+                .thenReturn(ChatHistoryStore.PURGE_BATCH_SIZE, ChatHistoryStore.PURGE_BATCH_SIZE, 10);
+
+        store.purgeExpiredSessions();
+
+        var before = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(repository, times(3)).deleteRecordedBefore(eq("session:%"), before.capture(), anyInt());
+        assertThat(before.getValue()).isBefore(LocalDateTime.now().minusDays(30).plusMinutes(1));
+    }
+}
@@ -0,0 +1,180 @@
+package unisolar.api.chat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.reactivex.Flowable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import unisolar.api.infra.exception.OpenAIUnavailableException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatRequestSchedulerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private List<String> calls;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        calls = new ArrayList<>();
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+
+    /**
+     * Schedules a call that records who made it and ends at once, handing its slot to the next request.
+     */
+    private void schedule(ChatRequestScheduler scheduler, String userKey, int cost) {
+        scheduler.schedule(userKey, cost, () -> {
+            calls.add(userKey);
+            return Flowable.just(userKey);
+        }).test();
+    }
+
+    @Test
+    void usersTakeTurnsWhateverTheNumberOfTheirQuestions() {
+        var scheduler = new ChatRequestScheduler(meterRegistry, 1, 100, 10, Duration.ofSeconds(5));
+        var busy = scheduler.acquire("user:carol", 100);
+        for (int i = 0; i < 4; i++) {
+            schedule(scheduler, "user:alice", 100);
+        }
+        schedule(scheduler, "user:bob", 100);
+        assertThat(calls).isEmpty();
+
+        busy.release();
+
+        assertThat(calls).containsExactly("user:alice", "user:bob", "user:alice", "user:alice", "user:alice");
+        assertThat(gauge("solaria.chat.scheduler.queued")).isZero();
+        assertThat(gauge("solaria.chat.scheduler.busy")).isZero();
+    }
+
+    @Test
+    void usersGetTheSameShareOfTokensWhateverTheLengthOfTheirQuestions() {
+        var scheduler = new ChatRequestScheduler(meterRegistry, 1, 100, 10, Duration.ofSeconds(5));
+        var busy = scheduler.acquire("user:carol", 100);
+        for (int i = 0; i < 3; i++) {
+            schedule(scheduler, "user:alice", 300);
+        }
+        for (int i = 0; i < 9; i++) {
+            schedule(scheduler, "user:bob", 100);
+        }
+
+        busy.release();
+
+        // While both wait, neither gets ahead by more than a question and a quantum
+        assertThat(calls).hasSize(12);
+        int alice = 0, bob = 0;
+        for (String call : calls) {
+            if (call.equals("user:alice")) {
+                alice += 300;
+            } else {
+                bob += 100;
+            }
+            if (alice < 900 && bob < 900) {
+                assertThat(Math.abs(alice - bob)).isLessThanOrEqualTo(300 + 100);
+            }
+        }
+    }
+
+    @Test
+    void longContextsAndShortQuestionsGetTheSameShareOfTokens() {
+        // Default quantum; Alice carries a long conversation on every call, Bob asks short questions without context
+        var scheduler = new ChatRequestScheduler(meterRegistry, 1, 4000, 100, Duration.ofSeconds(5));
+        var busy = scheduler.acquire("user:carol", 100);
+        for (int i = 0; i < 10; i++) {
+            schedule(scheduler, "user:alice", 3800);
+        }
+        for (int i = 0; i < 40; i++) {
+            schedule(scheduler, "user:bob", 950);
+        }
+
+        busy.release();
+
+        // While both wait, their tokens stay within a quantum and a call of each other
+        int alice = 0, bob = 0;
+        for (String call : calls) {
+            if (call.equals("user:alice")) {
+                alice += 3800;
+            } else {
+                bob += 950;
+            }
+            if (alice < 10 * 3800 && bob < 40 * 950) {
+                assertThat(Math.abs(alice - bob)).isLessThanOrEqualTo(4000 + 3800);
+            }
+        }
+        assertThat(calls.subList(0, 20)).filteredOn("user:bob"::equals).hasSizeBetween(14, 17);
+    }
+
+    @Test
+    void requestsWaitingTooLongAreRejected() {
+        var scheduler = new ChatRequestScheduler(meterRegistry, 1, 100, 5, Duration.ofMillis(100));
+        var busy = scheduler.acquire("user:alice", 100);
+
+        var started = System.nanoTime();
+        assertThatThrownBy(() -> scheduler.acquire("user:bob", 100)).isInstanceOf(OpenAIUnavailableException.class);
+        assertThat(System.nanoTime() - started).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(meterRegistry.get("solaria.chat.scheduler.rejected").counter().count()).isEqualTo(1);
+        assertThat(gauge("solaria.chat.scheduler.queued")).isZero();
+
+        // The timed out request left the queue: the slot goes to the next one
+        busy.release();
+        scheduler.acquire("user:bob", 100).release();
+        assertThat(gauge("solaria.chat.scheduler.busy")).isZero();
+    }
+
+    @Test
+    void usersWithTooManyQuestionsWaitingAreRejected() {
+        var scheduler = new ChatRequestScheduler(meterRegistry, 1, 100, 2, Duration.ofSeconds(5));
+        var busy = scheduler.acquire("user:carol", 100);
+        schedule(scheduler, "user:alice", 100);
+        schedule(scheduler, "user:alice", 100);
+
+        scheduler.schedule("user:alice", 100, () -> Flowable.just("too many")).test()
+                .assertError(OpenAIUnavailableException.class);
+        scheduler.schedule("user:bob", 100, () -> Flowable.just("user:bob")).test().assertNotComplete();
+        assertThat(gauge("solaria.chat.scheduler.queued")).isEqualTo(3);
+
+        busy.release();
+        assertThat(calls).containsExactly("user:alice", "user:alice");
+    }
+
+    @Test
+    void cancelledRequestsLeaveTheQueue() {
+        var scheduler = new ChatRequestScheduler(meterRegistry, 1, 100, 5, Duration.ofSeconds(5));
+        var busy = scheduler.acquire("user:carol", 100);
+        var waiting = scheduler.schedule("user:alice", 100, () -> {
+            calls.add("user:alice");
+            return Flowable.just("user:alice");
+        }).test();
+        assertThat(gauge("solaria.chat.scheduler.users")).isEqualTo(1);
+
+        waiting.cancel();
+        assertThat(gauge("solaria.chat.scheduler.queued")).isZero();
+        assertThat(gauge("solaria.chat.scheduler.users")).isZero();
+
+        busy.release();
+        assertThat(calls).isEmpty();
+        assertThat(gauge("solaria.chat.scheduler.busy")).isZero();
+    }
+
+    @Test
+    void releasingAPermitTwiceFreesOneSlot() {
+        var scheduler = new ChatRequestScheduler(meterRegistry, 2, 100, 5, Duration.ofSeconds(5));
+        var first = scheduler.acquire("user:alice", 100);
+        scheduler.acquire("user:bob", 100);
+        assertThat(gauge("solaria.chat.scheduler.busy")).isEqualTo(2);
+
+        first.release();
+        first.release();
+
+        assertThat(gauge("solaria.chat.scheduler.busy")).isEqualTo(1);
+    }
+}
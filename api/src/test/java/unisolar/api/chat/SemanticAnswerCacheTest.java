@@ -0,0 +1,97 @@
+package unisolar.api.chat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SemanticAnswerCacheTest {
+
+    private SemanticAnswerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new SemanticAnswerCache(new SimpleMeterRegistry(), 100, Duration.ofHours(1), 0.6);
+    }
+
+    @Test
+    void sameQuestionInOtherWordsHitsTheCache() {
+        cache.put("Como economizar energia com painéis solares?", "answer");
+
+        assertThat(cache.lookup("como economizar energia com painéis solares")).contains("answer");
+        assertThat(cache.lookup("COMO ECONOMIZAR ENERGIA COM PAINEIS SOLARES?")).contains("answer");
+        assertThat(cache.lookup("Como economizar energia com os painéis solares?")).contains("answer");
+        assertThat(cache.lookup("Como economizo energia com painel solar?")).contains("answer");
+    }
+
+    @Test
+    void differentInterrogativeMissesTheCache() {
+        cache.put("Quando devo usar a bateria?", "answer");
+
+        assertThat(cache.lookup("Quando devo usar a bateria")).contains("answer");
+        assertThat(cache.lookup("Como devo usar a bateria?")).isEmpty();
+        assertThat(cache.lookup("Onde devo usar a bateria?")).isEmpty();
+    }
+
+    @Test
+    void questionLeavingTheInterrogativeOutHitsTheCache() {
+        cache.put("como economizar à noite", "answer");
+
+        assertThat(cache.lookup("economia de energia noturna")).contains("answer");
+        assertThat(cache.lookup("Quando economizar à noite?")).isEmpty();
+    }
+
+    @Test
+    void questionAskedWithAnInterrogativeHitsTheAnswerGivenWithout() {
+        cache.put("economia de energia noturna", "answer");
+
+        assertThat(cache.lookup("como economizar à noite")).contains("answer");
+        assertThat(cache.lookup("não economizar à noite")).isEmpty();
+    }
+
+    @Test
+    void negatedQuestionMissesTheCache() {
+        cache.put("Devo desligar o inversor à noite?", "answer");
+
+        assertThat(cache.lookup("Não devo desligar o inversor à noite?")).isEmpty();
+        assertThat(cache.lookup("Devo desligar o inversor a noite?")).contains("answer");
+    }
+
+    @Test
+    void stemSpellingAnInterrogativeIsNotTakenForIt() {
+        // Taken for "qual", it would conflict with "como"
+        cache.put("Qualidade da bateria", "answer");
+
+        assertThat(cache.lookup("Como é a qualidade da bateria?")).contains("answer");
+    }
+
+    @Test
+    void unrelatedQuestionMissesTheCache() {
+        cache.put("Como economizar energia com painéis solares?", "answer");
+
+        assertThat(cache.lookup("Qual a garantia do inversor?")).isEmpty();
+    }
+
+    @Test
+    void expiredAnswersAreNotReturned() {
+        var expiring = new SemanticAnswerCache(new SimpleMeterRegistry(), 100, Duration.ZERO, 0.6);
+        expiring.put("Como economizar energia?", "answer");
+
+        assertThat(expiring.lookup("Como economizar energia?")).isEmpty();
+    }
+
+    @Test
+    void oldestAnswersAreEvictedBeyondTheMaximumSize() {
+        var small = new SemanticAnswerCache(new SimpleMeterRegistry(), 2, Duration.ofHours(1), 0.6);
+        small.put("bateria de litio", "1");
+        small.put("garantia do inversor", "2");
+        small.put("limpeza dos paineis", "3");
+
+        assertThat(small.lookup("bateria de litio")).isEmpty();
+        assertThat(small.lookup("garantia do inversor")).contains("2");
+        assertThat(small.lookup("limpeza dos paineis")).contains("3");
+    }
+}
@@ -0,0 +1,35 @@
+package unisolar.api.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatControllerTest {
+
+    @Test
+    void singleLineTextIsSentAsOneDataLine() {
+        assertThat(wire(ChatController.dataEvent("Olá!"))).isEqualTo("data:Olá!\n\n");
+    }
+
+    @Test
+    void eachLineOfTheTextIsSentAsItsOwnDataLine() {
+        assertThat(wire(ChatController.dataEvent("Status:\nBateria: 85%\r\nPainéis: OK")))
+                .isEqualTo("data:Status:\ndata:Bateria: 85%\ndata:Painéis: OK\n\n");
+    }
+
+    @Test
+    void blankLinesAndTrailingNewLinesAreKept() {
+        // A Markdown list delta: the client joins the data lines back into "\n\n1. "
+        assertThat(wire(ChatController.dataEvent("\n\n1. "))).isEqualTo("data:\ndata:\ndata:1. \n\n");
+        assertThat(wire(ChatController.dataEvent(""))).isEqualTo("data:\n\n");
+    }
+
+    private static String wire(SseEmitter.SseEventBuilder event) {
+        return event.build().stream()
+                .map(part -> part.getData().toString())
+                .collect(Collectors.joining());
+    }
+}
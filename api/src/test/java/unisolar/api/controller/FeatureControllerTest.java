@@ -0,0 +1,64 @@
+package unisolar.api.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import unisolar.api.enums.SearchMode;
+import unisolar.api.search.FeatureSearchResult;
+import unisolar.api.search.FeatureSearchTree;
+import unisolar.api.service.FeatureSearchService;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class FeatureControllerTest {
+
+    private static final FeatureSearchResult RESULT = FeatureSearchResult.of(
+            List.of(new FeatureSearchTree.Feature("economia", "Dashboard > Economia", "Visualizar economia",
+                    "Financeiro")),
+            Map.of("Financeiro", 1), true, 3);
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        var service = mock(FeatureSearchService.class);
+        when(service.search(eq("econ"), eq(SearchMode.PREFIX), any())).thenReturn(RESULT);
+        mvc = MockMvcBuilders.standaloneSetup(new FeatureController(service)).build();
+    }
+
+    @Test
+    void resultsCarryTheirTag() throws Exception {
+        mvc.perform(get("/features/search").param("q", "econ"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", RESULT.etag()))
+                .andExpect(jsonPath("$.features[0].name").value("economia"))
+                .andExpect(jsonPath("$.facets.Financeiro").value(1));
+    }
+
+    @Test
+    void unchangedResultsAreNotSentAgain() throws Exception {
+        mvc.perform(get("/features/search").param("q", "econ").header("If-None-Match", RESULT.etag()))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", RESULT.etag()))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void changedResultsAreSentInFull() throws Exception {
+        mvc.perform(get("/features/search").param("q", "econ").header("If-None-Match", "\"2-0\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.features[0].name").value("economia"));
+    }
+}
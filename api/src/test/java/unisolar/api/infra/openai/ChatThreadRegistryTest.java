@@ -0,0 +1,174 @@
+package unisolar.api.infra.openai;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import unisolar.api.domain.entity.ChatThread;
+import unisolar.api.domain.repository.ChatThreadRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatThreadRegistryTest {
+
+    private static final String KEY = "user:alice";
+
+    private ChatThreadRepository repository;
+    private ChatThreadRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ChatThreadRepository.class);
+        registry = new ChatThreadRegistry(repository, new SimpleMeterRegistry(), 100, Duration.ofHours(1),
+                Duration.ofDays(30));
+        when(repository.findById(KEY)).thenReturn(Optional.of(thread("thread-1", 100)));
+        when(repository.findAllById(anyIterable())).thenReturn(List.of(thread("thread-1", 100)));
+        when(repository.touch(anyString(), anyString(), any(), anyInt())).thenReturn(1);
+    }
+
+    private static ChatThread thread(String threadId, int tokens) {
+        var now = LocalDateTime.now();
+        return new ChatThread(KEY, threadId, now, now, tokens);
+    }
+
+    @Test
+    void tokensAreAddedToTheDatabaseRatherThanOverwritten() {
+        registry.getOrCreate(KEY, () -> "unused");
+        registry.addTokens(KEY, 30);
+        registry.evictIdleThreads();
+
+        verify(repository).touch(eq(KEY), eq("thread-1"), any(), eq(30));
+
+        // Only the tokens counted since are added on the next sweep
+        when(repository.findAllById(anyIterable())).thenReturn(List.of(thread("thread-1", 130)));
+        registry.addTokens(KEY, 5);
+        registry.evictIdleThreads();
+
+        verify(repository).touch(eq(KEY), eq("thread-1"), any(), eq(5));
+    }
+
+    @Test
+    void tokensCountedByOtherNodesAreSeenAfterASweep() {
+        registry.getOrCreate(KEY, () -> "unused");
+        registry.addTokens(KEY, 30);
+        assertThat(registry.tokenCount(KEY)).isEqualTo(130);
+
+        // Another node added 500 tokens meanwhile
+        when(repository.findAllById(anyIterable())).thenReturn(List.of(thread("thread-1", 630)));
+        registry.evictIdleThreads();
+
+        assertThat(registry.tokenCount(KEY)).isEqualTo(630);
+    }
+
+    @Test
+    void mappingsMovedByAnotherNodeAreDropped() {
+        registry.getOrCreate(KEY, () -> "unused");
+        when(repository.findAllById(anyIterable())).thenReturn(List.of(thread("thread-2", 10)));
+
+        registry.evictIdleThreads();
+
+        assertThat(registry.cachedThreadId(KEY)).isEmpty();
+        when(repository.findById(KEY)).thenReturn(Optional.of(thread("thread-2", 10)));
+        assertThat(registry.getOrCreate(KEY, () -> "unused")).isEqualTo("thread-2");
+    }
+
+    @Test
+    void mappingsRemovedByAnotherNodeAreDroppedWithTheirTokens() {
+        registry.getOrCreate(KEY, () -> "unused");
+        registry.addTokens(KEY, 30);
+        when(repository.touch(anyString(), anyString(), any(), anyInt())).thenReturn(0);
+        when(repository.findAllById(anyIterable())).thenReturn(List.of());
+
+        registry.evictIdleThreads();
+
+        assertThat(registry.cachedThreadId(KEY)).isEmpty();
+    }
+
+    @Test
+    void replacingMovesTheConversationIfItStillUsesThePreviousThread() {
+        registry.getOrCreate(KEY, () -> "unused");
+        when(repository.moveThread(eq(KEY), eq("thread-1"), eq("thread-2"), any(), eq(40))).thenReturn(1);
+
+        assertThat(registry.replace(KEY, "thread-1", "thread-2", 40)).contains("thread-2");
+        assertThat(registry.cachedThreadId(KEY)).contains("thread-2");
+        assertThat(registry.tokenCount(KEY)).isEqualTo(40);
+    }
+
+    @Test
+    void replacingLeavesTheConversationOnTheThreadOfTheNodeThatMovedItFirst() {
+        registry.getOrCreate(KEY, () -> "unused");
+        when(repository.moveThread(anyString(), anyString(), anyString(), any(), anyInt())).thenReturn(0);
+        when(repository.findById(KEY)).thenReturn(Optional.of(thread("thread-3", 50)));
+
+        assertThat(registry.replace(KEY, "thread-1", "thread-2", 40)).contains("thread-3");
+        assertThat(registry.cachedThreadId(KEY)).contains("thread-3");
+        assertThat(registry.tokenCount(KEY)).isEqualTo(50);
+    }
+
+    @Test
+    void replacingDoesNotBringBackARemovedConversation() {
+        registry.getOrCreate(KEY, () -> "unused");
+        when(repository.moveThread(anyString(), anyString(), anyString(), any(), anyInt())).thenReturn(0);
+        when(repository.findById(KEY)).thenReturn(Optional.empty());
+
+        assertThat(registry.replace(KEY, "thread-1", "thread-2", 40)).isEmpty();
+        assertThat(registry.cachedThreadId(KEY)).isEmpty();
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void removingDeletesTheThreadTheConversationStillUses() {
+        registry.getOrCreate(KEY, () -> "unused");
+        when(repository.deleteThread(KEY, "thread-1")).thenReturn(1);
+
+        assertThat(registry.remove(KEY)).contains("thread-1");
+        assertThat(registry.cachedThreadId(KEY)).isEmpty();
+        verify(repository, never()).delete(any());
+    }
+
+    @Test
+    void removingFollowsAConversationMovedMeanwhile() {
+        // Another node moves the conversation between the read and the delete
+        when(repository.findById(KEY))
+                .thenReturn(Optional.of(thread("thread-1", 100)))
+                .thenReturn(Optional.of(thread("thread-2", 10)));
+        when(repository.deleteThread(KEY, "thread-1")).thenReturn(0);
+        when(repository.deleteThread(KEY, "thread-2")).thenReturn(1);
+
+        assertThat(registry.remove(KEY)).contains("thread-2");
+    }
+
+    @Test
+    void idleConversationsArePurgedWithTheirThreads() {
+        var idle = new ChatThread("session:old", "thread-9", LocalDateTime.now().minusDays(40),
+                LocalDateTime.now().minusDays(31), 10);
+        var usedMeanwhile = new ChatThread("session:back", "thread-8", LocalDateTime.now().minusDays(40),
+                LocalDateTime.now().minusDays(31), 10);
+        when(repository.findIdleSince(any(), any())).thenReturn(List.of(idle, usedMeanwhile));
+        when(repository.deleteIdleThread(eq("session:old"), eq("thread-9"), any())).thenReturn(1);
+        when(repository.deleteIdleThread(eq("session:back"), eq("thread-8"), any())).thenReturn(0);
+        var deleted = new ArrayList<String>();
+
+        assertThat(registry.purgeIdle(deleted::add)).isEqualTo(1);
+
+        assertThat(deleted).containsExactly("thread-9");
+        var idleBefore = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(repository).findIdleSince(idleBefore.capture(), any());
+        assertThat(idleBefore.getValue()).isBefore(LocalDateTime.now().minusDays(30).plusMinutes(1));
+    }
+}
@@ -0,0 +1,108 @@
+package unisolar.api.infra.openai;
+
+import org.junit.jupiter.api.Test;
+import unisolar.api.infra.openai.CircuitBreaker.State;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static void fail(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onFailure();
+        }
+    }
+
+    private static void succeed(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onSuccess();
+        }
+    }
+
+    @Test
+    void staysClosedUntilTheWindowHoldsEnoughCalls() {
+        var breaker = new CircuitBreaker(10, 5, 0.5, Duration.ofMinutes(1));
+
+        fail(breaker, 4);
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+
+        fail(breaker, 1);
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void opensAtTheFailureRateOfTheLastCalls() {
+        var breaker = new CircuitBreaker(4, 4, 0.5, Duration.ofMinutes(1));
+
+        // Failures pushed out of the window no longer count
+        fail(breaker, 1);
+        succeed(breaker, 3);
+        succeed(breaker, 1);
+        fail(breaker, 1);
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+
+        fail(breaker, 1);
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+    }
+
+    @Test
+    void allowsASingleTrialCallOnceTheOpenDurationIsOver() {
+        var breaker = new CircuitBreaker(4, 2, 0.5, Duration.ZERO);
+        fail(breaker, 2);
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void successfulTrialClosesTheBreakerWithAnEmptyWindow() {
+        var breaker = new CircuitBreaker(4, 2, 0.5, Duration.ZERO);
+        fail(breaker, 2);
+
+        succeed(breaker, 1);
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+
+        // The failures that opened it were forgotten
+        fail(breaker, 1);
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void failedTrialOpensTheBreakerAgain() {
+        var breaker = new CircuitBreaker(4, 2, 0.5, Duration.ofMillis(50));
+        fail(breaker, 2);
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        await(Duration.ofMillis(60));
+        fail(breaker, 1);
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void ignoredTrialFreesTheTrialSlot() {
+        var breaker = new CircuitBreaker(4, 2, 0.5, Duration.ZERO);
+        fail(breaker, 2);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onIgnored();
+        assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    private static void await(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package unisolar.api.infra.openai;
+
+import com.theokanning.openai.completion.chat.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptAssemblerTest {
+
+    private static final int MAX_PROMPT_TOKENS = 3000;
+    private static final String QUESTION = "Como economizar energia à noite?";
+
+    private SimpleMeterRegistry meterRegistry;
+    private PromptAssembler assembler;
+    private int systemPromptTokens;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        assembler = new PromptAssembler(new TokenCounter(), meterRegistry, MAX_PROMPT_TOKENS, 800);
+        systemPromptTokens = assembler.countMessageTokens(assembler.systemPrompt());
+    }
+
+    /**
+     * Builds a conversation of exchanges, each question and answer the given number of words long.
+     */
+    private static List<ConversationTurn> conversation(int exchanges, int wordsPerTurn) {
+        var turns = new ArrayList<ConversationTurn>();
+        for (int i = 0; i < exchanges; i++) {
+            turns.add(new ConversationTurn("user", "Pergunta " + i + ": " + " bateria".repeat(wordsPerTurn)));
+            turns.add(new ConversationTurn("assistant", "Resposta " + i + ": " + " painel".repeat(wordsPerTurn)));
+        }
+        return turns;
+    }
+
+    private int tokensOf(List<ChatMessage> messages) {
+        return messages.stream().mapToInt(message -> assembler.countMessageTokens(message.getContent())).sum();
+    }
+
+    private double truncated() {
+        return meterRegistry.get("solaria.chat.questions.truncated").counter().count();
+    }
+
+    @Test
+    void shortConversationsAreSentWhole() {
+        var history = conversation(2, 10);
+
+        var prompt = assembler.assemble(QUESTION, history);
+
+        assertThat(prompt.droppedTurns()).isZero();
+        assertThat(prompt.messages()).hasSize(history.size() + 2);
+        assertThat(prompt.messages().get(0).getContent()).isEqualTo(assembler.systemPrompt());
+        assertThat(prompt.messages().get(prompt.messages().size() - 1).getContent()).isEqualTo(QUESTION);
+        assertThat(prompt.promptTokens()).isEqualTo(tokensOf(prompt.messages()));
+    }
+
+    @Test
+    void oldestTurnsAreLeftOutAndSummarizedWithinTheBudget() {
+        var history = conversation(40, 60);
+
+        var prompt = assembler.assemble(QUESTION, history);
+
+        assertThat(prompt.droppedTurns()).isPositive();
+        assertThat(prompt.promptTokens()).isEqualTo(tokensOf(prompt.messages())).isLessThanOrEqualTo(MAX_PROMPT_TOKENS);
+
+        // The summary follows the system prompt, and only lists questions
+        var summary = prompt.messages().get(1);
+        assertThat(summary.getRole()).isEqualTo("system");
+        assertThat(summary.getContent()).startsWith("Resumo da conversa anterior").contains("- Pergunta")
+                .doesNotContain("Resposta");
+        var available = MAX_PROMPT_TOKENS - systemPromptTokens - assembler.countMessageTokens(QUESTION);
+        assertThat(assembler.countMessageTokens(summary.getContent()))
+                .isLessThanOrEqualTo(Math.min(available / 4, 200));
+
+        // The turns kept are the most recent ones, in order
+        var kept = prompt.messages().subList(2, prompt.messages().size() - 1);
+        assertThat(kept).hasSize(history.size() - prompt.droppedTurns());
+        assertThat(kept.get(kept.size() - 1).getContent()).isEqualTo(history.get(history.size() - 1).content());
+    }
+
+    @Test
+    void questionTooLongForTheBudgetIsCutToFit() {
+        var question = "Tenho uma dúvida sobre a bateria do meu sistema solar. "
+                + "Segue o relatório: 42 kWh. ".repeat(2000);
+
+        var prompt = assembler.assemble(question, conversation(2, 10));
+
+        assertThat(prompt.promptTokens()).isEqualTo(tokensOf(prompt.messages())).isLessThanOrEqualTo(MAX_PROMPT_TOKENS);
+        var asked = prompt.messages().get(prompt.messages().size() - 1).getContent();
+        assertThat(question).startsWith(asked);
+        assertThat(asked).startsWith("Tenho uma dúvida sobre a bateria");
+        assertThat(prompt.droppedTurns()).isEqualTo(4);
+        assertThat(truncated()).isEqualTo(1);
+    }
+
+    @Test
+    void questionsWithinTheBudgetAreNotCut() {
+        assertThat(assembler.fitQuestion(QUESTION)).isSameAs(QUESTION);
+        assertThat(truncated()).isZero();
+    }
+}
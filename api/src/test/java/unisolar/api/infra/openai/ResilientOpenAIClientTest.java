@@ -0,0 +1,92 @@
+package unisolar.api.infra.openai;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import unisolar.api.infra.exception.OpenAIUnavailableException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ResilientOpenAIClientTest {
+
+    private static final ChatCompletionRequestData DATA = new ChatCompletionRequestData("system", "Posso?");
+
+    private OpenAIClient upstream;
+    private SimpleMeterRegistry meterRegistry;
+    private ResilientOpenAIClient client;
+
+    @BeforeEach
+    void setUp() {
+        upstream = mock(OpenAIClient.class);
+        meterRegistry = new SimpleMeterRegistry();
+        client = new ResilientOpenAIClient(upstream, meterRegistry, 1, Duration.ofMillis(50), Duration.ofMillis(200),
+                Duration.ofSeconds(1), Duration.ofSeconds(2), 20, 10, 0.5, Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+    }
+
+    private double calls(String outcome) {
+        var timer = meterRegistry.find("solaria.openai.calls").tag("outcome", outcome).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    @Test
+    void callHangingInAnHttpCallFailsAtTheDeadline() {
+        // Stands for an HTTP call taking the whole HTTP timeout, as createThread or createMessage may
+        when(upstream.sendChatCompletionRequest(anyString(), any(), any(Instant.class))).thenAnswer(call -> {
+            Thread.sleep(10_000);
+            return "too late";
+        });
+
+        var startedAt = System.nanoTime();
+        assertThatThrownBy(() -> client.sendChatCompletionRequest("user:alice", DATA))
+                .isInstanceOf(OpenAIUnavailableException.class);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - startedAt)).isLessThan(Duration.ofSeconds(2));
+        assertThat(calls("timeout")).isEqualTo(1);
+    }
+
+    @Test
+    void callGivenUpOnHoldsItsSlotUntilItEnds() throws Exception {
+        // An HTTP call deaf to interrupts, which only ends when it ends
+        var release = new CountDownLatch(1);
+        when(upstream.sendChatCompletionRequest(anyString(), any(), any(Instant.class))).thenAnswer(call -> {
+            while (true) {
+                try {
+                    release.await();
+                    return "late";
+                } catch (InterruptedException e) {
+                    // Deaf, see above
+                }
+            }
+        }).thenReturn("answer");
+
+        assertThatThrownBy(() -> client.sendChatCompletionRequest("user:alice", DATA))
+                .isInstanceOf(OpenAIUnavailableException.class);
+        assertThatThrownBy(() -> client.sendChatCompletionRequest("user:bob", DATA))
+                .isInstanceOf(OpenAIUnavailableException.class);
+        assertThat(calls("rejected")).isEqualTo(1);
+
+        release.countDown();
+        var available = meterRegistry.get("solaria.openai.bulkhead.available").gauge();
+        var waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (available.value() < 1 && System.nanoTime() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertThat(client.sendChatCompletionRequest("user:bob", DATA)).isEqualTo("answer");
+    }
+}
@@ -0,0 +1,80 @@
+package unisolar.api.infra.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import unisolar.api.infra.exception.LoginThrottledException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoginThrottleTest {
+
+    private static LoginThrottle throttle(int usernameBurst, int addressBurst) {
+        return new LoginThrottle(new SimpleMeterRegistry(), usernameBurst, Duration.ofHours(1), addressBurst,
+                Duration.ofHours(1), 1024);
+    }
+
+    @Test
+    void usernamesAreThrottledWhateverTheirCaseOrAddress() {
+        var throttle = throttle(3, 100);
+        throttle.acquire("alice", "10.0.0.1");
+        throttle.acquire("Alice", "10.0.0.2");
+        throttle.acquire(" ALICE ", "10.0.0.3");
+
+        assertThatThrownBy(() -> throttle.acquire("alice", "10.0.0.4"))
+                .isInstanceOf(LoginThrottledException.class)
+                .satisfies(e -> assertThat(((LoginThrottledException) e).getRetryAfter()).isPositive());
+        throttle.acquire("bob", "10.0.0.4");
+    }
+
+    @Test
+    void addressesAreThrottledWhateverTheUsername() {
+        var throttle = throttle(100, 2);
+        throttle.acquire("alice", "10.0.0.1");
+        throttle.acquire("bob", "10.0.0.1");
+
+        assertThatThrownBy(() -> throttle.acquire("carol", "10.0.0.1")).isInstanceOf(LoginThrottledException.class);
+        throttle.acquire("carol", "10.0.0.2");
+    }
+
+    @Test
+    void concurrentLoginsForOneUsernameNeverExceedTheBurst() throws Exception {
+        var throttle = throttle(5, 1000);
+        var allowed = new AtomicInteger();
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(16);
+        try {
+            var results = new ArrayList<Future<?>>();
+            for (int i = 0; i < 16; i++) {
+                var address = "10.0.0." + i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int attempt = 0; attempt < 5; attempt++) {
+                        try {
+                            throttle.acquire("alice", address);
+                            allowed.incrementAndGet();
+                        } catch (LoginThrottledException e) {
+                            // Expected once the burst is spent
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (var result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(allowed.get()).isEqualTo(5);
+    }
+}
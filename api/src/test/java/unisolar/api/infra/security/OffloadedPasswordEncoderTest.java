@@ -0,0 +1,108 @@
+package unisolar.api.infra.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import unisolar.api.infra.exception.PasswordHashingUnavailableException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OffloadedPasswordEncoderTest {
+
+    private static OffloadedPasswordEncoder encoder(int cost, int threads, int queueCapacity, Duration maxWait) {
+        return new OffloadedPasswordEncoder(new SimpleMeterRegistry(), cost, 4, 14, Duration.ofMillis(250),
+                threads, queueCapacity, maxWait);
+    }
+
+    @Test
+    void encodesAndMatchesWithTheConfiguredCost() {
+        var encoder = encoder(5, 1, 4, Duration.ofSeconds(5));
+        try {
+            var hash = encoder.encode("secret");
+
+            assertThat(hash).startsWith("$2a$05$");
+            assertThat(encoder.matches("secret", hash)).isTrue();
+            assertThat(encoder.matches("other", hash)).isFalse();
+        } finally {
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void onlyHashesOfALowerCostAreUpgraded() {
+        var encoder = encoder(6, 1, 4, Duration.ofSeconds(5));
+        try {
+            assertThat(encoder.upgradeEncoding(new BCryptPasswordEncoder(5).encode("secret"))).isTrue();
+            assertThat(encoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode("secret"))).isFalse();
+            // Made by a faster node: never weakened
+            assertThat(encoder.upgradeEncoding(new BCryptPasswordEncoder(7).encode("secret"))).isFalse();
+            assertThat(encoder.upgradeEncoding("plain")).isFalse();
+            assertThat(encoder.upgradeEncoding(null)).isFalse();
+        } finally {
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void calibratedCostStaysWithinBounds() {
+        var encoder = new OffloadedPasswordEncoder(new SimpleMeterRegistry(), 0, 4, 6, Duration.ofSeconds(10),
+                1, 4, Duration.ofSeconds(5));
+        try {
+            // A generous target allows the maximum, never more
+            assertThat(encoder.getCost()).isEqualTo(6);
+        } finally {
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void hashesBeyondTheQueueAreRejected() throws Exception {
+        // One thread and one queued hash: of six concurrent hashes, at least four find no room
+        var encoder = encoder(12, 1, 1, Duration.ofSeconds(30));
+        var callers = Executors.newFixedThreadPool(6);
+        try {
+            var start = new CountDownLatch(1);
+            var results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 6; i++) {
+                results.add(callers.submit(() -> {
+                    start.await();
+                    return encoder.encode("secret");
+                }));
+            }
+            start.countDown();
+
+            int rejected = 0;
+            for (var result : results) {
+                try {
+                    result.get(60, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).isInstanceOf(PasswordHashingUnavailableException.class);
+                    rejected++;
+                }
+            }
+            assertThat(rejected).isGreaterThanOrEqualTo(4);
+        } finally {
+            callers.shutdownNow();
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void hashesWaitingPastTheDeadlineAreRejected() {
+        var encoder = encoder(14, 1, 4, Duration.ofMillis(1));
+        try {
+            assertThatThrownBy(() -> encoder.encode("secret")).isInstanceOf(PasswordHashingUnavailableException.class);
+        } finally {
+            encoder.shutdown();
+        }
+    }
+}
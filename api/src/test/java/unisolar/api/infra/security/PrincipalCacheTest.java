@@ -0,0 +1,107 @@
+package unisolar.api.infra.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrincipalCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private PrincipalCache cache;
+    private AtomicInteger loads;
+    private Function<String, UserDetails> loader;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new PrincipalCache(meterRegistry, Duration.ofMinutes(1), 100);
+        loads = new AtomicInteger();
+        loader = username -> {
+            loads.incrementAndGet();
+            return user(username);
+        };
+    }
+
+    private static UserDetails user(String username) {
+        return User.withUsername(username).password("hash").roles("USER").build();
+    }
+
+    private static double size(SimpleMeterRegistry meterRegistry) {
+        return meterRegistry.get("solaria.security.principal.cache.size").gauge().value();
+    }
+
+    @Test
+    void usersAreLoadedOnceWhileCached() {
+        var first = cache.get("alice", loader);
+        var second = cache.get("alice", loader);
+
+        assertThat(second).isSameAs(first);
+        assertThat(loads).hasValue(1);
+        assertThat(meterRegistry.get("solaria.security.principal.cache.requests").tag("result", "hit").counter()
+                .count()).isEqualTo(1);
+    }
+
+    @Test
+    void changedUsersAreLoadedAgain() {
+        cache.get("alice", loader);
+        cache.get("bob", loader);
+
+        cache.onUserChanged(new UserChangedEvent(1L, "alice", 1));
+        cache.get("alice", loader);
+        cache.get("bob", loader);
+
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void usersLoadedWhileAChangeCommitsAreNotCached() {
+        // The change commits after the user was read, before it is cached
+        cache.get("alice", username -> {
+            loads.incrementAndGet();
+            var user = user(username);
+            cache.onUserChanged(new UserChangedEvent(1L, "alice", 1));
+            return user;
+        });
+
+        cache.get("alice", loader);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void missingUsersAreNotCached() {
+        assertThat(cache.get("nobody", username -> null)).isNull();
+        assertThat(size(meterRegistry)).isZero();
+    }
+
+    @Test
+    void expiredUsersAreLoadedAgainAndSwept() {
+        var expiringMeters = new SimpleMeterRegistry();
+        var expiring = new PrincipalCache(expiringMeters, Duration.ZERO, 100);
+        expiring.get("alice", loader);
+        expiring.get("alice", loader);
+        assertThat(loads).hasValue(2);
+
+        assertThat(size(expiringMeters)).isEqualTo(1);
+        expiring.evictExpired();
+        assertThat(size(expiringMeters)).isZero();
+    }
+
+    @Test
+    void cacheStaysBounded() {
+        var smallMeters = new SimpleMeterRegistry();
+        var small = new PrincipalCache(smallMeters, Duration.ofMinutes(1), 10);
+        for (int i = 0; i < 100; i++) {
+            small.get("user" + i, loader);
+        }
+
+        assertThat(size(smallMeters)).isBetween(1.0, 10.0);
+    }
+}
@@ -0,0 +1,95 @@
+package unisolar.api.infra.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketSketchTest {
+
+    @Test
+    void burstIsAllowedThenRefused() {
+        var sketch = new TokenBucketSketch(3, 1024, 5, 60_000);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(sketch.tryAcquire("alice")).isZero();
+        }
+        assertThat(sketch.tryAcquire("alice")).isBetween(1L, 60_001L);
+    }
+
+    @Test
+    void keysHaveTheirOwnBudgets() {
+        var sketch = new TokenBucketSketch(3, 1024, 2, 60_000);
+        sketch.tryAcquire("alice");
+        sketch.tryAcquire("alice");
+
+        assertThat(sketch.tryAcquire("alice")).isPositive();
+        assertThat(sketch.tryAcquire("bob")).isZero();
+    }
+
+    @Test
+    void tokensAreRegainedOverTime() throws InterruptedException {
+        var sketch = new TokenBucketSketch(3, 1024, 1, 50);
+        assertThat(sketch.tryAcquire("alice")).isZero();
+        var wait = sketch.tryAcquire("alice");
+        assertThat(wait).isBetween(1L, 51L);
+
+        Thread.sleep(wait + 20);
+
+        assertThat(sketch.tryAcquire("alice")).isZero();
+    }
+
+    @Test
+    void concurrentRequestsNeverExceedTheBurst() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            var sketch = new TokenBucketSketch(4, 64, 5, 3_600_000);
+            var threads = 32;
+            var start = new CountDownLatch(1);
+            var acquired = new AtomicInteger();
+            var executor = Executors.newFixedThreadPool(threads);
+            try {
+                var tasks = new ArrayList<Callable<Void>>();
+                for (int i = 0; i < threads; i++) {
+                    tasks.add(() -> {
+                        start.await();
+                        for (int attempt = 0; attempt < 10; attempt++) {
+                            if (sketch.tryAcquire("alice") == 0) {
+                                acquired.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    });
+                }
+                var results = tasks.stream().map(executor::submit).toList();
+                start.countDown();
+                for (var result : results) {
+                    result.get(10, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertThat(acquired.get()).as("round %d", round).isEqualTo(5);
+        }
+    }
+
+    @Test
+    void refusedAttemptsSpendNothing() throws InterruptedException {
+        var sketch = new TokenBucketSketch(3, 1024, 2, 100);
+        sketch.tryAcquire("alice");
+        sketch.tryAcquire("alice");
+        for (int i = 0; i < 20; i++) {
+            sketch.tryAcquire("alice");
+        }
+
+        // A refilled token is available at once, however many attempts were refused before
+        Thread.sleep(130);
+        assertThat(sketch.tryAcquire("alice")).isZero();
+        assertThat(sketch.tryAcquire("alice")).isPositive();
+    }
+}
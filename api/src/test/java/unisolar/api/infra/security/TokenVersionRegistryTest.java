@@ -0,0 +1,96 @@
+package unisolar.api.infra.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import unisolar.api.domain.dto.securityDTO.TokenVersionData;
+import unisolar.api.domain.repository.UserRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenVersionRegistryTest {
+
+    private UserRepository repository;
+    private SimpleMeterRegistry meterRegistry;
+    private TokenVersionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(UserRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        registry = new TokenVersionRegistry(repository, meterRegistry, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void isNotReadyUntilTheFirstRefreshSucceeds() {
+        when(repository.findTokenVersionsChangedSince(any()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(List.of());
+
+        registry.refresh();
+        assertThat(registry.isReady()).isFalse();
+        assertThat(meterRegistry.get("solaria.security.token.version.refreshes").counter().count()).isEqualTo(1);
+
+        registry.refresh();
+        assertThat(registry.isReady()).isTrue();
+    }
+
+    @Test
+    void tokensIssuedBeforeARevocationAreNoLongerCurrent() {
+        when(repository.findTokenVersionsChangedSince(any())).thenReturn(List.of(new TokenVersionData(1L, 2)));
+        registry.refresh();
+
+        assertThat(registry.isCurrent(1L, 1)).isFalse();
+        assertThat(registry.isCurrent(1L, 2)).isTrue();
+        assertThat(registry.isCurrent(1L, 3)).isTrue();
+
+        // Users never revoked are at version 0
+        assertThat(registry.isCurrent(2L, 0)).isTrue();
+        assertThat(meterRegistry.get("solaria.security.token.versions").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void revocationsMadeOnThisNodeApplyAtOnce() {
+        registry.onUserChanged(new UserChangedEvent(1L, "alice", 1));
+
+        assertThat(registry.isCurrent(1L, 0)).isFalse();
+        assertThat(registry.isCurrent(1L, 1)).isTrue();
+    }
+
+    @Test
+    void versionsNeverGoBack() {
+        registry.onUserChanged(new UserChangedEvent(1L, "alice", 3));
+        // A refresh reading a row older than the change just made
+        when(repository.findTokenVersionsChangedSince(any())).thenReturn(List.of(new TokenVersionData(1L, 2)));
+        registry.refresh();
+
+        assertThat(registry.isCurrent(1L, 2)).isFalse();
+        assertThat(registry.isCurrent(1L, 3)).isTrue();
+    }
+
+    @Test
+    void refreshesReadTheChangesSinceThePreviousOneWithAnOverlap() {
+        when(repository.findTokenVersionsChangedSince(any())).thenReturn(List.of());
+        var before = LocalDateTime.now();
+        registry.refresh();
+        registry.refresh();
+
+        var since = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(repository, times(2)).findTokenVersionsChangedSince(since.capture());
+        assertThat(since.getAllValues().get(0)).isBefore(before.minusYears(10));
+        assertThat(since.getAllValues().get(1))
+                .isAfterOrEqualTo(before.minusMinutes(1))
+                .isBeforeOrEqualTo(LocalDateTime.now().minusMinutes(1));
+    }
+}
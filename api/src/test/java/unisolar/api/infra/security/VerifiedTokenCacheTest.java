@@ -0,0 +1,49 @@
+package unisolar.api.infra.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerifiedTokenCacheTest {
+
+    private static VerifiedToken expiringAt(Instant expiresAt) {
+        return new VerifiedToken("alice", 42L, "Alice", List.of("ROLE_USER"), 0, expiresAt);
+    }
+
+    @Test
+    void tokensAreReturnedUntilTheyExpire() {
+        var cache = new VerifiedTokenCache(new SimpleMeterRegistry(), 100);
+        var valid = expiringAt(Instant.now().plus(1, ChronoUnit.HOURS));
+        cache.put("valid", valid);
+        cache.put("expired", expiringAt(Instant.now().minusSeconds(1)));
+
+        assertThat(cache.get("valid")).isEqualTo(valid);
+        assertThat(cache.get("expired")).isNull();
+        assertThat(cache.get("unknown")).isNull();
+    }
+
+    @Test
+    void tokensWithoutExpirationAreNotCached() {
+        var cache = new VerifiedTokenCache(new SimpleMeterRegistry(), 100);
+        cache.put("eternal", expiringAt(null));
+
+        assertThat(cache.get("eternal")).isNull();
+    }
+
+    @Test
+    void tokensExpiringSoonestAreEvictedFirst() {
+        var cache = new VerifiedTokenCache(new SimpleMeterRegistry(), 10);
+        var now = Instant.now();
+        for (int i = 1; i <= 11; i++) {
+            cache.put("token" + i, expiringAt(now.plus(i, ChronoUnit.MINUTES)));
+        }
+
+        assertThat(cache.get("token1")).isNull();
+        assertThat(cache.get("token11")).isNotNull();
+    }
+}
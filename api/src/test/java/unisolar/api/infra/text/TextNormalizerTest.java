@@ -0,0 +1,60 @@
+package unisolar.api.infra.text;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextNormalizerTest {
+
+    @Test
+    void foldLowerCasesAndRemovesAccents() {
+        assertThat(TextNormalizer.fold("Previsão do TEMPO")).isEqualTo("previsao do tempo");
+        assertThat(TextNormalizer.fold("Ação, Ñandú e Çedilha")).isEqualTo("acao, nandu e cedilha");
+        assertThat(TextNormalizer.fold("Energia ☀ Solar")).isEqualTo("energia  solar");
+    }
+
+    @Test
+    void foldedTextIsReturnedAsIs() {
+        var folded = "previsao do tempo";
+
+        assertThat(TextNormalizer.fold(folded)).isSameAs(folded);
+    }
+
+    @Test
+    void everyCharacterFoldsAloneAsInText() {
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            var folded = TextNormalizer.fold((char) c);
+            var expected = folded == TextNormalizer.DROPPED ? "" : String.valueOf(folded);
+            assertThat(TextNormalizer.fold(String.valueOf((char) c))).as("U+%04X", c).isEqualTo(expected);
+            assertThat(folded == TextNormalizer.DROPPED || folded < 128).as("U+%04X", c).isTrue();
+        }
+    }
+
+    @Test
+    void tokenizeSplitsOnAnythingButLettersAndDigits() {
+        assertThat(TextNormalizer.tokenize("bateria de 12v, modo-noturno!")).containsExactly("bateria", "de", "12v",
+                "modo", "noturno");
+        assertThat(TextNormalizer.tokenize(" ,; ")).isEmpty();
+    }
+
+    @Test
+    void stemGroupsInflectionsAndDerivations() {
+        assertThat(TextNormalizer.stem("economia")).isEqualTo(TextNormalizer.stem("economizar"))
+                .isEqualTo(TextNormalizer.stem("economias"));
+        assertThat(TextNormalizer.stem("baterias")).isEqualTo(TextNormalizer.stem("bateria"));
+        assertThat(TextNormalizer.stem("instalacoes")).isEqualTo(TextNormalizer.stem("instalacao"));
+        assertThat(TextNormalizer.stem("paineis")).isEqualTo(TextNormalizer.stem("painel"));
+        assertThat(TextNormalizer.stem("economizo")).isEqualTo(TextNormalizer.stem("economizar"));
+        assertThat(TextNormalizer.stem("sol")).isEqualTo("sol");
+        assertThat(TextNormalizer.stem("noturna")).isEqualTo(TextNormalizer.stem("noturno"))
+                .isEqualTo(TextNormalizer.stem("noite"));
+    }
+
+    @Test
+    void stopAndIntentWordsAreRecognized() {
+        assertThat(TextNormalizer.isStopWord("de")).isTrue();
+        assertThat(TextNormalizer.isStopWord("bateria")).isFalse();
+        assertThat(TextNormalizer.isIntentWord("nao")).isTrue();
+        assertThat(TextNormalizer.isIntentWord("de")).isFalse();
+    }
+}
@@ -0,0 +1,71 @@
+package unisolar.api.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeatureCategoryIndexTest {
+
+    private static final List<FeatureSearchTree.Feature> FEATURES = List.of(
+            new FeatureSearchTree.Feature("alterar_senha", "/alterar_senha", "Trocar a senha", "Segurança"),
+            new FeatureSearchTree.Feature("economia", "/economia", "Economia do mês", "Financeiro"),
+            new FeatureSearchTree.Feature("sessoes", "/sessoes", "Sessões abertas", "SEGURANCA"),
+            new FeatureSearchTree.Feature("sobre", "/sobre", "Sobre a SolarIA", null),
+            new FeatureSearchTree.Feature("tarifas", "/tarifas", "Tarifas de energia", "financeiro"));
+
+    private final FeatureCategoryIndex index = new FeatureCategoryIndex(FEATURES);
+
+    private static BitSet bits(int... ids) {
+        var bits = new BitSet();
+        for (int id : ids) {
+            bits.set(id);
+        }
+        return bits;
+    }
+
+    @Test
+    void categoriesAreNamedAsFirstWrittenAndMatchedIgnoringCaseAndAccents() {
+        assertThat(index.categories()).containsExactly("Financeiro", "Segurança");
+        assertThat(index.members(List.of("seguranca"))).isEqualTo(bits(0, 2));
+        assertThat(index.members(List.of(" FINANCEIRO "))).isEqualTo(bits(1, 4));
+    }
+
+    @Test
+    void membersOfSeveralCategoriesAreUnitedAndUnknownOnesIgnored() {
+        assertThat(index.members(List.of("Financeiro", "Segurança", "Geral"))).isEqualTo(bits(0, 1, 2, 4));
+        assertThat(index.members(List.of("Geral"))).isEqualTo(new BitSet());
+    }
+
+    @Test
+    void matchesAreCountedByCategoryLeavingOutEmptyOnes() {
+        assertThat(index.counts(bits(0, 2, 3))).containsExactly(Map.entry("Segurança", 2));
+        assertThat(index.counts(bits(0, 1, 2, 3, 4)))
+                .containsExactly(Map.entry("Financeiro", 2), Map.entry("Segurança", 2));
+        assertThat(index.counts(new BitSet())).isEmpty();
+    }
+
+    @Test
+    void featuresAreCountedLikeTheirPositions() {
+        assertThat(index.counts(List.of(FEATURES.get(1), FEATURES.get(2), FEATURES.get(3), FEATURES.get(4))))
+                .isEqualTo(index.counts(bits(1, 2, 3, 4)));
+    }
+
+    @Test
+    void countsSpanEveryWordOfLargeCatalogs() {
+        var features = new ArrayList<FeatureSearchTree.Feature>();
+        for (int i = 0; i < 200; i++) {
+            features.add(new FeatureSearchTree.Feature("f" + i, "/f" + i, "", i % 3 == 0 ? "Três" : "Outros"));
+        }
+        var large = new FeatureCategoryIndex(features);
+        var all = new BitSet();
+        all.set(0, 200);
+
+        assertThat(large.counts(all)).containsExactly(Map.entry("Outros", 133), Map.entry("Três", 67));
+        assertThat(large.counts(bits(199))).containsExactly(Map.entry("Outros", 1));
+    }
+}
@@ -0,0 +1,40 @@
+package unisolar.api.search;
+
+import unisolar.api.search.FeatureSearchTree.Feature;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Features and names shared by the tests of the search indexes.
+ */
+final class FeatureFixtures {
+
+    private FeatureFixtures() {
+    }
+
+    static Feature feature(String name) {
+        return feature(name, "/" + name);
+    }
+
+    static Feature feature(String name, String path) {
+        return new Feature(name, path, "Description of " + name, "Geral");
+    }
+
+    static List<String> names(List<Feature> features) {
+        return features.stream().map(Feature::getName).toList();
+    }
+
+    /**
+     * Builds a random name of 1 to maxLength characters drawn from an alphabet, small alphabets making names that
+     * share prefixes, or differ only in case or accents, likely.
+     */
+    static String randomName(Random random, String alphabet, int maxLength) {
+        var name = new StringBuilder();
+        var length = 1 + random.nextInt(maxLength);
+        for (int i = 0; i < length; i++) {
+            name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return name.toString();
+    }
+}
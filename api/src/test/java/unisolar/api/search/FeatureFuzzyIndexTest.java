@@ -0,0 +1,98 @@
+package unisolar.api.search;
+
+import org.junit.jupiter.api.Test;
+import unisolar.api.search.FeatureSearchTree.Feature;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeatureFuzzyIndexTest {
+
+    private static final List<Feature> CATALOG = List.of(
+            new Feature("Previsão do Tempo", "/clima/previsao", "Previsão de sol e chuva", "Clima"),
+            new Feature("Bateria", "/energia/bateria", "Carga da bateria", "Energia"),
+            new Feature("Modo Noturno", "/config/noturno", "Economia durante a noite", "Configuração"),
+            new Feature("Inversor", "/energia/inversor", "Estado do inversor", "Energia"));
+
+    private final FeatureFuzzyIndex index = new FeatureFuzzyIndex(CATALOG);
+
+    private static List<String> names(List<Feature> features) {
+        return features.stream().map(Feature::getName).toList();
+    }
+
+    @Test
+    void typosAndMissingAccentsAreTolerated() {
+        assertThat(names(index.search("batria", 10))).containsExactly("Bateria");
+        assertThat(names(index.search("PREVISAO", 10))).containsExactly("Previsão do Tempo");
+        assertThat(names(index.search("invesror", 10))).containsExactly("Inversor");
+        assertThat(names(index.search("noturon", 10))).containsExactly("Modo Noturno");
+    }
+
+    @Test
+    void shortWordsMustMatchExactly() {
+        assertThat(index.search("xy", 10)).isEmpty();
+        assertThat(index.search("", 10)).isEmpty();
+    }
+
+    @Test
+    void featuresMatchingMoreWordsRankFirst() {
+        assertThat(names(index.search("carga bateria inversor", 10))).startsWith("Bateria");
+    }
+
+    @Test
+    void matchesAreTheWordsWithinTheAllowedDistance() {
+        // A vocabulary of random words over a small alphabet, so that many are a few edits apart
+        var random = new Random(7);
+        var catalog = new ArrayList<Feature>();
+        for (int i = 0; i < 300; i++) {
+            catalog.add(new Feature(randomWord(random) + " " + randomWord(random), "/f/" + i, randomWord(random), "Geral"));
+        }
+        var fuzzy = new FeatureFuzzyIndex(catalog);
+
+        for (int q = 0; q < 300; q++) {
+            var query = randomWord(random);
+            var matches = new BitSet();
+            fuzzy.search(query, 5, null, matches);
+
+            var expected = new BitSet();
+            for (int i = 0; i < catalog.size(); i++) {
+                var feature = catalog.get(i);
+                var text = feature.getName() + " " + feature.getPath() + " " + feature.getDescription();
+                for (var word : FeatureFuzzyIndex.words(text)) {
+                    if (levenshtein(query, word) <= FeatureFuzzyIndex.maxEdits(query)) {
+                        expected.set(i);
+                    }
+                }
+            }
+            assertThat(matches).as(query).isEqualTo(expected);
+        }
+    }
+
+    private static String randomWord(Random random) {
+        var word = new StringBuilder();
+        var length = 2 + random.nextInt(7);
+        for (int i = 0; i < length; i++) {
+            word.append("abcde".charAt(random.nextInt(5)));
+        }
+        return word.toString();
+    }
+
+    /**
+     * The full Levenshtein matrix, without band nor pruning.
+     */
+    private static int levenshtein(String a, String b) {
+        var distances = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                distances[i][j] = i == 0 ? j : j == 0 ? i : Math.min(
+                        distances[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1),
+                        Math.min(distances[i - 1][j], distances[i][j - 1]) + 1);
+            }
+        }
+        return distances[a.length()][b.length()];
+    }
+}
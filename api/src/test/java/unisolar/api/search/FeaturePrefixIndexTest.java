@@ -0,0 +1,107 @@
+package unisolar.api.search;
+
+import org.junit.jupiter.api.Test;
+import unisolar.api.infra.text.TextNormalizer;
+import unisolar.api.search.FeatureSearchTree.Feature;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static unisolar.api.search.FeatureFixtures.feature;
+import static unisolar.api.search.FeatureFixtures.names;
+import static unisolar.api.search.FeatureFixtures.randomName;
+
+class FeaturePrefixIndexTest {
+
+    private static final String ALPHABET = "aáAÁbBcç ";  // Accents, case and spaces to fold
+
+    @Test
+    void prefixesMatchWhateverTheirCaseAndAccents() {
+        var index = new FeaturePrefixIndex(List.of(feature("Previsão do Tempo"), feature("Preço da Energia"),
+                feature("Bateria")), 10);
+
+        assertThat(names(index.searchByPrefix("previsao"))).containsExactly("Previsão do Tempo");
+        assertThat(names(index.searchByPrefix("PREVISÃO D"))).containsExactly("Previsão do Tempo");
+        assertThat(names(index.searchByPrefix("pre"))).containsExactly("Preço da Energia", "Previsão do Tempo");
+        assertThat(names(index.searchByPrefix(""))).hasSize(3);
+        assertThat(index.searchByPrefix("x")).isEmpty();
+        assertThat(index.searchByPrefix("bateriax")).isEmpty();
+    }
+
+    @Test
+    void charactersFoldingToNothingAreSkippedInQueriesAsInNames() {
+        var index = new FeaturePrefixIndex(List.of(feature("Energia ☀ Solar")), 10);
+
+        assertThat(index.searchByPrefix("energia  so")).hasSize(1);
+        assertThat(index.searchByPrefix("energia ☀ so")).hasSize(1);
+        assertThat(index.searchByPrefix("energia ☀☀ so")).hasSize(1);
+    }
+
+    @Test
+    void popularFeaturesComeFirst() {
+        var popularity = Map.of("Bateria de Lítio", 5.0, "Bateria de Chumbo", 1.0);
+        var index = new FeaturePrefixIndex(List.of(feature("Bateria"), feature("Bateria de Chumbo"),
+                feature("Bateria de Lítio")), 2, f -> popularity.getOrDefault(f.getName(), 0.0));
+
+        assertThat(names(index.searchByPrefix("bat"))).containsExactly("Bateria de Lítio", "Bateria de Chumbo");
+    }
+
+    @Test
+    void searchesMatchAScanOfTheFeatures() {
+        var random = new Random(19);
+        for (int round = 0; round < 50; round++) {
+            var features = new ArrayList<Feature>();
+            var popularity = new HashMap<Feature, Double>();
+            for (int i = random.nextInt(300); i >= 0; i--) {
+                var feature = feature(randomName(random, ALPHABET, 6));
+                features.add(feature);
+                popularity.put(feature, round % 2 == 0 ? 0.0 : random.nextInt(4));
+            }
+            var maxResults = 1 + random.nextInt(8);
+            var index = new FeaturePrefixIndex(features, maxResults, popularity::get);
+
+            // The first feature of each folded name, in folded name order
+            var byKey = new ArrayList<Integer>();
+            var seen = new HashMap<String, Integer>();
+            for (int id = 0; id < features.size(); id++) {
+                seen.putIfAbsent(TextNormalizer.fold(features.get(id).getName()), id);
+            }
+            seen.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(entry -> byKey.add(entry.getValue()));
+
+            for (int q = 0; q < 100; q++) {
+                var name = randomName(random, ALPHABET, 6);
+                var query = name.substring(0, Math.min(name.length(), 1 + random.nextInt(3)));
+                var folded = TextNormalizer.fold(query);
+                var filter = new BitSet();
+                for (int id = 0; id < features.size(); id++) {
+                    if (random.nextInt(3) > 0) {
+                        filter.set(id);
+                    }
+                }
+
+                var matching = byKey.stream()
+                        .filter(id -> TextNormalizer.fold(features.get(id).getName()).startsWith(folded))
+                        .toList();
+                Comparator<Integer> ranking = Comparator.comparingDouble(id -> -popularity.get(features.get(id)));
+                var expected = matching.stream().sorted(ranking).limit(maxResults)
+                        .map(features::get).toList();
+                var expectedFiltered = matching.stream().filter(filter::get).sorted(ranking).limit(maxResults)
+                        .map(features::get).toList();
+                var expectedMatches = new BitSet();
+                matching.forEach(expectedMatches::set);
+
+                var matches = new BitSet();
+                assertThat(index.searchByPrefix(query)).as(query).containsExactlyElementsOf(expected);
+                assertThat(index.searchByPrefix(query, filter, matches)).as(query)
+                        .containsExactlyElementsOf(expectedFiltered);
+                assertThat(matches).as(query).isEqualTo(expectedMatches);
+            }
+        }
+    }
+}
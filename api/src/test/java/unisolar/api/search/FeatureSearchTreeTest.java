@@ -0,0 +1,150 @@
+package unisolar.api.search;
+
+import org.junit.jupiter.api.Test;
+import unisolar.api.search.FeatureSearchTree.Feature;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static unisolar.api.search.FeatureFixtures.feature;
+import static unisolar.api.search.FeatureFixtures.randomName;
+
+class FeatureSearchTreeTest {
+
+    private static final String ALPHABET = "abcdeABCDE";  // Few letters, so names collide ignoring case
+
+    private static List<Feature> inOrder(FeatureSearchTree tree) {
+        var features = new ArrayList<Feature>();
+        tree.forEachInOrder(features::add);
+        return features;
+    }
+
+    /**
+     * Checks the tree against a map of the features it should hold, keyed by lower-cased name.
+     */
+    private static void assertMatches(FeatureSearchTree tree, TreeMap<String, Feature> expected) {
+        assertThat(tree.isBalanced()).isTrue();
+        assertThat(tree.size()).isEqualTo(expected.size());
+        assertThat(inOrder(tree)).containsExactlyElementsOf(expected.values());
+    }
+
+    @Test
+    void buildsBalancedTreesFromSortedFeatures() {
+        var features = new ArrayList<Feature>();
+        for (int i = 0; i < 1000; i++) {
+            features.add(feature(String.format("feature %04d", i)));
+        }
+
+        var tree = FeatureSearchTree.fromSorted(features);
+
+        assertThat(tree.isBalanced()).isTrue();
+        assertThat(inOrder(tree)).containsExactlyElementsOf(features);
+        assertThatThrownBy(() -> FeatureSearchTree.fromSorted(List.of(feature("b"), feature("a"))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FeatureSearchTree.fromSorted(List.of(feature("a"), feature("A"))))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void ofKeepsTheFirstFeatureOfEachName() {
+        var first = feature("Bateria", "/first");
+
+        var tree = FeatureSearchTree.of(List.of(feature("Inversor"), first, feature("BATERIA", "/second")));
+
+        assertThat(tree.size()).isEqualTo(2);
+        assertThat(tree.search("bateria")).isSameAs(first);
+    }
+
+    @Test
+    void staysBalancedThroughRandomInsertsAndDeletes() {
+        var random = new Random(11);
+        var tree = new FeatureSearchTree();
+        var expected = new TreeMap<String, Feature>();
+        for (int i = 0; i < 5000; i++) {
+            var name = randomName(random, ALPHABET, 5);
+            var key = name.toLowerCase(Locale.ROOT);
+            if (random.nextInt(3) == 0) {
+                assertThat(tree.delete(name)).isEqualTo(expected.remove(key) != null);
+            } else {
+                var feature = feature(name);
+                tree.insert(feature);
+                expected.putIfAbsent(key, feature);
+            }
+            if (i % 250 == 0) {
+                assertMatches(tree, expected);
+            }
+        }
+        assertMatches(tree, expected);
+    }
+
+    @Test
+    void updateReplacesAFeatureInPlace() {
+        var tree = FeatureSearchTree.of(List.of(feature("Bateria"), feature("Inversor")));
+        var changed = feature("BATERIA", "/new");
+
+        assertThat(tree.update(changed)).isTrue();
+        assertThat(tree.update(feature("Painel"))).isFalse();
+
+        assertThat(tree.search("bateria")).isSameAs(changed);
+        assertThat(tree.size()).isEqualTo(2);
+    }
+
+    @Test
+    void appliesSmallAndLargeDiffsAlike() {
+        var random = new Random(13);
+        for (int round = 0; round < 200; round++) {
+            var initial = new ArrayList<Feature>();
+            for (int i = random.nextInt(200); i > 0; i--) {
+                initial.add(feature(randomName(random, ALPHABET, 5)));
+            }
+            var tree = FeatureSearchTree.of(initial);
+            var expected = new TreeMap<String, Feature>();
+            inOrder(tree).forEach(feature -> expected.put(feature.getName().toLowerCase(Locale.ROOT), feature));
+
+            // From a handful of changes, applied one by one, to more than the tree holds, merged in one pass
+            var changes = random.nextInt(round % 2 == 0 ? 4 : 300);
+            var upserts = new ArrayList<Feature>();
+            var deletions = new ArrayList<String>();
+            for (int i = 0; i < changes; i++) {
+                if (random.nextBoolean()) {
+                    deletions.add(randomName(random, ALPHABET, 5));
+                } else {
+                    upserts.add(feature(randomName(random, ALPHABET, 5), "/v" + i));
+                }
+            }
+            deletions.forEach(name -> expected.remove(name.toLowerCase(Locale.ROOT)));
+            upserts.forEach(feature -> expected.put(feature.getName().toLowerCase(Locale.ROOT), feature));
+
+            tree.applyChanges(upserts, deletions);
+
+            assertMatches(tree, expected);
+        }
+    }
+
+    @Test
+    void searchesMatchAScanOfTheFeatures() {
+        var random = new Random(17);
+        var features = new ArrayList<Feature>();
+        for (int i = 0; i < 500; i++) {
+            features.add(feature(randomName(random, ALPHABET, 5)));
+        }
+        var tree = FeatureSearchTree.of(features);
+        var all = inOrder(tree);
+
+        for (int q = 0; q < 500; q++) {
+            var query = randomName(random, ALPHABET, 5);
+            var lower = query.toLowerCase(Locale.ROOT);
+
+            var exact = all.stream().filter(feature -> feature.getName().equalsIgnoreCase(query)).findFirst();
+            assertThat(tree.search(query)).isEqualTo(exact.orElse(null));
+            var prefixed = all.stream().filter(feature -> feature.getName().toLowerCase(Locale.ROOT).startsWith(lower))
+                    .toList();
+            assertThat(tree.searchByPrefix(query)).containsExactlyInAnyOrderElementsOf(prefixed);
+        }
+    }
+}
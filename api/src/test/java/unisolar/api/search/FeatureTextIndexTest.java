@@ -0,0 +1,98 @@
+package unisolar.api.search;
+
+import org.junit.jupiter.api.Test;
+import unisolar.api.search.FeatureSearchTree.Feature;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeatureTextIndexTest {
+
+    private static final List<Feature> CATALOG = List.of(
+            new Feature("Modo de Segurança", "/config/seguranca", "Protege o sistema contra sobrecarga", "Configuração"),
+            new Feature("Bateria", "/energia/bateria", "Mostra a carga da bateria", "Energia"),
+            new Feature("Histórico de Baterias", "/energia/historico", "Ciclos de carga passados", "Energia"),
+            new Feature("Desempenho", "/paineis/desempenho", "Geração dos painéis solares", "Painéis"),
+            new Feature("Comunicação", "/rede/comunicacao", "Estado da conexão com o inversor", "Rede"));
+
+    private final FeatureTextIndex index = new FeatureTextIndex(CATALOG);
+
+    private static List<String> names(List<Feature> features) {
+        return features.stream().map(Feature::getName).toList();
+    }
+
+    @Test
+    void wordsMatchWhateverTheirCaseAccentsAndNumber() {
+        assertThat(names(index.search("BATERIAS", 10))).containsExactly("Bateria", "Histórico de Baterias");
+        assertThat(names(index.search("seguranca", 10))).containsExactly("Modo de Segurança");
+        assertThat(names(index.search("Segurança", 10))).containsExactly("Modo de Segurança");
+    }
+
+    @Test
+    void matchesInTheNameRankFirst() {
+        // "carga" is in the description of both, "bateria" in the name of the first only
+        assertThat(names(index.search("carga bateria", 10))).startsWith("Bateria");
+    }
+
+    @Test
+    void lastWordIsExpandedAsAPrefix() {
+        assertThat(names(index.search("segur", 10))).containsExactly("Modo de Segurança");
+        assertThat(names(index.search("desemp", 10))).containsExactly("Desempenho");
+    }
+
+    @Test
+    void lastWordBeingTypedIsExpandedEvenIfAStopWord() {
+        assertThat(names(index.search("se", 10))).contains("Modo de Segurança");
+        assertThat(names(index.search("de", 10))).contains("Desempenho");
+        assertThat(names(index.search("com", 10))).contains("Comunicação");
+        assertThat(names(index.search("bateria e", 10))).contains("Bateria");
+    }
+
+    @Test
+    void stopWordsBeforeTheLastWordAreIgnored() {
+        assertThat(names(index.search("de bateria", 10))).containsExactly(names(index.search("bateria", 10))
+                .toArray(String[]::new));
+    }
+
+    @Test
+    void filterRestrictsResultsButNotMatches() {
+        var filter = new BitSet();
+        filter.set(2);
+        var matches = new BitSet();
+
+        assertThat(names(index.search("bateria", 10, filter, matches))).containsExactly("Histórico de Baterias");
+        assertThat(matches.stream().toArray()).containsExactly(1, 2);
+    }
+
+    @Test
+    void everyFeatureContainingAWordIsFoundInLargeCatalogs() {
+        // Enough features for the gaps of the posting lists to need several bytes
+        var catalog = new ArrayList<Feature>();
+        for (int i = 0; i < 5000; i++) {
+            var word = i % 7 == 0 ? "inversor" : i % 300 == 0 ? "medidor" : "painel";
+            catalog.add(new Feature("Feature " + i, "/f/" + i, "Tela do " + word + " numero " + i, "Geral"));
+        }
+        var large = new FeatureTextIndex(catalog);
+
+        for (var word : List.of("inversor", "medidor", "painel")) {
+            var matches = new BitSet();
+            large.search(word, 1, null, matches);
+            var expected = new BitSet();
+            for (int i = 0; i < catalog.size(); i++) {
+                if (catalog.get(i).getDescription().contains(" " + word + " ")) {
+                    expected.set(i);
+                }
+            }
+            assertThat(matches).as(word).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void resultsAreLimited() {
+        assertThat(index.search("energia", 1)).hasSize(1);
+        assertThat(index.search("", 10)).isEmpty();
+    }
+}
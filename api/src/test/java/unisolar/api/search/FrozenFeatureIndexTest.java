@@ -0,0 +1,112 @@
+package unisolar.api.search;
+
+import org.junit.jupiter.api.Test;
+import unisolar.api.search.FeatureSearchTree.Feature;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static unisolar.api.search.FeatureFixtures.feature;
+import static unisolar.api.search.FeatureFixtures.randomName;
+
+class FrozenFeatureIndexTest {
+
+    private static final String ALPHABET = "abAByYáÁ";  // Case to fold, and accents not to
+
+    /**
+     * Folds a name the way String.compareToIgnoreCase compares it.
+     */
+    private static String fold(String name) {
+        var folded = new StringBuilder(name.length());
+        for (char c : name.toCharArray()) {
+            folded.append(Character.toLowerCase(Character.toUpperCase(c)));
+        }
+        return folded.toString();
+    }
+
+    @Test
+    void emptyIndexFindsNothing() {
+        var index = FrozenFeatureIndex.from(FeatureSearchTree.fromSorted(List.of()));
+
+        assertThat(index.size()).isZero();
+        assertThat(index.search("bateria")).isNull();
+        assertThat(index.searchByPrefix("")).isEmpty();
+    }
+
+    @Test
+    void lookupsIgnoreCase() {
+        var index = FeatureSearchTree.of(List.of(feature("Bateria de Lítio"), feature("Bateria"),
+                feature("Previsão do Tempo"))).freeze();
+
+        assertThat(index.search("BATERIA").getName()).isEqualTo("Bateria");
+        assertThat(index.search("bateria de lÍtio").getName()).isEqualTo("Bateria de Lítio");
+        assertThat(index.search("Bateria de")).isNull();
+        assertThat(index.searchByPrefix("bAT")).extracting(Feature::getName)
+                .containsExactly("Bateria", "Bateria de Lítio");
+        assertThat(index.searchByPrefix("")).hasSize(3);
+        assertThat(index.searchByPrefix("Previsao")).isEmpty();
+    }
+
+    @Test
+    void lookupsMatchAScanAndTheTree() {
+        var random = new Random(23);
+        for (int round = 0; round < 50; round++) {
+            // Names both shorter and longer than the characters packed next to each key
+            var features = new ArrayList<Feature>();
+            for (int i = random.nextInt(400); i >= 0; i--) {
+                features.add(feature(randomName(random, ALPHABET, 8)));
+            }
+            var tree = FeatureSearchTree.of(features);
+            var index = tree.freeze();
+
+            var expected = new TreeMap<String, Feature>(String.CASE_INSENSITIVE_ORDER);
+            features.forEach(feature -> expected.putIfAbsent(feature.getName(), feature));
+            assertThat(index.size()).isEqualTo(expected.size());
+
+            for (int q = 0; q < 200; q++) {
+                var query = randomName(random, ALPHABET, 9);
+                var folded = fold(query);
+                var matching = expected.values().stream()
+                        .filter(feature -> fold(feature.getName()).startsWith(folded))
+                        .toList();
+
+                assertThat(index.search(query)).as(query).isEqualTo(expected.get(query));
+                assertThat(index.search(query)).as(query).isEqualTo(tree.search(query));
+                assertThat(index.searchByPrefix(query)).as(query).containsExactlyElementsOf(matching);
+                // The tree lists them in the order it visits them
+                assertThat(index.searchByPrefix(query)).as(query)
+                        .containsExactlyInAnyOrderElementsOf(tree.searchByPrefix(query));
+            }
+        }
+    }
+
+    @Test
+    void lookupsAmongLongSharedPrefixesMatchTheTree() {
+        // Keys differing only far past their first characters, and past the prefixes shared by their bounds
+        var prefixes = List.of("relatorio_consumo_", "relatorio_consumo_mensal_", "Relatório_geração_", "r");
+        var random = new Random(29);
+        var features = new ArrayList<Feature>();
+        for (int i = 0; i < 3000; i++) {
+            features.add(feature(prefixes.get(random.nextInt(prefixes.size())) + randomName(random, ALPHABET, 8)));
+        }
+        var tree = FeatureSearchTree.of(features);
+        var index = tree.freeze();
+
+        for (int q = 0; q < 2000; q++) {
+            var query = q % 2 == 0
+                    ? features.get(random.nextInt(features.size())).getName().toUpperCase()
+                    : prefixes.get(random.nextInt(prefixes.size())) + randomName(random, ALPHABET, 9);
+
+            assertThat(index.search(query)).as(query).isEqualTo(tree.search(query));
+            assertThat(index.searchByPrefix(query)).as(query)
+                    .containsExactlyInAnyOrderElementsOf(tree.searchByPrefix(query));
+        }
+        for (String prefix : prefixes) {
+            assertThat(index.searchByPrefix(prefix)).as(prefix)
+                    .containsExactlyInAnyOrderElementsOf(tree.searchByPrefix(prefix));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package unisolar.api.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CannedResponseServiceTest {
+
+    private final CannedResponseService service = new CannedResponseService();
+
+    @Test
+    void questionsAboutSolarEnergyAreNotAnsweredWithAGreeting() {
+        assertThat(service.answer("Como funciona a energia solar?", null)).isEmpty();
+        assertThat(service.answer("Vale a pena instalar painéis solares?", null)).isEmpty();
+        assertThat(service.answer("O que é a SolarIA?", null)).isEmpty();
+    }
+
+    @Test
+    void greetingsAreAnsweredWithTheUsersName() {
+        assertThat(service.answer("Olá!", "Ana")).hasValueSatisfying(answer -> assertThat(answer).startsWith("Olá, Ana!"));
+        assertThat(service.answer("ola", null)).hasValueSatisfying(answer -> assertThat(answer).startsWith("Olá!"));
+        assertThat(service.answer("BOM DIA", null)).hasValueSatisfying(answer -> assertThat(answer).startsWith("Bom dia!"));
+    }
+
+    @Test
+    void theMostSpecificIntentIsAnswered() {
+        assertThat(service.answer("Olá, como funciona a SolarIA?", null))
+                .hasValueSatisfying(answer -> assertThat(answer).startsWith("🤖 Eu sou a SolarIA"));
+    }
+
+    @Test
+    void intentsInsideLongerWordsAreIgnored() {
+        assertThat(service.answer("dicas do diario de bordo", null)).isEmpty();
+        assertThat(service.answer("quais as dicas do dia?", null))
+                .hasValueSatisfying(answer -> assertThat(answer).startsWith("🌟 Dicas de Hoje"));
+    }
+}
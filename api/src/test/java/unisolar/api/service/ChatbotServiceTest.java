@@ -0,0 +1,255 @@
+package unisolar.api.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import unisolar.api.chat.ChatHistoryStore;
+import unisolar.api.chat.ChatRequestScheduler;
+import unisolar.api.chat.SemanticAnswerCache;
+import unisolar.api.infra.exception.OpenAIUnavailableException;
+import unisolar.api.infra.openai.ChatCompletionRequestData;
+import unisolar.api.infra.openai.ConversationTurn;
+import unisolar.api.infra.openai.PromptAssembler;
+import unisolar.api.infra.openai.ResilientOpenAIClient;
+import unisolar.api.infra.openai.TokenCounter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatbotServiceTest {
+
+    private static final String QUESTION = "Como economizar energia com painéis solares?";
+
+    private ResilientOpenAIClient client;
+    private ChatHistoryStore history;
+    private PromptAssembler prompts;
+    private ChatRequestScheduler scheduler;
+    private SimpleMeterRegistry meterRegistry;
+    private ChatbotService service;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        client = mock(ResilientOpenAIClient.class);
+        history = mock(ChatHistoryStore.class);
+        prompts = new PromptAssembler(new TokenCounter(), meterRegistry, 3000, 800);
+        scheduler = spy(new ChatRequestScheduler(meterRegistry, 16, 4000, 5, Duration.ofSeconds(5)));
+        service = new ChatbotService(client,
+                prompts,
+                new SemanticAnswerCache(meterRegistry, 100, Duration.ofHours(1), 0.6),
+                scheduler,
+                history,
+                meterRegistry);
+    }
+
+    @Test
+    void blockingQuestionsWithContextAreNotCoalescedBetweenConversations() throws Exception {
+        when(history.hasHistory(anyString())).thenReturn(true);
+        // Both calls must reach OpenAI before either answers: a coalesced one never would
+        var bothCalled = new CountDownLatch(2);
+        when(client.sendChatCompletionRequest(anyString(), any(ChatCompletionRequestData.class))).thenAnswer(call -> {
+            bothCalled.countDown();
+            bothCalled.await(5, TimeUnit.SECONDS);
+            return "answer for " + call.getArgument(0);
+        });
+
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var alice = executor.submit(() -> service.answerQuestion("user:alice", QUESTION));
+            var bob = executor.submit(() -> service.answerQuestion("user:bob", QUESTION));
+
+            assertThat(alice.get(10, TimeUnit.SECONDS)).isEqualTo("answer for user:alice");
+            assertThat(bob.get(10, TimeUnit.SECONDS)).isEqualTo("answer for user:bob");
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(history).recordQuestion("user:alice", QUESTION);
+        verify(history).recordAnswer("user:alice", "answer for user:alice");
+        verify(history).recordQuestion("user:bob", QUESTION);
+        verify(history).recordAnswer("user:bob", "answer for user:bob");
+        verify(client, never()).appendExchange(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void contextFreeBlockingQuestionsAreSharedBetweenConversations() throws Exception {
+        var called = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(client.sendChatCompletionRequest(anyString(), any(ChatCompletionRequestData.class))).thenAnswer(call -> {
+            called.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "Use a energia de dia.";
+        });
+
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var alice = executor.submit(() -> service.answerQuestion("user:alice", QUESTION));
+            assertThat(called.await(5, TimeUnit.SECONDS)).isTrue();
+            var bob = executor.submit(() -> service.answerQuestion("user:bob", QUESTION));
+            var coalesced = meterRegistry.get("solaria.chat.coalesced").tag("mode", "blocking").counter();
+            var waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (coalesced.count() < 1 && System.nanoTime() < waitUntil) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertThat(alice.get(10, TimeUnit.SECONDS)).isEqualTo("Use a energia de dia.");
+            assertThat(bob.get(10, TimeUnit.SECONDS)).isEqualTo("Use a energia de dia.");
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(client, times(1)).sendChatCompletionRequest(anyString(), any(ChatCompletionRequestData.class));
+        // Only the conversation that did not run the question is told of it
+        verify(client).appendExchange("user:bob", QUESTION, "Use a energia de dia.");
+        verify(client, never()).appendExchange(eq("user:alice"), anyString(), anyString());
+        verify(history).recordAnswer("user:bob", "Use a energia de dia.");
+    }
+
+    @Test
+    void cachedBlockingAnswersAreAddedToTheThreadOfTheConversation() {
+        when(client.sendChatCompletionRequest(anyString(), any(ChatCompletionRequestData.class)))
+                .thenReturn("Use a energia de dia.");
+
+        service.answerQuestion("user:alice", QUESTION);
+        assertThat(service.answerQuestion("user:bob", QUESTION)).isEqualTo("Use a energia de dia.");
+
+        verify(client, times(1)).sendChatCompletionRequest(anyString(), any(ChatCompletionRequestData.class));
+        verify(client).appendExchange("user:bob", QUESTION, "Use a energia de dia.");
+    }
+
+    @Test
+    void contextFreeStreamsAreSharedBetweenConversations() {
+        when(history.recent(anyString(), anyInt())).thenReturn(List.of());
+        var upstream = PublishProcessor.<String>create();
+        when(client.streamChatCompletion(any())).thenReturn(upstream);
+
+        var alice = service.streamAnswer("user:alice", QUESTION).test();
+        var bob = service.streamAnswer("user:bob", QUESTION).test();
+        upstream.onNext("Use ");
+        upstream.onNext("a energia de dia.");
+        upstream.onComplete();
+
+        alice.awaitDone(5, TimeUnit.SECONDS).assertResult("Use ", "a energia de dia.");
+        bob.awaitDone(5, TimeUnit.SECONDS).assertResult("Use ", "a energia de dia.");
+        verify(client, times(1)).streamChatCompletion(any());
+        verify(history).recordAnswer("user:alice", "Use a energia de dia.");
+        verify(history).recordAnswer("user:bob", "Use a energia de dia.");
+    }
+
+    @Test
+    void streamsWithContextAreNotSharedBetweenConversations() {
+        when(history.recent(eq("user:alice"), anyInt()))
+                .thenReturn(List.of(new ConversationTurn("user", "Tenho uma bateria de lítio.")));
+        when(history.recent(eq("user:bob"), anyInt()))
+                .thenReturn(List.of(new ConversationTurn("user", "Moro em um apartamento.")));
+        when(client.streamChatCompletion(any()))
+                .thenReturn(PublishProcessor.create())
+                .thenReturn(PublishProcessor.create());
+
+        service.streamAnswer("user:alice", QUESTION).test();
+        service.streamAnswer("user:bob", QUESTION).test();
+
+        verify(client, times(2)).streamChatCompletion(any());
+    }
+
+    @Test
+    void answersGivenWithContextAreNeitherCachedNorServedFromCache() {
+        when(history.hasHistory("user:alice")).thenReturn(true);
+        when(history.hasHistory("user:bob")).thenReturn(false);
+        when(client.sendChatCompletionRequest(anyString(), any(ChatCompletionRequestData.class)))
+                .thenReturn("answer in context", "answer without context");
+
+        // Alice's answer depends on her conversation: it must not be served to Bob
+        assertThat(service.answerQuestion("user:alice", QUESTION)).isEqualTo("answer in context");
+        assertThat(service.answerQuestion("user:bob", QUESTION)).isEqualTo("answer without context");
+
+        // Bob's answer was given without context: Carol, also without context, gets it from the cache
+        when(history.hasHistory("user:carol")).thenReturn(false);
+        assertThat(service.answerQuestion("user:carol", QUESTION)).isEqualTo("answer without context");
+        verify(client, never()).sendChatCompletionRequest(eq("user:carol"), any());
+
+        // Alice, with context, does not
+        when(client.sendChatCompletionRequest(eq("user:alice"), any())).thenReturn("another answer in context");
+        assertThat(service.answerQuestion("user:alice", QUESTION)).isEqualTo("another answer in context");
+    }
+
+    @Test
+    void contextFreeStreamsAreAnsweredFromTheCache() {
+        when(history.recent(anyString(), anyInt())).thenReturn(List.of());
+        when(client.streamChatCompletion(any())).thenReturn(Flowable.just("Use a energia de dia."));
+
+        service.streamAnswer("user:alice", QUESTION).test().awaitDone(5, TimeUnit.SECONDS);
+        service.streamAnswer("user:bob", "como economizar energia com painéis solares")
+                .test().awaitDone(5, TimeUnit.SECONDS).assertResult("Use a energia de dia.");
+
+        verify(client, times(1)).streamChatCompletion(any());
+    }
+
+    @Test
+    void blockingQuestionsAreChargedTheThreadTheyRunOn() {
+        when(client.threadTokenCount("user:alice")).thenReturn(2500);
+        when(client.sendChatCompletionRequest(anyString(), any(ChatCompletionRequestData.class))).thenReturn("answer");
+
+        service.answerQuestion("user:alice", QUESTION);
+
+        verify(scheduler).acquire("user:alice", 2500 + prompts.countMessageTokens(QUESTION));
+    }
+
+    @Test
+    void streamedQuestionsAreChargedTheirWholePromptAndAnswerBudget() {
+        var context = List.of(new ConversationTurn("user", "Tenho uma bateria de lítio."),
+                new ConversationTurn("assistant", "Ótimo, ela guarda a energia do dia."));
+        when(history.recent(anyString(), anyInt())).thenReturn(context);
+        when(client.streamChatCompletion(any())).thenReturn(Flowable.just("Use a energia de dia."));
+
+        service.streamAnswer("user:alice", QUESTION).test().awaitDone(5, TimeUnit.SECONDS);
+
+        var prompt = prompts.assemble(QUESTION, context);
+        verify(scheduler).schedule(eq("user:alice"), eq(prompt.promptTokens() + 800), any());
+    }
+
+    @Test
+    void questionsAreRecordedBeforeOpenAIIsCalled() {
+        when(client.sendChatCompletionRequest(anyString(), any(ChatCompletionRequestData.class))).thenReturn("answer");
+
+        service.answerQuestion("user:alice", QUESTION);
+
+        var order = inOrder(history, client);
+        order.verify(history).recordQuestion("user:alice", QUESTION);
+        order.verify(client).sendChatCompletionRequest(anyString(), any(ChatCompletionRequestData.class));
+        order.verify(history).recordAnswer("user:alice", "answer");
+    }
+
+    @Test
+    void questionsAreKeptWhenOpenAIIsUnavailable() {
+        when(client.sendChatCompletionRequest(anyString(), any(ChatCompletionRequestData.class)))
+                .thenThrow(new OpenAIUnavailableException("OpenAI circuit breaker is open"));
+        when(client.streamChatCompletion(any()))
+                .thenReturn(Flowable.error(new OpenAIUnavailableException("OpenAI circuit breaker is open")));
+        when(history.recent(anyString(), anyInt())).thenReturn(List.of());
+
+        service.answerQuestion("user:alice", QUESTION);
+        service.streamAnswer("user:bob", QUESTION).test().awaitDone(5, TimeUnit.SECONDS);
+
+        verify(history).recordQuestion("user:alice", QUESTION);
+        verify(history).recordQuestion("user:bob", QUESTION);
+        verify(history, never()).recordAnswer(anyString(), anyString());
+    }
+}
@@ -0,0 +1,263 @@
+package unisolar.api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import unisolar.api.enums.SearchMode;
+import unisolar.api.search.FeatureSearchTree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FeatureSearchServiceTest {
+
+    private static final List<Map<String, String>> CATALOG = List.of(
+            entry("economia", "Dashboard > Economia", "Visualizar economia e dados financeiros", "Financeiro"),
+            entry("economia_mensal", "Relatórios > Economia mensal", "Economia de cada mês", "Financeiro"),
+            entry("economizar_energia", "Dicas > Economizar energia", "Dicas para economizar energia", "Dicas"),
+            entry("eco_dicas", "Dicas > Ecológicas", "Dicas ecológicas", "Dicas"),
+            entry("ecossistema", "Sobre > Ecossistema", "Parceiros do ecossistema", "Geral"),
+            entry("alterar_perfil", "Perfil > Atualizar Perfil", "Atualizar dados do perfil", "Conta"),
+            entry("alterar_senha", "Perfil > Alterar senha", "Trocar a senha de acesso", "Segurança"));
+
+    @TempDir
+    Path directory;
+
+    private Path catalogFile;
+    private ObjectMapper objectMapper;
+    private FeatureUsageService usage;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        catalogFile = directory.resolve("features.json");
+        objectMapper = new ObjectMapper();
+        objectMapper.writeValue(catalogFile.toFile(), CATALOG);
+        usage = mock(FeatureUsageService.class);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private static Map<String, String> entry(String name, String path, String description, String category) {
+        return Map.of("name", name, "path", path, "description", description, "category", category);
+    }
+
+    private FeatureSearchService service(int cacheMaxEntries) {
+        return new FeatureSearchService(new FileSystemResource(catalogFile), objectMapper, usage, meterRegistry,
+                cacheMaxEntries);
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("solaria.features.cache.requests").tag("result", result).counter().count();
+    }
+
+    private double reloads(String outcome) {
+        return meterRegistry.get("solaria.features.reloads").tag("outcome", outcome).counter().count();
+    }
+
+    /**
+     * Rewrites the catalog file, dating it later than the one loaded so a check for changes sees it.
+     */
+    private void rewriteCatalog(String json) throws IOException {
+        var previous = Files.getLastModifiedTime(catalogFile).toMillis();
+        Files.writeString(catalogFile, json);
+        Files.setLastModifiedTime(catalogFile, FileTime.fromMillis(previous + 1000));
+    }
+
+    private static List<String> names(List<FeatureSearchTree.Feature> features) {
+        return features.stream().map(FeatureSearchTree.Feature::getName).toList();
+    }
+
+    @Test
+    void longerPrefixIsNarrowedFromTheCachedResultsToWhatTheIndexFinds() {
+        var service = service(100);
+
+        service.search("eco", SearchMode.PREFIX);
+        var narrowed = service.search("econ", SearchMode.PREFIX);
+
+        assertThat(requests("narrowed")).isEqualTo(1);
+        var indexed = service.currentCatalog().prefixIndex().searchByPrefix("econ");
+        assertThat(names(narrowed.features())).isEqualTo(names(indexed))
+                .containsExactlyInAnyOrder("economia", "economia_mensal", "economizar_energia");
+        assertThat(narrowed.complete()).isTrue();
+        assertThat(narrowed.facets()).containsExactlyInAnyOrderEntriesOf(Map.of("Financeiro", 2, "Dicas", 1));
+    }
+
+    @Test
+    void narrowedResultsKeepThePopularityRanking() {
+        when(usage.popularity(anyString())).thenReturn(0.0);
+        when(usage.popularity("economizar_energia")).thenReturn(50.0);
+        when(usage.popularity("economia_mensal")).thenReturn(10.0);
+        when(usage.generation()).thenReturn(1L);
+        var service = service(100);
+
+        service.search("eco", SearchMode.PREFIX);
+        var narrowed = service.search("econ", SearchMode.PREFIX);
+
+        assertThat(requests("narrowed")).isEqualTo(1);
+        assertThat(names(narrowed.features()))
+                .containsExactly("economizar_energia", "economia_mensal", "economia")
+                .isEqualTo(names(service.currentCatalog().prefixIndex().searchByPrefix("econ")));
+    }
+
+    @Test
+    void incompleteResultsAreNotNarrowed() throws IOException {
+        var catalog = new ArrayList<>(CATALOG);
+        for (int i = 0; i < 25; i++) {
+            catalog.add(entry("eco_" + (char) ('a' + i), "Eco", "Gerada", "Geral"));
+        }
+        objectMapper.writeValue(catalogFile.toFile(), catalog);
+        var service = service(100);
+
+        assertThat(service.search("eco", SearchMode.PREFIX).complete()).isFalse();
+        var narrowed = service.search("eco_", SearchMode.PREFIX);
+
+        assertThat(requests("narrowed")).isZero();
+        assertThat(requests("miss")).isEqualTo(2);
+        assertThat(narrowed.features()).hasSize(20);
+    }
+
+    @Test
+    void queriesDifferingOnlyInCaseAccentsAndSpacesShareACacheEntry() {
+        var service = service(100);
+
+        var first = service.search("  Alterar   Sénha ", SearchMode.FUZZY);
+        var second = service.search("alterar senha", SearchMode.FUZZY);
+        service.search("eco", SearchMode.PREFIX, List.of("Financeiro", "Dicas"));
+        service.search("ECO", SearchMode.PREFIX, List.of(" dicas", "financeiro", "Dicas"));
+
+        assertThat(second).isSameAs(first);
+        assertThat(requests("hit")).isEqualTo(2);
+        assertThat(requests("miss")).isEqualTo(2);
+    }
+
+    @Test
+    void leastRecentlyUsedResultsAreEvictedFirst() {
+        var service = service(2);
+
+        service.search("economia", SearchMode.PREFIX);
+        service.search("alterar", SearchMode.PREFIX);
+        service.search("economia", SearchMode.PREFIX);  // "alterar" is now the least recently used
+        service.search("ecossistema", SearchMode.PREFIX);
+        service.search("economia", SearchMode.PREFIX);
+        service.search("alterar", SearchMode.PREFIX);
+
+        assertThat(requests("hit")).isEqualTo(2);
+        assertThat(requests("miss")).isEqualTo(4);
+    }
+
+    @Test
+    void resultsOfAnEarlierCatalogVersionAreNotServed() {
+        var service = service(100);
+        var before = service.search("eco", SearchMode.PREFIX);
+
+        when(usage.popularity("ecossistema")).thenReturn(5.0);
+        when(usage.generation()).thenReturn(1L);
+        service.rerankIfPopularityChanged();
+        var after = service.search("eco", SearchMode.PREFIX);
+
+        assertThat(requests("hit")).isZero();
+        assertThat(after.catalogVersion()).isEqualTo(before.catalogVersion() + 1);
+        assertThat(after.etag()).isNotEqualTo(before.etag());
+        assertThat(names(after.features())).first().isEqualTo("ecossistema");
+    }
+
+    @Test
+    void facetsCountEveryMatchBeforeTheCategoryFilterInEveryMode() {
+        var service = service(100);
+        var queries = Map.of(SearchMode.PREFIX, "econ",
+                SearchMode.FUZZY, "economia",
+                SearchMode.FULL_TEXT, "economia");
+
+        queries.forEach((mode, query) -> {
+            var unfiltered = service.search(query, mode);
+            var filtered = service.search(query, mode, List.of("dicas"));
+
+            assertThat(filtered.features()).isNotEmpty()
+                    .allSatisfy(feature -> assertThat(feature.getCategory()).isEqualTo("Dicas"));
+            assertThat(filtered.facets()).as(mode.name()).isEqualTo(unfiltered.facets())
+                    .containsKeys("Dicas", "Financeiro");
+        });
+    }
+
+    @Test
+    void filteredPrefixSearchesFindFeaturesBeyondTheTopResults() throws IOException {
+        var catalog = new ArrayList<>(CATALOG);
+        for (int i = 0; i < 25; i++) {
+            catalog.add(entry("eco_" + (char) ('a' + i), "Eco", "Gerada", "Geral"));
+        }
+        catalog.add(entry("eco_zz", "Eco", "A última", "Segurança"));
+        objectMapper.writeValue(catalogFile.toFile(), catalog);
+        var service = service(100);
+
+        assertThat(names(service.search("eco", SearchMode.PREFIX).features())).doesNotContain("eco_zz");
+        var filtered = service.search("eco", SearchMode.PREFIX, List.of("seguranca"));
+
+        assertThat(names(filtered.features())).containsExactly("eco_zz");
+        assertThat(filtered.facets()).containsEntry("Segurança", 1).containsEntry("Geral", 26);
+    }
+
+    @Test
+    void modifiedCatalogIsSwappedInWithANewVersionAndAnEmptyCache() throws IOException {
+        var service = service(100);
+        var before = service.currentCatalog();
+        service.search("eco", SearchMode.PREFIX);
+
+        rewriteCatalog("""
+                [{"name": "economia", "path": "Dashboard > Economia", "category": "Financeiro"},
+                 {"name": "eco_novo", "path": "Dicas > Nova", "category": "Dicas"}]""");
+        service.reloadIfModified();
+
+        var after = service.currentCatalog();
+        assertThat(after).isNotSameAs(before);
+        assertThat(after.version()).isEqualTo(before.version() + 1);
+        assertThat(after.features()).hasSize(2);
+        assertThat(reloads("success")).isEqualTo(2);
+        var result = service.search("eco", SearchMode.PREFIX);
+        assertThat(requests("hit")).isZero();
+        assertThat(names(result.features())).containsExactlyInAnyOrder("economia", "eco_novo");
+        assertThat(service.findFeature("eco_novo")).isPresent();
+    }
+
+    @Test
+    void unmodifiedCatalogIsNotReloaded() {
+        var service = service(100);
+        var before = service.currentCatalog();
+
+        service.reloadIfModified();
+
+        assertThat(service.currentCatalog()).isSameAs(before);
+        assertThat(reloads("success")).isEqualTo(1);
+    }
+
+    @Test
+    void invalidCatalogLeavesThePreviousSnapshotInPlace() throws IOException {
+        var service = service(100);
+        var before = service.currentCatalog();
+        var cached = service.search("eco", SearchMode.PREFIX);
+
+        rewriteCatalog("[{\"name\": \"economia\"}, {\"path\": \"Sem nome\"}]");
+        service.reloadIfModified();
+        rewriteCatalog("[{\"name\": ");
+        service.reloadIfModified();
+
+        assertThat(service.currentCatalog()).isSameAs(before);
+        assertThat(reloads("failure")).isEqualTo(2);
+        assertThat(service.search("eco", SearchMode.PREFIX)).isSameAs(cached);
+        assertThatThrownBy(service::reload).isInstanceOf(IllegalStateException.class);
+        assertThat(reloads("failure")).isEqualTo(3);
+    }
+}
@@ -0,0 +1,118 @@
+package unisolar.api.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalMatchers;
+import org.springframework.dao.DataAccessResourceFailureException;
+import unisolar.api.domain.entity.FeatureUsage;
+import unisolar.api.domain.repository.FeatureUsageRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FeatureUsageServiceTest {
+
+    private FeatureUsageRepository repository;
+    private FeatureUsageService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(FeatureUsageRepository.class);
+        service = new FeatureUsageService(repository, new SimpleMeterRegistry(), Duration.ofDays(7));
+    }
+
+    private static FeatureUsage row(String key, String name, double score, long selections) {
+        return new FeatureUsage(key, name, score, selections, LocalDateTime.now());
+    }
+
+    @Test
+    void onlySelectionsCountedSinceTheLastFlushAreWritten() {
+        service.recordSelection("Bateria");
+        service.recordSelection("Bateria");
+        service.recordSelection("Bateria");
+        service.flush();
+        verify(repository).addSelections(eq("bateria"), eq("Bateria"), AdditionalMatchers.eq(3.0, 1e-6), eq(3L), any(), anyDouble());
+
+        service.recordSelection("Bateria");
+        service.flush();
+        verify(repository).addSelections(eq("bateria"), eq("Bateria"), AdditionalMatchers.eq(1.0, 1e-6), eq(1L), any(), anyDouble());
+    }
+
+    @Test
+    void selectionsOfOtherNodesAreRead() {
+        when(repository.findAll()).thenReturn(List.of(row("bateria", "Bateria", 10, 10)));
+
+        service.flush();
+
+        assertThat(service.popularity("Bateria")).isCloseTo(10.0, within(1e-3));
+        assertThat(service.popularity("BATERIA")).isCloseTo(10.0, within(1e-3));
+        verify(repository, never()).addSelections(anyString(), anyString(), anyDouble(), anyLong(), any(), anyDouble());
+    }
+
+    @Test
+    void selectionsNotWrittenYetAreAddedToThoseRead() {
+        when(repository.addSelections(anyString(), anyString(), anyDouble(), anyLong(), any(), anyDouble()))
+                .thenThrow(new DataAccessResourceFailureException("down"));
+        when(repository.findAll()).thenReturn(List.of(row("bateria", "Bateria", 10, 10)));
+        service.recordSelection("Bateria");
+        service.recordSelection("Bateria");
+
+        service.flush();
+
+        assertThat(service.popularity("Bateria")).isCloseTo(12.0, within(1e-3));
+    }
+
+    @Test
+    void failedWritesAreRetriedOnTheNextFlush() {
+        when(repository.addSelections(anyString(), anyString(), anyDouble(), anyLong(), any(), anyDouble()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(1);
+        service.recordSelection("Inversor");
+        service.recordSelection("Inversor");
+        service.flush();
+
+        service.recordSelection("Inversor");
+        service.flush();
+
+        verify(repository).addSelections(eq("inversor"), eq("Inversor"), AdditionalMatchers.eq(3.0, 1e-6), eq(3L), any(), anyDouble());
+    }
+
+    @Test
+    void localCountsSurviveAFailedRead() {
+        when(repository.findAll()).thenThrow(new DataAccessResourceFailureException("down"));
+        service.recordSelection("Inversor");
+
+        service.flush();
+
+        assertThat(service.popularity("Inversor")).isCloseTo(1.0, within(1e-3));
+    }
+
+    @Test
+    void popularityIsRepublishedOnlyWhenSelectionsChange() {
+        when(repository.findAll()).thenReturn(List.of(row("bateria", "Bateria", 10, 10)));
+        service.flush();
+        var generation = service.generation();
+
+        service.flush();
+        assertThat(service.generation()).isEqualTo(generation);
+
+        when(repository.findAll()).thenReturn(List.of(row("bateria", "Bateria", 11, 11)));
+        service.flush();
+        assertThat(service.generation()).isGreaterThan(generation);
+        assertThat(service.popularity("Bateria")).isCloseTo(11.0, within(1e-3));
+    }
+}
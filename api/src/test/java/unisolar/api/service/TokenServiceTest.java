@@ -0,0 +1,83 @@
+package unisolar.api.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import unisolar.api.domain.entity.User;
+import unisolar.api.infra.security.VerifiedTokenCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenServiceTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private TokenService tokenService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        tokenService = new TokenService("test-secret", new VerifiedTokenCache(meterRegistry, 100));
+    }
+
+    private static User user() {
+        var user = new User();
+        user.setId(42L);
+        user.setUsername("alice");
+        user.setName("Alice");
+        user.setTokenVersion(3);
+        return user;
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("solaria.security.token.cache.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    void userIsRebuiltFromTheClaimsOfItsToken() {
+        var token = tokenService.verify(tokenService.generateToken(user()));
+
+        var principal = tokenService.principal(token);
+        assertThat(principal.getId()).isEqualTo(42L);
+        assertThat(principal.getUsername()).isEqualTo("alice");
+        assertThat(principal.getName()).isEqualTo("Alice");
+        assertThat(principal.getTokenVersion()).isEqualTo(3);
+        assertThat(principal.isEnabled()).isTrue();
+        assertThat(tokenService.authorities(token)).extracting(GrantedAuthority::getAuthority)
+                .containsExactlyElementsOf(user().getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+    }
+
+    @Test
+    void tokensAreVerifiedOnceThenServedFromTheCache() {
+        var jwt = tokenService.generateToken(user());
+
+        var first = tokenService.verify(jwt);
+        var second = tokenService.verify(jwt);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(requests("miss")).isEqualTo(1);
+        assertThat(requests("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void cacheKeepsClaimsButNotTheToken() {
+        var jwt = tokenService.generateToken(user());
+
+        var token = tokenService.verify(jwt);
+
+        assertThat(token.subject()).isEqualTo("alice");
+        assertThat(token.expiresAt()).isNotNull();
+        assertThat(token.toString()).doesNotContain(jwt).doesNotContain(jwt.substring(jwt.lastIndexOf('.') + 1));
+    }
+
+    @Test
+    void tamperedTokensAreRejected() {
+        var jwt = tokenService.generateToken(user());
+        var tampered = jwt.substring(0, jwt.length() - 2) + (jwt.endsWith("A") ? "BB" : "AA");
+
+        assertThatThrownBy(() -> tokenService.verify(tampered)).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> new TokenService("other-secret", new VerifiedTokenCache(meterRegistry, 100))
+                .verify(jwt)).isInstanceOf(RuntimeException.class);
+    }
+}